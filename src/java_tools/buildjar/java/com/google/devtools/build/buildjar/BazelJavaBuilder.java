@@ -16,13 +16,17 @@ package com.google.devtools.build.buildjar;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
 import com.google.devtools.build.buildjar.javac.BlazeJavacResult;
+import com.google.devtools.build.buildjar.javac.FileManagerCache;
 import com.google.devtools.build.buildjar.javac.FormattedDiagnostic;
 import com.google.devtools.build.buildjar.javac.JavacOptions;
 import com.google.devtools.build.buildjar.javac.plugins.BlazeJavaCompilerPlugin;
 import com.google.devtools.build.buildjar.javac.plugins.dependency.DependencyModule;
 import com.google.devtools.build.buildjar.javac.plugins.errorprone.ErrorPronePlugin;
+import com.google.devtools.build.lib.worker.WorkerProtocol.Input;
 import com.google.devtools.build.lib.worker.WorkerProtocol.WorkRequest;
 import com.google.devtools.build.lib.worker.WorkerProtocol.WorkResponse;
 import java.io.IOException;
@@ -30,15 +34,24 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /** The JavaBuilder main called by bazel. */
 public abstract class BazelJavaBuilder {
 
   private static final String CMDNAME = "BazelJavaBuilder";
 
+  /** The maximum number of archives a persistent worker keeps open between requests. */
+  private static final int MAX_CACHED_ARCHIVES = 2000;
+
   /** The main method of the BazelJavaBuilder. */
   public static void main(String[] args) {
     if (args.length == 1 && args[0].equals("--persistent_worker")) {
@@ -54,17 +67,19 @@ public abstract class BazelJavaBuilder {
   }
 
   private static int runPersistentWorker() {
-    while (true) {
-      try {
+    try (FileManagerCache fileManagerCache = new FileManagerCache(MAX_CACHED_ARCHIVES)) {
+      while (true) {
         WorkRequest request = WorkRequest.parseDelimitedFrom(System.in);
 
         if (request == null) {
           break;
         }
 
+        long startTime = System.nanoTime();
+        fileManagerCache.startRequest(inputDigests(request));
         try (StringWriter sw = new StringWriter();
             PrintWriter pw = new PrintWriter(sw)) {
-          int exitCode = processRequest(request.getArgumentsList(), pw);
+          int exitCode = processRequest(request.getArgumentsList(), pw, fileManagerCache);
           WorkResponse.newBuilder()
               .setOutput(sw.toString())
               .setExitCode(exitCode)
@@ -72,21 +87,48 @@ public abstract class BazelJavaBuilder {
               .writeDelimitedTo(System.out);
           System.out.flush();
         }
-      } catch (IOException e) {
-        e.printStackTrace();
-        return 1;
+        // The worker's stderr ends up in its log file.
+        System.err.printf(
+            "%s: request took %d ms (%s)%n",
+            CMDNAME,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+            fileManagerCache);
       }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return 1;
     }
     return 0;
   }
 
+  private static ImmutableMap<Path, HashCode> inputDigests(WorkRequest request) {
+    ImmutableMap.Builder<Path, HashCode> digests = ImmutableMap.builder();
+    Set<Path> seen = new HashSet<>();
+    for (Input input : request.getInputsList()) {
+      Path path = Paths.get(input.getPath());
+      if (!input.getDigest().isEmpty() && seen.add(path)) {
+        digests.put(path, HashCode.fromBytes(input.getDigest().toByteArray()));
+      }
+    }
+    return digests.build();
+  }
+
   public static int processRequest(List<String> args, PrintWriter err) {
+    return processRequest(args, err, null);
+  }
+
+  /**
+   * Processes a single request, reusing the file managers of {@code fileManagerCache} if one is
+   * given.
+   */
+  public static int processRequest(
+      List<String> args, PrintWriter err, @Nullable FileManagerCache fileManagerCache) {
     try {
       JavaLibraryBuildRequest build = parse(args);
       try (SimpleJavaLibraryBuilder builder =
           build.getDependencyModule().reduceClasspath()
-              ? new ReducedClasspathJavaLibraryBuilder()
-              : new SimpleJavaLibraryBuilder()) {
+              ? new ReducedClasspathJavaLibraryBuilder(fileManagerCache)
+              : new SimpleJavaLibraryBuilder(fileManagerCache)) {
 
         // TODO(b/36228287): delete this once the migration to -XepDisableAllChecks is complete
         if (!Collections.disjoint(
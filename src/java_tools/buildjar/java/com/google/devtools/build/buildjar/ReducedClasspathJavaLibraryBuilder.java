@@ -16,9 +16,11 @@ package com.google.devtools.build.buildjar;
 
 import com.google.common.collect.ImmutableList;
 import com.google.devtools.build.buildjar.javac.BlazeJavacResult;
+import com.google.devtools.build.buildjar.javac.FileManagerCache;
 import com.google.devtools.build.buildjar.javac.FormattedDiagnostic;
 import com.google.devtools.build.buildjar.javac.JavacRunner;
 import java.io.IOException;
+import javax.annotation.Nullable;
 
 /**
  * A variant of SimpleJavaLibraryBuilder that attempts to reduce the compile-time classpath right
@@ -30,6 +32,14 @@ import java.io.IOException;
  */
 public class ReducedClasspathJavaLibraryBuilder extends SimpleJavaLibraryBuilder {
 
+  public ReducedClasspathJavaLibraryBuilder() {
+    this(null);
+  }
+
+  public ReducedClasspathJavaLibraryBuilder(@Nullable FileManagerCache fileManagerCache) {
+    super(fileManagerCache);
+  }
+
   /**
    * Attempts to minimize the compile-time classpath before invoking javac, falling back to a
    * regular compile.
@@ -19,6 +19,7 @@ import com.google.devtools.build.buildjar.jarhelper.JarCreator;
 import com.google.devtools.build.buildjar.javac.BlazeJavacArguments;
 import com.google.devtools.build.buildjar.javac.BlazeJavacMain;
 import com.google.devtools.build.buildjar.javac.BlazeJavacResult;
+import com.google.devtools.build.buildjar.javac.FileManagerCache;
 import com.google.devtools.build.buildjar.javac.JavacRunner;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
@@ -34,6 +35,7 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /** An implementation of the JavaBuilder that uses in-process javac to compile java files. */
 public class SimpleJavaLibraryBuilder implements Closeable {
@@ -44,6 +46,17 @@ public class SimpleJavaLibraryBuilder implements Closeable {
   /** Cache of opened zip filesystems for srcjars. */
   private final Map<Path, FileSystem> filesystems = new HashMap<>();
 
+  /** Cache of javac file managers shared across builds, or null. */
+  @Nullable private final FileManagerCache fileManagerCache;
+
+  public SimpleJavaLibraryBuilder() {
+    this(null);
+  }
+
+  public SimpleJavaLibraryBuilder(@Nullable FileManagerCache fileManagerCache) {
+    this.fileManagerCache = fileManagerCache;
+  }
+
   BlazeJavacResult compileSources(JavaLibraryBuildRequest build, JavacRunner javacRunner)
       throws IOException {
     return javacRunner.invokeJavac(build.toBlazeJavacArguments(build.getClassPath()));
@@ -103,7 +116,7 @@ public class SimpleJavaLibraryBuilder implements Closeable {
         new JavacRunner() {
           @Override
           public BlazeJavacResult invokeJavac(BlazeJavacArguments arguments) {
-            return BlazeJavacMain.compile(arguments);
+            return BlazeJavacMain.compile(arguments, fileManagerCache);
           }
         };
     BlazeJavacResult result = compileSources(build, javacRunner);
@@ -19,12 +19,14 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.devtools.build.buildjar.InvalidCommandLineException;
 import com.google.devtools.build.buildjar.javac.FormattedDiagnostic.Listener;
 import com.google.devtools.build.buildjar.javac.plugins.BlazeJavaCompilerPlugin;
 import com.sun.source.util.JavacTask;
 import com.sun.tools.javac.api.ClientCodeWrapper.Trusted;
 import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.file.CacheFSInfo;
 import com.sun.tools.javac.file.JavacFileManager;
 import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.util.Context;
@@ -40,6 +42,7 @@ import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import javax.annotation.Nullable;
 import javax.tools.StandardLocation;
 
 /**
@@ -66,6 +69,15 @@ public class BlazeJavacMain {
   }
 
   public static BlazeJavacResult compile(BlazeJavacArguments arguments) {
+    return compile(arguments, null);
+  }
+
+  /**
+   * Compiles the given arguments, reusing the opened archives of a file manager from {@code
+   * fileManagerCache} if one is given.
+   */
+  public static BlazeJavacResult compile(
+      BlazeJavacArguments arguments, @Nullable FileManagerCache fileManagerCache) {
 
     List<String> javacArguments = arguments.javacOptions();
     try {
@@ -85,30 +97,55 @@ public class BlazeJavacMain {
     Listener diagnostics = new Listener(context);
     BlazeJavaCompiler compiler;
 
-    try (JavacFileManager fileManager = new ClassloaderMaskingFileManager()) {
-      JavacTask task =
-          JavacTool.create()
-              .getTask(
-                  errWriter,
-                  fileManager,
-                  diagnostics,
-                  javacArguments,
-                  ImmutableList.of() /*classes*/,
-                  fileManager.getJavaFileObjectsFromPaths(arguments.sourceFiles()),
-                  context);
-      if (arguments.processors() != null) {
-        task.setProcessors(arguments.processors());
-      }
-      fileManager.setContext(context);
-      setLocations(fileManager, arguments);
+    if (fileManagerCache != null) {
+      // Caches file system lookups for the duration of this compilation.
+      CacheFSInfo.preRegister(context);
+    }
+    try {
+      JavacFileManager fileManager =
+          fileManagerCache != null
+              ? fileManagerCache.acquire(
+                  Iterables.concat(arguments.classPath(), arguments.bootClassPath()),
+                  ClassloaderMaskingFileManager::new)
+              : new ClassloaderMaskingFileManager();
       try {
-        ok = task.call();
-      } catch (PropagatedException e) {
-        throw e.getCause();
+        JavacTask task =
+            JavacTool.create()
+                .getTask(
+                    errWriter,
+                    fileManager,
+                    diagnostics,
+                    javacArguments,
+                    ImmutableList.of() /*classes*/,
+                    fileManager.getJavaFileObjectsFromPaths(arguments.sourceFiles()),
+                    context);
+        if (arguments.processors() != null) {
+          task.setProcessors(arguments.processors());
+        }
+        fileManager.setContext(context);
+        setLocations(fileManager, arguments);
+        try {
+          ok = task.call();
+        } catch (PropagatedException e) {
+          throw e.getCause();
+        }
+      } finally {
+        if (fileManagerCache != null) {
+          fileManagerCache.release(fileManager);
+        } else {
+          fileManager.close();
+        }
       }
     } catch (Throwable t) {
       t.printStackTrace(errWriter);
       ok = false;
+      if (fileManagerCache != null) {
+        try {
+          fileManagerCache.invalidate();
+        } catch (IOException e) {
+          e.printStackTrace(errWriter);
+        }
+      }
     } finally {
       compiler = (BlazeJavaCompiler) JavaCompiler.instance(context);
       if (ok) {
@@ -172,16 +209,16 @@ public class BlazeJavacMain {
           StandardLocation.CLASS_OUTPUT, ImmutableList.of(arguments.classOutput()));
       fileManager.setLocationFromPaths(StandardLocation.SOURCE_PATH, arguments.sourcePath());
       // TODO(cushon): require an explicit bootclasspath
+      // Locations are reset to their defaults explicitly, since the file manager may have been
+      // used for a previous compilation.
       Collection<Path> bootClassPath = arguments.bootClassPath();
-      if (!bootClassPath.isEmpty()) {
-        fileManager.setLocationFromPaths(StandardLocation.PLATFORM_CLASS_PATH, bootClassPath);
-      }
+      fileManager.setLocationFromPaths(
+          StandardLocation.PLATFORM_CLASS_PATH, !bootClassPath.isEmpty() ? bootClassPath : null);
       fileManager.setLocationFromPaths(
           StandardLocation.ANNOTATION_PROCESSOR_PATH, arguments.processorPath());
-      if (arguments.sourceOutput() != null) {
-        fileManager.setLocationFromPaths(
-            StandardLocation.SOURCE_OUTPUT, ImmutableList.of(arguments.sourceOutput()));
-      }
+      fileManager.setLocationFromPaths(
+          StandardLocation.SOURCE_OUTPUT,
+          arguments.sourceOutput() != null ? ImmutableList.of(arguments.sourceOutput()) : null);
     } catch (IOException e) {
       throw new IOError(e);
     }
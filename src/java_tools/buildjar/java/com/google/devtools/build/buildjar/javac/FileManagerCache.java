@@ -0,0 +1,201 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.buildjar.javac;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.sun.tools.javac.file.JavacFileManager;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a javac file manager open across the compilations of a persistent worker, so that the
+ * archives on the class path and boot class path are opened and indexed once instead of once per
+ * compilation.
+ *
+ * <p>An archive is only reused while its digest, as reported by the inputs of the work request,
+ * stays the same. When an archive changes, the file manager is closed and a new one is started.
+ * When more than {@code maxArchives} archives are open, the least recently used ones that the
+ * current compilation does not read are closed.
+ *
+ * <p>Not thread-safe; the worker processes one request at a time.
+ */
+public final class FileManagerCache implements Closeable {
+
+  private final int maxArchives;
+
+  /** The digests of the archives opened by {@link #fileManager}, in least recently used order. */
+  private final Map<Path, HashCode> archives = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** The digests of the inputs of the current request. */
+  private ImmutableMap<Path, HashCode> inputDigests = ImmutableMap.of();
+
+  private JavacFileManager fileManager;
+
+  private int hits;
+  private int misses;
+  private int uncached;
+  private int evicted;
+
+  public FileManagerCache(int maxArchives) {
+    this.maxArchives = maxArchives;
+  }
+
+  /**
+   * Starts a new request with the given input digests, discarding the cached file manager if any
+   * of its archives changed since it was opened.
+   */
+  public void startRequest(Map<Path, HashCode> inputDigests) throws IOException {
+    this.inputDigests = ImmutableMap.copyOf(inputDigests);
+    for (Map.Entry<Path, HashCode> archive : archives.entrySet()) {
+      HashCode digest = inputDigests.get(archive.getKey());
+      if (digest != null && !digest.equals(archive.getValue())) {
+        invalidate();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns a file manager for a compilation that reads the given class path and boot class path
+   * entries. The result must be handed back to {@link #release} when the compilation is done.
+   */
+  public JavacFileManager acquire(Iterable<Path> paths, Supplier<JavacFileManager> factory)
+      throws IOException {
+    for (Path path : paths) {
+      if (!inputDigests.containsKey(path)) {
+        // Entries that are not inputs of the request, or have no digest, cannot be checked for
+        // changes between requests.
+        uncached++;
+        return factory.get();
+      }
+    }
+    boolean changed = false;
+    for (Path path : paths) {
+      HashCode digest = inputDigests.get(path);
+      HashCode previous = archives.put(path, digest);
+      changed |= previous != null && !previous.equals(digest);
+    }
+    if (changed || !evict(ImmutableSet.copyOf(paths))) {
+      invalidate();
+      for (Path path : paths) {
+        archives.put(path, inputDigests.get(path));
+      }
+    }
+    if (fileManager == null) {
+      misses++;
+      fileManager = factory.get();
+    } else {
+      hits++;
+    }
+    return fileManager;
+  }
+
+  /**
+   * Closes least recently used archives of the cached file manager until at most {@code
+   * maxArchives} are open, keeping the ones in {@code inUse}. Returns false if an archive could
+   * not be closed, in which case the file manager must not be reused.
+   */
+  private boolean evict(Set<Path> inUse) throws IOException {
+    Iterator<Path> it = archives.keySet().iterator();
+    while (archives.size() > maxArchives && it.hasNext()) {
+      Path path = it.next();
+      if (inUse.contains(path)) {
+        // The paths of the current compilation are the most recently used ones.
+        return true;
+      }
+      it.remove();
+      if (fileManager != null) {
+        if (!closeArchive(fileManager, path)) {
+          return false;
+        }
+        evicted++;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Closes the archive at {@code path} in the given file manager, which opens it again the next
+   * time it is on a location. Returns false if the archive could not be closed.
+   */
+  private static boolean closeArchive(JavacFileManager fileManager, Path path)
+      throws IOException {
+    try {
+      // javac has no API to close a single archive. The location caches that also refer to the
+      // archive are cleared when the locations are set for the next compilation.
+      Field field = JavacFileManager.class.getDeclaredField("containers");
+      field.setAccessible(true);
+      Object container = ((Map<?, ?>) field.get(fileManager)).remove(path);
+      if (container == null) {
+        return true;
+      }
+      Method close = container.getClass().getMethod("close");
+      close.setAccessible(true);
+      close.invoke(container);
+      return true;
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return false;
+    }
+  }
+
+  /** Hands back a file manager returned by {@link #acquire}. */
+  public void release(JavacFileManager fileManager) throws IOException {
+    if (fileManager == this.fileManager) {
+      // Drops the per-compilation state, e.g. the contents of the sources and the package
+      // listings of the locations, but keeps the opened archives.
+      fileManager.flush();
+    } else {
+      fileManager.close();
+    }
+  }
+
+  /** Closes the cached file manager, e.g. after a compilation failed unexpectedly. */
+  public void invalidate() throws IOException {
+    archives.clear();
+    if (fileManager != null) {
+      JavacFileManager toClose = fileManager;
+      fileManager = null;
+      toClose.close();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    invalidate();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d archives cached, %d hits, %d misses, %d uncached compilations, %d archives evicted",
+        archives.size(), hits, misses, uncached, evicted);
+  }
+}
@@ -14,14 +14,34 @@
 
 package com.google.devtools.build.java.turbine;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.devtools.build.buildjar.javac.FileManagerCache;
 import com.google.devtools.build.java.turbine.javac.JavacTurbine;
 import com.google.devtools.build.java.turbine.javac.JavacTurbine.Result;
+import com.google.devtools.build.lib.worker.WorkerProtocol.Input;
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkRequest;
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkResponse;
 import com.google.turbine.diag.TurbineError;
 import com.google.turbine.main.Main;
 import com.google.turbine.options.TurbineOptions;
 import com.google.turbine.options.TurbineOptionsParser;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * A turbine entry point that falls back to javac-turbine for failures, and for compilations that
@@ -29,8 +49,15 @@ import java.io.IOException;
  */
 public class Turbine {
 
+  /** The maximum number of archives a persistent worker keeps open between requests. */
+  private static final int MAX_CACHED_ARCHIVES = 2000;
+
   public static void main(String[] args) throws Exception {
-    System.exit(new Turbine("An exception has occurred in turbine.", "").compile(args));
+    Turbine turbine = new Turbine("An exception has occurred in turbine.", "");
+    if (args.length == 1 && args[0].equals("--persistent_worker")) {
+      System.exit(turbine.runPersistentWorker());
+    }
+    System.exit(turbine.compile(args));
   }
 
   private final String bugMessage;
@@ -42,11 +69,88 @@ public class Turbine {
     this.unhelpfulMessage = unhelpfulMessage;
   }
 
+  /**
+   * Runs turbine as a persistent worker, which handles work requests from stdin until it is
+   * closed. The javac-turbine fallback reuses the class path archives it opened across requests.
+   */
+  public int runPersistentWorker() {
+    return runPersistentWorker(System.in, System.out);
+  }
+
+  /** Handles work requests from {@code in}, writing the responses to {@code out}. */
+  @VisibleForTesting
+  int runPersistentWorker(InputStream in, OutputStream out) {
+    try (FileManagerCache fileManagerCache = new FileManagerCache(MAX_CACHED_ARCHIVES)) {
+      while (true) {
+        WorkRequest request = WorkRequest.parseDelimitedFrom(in);
+        if (request == null) {
+          break;
+        }
+        long startTime = System.nanoTime();
+        fileManagerCache.startRequest(inputDigests(request));
+        StringWriter sw = new StringWriter();
+        int exitCode;
+        try (PrintWriter pw = new PrintWriter(sw)) {
+          try {
+            exitCode =
+                compile(
+                    TurbineOptionsParser.parse(request.getArgumentsList()), pw, fileManagerCache);
+          } catch (IOException | RuntimeException e) {
+            // A malformed request, e.g. one missing a required option, fails only this request.
+            e.printStackTrace(pw);
+            exitCode = 1;
+          }
+        }
+        WorkResponse.newBuilder()
+            .setOutput(sw.toString())
+            .setExitCode(exitCode)
+            .build()
+            .writeDelimitedTo(out);
+        out.flush();
+        // The worker's stderr ends up in its log file.
+        System.err.printf(
+            "Turbine: request took %d ms (%s)%n",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+            fileManagerCache);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return 1;
+    }
+    return 0;
+  }
+
+  private static ImmutableMap<Path, HashCode> inputDigests(WorkRequest request) {
+    Map<Path, HashCode> digests = new HashMap<>();
+    for (Input input : request.getInputsList()) {
+      if (!input.getDigest().isEmpty()) {
+        digests.put(
+            Paths.get(input.getPath()), HashCode.fromBytes(input.getDigest().toByteArray()));
+      }
+    }
+    return ImmutableMap.copyOf(digests);
+  }
+
   public int compile(String[] args) throws IOException {
     return compile(TurbineOptionsParser.parse(ImmutableList.copyOf(args)));
   }
 
   public int compile(TurbineOptions options) throws IOException {
+    PrintWriter err = new PrintWriter(new OutputStreamWriter(System.err, UTF_8), true);
+    try {
+      return compile(options, err, null);
+    } finally {
+      err.flush();
+    }
+  }
+
+  /**
+   * Compiles {@code options}, printing diagnostics to {@code err}, and returns the exit code. The
+   * javac-turbine fallback reuses the file managers of {@code fileManagerCache} if one is given.
+   */
+  public int compile(
+      TurbineOptions options, PrintWriter err, @Nullable FileManagerCache fileManagerCache)
+      throws IOException {
     Throwable turbineCrash = null;
     try {
       if (Main.compile(options)) {
@@ -56,9 +160,8 @@ public class Turbine {
     } catch (TurbineError e) {
       switch (e.kind()) {
         case TYPE_PARAMETER_QUALIFIER:
-          System.err.println(e.getMessage());
-          System.exit(1);
-          break;
+          err.println(e.getMessage());
+          return 1;
         default:
           turbineCrash = e;
           break;
@@ -68,19 +171,19 @@ public class Turbine {
     }
     if (!options.javacFallback()) {
       if (turbineCrash instanceof TurbineError) {
-        System.err.println();
-        System.err.println(turbineCrash.getMessage());
-        System.err.println(unhelpfulMessage);
+        err.println();
+        err.println(turbineCrash.getMessage());
+        err.println(unhelpfulMessage);
       } else if (turbineCrash != null) {
-        System.err.println(bugMessage);
-        turbineCrash.printStackTrace();
+        err.println(bugMessage);
+        turbineCrash.printStackTrace(err);
       }
-      System.exit(1);
+      return 1;
     }
-    Result result = JavacTurbine.compile(options);
+    Result result = JavacTurbine.compile(options, err, fileManagerCache);
     if (result == Result.OK_WITH_REDUCED_CLASSPATH && turbineCrash != null) {
-      System.err.println(bugMessage);
-      turbineCrash.printStackTrace();
+      err.println(bugMessage);
+      turbineCrash.printStackTrace(err);
       result = Result.ERROR;
     }
     return result.exitCode();
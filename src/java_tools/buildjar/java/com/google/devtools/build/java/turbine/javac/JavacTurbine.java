@@ -23,6 +23,7 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.devtools.build.buildjar.JarOwner;
+import com.google.devtools.build.buildjar.javac.FileManagerCache;
 import com.google.devtools.build.buildjar.javac.JavacOptions;
 import com.google.devtools.build.buildjar.javac.plugins.dependency.DependencyModule;
 import com.google.devtools.build.buildjar.javac.plugins.dependency.DependencyModule.StrictJavaDeps;
@@ -50,6 +51,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.zip.ZipOutputStream;
+import javax.annotation.Nullable;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
@@ -72,10 +74,22 @@ public class JavacTurbine implements AutoCloseable {
   }
 
   public static Result compile(TurbineOptions turbineOptions) throws IOException {
-    try (JavacTurbine turbine =
-        new JavacTurbine(
-            new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.err, UTF_8))),
-            turbineOptions)) {
+    return compile(
+        turbineOptions,
+        new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.err, UTF_8))),
+        null);
+  }
+
+  /**
+   * Compiles {@code turbineOptions}, printing diagnostics to {@code out} and reusing the opened
+   * archives of a file manager from {@code fileManagerCache} if one is given.
+   */
+  public static Result compile(
+      TurbineOptions turbineOptions,
+      PrintWriter out,
+      @Nullable FileManagerCache fileManagerCache)
+      throws IOException {
+    try (JavacTurbine turbine = new JavacTurbine(out, turbineOptions, fileManagerCache)) {
       return turbine.compile();
     }
   }
@@ -116,9 +130,19 @@ public class JavacTurbine implements AutoCloseable {
   /** Cache of opened zip filesystems for srcjars. */
   private final Map<Path, FileSystem> filesystems = new HashMap<>();
 
+  @Nullable private final FileManagerCache fileManagerCache;
+
   public JavacTurbine(PrintWriter out, TurbineOptions turbineOptions) {
+    this(out, turbineOptions, null);
+  }
+
+  public JavacTurbine(
+      PrintWriter out,
+      TurbineOptions turbineOptions,
+      @Nullable FileManagerCache fileManagerCache) {
     this.out = out;
     this.turbineOptions = turbineOptions;
+    this.fileManagerCache = fileManagerCache;
   }
 
   Result compile() throws IOException {
@@ -191,7 +215,7 @@ public class JavacTurbine implements AutoCloseable {
       // compile with reduced classpath
       actualClasspath = compressedClasspath;
       requestBuilder.setClassPath(asPaths(actualClasspath));
-      compileResult = JavacTurbineCompiler.compile(requestBuilder.build());
+      compileResult = JavacTurbineCompiler.compile(requestBuilder.build(), fileManagerCache);
       if (compileResult.success()) {
         result = Result.OK_WITH_REDUCED_CLASSPATH;
         context = compileResult.context();
@@ -203,7 +227,7 @@ public class JavacTurbine implements AutoCloseable {
       // fall back to transitive classpath
       actualClasspath = originalClasspath;
       requestBuilder.setClassPath(asPaths(actualClasspath));
-      compileResult = JavacTurbineCompiler.compile(requestBuilder.build());
+      compileResult = JavacTurbineCompiler.compile(requestBuilder.build(), fileManagerCache);
       if (compileResult.success()) {
         result = Result.OK_WITH_FULL_CLASSPATH;
         context = compileResult.context();
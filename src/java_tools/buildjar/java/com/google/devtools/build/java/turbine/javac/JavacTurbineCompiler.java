@@ -18,8 +18,10 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
+import com.google.devtools.build.buildjar.javac.FileManagerCache;
 import com.google.devtools.build.buildjar.javac.plugins.dependency.StrictJavaDepsPlugin;
 import com.google.devtools.build.java.turbine.javac.JavacTurbineCompileResult.Status;
 import com.sun.source.util.JavacTask;
@@ -46,6 +48,16 @@ import javax.tools.StandardLocation;
 public class JavacTurbineCompiler {
 
   static JavacTurbineCompileResult compile(JavacTurbineCompileRequest request) throws IOException {
+    return compile(request, null);
+  }
+
+  /**
+   * Performs the compilation, reusing the opened archives of a file manager from {@code
+   * fileManagerCache} if one is given.
+   */
+  static JavacTurbineCompileResult compile(
+      JavacTurbineCompileRequest request, @Nullable FileManagerCache fileManagerCache)
+      throws IOException {
 
     Map<String, byte[]> files = new LinkedHashMap<>();
     Status status;
@@ -55,56 +67,75 @@ public class JavacTurbineCompiler {
     try (PrintWriter pw = new PrintWriter(sw)) {
       setupContext(context, request.strictJavaDepsPlugin());
       CacheFSInfo.preRegister(context);
-      try (FileSystem fs = Jimfs.newFileSystem(Configuration.forCurrentPlatform());
-          JavacFileManager fm = new JavacFileManager(new Context(), false, UTF_8)) {
-        JavacTask task =
-            JavacTool.create()
-                .getTask(
-                    pw,
-                    fm,
-                    null /*diagnostics*/,
-                    request.javacOptions(),
-                    ImmutableList.of() /*classes*/,
-                    fm.getJavaFileObjectsFromPaths(request.sources()),
-                    context);
-
-        Path classes = fs.getPath("classes");
-        Files.createDirectories(classes);
-        Path sources = fs.getPath("sources");
-        Files.createDirectories(sources);
+      try (FileSystem fs = Jimfs.newFileSystem(Configuration.forCurrentPlatform())) {
+        JavacFileManager fm =
+            fileManagerCache != null
+                ? fileManagerCache.acquire(
+                    Iterables.concat(request.classPath(), request.bootClassPath()),
+                    JavacTurbineCompiler::newFileManager)
+                : newFileManager();
+        try {
+          JavacTask task =
+              JavacTool.create()
+                  .getTask(
+                      pw,
+                      fm,
+                      null /*diagnostics*/,
+                      request.javacOptions(),
+                      ImmutableList.of() /*classes*/,
+                      fm.getJavaFileObjectsFromPaths(request.sources()),
+                      context);
 
-        fm.setContext(context);
-        fm.setLocationFromPaths(StandardLocation.SOURCE_PATH, Collections.<Path>emptyList());
-        fm.setLocationFromPaths(StandardLocation.CLASS_PATH, request.classPath());
-        fm.setLocationFromPaths(StandardLocation.PLATFORM_CLASS_PATH, request.bootClassPath());
-        fm.setLocationFromPaths(
-            StandardLocation.ANNOTATION_PROCESSOR_PATH, request.processorClassPath());
-        fm.setLocationFromPaths(StandardLocation.CLASS_OUTPUT, ImmutableList.of(classes));
-        fm.setLocationFromPaths(StandardLocation.SOURCE_OUTPUT, ImmutableList.of(sources));
+          Path classes = fs.getPath("classes");
+          Files.createDirectories(classes);
+          Path sources = fs.getPath("sources");
+          Files.createDirectories(sources);
 
-        status = task.call() ? Status.OK : Status.ERROR;
+          fm.setContext(context);
+          fm.setLocationFromPaths(StandardLocation.SOURCE_PATH, Collections.<Path>emptyList());
+          fm.setLocationFromPaths(StandardLocation.CLASS_PATH, request.classPath());
+          fm.setLocationFromPaths(StandardLocation.PLATFORM_CLASS_PATH, request.bootClassPath());
+          fm.setLocationFromPaths(
+              StandardLocation.ANNOTATION_PROCESSOR_PATH, request.processorClassPath());
+          fm.setLocationFromPaths(StandardLocation.CLASS_OUTPUT, ImmutableList.of(classes));
+          fm.setLocationFromPaths(StandardLocation.SOURCE_OUTPUT, ImmutableList.of(sources));
 
-        // collect class output
-        Files.walkFileTree(
-            classes,
-            new SimpleFileVisitor<Path>() {
-              @Override
-              public FileVisitResult visitFile(Path path, BasicFileAttributes attrs)
-                  throws IOException {
-                files.put(classes.relativize(path).toString(), Files.readAllBytes(path));
-                return FileVisitResult.CONTINUE;
-              }
-            });
+          status = task.call() ? Status.OK : Status.ERROR;
 
+          // collect class output
+          Files.walkFileTree(
+              classes,
+              new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attrs)
+                    throws IOException {
+                  files.put(classes.relativize(path).toString(), Files.readAllBytes(path));
+                  return FileVisitResult.CONTINUE;
+                }
+              });
+        } finally {
+          if (fileManagerCache != null) {
+            fileManagerCache.release(fm);
+          } else {
+            fm.close();
+          }
+        }
       } catch (Throwable t) {
         t.printStackTrace(pw);
         status = Status.ERROR;
+        if (fileManagerCache != null) {
+          fileManagerCache.invalidate();
+        }
       }
     }
 
     return new JavacTurbineCompileResult(ImmutableMap.copyOf(files), status, sw, context);
   }
 
+  private static JavacFileManager newFileManager() {
+    return new JavacFileManager(new Context(), false, UTF_8);
+  }
+
   static void setupContext(Context context, @Nullable StrictJavaDepsPlugin sjd) {
     JavacTurbineJavaCompiler.preRegister(context, sjd);
   }
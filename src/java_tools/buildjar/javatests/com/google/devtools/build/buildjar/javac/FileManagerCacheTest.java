@@ -0,0 +1,234 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.buildjar.javac;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link FileManagerCache}. */
+@RunWith(JUnit4.class)
+public class FileManagerCacheTest {
+
+  @Rule public final TemporaryFolder temp = new TemporaryFolder();
+
+  /** A file manager that remembers whether it was closed. */
+  private static class TestFileManager extends JavacFileManager {
+    boolean closed;
+
+    TestFileManager() {
+      super(new Context(), false, UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+      super.close();
+    }
+  }
+
+  private final List<TestFileManager> created = new ArrayList<>();
+
+  private TestFileManager newFileManager() {
+    TestFileManager fileManager = new TestFileManager();
+    created.add(fileManager);
+    return fileManager;
+  }
+
+  private JavacFileManager acquire(FileManagerCache cache, Path... paths) throws IOException {
+    return cache.acquire(ImmutableList.copyOf(paths), this::newFileManager);
+  }
+
+  private Path createJar(String name, String... classNames) throws IOException {
+    Path jar = temp.getRoot().toPath().resolve(name);
+    try (OutputStream os = Files.newOutputStream(jar);
+        JarOutputStream jos = new JarOutputStream(os)) {
+      for (String className : classNames) {
+        jos.putNextEntry(new ZipEntry(className + ".class"));
+        jos.write(new byte[] {(byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe});
+        jos.closeEntry();
+      }
+    }
+    return jar;
+  }
+
+  /** Returns the classes on the class path of the given file manager. */
+  private static List<String> listClasses(JavacFileManager fileManager, Path... classPath)
+      throws IOException {
+    fileManager.setLocationFromPaths(StandardLocation.CLASS_PATH, ImmutableList.copyOf(classPath));
+    List<String> classes = new ArrayList<>();
+    for (JavaFileObject file :
+        fileManager.list(
+            StandardLocation.CLASS_PATH, "", EnumSet.of(JavaFileObject.Kind.CLASS), false)) {
+      classes.add(fileManager.inferBinaryName(StandardLocation.CLASS_PATH, file));
+    }
+    return classes;
+  }
+
+  private static HashCode digest(int value) {
+    return HashCode.fromInt(value);
+  }
+
+  @Test
+  public void reusesFileManagerForUnchangedArchives() throws Exception {
+    Path a = temp.getRoot().toPath().resolve("a.jar");
+    Path b = temp.getRoot().toPath().resolve("b.jar");
+    try (FileManagerCache cache = new FileManagerCache(10)) {
+      cache.startRequest(ImmutableMap.of(a, digest(1), b, digest(2)));
+      JavacFileManager first = acquire(cache, a, b);
+      cache.release(first);
+
+      cache.startRequest(ImmutableMap.of(a, digest(1), b, digest(2)));
+      JavacFileManager second = acquire(cache, a);
+      cache.release(second);
+
+      assertThat(second).isSameAs(first);
+      assertThat(created).hasSize(1);
+      assertThat(created.get(0).closed).isFalse();
+    }
+  }
+
+  @Test
+  public void startRequestInvalidatesChangedArchives() throws Exception {
+    Path a = temp.getRoot().toPath().resolve("a.jar");
+    try (FileManagerCache cache = new FileManagerCache(10)) {
+      cache.startRequest(ImmutableMap.of(a, digest(1)));
+      JavacFileManager first = acquire(cache, a);
+      cache.release(first);
+
+      cache.startRequest(ImmutableMap.of(a, digest(2)));
+      assertThat(created.get(0).closed).isTrue();
+
+      JavacFileManager second = acquire(cache, a);
+      cache.release(second);
+      assertThat(second).isNotSameAs(first);
+    }
+  }
+
+  @Test
+  public void startRequestIgnoresChangesToOtherInputs() throws Exception {
+    Path a = temp.getRoot().toPath().resolve("a.jar");
+    Path other = temp.getRoot().toPath().resolve("other.jar");
+    try (FileManagerCache cache = new FileManagerCache(10)) {
+      cache.startRequest(ImmutableMap.of(a, digest(1), other, digest(1)));
+      JavacFileManager first = acquire(cache, a);
+      cache.release(first);
+
+      cache.startRequest(ImmutableMap.of(a, digest(1), other, digest(2)));
+      JavacFileManager second = acquire(cache, a);
+      cache.release(second);
+
+      assertThat(second).isSameAs(first);
+      assertThat(created.get(0).closed).isFalse();
+    }
+  }
+
+  @Test
+  public void acquireWithoutDigestsIsNotCached() throws Exception {
+    Path a = temp.getRoot().toPath().resolve("a.jar");
+    Path b = temp.getRoot().toPath().resolve("b.jar");
+    try (FileManagerCache cache = new FileManagerCache(10)) {
+      cache.startRequest(ImmutableMap.of(a, digest(1)));
+      JavacFileManager cached = acquire(cache, a);
+      cache.release(cached);
+
+      JavacFileManager uncached = acquire(cache, a, b);
+      assertThat(uncached).isNotSameAs(cached);
+      cache.release(uncached);
+
+      assertThat(created.get(1).closed).isTrue();
+      assertThat(created.get(0).closed).isFalse();
+      assertThat(acquire(cache, a)).isSameAs(cached);
+    }
+  }
+
+  @Test
+  public void invalidateClosesFileManager() throws Exception {
+    Path a = temp.getRoot().toPath().resolve("a.jar");
+    try (FileManagerCache cache = new FileManagerCache(10)) {
+      cache.startRequest(ImmutableMap.of(a, digest(1)));
+      JavacFileManager first = acquire(cache, a);
+      cache.invalidate();
+
+      assertThat(created.get(0).closed).isTrue();
+      assertThat(acquire(cache, a)).isNotSameAs(first);
+    }
+  }
+
+  @Test
+  public void compilationWithMoreArchivesThanTheLimitKeepsFileManager() throws Exception {
+    Path a = temp.getRoot().toPath().resolve("a.jar");
+    Path b = temp.getRoot().toPath().resolve("b.jar");
+    Path c = temp.getRoot().toPath().resolve("c.jar");
+    try (FileManagerCache cache = new FileManagerCache(2)) {
+      for (int i = 0; i < 3; i++) {
+        cache.startRequest(ImmutableMap.of(a, digest(1), b, digest(2), c, digest(3)));
+        cache.release(acquire(cache, a, b, c));
+      }
+
+      assertThat(created).hasSize(1);
+      assertThat(created.get(0).closed).isFalse();
+    }
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedArchives() throws Exception {
+    Path a = createJar("a.jar", "A");
+    Path b = createJar("b.jar", "B");
+    try (FileManagerCache cache = new FileManagerCache(1)) {
+      cache.startRequest(ImmutableMap.of(a, digest(1), b, digest(2)));
+      JavacFileManager fileManager = acquire(cache, a);
+      assertThat(listClasses(fileManager, a)).containsExactly("A");
+      cache.release(fileManager);
+
+      // a.jar is closed to make room for b.jar, without discarding the file manager.
+      assertThat(acquire(cache, b)).isSameAs(fileManager);
+      assertThat(listClasses(fileManager, b)).containsExactly("B");
+      cache.release(fileManager);
+
+      // An evicted archive is no longer checked for changes, since it is read again when it is
+      // next used.
+      a = createJar("a.jar", "A2");
+      cache.startRequest(ImmutableMap.of(a, digest(3), b, digest(2)));
+      assertThat(acquire(cache, a)).isSameAs(fileManager);
+      assertThat(listClasses(fileManager, a)).containsExactly("A2");
+      cache.release(fileManager);
+
+      assertThat(created).hasSize(1);
+      assertThat(cache.toString()).contains("2 archives evicted");
+    }
+  }
+}
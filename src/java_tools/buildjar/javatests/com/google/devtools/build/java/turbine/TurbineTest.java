@@ -0,0 +1,72 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.java.turbine;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkRequest;
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the persistent worker mode of {@link Turbine}. */
+@RunWith(JUnit4.class)
+public class TurbineTest {
+
+  private final Turbine turbine = new Turbine("bug", "unhelpful");
+
+  private List<WorkResponse> runWorker(WorkRequest... requests) throws Exception {
+    ByteArrayOutputStream requestBytes = new ByteArrayOutputStream();
+    for (WorkRequest request : requests) {
+      request.writeDelimitedTo(requestBytes);
+    }
+    ByteArrayOutputStream responseBytes = new ByteArrayOutputStream();
+    assertThat(
+            turbine.runPersistentWorker(
+                new ByteArrayInputStream(requestBytes.toByteArray()), responseBytes))
+        .isEqualTo(0);
+    List<WorkResponse> responses = new ArrayList<>();
+    InputStream in = new ByteArrayInputStream(responseBytes.toByteArray());
+    WorkResponse response;
+    while ((response = WorkResponse.parseDelimitedFrom(in)) != null) {
+      responses.add(response);
+    }
+    return responses;
+  }
+
+  @Test
+  public void malformedRequestDoesNotStopWorker() throws Exception {
+    // Neither request has the required --output option.
+    WorkRequest request = WorkRequest.newBuilder().addArguments("--sources").build();
+    List<WorkResponse> responses = runWorker(request, request);
+
+    assertThat(responses).hasSize(2);
+    for (WorkResponse response : responses) {
+      assertThat(response.getExitCode()).isEqualTo(1);
+      assertThat(response.getOutput()).contains("output must not be null");
+    }
+  }
+
+  @Test
+  public void emptyInputStopsWorker() throws Exception {
+    assertThat(runWorker()).isEmpty();
+  }
+}
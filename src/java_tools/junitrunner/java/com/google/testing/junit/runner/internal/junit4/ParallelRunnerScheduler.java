@@ -0,0 +1,101 @@
+// Copyright 2017 The Bazel Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner.internal.junit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.runners.model.RunnerScheduler;
+
+/**
+ * Runs the children of a {@link org.junit.runners.ParentRunner} concurrently on a bounded number
+ * of threads.
+ *
+ * <p>{@link #finished()} waits for all children to complete, and rethrows the first exception
+ * that escaped a child, such as the {@link org.junit.runner.notification.StoppedByUserException}
+ * thrown when the run is cancelled. Test failures are reported through the notifier as usual.
+ */
+public class ParallelRunnerScheduler implements RunnerScheduler {
+  private final ExecutorService executor;
+  private final List<Future<?>> children = new ArrayList<>();
+
+  public ParallelRunnerScheduler(int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("parallelism must be positive, was " + parallelism);
+    }
+    executor = Executors.newFixedThreadPool(parallelism, new TestThreadFactory());
+  }
+
+  @Override
+  public void schedule(Runnable childStatement) {
+    children.add(executor.submit(childStatement));
+  }
+
+  @Override
+  public void finished() {
+    try {
+      Throwable firstFailure = null;
+      boolean interrupted = false;
+      for (Future<?> child : children) {
+        try {
+          child.get();
+        } catch (ExecutionException e) {
+          if (firstFailure == null) {
+            firstFailure = e.getCause();
+          }
+        } catch (InterruptedException e) {
+          interrupted = true;
+          executor.shutdownNow();
+          break;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while waiting for tests to finish");
+      }
+      if (firstFailure instanceof RuntimeException) {
+        throw (RuntimeException) firstFailure;
+      }
+      if (firstFailure instanceof Error) {
+        throw (Error) firstFailure;
+      }
+      if (firstFailure != null) {
+        throw new RuntimeException(firstFailure);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Creates daemon threads, so that tests that never finish don't keep the runner from exiting
+   * once the main thread is done.
+   */
+  private static class TestThreadFactory implements ThreadFactory {
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "test-runner-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -30,11 +30,15 @@ class JUnit4Config {
   static final String SHOULD_INSTALL_SECURITY_MANAGER_PROPERTY
       = "com.google.testing.junit.runner.shouldInstallTestSecurityManager";
 
+  // VisibleForTesting
+  static final String PARALLELISM_PROPERTY = "com.google.testing.junit.runner.parallelism";
+
   private final String testIncludeFilterRegexp;
   private final String testExcludeFilterRegexp;
   @Nullable private final Path xmlOutputPath;
   private final String junitApiVersion;
   private final boolean shouldInstallSecurityManager;
+  private final String parallelism;
 
   private static final String XML_OUTPUT_FILE_ENV_VAR = "XML_OUTPUT_FILE";
 
@@ -64,6 +68,7 @@ class JUnit4Config {
     this.xmlOutputPath = xmlOutputPath;
     junitApiVersion = systemProperties.getProperty(JUNIT_API_VERSION_PROPERTY, "1").trim();
     shouldInstallSecurityManager = installSecurityManager(systemProperties);
+    parallelism = systemProperties.getProperty(PARALLELISM_PROPERTY, "1").trim();
   }
 
   private static boolean installSecurityManager(Properties systemProperties) {
@@ -118,6 +123,29 @@ class JUnit4Config {
     return apiVersion;
   }
 
+  /**
+   * Gets the number of test classes of the top-level suite to run concurrently. Test classes run
+   * one after another unless this is greater than one.
+   *
+   * @return parallelism
+   * @throws IllegalStateException if the parallelism isn't a positive integer.
+   */
+  public int getParallelism() {
+    int result = 0;
+    try {
+      result = Integer.parseInt(parallelism);
+    } catch (NumberFormatException e) {
+      // ignore; handled below
+    }
+
+    if (result <= 0) {
+      throw new IllegalStateException(
+          "Invalid test parallelism " + PARALLELISM_PROPERTY + "=" + parallelism
+          + " (must be a positive integer)");
+    }
+    return result;
+  }
+
   /**
    * Returns a regular expression representing an inclusive filter.
    * Only test descriptions that match this regular expression should be run.
@@ -18,6 +18,7 @@ import com.google.testing.junit.junit4.runner.RegExTestCaseFilter;
 import com.google.testing.junit.junit4.runner.SuiteTrimmingFilter;
 import com.google.testing.junit.runner.internal.Stdout;
 import com.google.testing.junit.runner.internal.junit4.CancellableRequestFactory;
+import com.google.testing.junit.runner.internal.junit4.ParallelRunnerScheduler;
 import com.google.testing.junit.runner.model.TestSuiteModel;
 import com.google.testing.junit.runner.util.GoogleTestSecurityManager;
 import com.google.testing.junit.runner.util.Supplier;
@@ -38,6 +39,7 @@ import org.junit.runner.manipulation.Filter;
 import org.junit.runner.manipulation.NoTestsRemainException;
 import org.junit.runner.notification.RunListener;
 import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.Suite;
 
 /**
  * Main entry point for running JUnit4 tests.<p>
@@ -96,6 +98,11 @@ public class JUnit4Runner {
         config.getTestIncludeFilterRegexp(),
         config.getTestExcludeFilterRegexp());
 
+    int parallelism = config.getParallelism();
+    if (parallelism > 1) {
+      filteredRequest = runTestClassesInParallel(filteredRequest, parallelism);
+    }
+
     JUnitCore core = new JUnitCore();
     for (RunListener runListener : runListeners) {
       core.addListener(runListener);
@@ -235,6 +242,22 @@ public class JUnit4Runner {
     return request;
   }
 
+  /**
+   * Runs the children of the top-level suite, usually test classes, concurrently. The tests of each
+   * class still run one after another, on the same thread. The XML output doesn't depend on the
+   * order tests finish in, since it follows the structure of the {@link TestSuiteModel}.
+   *
+   * <p>Requests for anything but a {@link Suite}, e.g. a single test class, are returned unchanged.
+   */
+  private static Request runTestClassesInParallel(Request request, int parallelism) {
+    Runner runner = request.getRunner();
+    if (!(runner instanceof Suite)) {
+      return request;
+    }
+    ((Suite) runner).setScheduler(new ParallelRunnerScheduler(parallelism));
+    return Request.runner(runner);
+  }
+
   @SuppressWarnings({"ThrowableInstanceNeverThrown"})
   private static Request createErrorReportingRequestForFilterError(Filter filter) {
     ErrorReportingRunner runner = new ErrorReportingRunner(Filter.class, new Exception(
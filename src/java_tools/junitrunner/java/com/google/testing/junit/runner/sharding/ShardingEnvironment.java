@@ -33,6 +33,9 @@ public class ShardingEnvironment {
   /** Usage: -Dtest.sharding.strategy=round_robin */
   private static final String TEST_SHARDING_STRATEGY = "test.sharding.strategy";
 
+  /** Usage: -Dtest.sharding.durations_file=path/to/durations */
+  private static final String TEST_SHARDING_DURATIONS_FILE = "test.sharding.durations_file";
+
   @Inject
   public ShardingEnvironment() {}
 
@@ -93,4 +96,14 @@ public class ShardingEnvironment {
   public String getTestShardingStrategy() {
     return System.getProperty(TEST_SHARDING_STRATEGY);
   }
+
+  /**
+   * Returns the file with the durations of previous runs of the tests, optionally specified by the
+   * JVM flag {@link #TEST_SHARDING_DURATIONS_FILE} or by Bazel in the environment, for use by the
+   * duration-balanced sharding strategy. Returns null if not specified.
+   */
+  public String getTestShardingDurationsFile() {
+    String durationsFile = System.getProperty(TEST_SHARDING_DURATIONS_FILE);
+    return durationsFile != null ? durationsFile : System.getenv("TEST_SHARD_DURATIONS_FILE");
+  }
 }
@@ -19,6 +19,7 @@ import com.google.testing.junit.runner.sharding.api.ShardingFilterFactory;
 import org.junit.runner.Description;
 import org.junit.runner.manipulation.Filter;
 
+import java.io.File;
 import java.util.Collection;
 
 import javax.inject.Inject;
@@ -53,6 +54,20 @@ public class ShardingFilters {
           int shardIndex, int totalShards) {
         return new RoundRobinShardingFilter(testDescriptions, shardIndex, totalShards);
       }
+    },
+
+    /**
+     * {@link com.google.testing.junit.runner.sharding.WeightedShardingFilter}, weighing tests by
+     * their {@link com.google.testing.junit.runner.sharding.TestDurations durations} in previous
+     * runs.
+     */
+    DURATION {
+      @Override
+      public Filter createFilter(Collection<Description> testDescriptions,
+          int shardIndex, int totalShards) {
+        return createDurationFilter(
+            ShardingEnvironment.DEFAULT, testDescriptions, shardIndex, totalShards);
+      }
     }
   }
 
@@ -86,14 +101,30 @@ public class ShardingFilters {
    */
   public Filter createShardingFilter(Collection<Description> descriptions) {
     ShardingFilterFactory factory = getShardingFilterFactory();
+    if (factory == ShardingStrategy.DURATION) {
+      // Read the durations named by this environment rather than by the default one.
+      return createDurationFilter(shardingEnvironment, descriptions,
+          shardingEnvironment.getShardIndex(), shardingEnvironment.getTotalShards());
+    }
     return factory.createFilter(descriptions, shardingEnvironment.getShardIndex(),
         shardingEnvironment.getTotalShards());
   }
 
+  private static Filter createDurationFilter(ShardingEnvironment shardingEnvironment,
+      Collection<Description> testDescriptions, int shardIndex, int totalShards) {
+    String durationsFile = shardingEnvironment.getTestShardingDurationsFile();
+    TestDurations durations =
+        durationsFile == null ? TestDurations.NONE : TestDurations.read(new File(durationsFile));
+    return new WeightedShardingFilter(testDescriptions, durations, shardIndex, totalShards);
+  }
+
   private ShardingFilterFactory getShardingFilterFactory() {
     String strategy = shardingEnvironment.getTestShardingStrategy();
     if (strategy == null) {
-      return defaultShardingStrategy;
+      // Bazel only passes the durations of previous runs when asked to balance shards by them.
+      return shardingEnvironment.getTestShardingDurationsFile() != null
+          ? ShardingStrategy.DURATION
+          : defaultShardingStrategy;
     }
     ShardingFilterFactory shardingFilterFactory;
     try {
@@ -0,0 +1,99 @@
+// Copyright 2017 The Bazel Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner.sharding;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.testing.junit.runner.sharding.api.WeightStrategy;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.runner.Description;
+
+/**
+ * Weighs tests by how long they took in previous runs.
+ *
+ * <p>Durations are read from a file with one test per line: the duration in milliseconds, a
+ * space, and the display name of the test, e.g. {@code 1200 testFoo(com.example.FooTest)}. Lines
+ * that don't follow this format are ignored.
+ *
+ * <p>Tests without a recorded duration, e.g. new tests, are weighed with the average recorded
+ * duration.
+ */
+public final class TestDurations implements WeightStrategy {
+
+  /** Durations for when there is no history, which weigh all tests the same. */
+  public static final TestDurations NONE =
+      new TestDurations(Collections.<String, Integer>emptyMap());
+
+  private final Map<String, Integer> durations;
+  private final int defaultDuration;
+
+  // VisibleForTesting
+  TestDurations(Map<String, Integer> durations) {
+    this.durations = durations;
+    long total = 0;
+    for (int duration : durations.values()) {
+      total += duration;
+    }
+    this.defaultDuration = durations.isEmpty() ? 1 : (int) (total / durations.size());
+  }
+
+  /**
+   * Reads the durations from the given file, or returns {@link #NONE} if it doesn't exist.
+   */
+  public static TestDurations read(File file) {
+    if (!file.exists()) {
+      return NONE;
+    }
+    Map<String, Integer> durations = new HashMap<>();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int separator = line.indexOf(' ');
+        if (separator <= 0) {
+          continue;
+        }
+        try {
+          int duration = Integer.parseInt(line.substring(0, separator));
+          if (duration >= 0) {
+            durations.put(line.substring(separator + 1), duration);
+          }
+        } catch (NumberFormatException e) {
+          // ignore the line
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading test durations from " + file, e);
+    }
+    return new TestDurations(durations);
+  }
+
+  /**
+   * Returns the duration of the test in milliseconds, but at least 1 so that fast tests are still
+   * spread across shards.
+   */
+  @Override
+  public int getDescriptionWeight(Description description) {
+    Integer duration = durations.get(description.getDisplayName());
+    return Math.max(1, duration == null ? defaultDuration : duration);
+  }
+}
@@ -0,0 +1,107 @@
+// Copyright 2017 The Bazel Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner.sharding;
+
+import com.google.testing.junit.runner.sharding.api.WeightStrategy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+/**
+ * Implements a sharding strategy that balances the total weight of the tests of each shard, e.g.
+ * their expected run time.
+ *
+ * <p>Tests are assigned from heaviest to lightest, each to the shard with the least total weight
+ * so far. Ties are broken by display name and shard index, so that every shard computes the same
+ * assignment.
+ */
+public final class WeightedShardingFilter extends Filter {
+  // VisibleForTesting
+  final Map<Description, Integer> testToShardMap;
+  // VisibleForTesting
+  final int shardIndex;
+
+  public WeightedShardingFilter(Collection<Description> testDescriptions,
+      WeightStrategy weightStrategy, int shardIndex, int totalShards) {
+    if (shardIndex < 0 || totalShards <= shardIndex) {
+      throw new IllegalArgumentException();
+    }
+    this.testToShardMap = buildTestToShardMap(testDescriptions, weightStrategy, totalShards);
+    this.shardIndex = shardIndex;
+  }
+
+  private static Map<Description, Integer> buildTestToShardMap(
+      Collection<Description> testDescriptions, WeightStrategy weightStrategy, int totalShards) {
+    final Map<Description, Integer> weights = new HashMap<>();
+    for (Description description : testDescriptions) {
+      if (!description.isTest()) {
+        throw new IllegalArgumentException("Test suite should not be included in the set of tests "
+            + "to shard: " + description.getDisplayName());
+      }
+      if (!weights.containsKey(description)) {
+        weights.put(description, weightStrategy.getDescriptionWeight(description));
+      }
+    }
+
+    List<Description> sortedDescriptions = new ArrayList<>(weights.keySet());
+    final Comparator<Description> byName = new RoundRobinShardingFilter.DescriptionComparator();
+    Collections.sort(sortedDescriptions, new Comparator<Description>() {
+      @Override
+      public int compare(Description d1, Description d2) {
+        int byWeight = Integer.compare(weights.get(d2), weights.get(d1));
+        return byWeight != 0 ? byWeight : byName.compare(d1, d2);
+      }
+    });
+
+    Map<Description, Integer> map = new HashMap<>();
+    long[] shardWeights = new long[totalShards];
+    for (Description description : sortedDescriptions) {
+      int lightestShard = 0;
+      for (int shard = 1; shard < totalShards; shard++) {
+        if (shardWeights[shard] < shardWeights[lightestShard]) {
+          lightestShard = shard;
+        }
+      }
+      shardWeights[lightestShard] += weights.get(description);
+      map.put(description, lightestShard);
+    }
+    return Collections.unmodifiableMap(map);
+  }
+
+  @Override
+  public boolean shouldRun(Description description) {
+    if (description.isSuite()) {
+      return true;
+    }
+    Integer shard = testToShardMap.get(description);
+    if (shard == null) {
+      throw new IllegalArgumentException("This filter keeps a mapping from each test "
+          + "description to a shard, and the given description was not passed in when "
+          + "filter was constructed: " + description);
+    }
+    return shard == shardIndex;
+  }
+
+  @Override
+  public String describe() {
+    return "weighted sharding filter";
+  }
+}
@@ -50,4 +50,9 @@ public class StubShardingEnvironment extends ShardingEnvironment {
   public String getTestShardingStrategy() {
     throw new UnsupportedOperationException();
   }
+
+  @Override
+  public String getTestShardingDurationsFile() {
+    throw new UnsupportedOperationException();
+  }
 }
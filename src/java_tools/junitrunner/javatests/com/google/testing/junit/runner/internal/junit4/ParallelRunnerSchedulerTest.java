@@ -0,0 +1,97 @@
+// Copyright 2017 The Bazel Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner.internal.junit4;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import org.junit.runner.notification.StoppedByUserException;
+
+/**
+ * Tests for {@link ParallelRunnerScheduler}.
+ */
+public class ParallelRunnerSchedulerTest extends TestCase {
+
+  public void testRunsChildrenConcurrently() throws Exception {
+    final CountDownLatch bothStarted = new CountDownLatch(2);
+    final AtomicInteger finished = new AtomicInteger();
+    Runnable child = new Runnable() {
+      @Override
+      public void run() {
+        bothStarted.countDown();
+        try {
+          // Only returns in time if the other child runs at the same time.
+          if (bothStarted.await(10, SECONDS)) {
+            finished.incrementAndGet();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+
+    ParallelRunnerScheduler scheduler = new ParallelRunnerScheduler(2);
+    scheduler.schedule(child);
+    scheduler.schedule(child);
+    scheduler.finished();
+
+    assertThat(finished.get()).isEqualTo(2);
+  }
+
+  public void testFinishedWaitsForAllChildren() {
+    final AtomicInteger finished = new AtomicInteger();
+    ParallelRunnerScheduler scheduler = new ParallelRunnerScheduler(2);
+    for (int i = 0; i < 10; i++) {
+      scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          finished.incrementAndGet();
+        }
+      });
+    }
+    scheduler.finished();
+
+    assertThat(finished.get()).isEqualTo(10);
+  }
+
+  public void testFinishedRethrowsExceptionOfChild() {
+    final StoppedByUserException stopped = new StoppedByUserException();
+    ParallelRunnerScheduler scheduler = new ParallelRunnerScheduler(2);
+    scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        throw stopped;
+      }
+    });
+
+    try {
+      scheduler.finished();
+      fail("exception expected");
+    } catch (StoppedByUserException expected) {
+      assertThat(expected).isSameAs(stopped);
+    }
+  }
+
+  public void testRejectsNonPositiveParallelism() {
+    try {
+      new ParallelRunnerScheduler(0);
+      fail("exception expected");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
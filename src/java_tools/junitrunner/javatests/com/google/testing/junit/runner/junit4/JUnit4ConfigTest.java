@@ -16,6 +16,7 @@ package com.google.testing.junit.runner.junit4;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.testing.junit.runner.junit4.JUnit4Config.JUNIT_API_VERSION_PROPERTY;
+import static com.google.testing.junit.runner.junit4.JUnit4Config.PARALLELISM_PROPERTY;
 import static com.google.testing.junit.runner.junit4.JUnit4Config.SHOULD_INSTALL_SECURITY_MANAGER_PROPERTY;
 import static org.junit.Assert.fail;
 
@@ -113,4 +114,32 @@ public class JUnit4ConfigTest {
     JUnit4Config config = createConfigWithProperties(properties);
     assertThat(config.shouldInstallSecurityManager()).isFalse();
   }
+
+  @Test
+  public void testGetParallelism_defaultValue() {
+    JUnit4Config config = createConfigWithProperties(new Properties());
+    assertThat(config.getParallelism()).isEqualTo(1);
+  }
+
+  @Test
+  public void testGetParallelism_propertySet() {
+    Properties properties = new Properties();
+    properties.put(PARALLELISM_PROPERTY, "4");
+    JUnit4Config config = createConfigWithProperties(properties);
+    assertThat(config.getParallelism()).isEqualTo(4);
+  }
+
+  @Test
+  public void testGetParallelism_failsIfNotPositive() {
+    Properties properties = new Properties();
+    properties.put(PARALLELISM_PROPERTY, "0");
+    JUnit4Config config = createConfigWithProperties(properties);
+
+    try {
+      config.getParallelism();
+      fail("exception expected");
+    } catch (IllegalStateException expected) {
+      assertThat(expected).hasMessageThat().contains("0");
+    }
+  }
 }
@@ -15,15 +15,21 @@
 package com.google.testing.junit.runner.sharding;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.mockito.Mockito.when;
 
 import com.google.testing.junit.runner.sharding.api.ShardingFilterFactory;
 import com.google.testing.junit.runner.sharding.testing.ShardingFilterTestCase;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.Description;
 import org.junit.runner.RunWith;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.manipulation.Filter;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -33,6 +39,8 @@ import org.mockito.runners.MockitoJUnitRunner;
  */
 @RunWith(MockitoJUnitRunner.class)
 public class ShardingFiltersTest {
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
   @Mock ShardingEnvironment mockShardingEnvironment;
 
   @Test
@@ -55,6 +63,38 @@ public class ShardingFiltersTest {
     assertThat(shardingFilter.totalShards).isEqualTo(expectedFilter.totalShards);
   }
 
+  @Test
+  public void testCreateShardingFilter_durationStrategyIfDurationsGiven() throws Exception {
+    List<Description> descriptions = ShardingFilterTestCase.createGenericTestCaseDescriptions(6);
+    // The first test takes as long as all others together, so it gets a shard of its own.
+    File durationsFile = tempFolder.newFile("durations");
+    List<String> lines = new ArrayList<>();
+    lines.add("100 " + descriptions.get(0).getDisplayName());
+    for (Description description : descriptions.subList(1, descriptions.size())) {
+      lines.add("1 " + description.getDisplayName());
+    }
+    Files.write(durationsFile.toPath(), lines, UTF_8);
+
+    when(mockShardingEnvironment.getShardIndex()).thenReturn(0);
+    when(mockShardingEnvironment.getTotalShards()).thenReturn(2);
+    when(mockShardingEnvironment.getTestShardingStrategy()).thenReturn(null);
+    when(mockShardingEnvironment.getTestShardingDurationsFile())
+        .thenReturn(durationsFile.getPath());
+
+    ShardingFilters shardingFilters = new ShardingFilters(mockShardingEnvironment,
+        ShardingFilters.ShardingStrategy.ROUND_ROBIN);
+    Filter filter = shardingFilters.createShardingFilter(descriptions);
+
+    assertThat(filter).isInstanceOf(WeightedShardingFilter.class);
+    List<Description> run = new ArrayList<>();
+    for (Description description : descriptions) {
+      if (filter.shouldRun(description)) {
+        run.add(description);
+      }
+    }
+    assertThat(run).containsExactly(descriptions.get(0));
+  }
+
   @Test
   public void testCreateShardingFilter_customStrategy() {
     List<Description> descriptions = ShardingFilterTestCase.createGenericTestCaseDescriptions(6);
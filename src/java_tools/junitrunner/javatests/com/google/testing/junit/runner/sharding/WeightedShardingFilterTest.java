@@ -0,0 +1,113 @@
+// Copyright 2017 The Bazel Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner.sharding;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.testing.junit.runner.sharding.api.ShardingFilterFactory;
+import com.google.testing.junit.runner.sharding.testing.ShardingFilterTestCase;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+/** Tests for the {@link WeightedShardingFilter}. */
+public class WeightedShardingFilterTest extends ShardingFilterTestCase {
+
+  private static final Description TEST_A = Description.createTestDescription("Test", "a");
+  private static final Description TEST_B = Description.createTestDescription("Test", "b");
+  private static final Description TEST_C = Description.createTestDescription("Test", "c");
+  private static final Description TEST_D = Description.createTestDescription("Test", "d");
+
+  public void testShardingIsBalancedByDuration() {
+    Map<String, Integer> durations = new HashMap<>();
+    durations.put(TEST_A.getDisplayName(), 100);
+    durations.put(TEST_B.getDisplayName(), 60);
+    durations.put(TEST_C.getDisplayName(), 50);
+    durations.put(TEST_D.getDisplayName(), 10);
+    List<Description> descriptions = Arrays.asList(TEST_D, TEST_C, TEST_B, TEST_A);
+
+    List<Filter> filters =
+        createFilters(descriptions, 2, createFactory(new TestDurations(durations)));
+
+    Map<Filter, List<Description>> run = simulateTestRun(filters, descriptions);
+    assertThat(run.get(filters.get(0))).containsExactly(TEST_D, TEST_A);
+    assertThat(run.get(filters.get(1))).containsExactly(TEST_C, TEST_B);
+  }
+
+  public void testShardingIsBalancedByCountWithoutDurations() {
+    List<Description> descriptions = createGenericTestCaseDescriptions(6);
+    List<Filter> filters = createFilters(descriptions, 3);
+
+    Map<Filter, List<Description>> run = simulateTestRun(filters, descriptions);
+    assertThat(run.get(filters.get(0))).hasSize(2);
+    assertThat(run.get(filters.get(1))).hasSize(2);
+    assertThat(run.get(filters.get(2))).hasSize(2);
+  }
+
+  public void testUnknownTestsWeighAverageDuration() {
+    Map<String, Integer> durations = new HashMap<>();
+    durations.put(TEST_A.getDisplayName(), 100);
+    durations.put(TEST_B.getDisplayName(), 20);
+    TestDurations testDurations = new TestDurations(durations);
+
+    assertThat(testDurations.getDescriptionWeight(TEST_A)).isEqualTo(100);
+    assertThat(testDurations.getDescriptionWeight(TEST_C)).isEqualTo(60);
+  }
+
+  public void testReadDurations() throws Exception {
+    File file = File.createTempFile("durations", ".txt");
+    file.deleteOnExit();
+    Files.write(
+        file.toPath(),
+        ("100 " + TEST_A.getDisplayName() + "\nnot a duration\n20 " + TEST_B.getDisplayName())
+            .getBytes(UTF_8));
+
+    TestDurations durations = TestDurations.read(file);
+
+    assertThat(durations.getDescriptionWeight(TEST_A)).isEqualTo(100);
+    assertThat(durations.getDescriptionWeight(TEST_B)).isEqualTo(20);
+  }
+
+  public void testReadMissingDurations() {
+    assertThat(TestDurations.read(new File("does/not/exist"))).isSameAs(TestDurations.NONE);
+  }
+
+  public void testShouldRun_throwsExceptionForUnknownDescription() {
+    assertThrowsExceptionForUnknownDescription(
+        createFilters(createGenericTestCaseDescriptions(6), 3).get(0));
+  }
+
+  @Override
+  protected ShardingFilterFactory createShardingFilterFactory() {
+    return createFactory(TestDurations.NONE);
+  }
+
+  private static ShardingFilterFactory createFactory(final TestDurations durations) {
+    return new ShardingFilterFactory() {
+      @Override
+      public Filter createFilter(
+          Collection<Description> testDescriptions, int shardIndex, int totalShards) {
+        return new WeightedShardingFilter(testDescriptions, durations, shardIndex, totalShards);
+      }
+    };
+  }
+}
@@ -89,6 +89,9 @@ public class SingleJar {
   /** The (optional) native executable that will be prepended to this JAR. */
   private String launcherBin = null;
 
+  /** The number of threads used to read and recompress the input jars. */
+  private int jobs = 1;
+
   // Only visible for testing.
   protected SingleJar(SimpleFileSystem fileSystem) {
     this.fileSystem = fileSystem;
@@ -235,10 +238,11 @@ public class SingleJar {
       }
 
       // Copy the jars into the jar file.
+      List<File> jars = new ArrayList<>();
       for (String inputJar : inputJars) {
-        File jar = fileSystem.getFile(inputJar);
-        combiner.addZip(jar);
+        jars.add(fileSystem.getFile(inputJar));
       }
+      combiner.addZips(jars, jobs);
 
       // Close the output file. If something goes wrong here, delete the file.
       combiner.close();
@@ -348,6 +352,14 @@ public class SingleJar {
       } else if (arg.equals("--java_launcher")) {
         launcherBin = getArgument(args, i, arg);
         i++;
+      } else if (arg.equals("--jobs")) {
+        String value = getArgument(args, i, arg);
+        try {
+          jobs = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+          throw new IOException(arg + ": invalid number '" + value + "'");
+        }
+        i++;
       } else {
         throw new IOException("unknown option : '" + arg + "'");
       }
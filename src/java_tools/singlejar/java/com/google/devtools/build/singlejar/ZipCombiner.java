@@ -33,10 +33,19 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
@@ -429,29 +438,192 @@ public class ZipCombiner implements AutoCloseable {
    */
   public void addZip(File zipFile) throws IOException {
     try (ZipReader zip = new ZipReader(zipFile)) {
-      for (ZipFileEntry entry : zip.entries()) {
-        String filename = entry.getName();
-        EntryAction action = getAction(filename);
-        switch (action.getType()) {
-          case SKIP:
-            break;
-          case COPY:
-          case RENAME:
-            writeEntry(zip, entry, action);
-            break;
-          case MERGE:
-            entries.put(filename, null);
-            InputStream in = zip.getRawInputStream(entry);
-            if (entry.getMethod() == Compression.DEFLATED) {
-              in = new InflaterInputStream(in, getInflater());
+      addZip(zip);
+    }
+  }
+
+  /** Adds the contents of {@code zip} to the combined ZIP file on the calling thread. */
+  private void addZip(ZipReader zip) throws IOException {
+    for (ZipFileEntry entry : zip.entries()) {
+      String filename = entry.getName();
+      EntryAction action = getAction(filename);
+      switch (action.getType()) {
+        case SKIP:
+          break;
+        case COPY:
+        case RENAME:
+          writeEntry(zip, entry, action);
+          break;
+        case MERGE:
+          entries.put(filename, null);
+          InputStream in = zip.getRawInputStream(entry);
+          if (entry.getMethod() == Compression.DEFLATED) {
+            in = new InflaterInputStream(in, getInflater());
+          }
+          action.getStrategy().merge(in, action.getMergeBuffer());
+          break;
+      }
+    }
+  }
+
+  /**
+   * Adds the contents of the given ZIP files, in order, to the combined ZIP file. The result is
+   * identical to calling {@link #addZip} for each of them, but with {@code jobs > 1} the inputs
+   * are memory-mapped and opened ahead of time, and entry data is read and recompressed on {@code
+   * jobs} threads. The calling thread still consults the {@link ZipEntryFilter} and writes all
+   * entries, in the original order. Inputs too large to be mapped are added sequentially.
+   *
+   * @param zipFiles the ZIP files to add to the combined ZIP file
+   * @param jobs the number of threads to use
+   * @throws IOException if there is an error reading the ZIP files or writing entries to the
+   *     combined ZIP file
+   */
+  public void addZips(List<File> zipFiles, int jobs) throws IOException {
+    if (jobs <= 1) {
+      for (File zipFile : zipFiles) {
+        addZip(zipFile);
+      }
+      return;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(jobs, runnable -> {
+      Thread thread = new Thread(runnable, "singlejar-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // Inputs are opened a few files ahead of the one being filtered, whose entries are prepared
+    // while those of the previous file are being written.
+    Deque<Future<ZipReader>> readers = new ArrayDeque<>();
+    // The readers whose entries are being prepared or have yet to be written.
+    Deque<ZipReader> inUse = new ArrayDeque<>();
+    List<Future<PreparedEntry>> previous = new ArrayList<>();
+    try {
+      int next = 0;
+      for (int i = 0; i < zipFiles.size(); i++) {
+        while (next < zipFiles.size() && next <= i + 2 * jobs) {
+          File zipFile = zipFiles.get(next++);
+          readers.add(executor.submit(() -> new ZipReader(zipFile, UTF_8, false, true)));
+        }
+        ZipReader zip = getUnchecked(readers.remove());
+        inUse.add(zip);
+        List<Future<PreparedEntry>> current = new ArrayList<>();
+        if (zip.isMapped()) {
+          current = prepareEntries(zip, executor);
+        }
+        writePreparedEntries(previous);
+        previous = current;
+        while (inUse.size() > 1) {
+          inUse.remove().close();
+        }
+        if (!zip.isMapped()) {
+          // An unmapped reader shares one file position between all of its streams, so it is
+          // only read on this thread.
+          addZip(zip);
+          inUse.remove().close();
+        }
+      }
+      writePreparedEntries(previous);
+    } finally {
+      // Wait for the running tasks, which may still read from the readers, before closing them.
+      executor.shutdownNow();
+      try {
+        awaitTermination(executor);
+      } finally {
+        for (ZipReader zip : inUse) {
+          zip.close();
+        }
+        for (Future<ZipReader> reader : readers) {
+          if (reader.isDone() && !reader.isCancelled()) {
+            try {
+              reader.get().close();
+            } catch (ExecutionException e) {
+              // The reader could not be opened, so there is nothing to close.
+            } catch (InterruptedException e) {
+              throw new IllegalStateException(e); // Cannot happen, the future is done.
             }
-            action.getStrategy().merge(in, action.getMergeBuffer());
-            break;
+          }
         }
       }
     }
   }
 
+  /** Waits for the tasks of {@code executor}, which must have been shut down, to finish. */
+  private static void awaitTermination(ExecutorService executor) throws IOException {
+    try {
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {}
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while combining zip files", e);
+    }
+  }
+
+  /**
+   * Decides the action for each entry of {@code zip}, as {@link #addZip} does, and schedules the
+   * preparation of the entries to be written on {@code executor}. Merges are performed inline.
+   */
+  private List<Future<PreparedEntry>> prepareEntries(ZipReader zip, ExecutorService executor)
+      throws IOException {
+    List<Future<PreparedEntry>> prepared = new ArrayList<>();
+    for (ZipFileEntry entry : zip.entries()) {
+      String filename = entry.getName();
+      EntryAction action = getAction(filename);
+      switch (action.getType()) {
+        case SKIP:
+          break;
+        case COPY:
+        case RENAME:
+          // Reserve the name now, as writing the entry later is what normally does that.
+          entries.put(action.getType() == ActionType.RENAME ? action.getNewName() : filename, null);
+          prepared.add(executor.submit(() -> prepareEntry(zip, entry, action)));
+          break;
+        case MERGE:
+          entries.put(filename, null);
+          InputStream in = zip.getRawInputStream(entry);
+          if (entry.getMethod() == Compression.DEFLATED) {
+            in = new InflaterInputStream(in, getInflater());
+          }
+          action.getStrategy().merge(in, action.getMergeBuffer());
+          break;
+      }
+    }
+    return prepared;
+  }
+
+  /** Writes prepared entries in order. */
+  private void writePreparedEntries(List<Future<PreparedEntry>> prepared) throws IOException {
+    for (Future<PreparedEntry> future : prepared) {
+      PreparedEntry entry = getUnchecked(future);
+      writeEntry(entry.entry, new ByteArrayInputStream(entry.data));
+    }
+  }
+
+  /** Waits for {@code future}, rethrowing {@link IOException}s from the computation. */
+  private static <T> T getUnchecked(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while combining zip files", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /** An output entry and the data to write for it. */
+  private static final class PreparedEntry {
+    private final ZipFileEntry entry;
+    private final byte[] data;
+
+    PreparedEntry(ZipFileEntry entry, byte[] data) {
+      this.entry = entry;
+      this.data = data;
+    }
+  }
+
   /** Returns the action to take for a file of the given filename. */
   private EntryAction getAction(String filename) throws IOException {
     // If this filename has not been encountered before (no entry for filename) or this filename
@@ -512,6 +684,25 @@ public class ZipCombiner implements AutoCloseable {
    */
   private void writeEntry(ZipReader zip, ZipFileEntry entry, EntryAction action)
       throws IOException {
+    ZipFileEntry outEntry = createOutputEntry(entry, action);
+    writeEntry(outEntry, getOutputData(zip, entry, outEntry));
+  }
+
+  /**
+   * Like {@link #writeEntry(ZipReader, ZipFileEntry, EntryAction)}, but returns the output entry
+   * and its data instead of writing them. Safe to call concurrently on a memory-mapped reader.
+   */
+  private PreparedEntry prepareEntry(ZipReader zip, ZipFileEntry entry, EntryAction action)
+      throws IOException {
+    ZipFileEntry outEntry = createOutputEntry(entry, action);
+    ByteArrayOutputStream data =
+        new ByteArrayOutputStream((int) Math.max(outEntry.getCompressedSize(), 32));
+    copyStream(getOutputData(zip, entry, outEntry), data);
+    return new PreparedEntry(outEntry, data.toByteArray());
+  }
+
+  /** Returns the output entry for {@code entry} with the values from {@code action} applied. */
+  private static ZipFileEntry createOutputEntry(ZipFileEntry entry, EntryAction action) {
     checkArgument(action.getType() != ActionType.SKIP,
         "Cannot write a zip entry whose action is of type SKIP.");
 
@@ -525,7 +716,16 @@ public class ZipCombiner implements AutoCloseable {
     if (action.getDate() != null) {
       outEntry.setTime(action.getDate().getTime());
     }
+    return outEntry;
+  }
 
+  /**
+   * Returns the data to write for {@code outEntry}, performing inflation or deflation of the data
+   * of {@code entry} as needed and updating the compression method and size of {@code outEntry}
+   * accordingly.
+   */
+  private InputStream getOutputData(ZipReader zip, ZipFileEntry entry, ZipFileEntry outEntry)
+      throws IOException {
     InputStream data;
     if (mode == OutputMode.FORCE_DEFLATE && entry.getMethod() != Compression.DEFLATED) {
       // The output mode is deflate, but the entry compression is not. Create a deflater stream
@@ -546,7 +746,7 @@ public class ZipCombiner implements AutoCloseable {
       // Entry compression agrees with output mode; use the raw file data as is.
       data = zip.getRawInputStream(entry);
     }
-    writeEntry(outEntry, data);
+    return data;
   }
 
   /**
@@ -18,11 +18,15 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.BufferedInputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.zip.ZipEntry;
@@ -47,10 +51,12 @@ public class ZipReader implements Closeable, AutoCloseable {
 
   private final File file;
   private final RandomAccessFile in;
+  /** The contents of the file if it was opened with {@code mapped}, or null. */
+  private final MappedByteBuffer data;
   private final ZipFileData zipData;
 
   /**
-   * Opens a zip file for raw acceess.
+   * Opens a zip file for raw access.
    *
    * <p>The UTF-8 charset is used to decode the entry names and comments.
    *
@@ -63,7 +69,7 @@ public class ZipReader implements Closeable, AutoCloseable {
   }
 
   /**
-   * Opens a zip file for raw acceess.
+   * Opens a zip file for raw access.
    *
    * @param file the zip file
    * @param charset the charset to use to decode the entry names and comments
@@ -75,7 +81,7 @@ public class ZipReader implements Closeable, AutoCloseable {
   }
 
   /**
-   * Opens a zip file for raw acceess.
+   * Opens a zip file for raw access.
    *
    * @param file the zip file
    * @param charset the charset to use to decode the entry names and comments
@@ -85,11 +91,44 @@ public class ZipReader implements Closeable, AutoCloseable {
    * @throws IOException if an I/O error has occurred
    */
   public ZipReader(File file, Charset charset, boolean strictEntries) throws IOException {
+    this(file, charset, strictEntries, false);
+  }
+
+  /**
+   * Opens a zip file for raw access.
+   *
+   * <p>If {@code mapped} is true, the whole file is memory-mapped instead of being read through a
+   * file descriptor. Such a reader holds no open file descriptor, and its input streams may be
+   * created and read concurrently from multiple threads. Files too large to be mapped as a single
+   * buffer are read normally.
+   *
+   * @param file the zip file
+   * @param charset the charset to use to decode the entry names and comments
+   * @param strictEntries force parsing to use the number of entries recorded in the end of
+   *     central directory as the correct value, not as an estimate
+   * @param mapped whether to memory-map the file
+   * @throws ZipException if a ZIP format error has occurred
+   * @throws IOException if an I/O error has occurred
+   */
+  public ZipReader(File file, Charset charset, boolean strictEntries, boolean mapped)
+      throws IOException {
     if (file == null || charset == null) {
       throw new NullPointerException();
     }
     this.file = file;
-    this.in = new RandomAccessFile(file, "r");
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+    if (mapped && in.length() <= Integer.MAX_VALUE) {
+      // The mapping stays valid after the file is closed.
+      try {
+        this.data = in.getChannel().map(MapMode.READ_ONLY, 0, in.length());
+      } finally {
+        in.close();
+      }
+      this.in = null;
+    } else {
+      this.data = null;
+      this.in = in;
+    }
     this.zipData = new ZipFileData(charset);
     readCentralDirectory(strictEntries);
   }
@@ -172,6 +211,14 @@ public class ZipReader implements Closeable, AutoCloseable {
     return new ZipEntryInputStream(this, entry, /* raw */ true);
   }
 
+  /**
+   * Returns whether the file is memory-mapped, in which case input streams may be created and
+   * read concurrently.
+   */
+  public boolean isMapped() {
+    return data != null;
+  }
+
   /**
    * Closes the ZIP file.
    *
@@ -179,7 +226,9 @@ public class ZipReader implements Closeable, AutoCloseable {
    * of the {@link #getRawInputStream(ZipFileEntry)} method.
    */
   @Override public void close() throws IOException {
-    in.close();
+    if (in != null) {
+      in.close();
+    }
   }
 
   /**
@@ -259,20 +308,20 @@ public class ZipReader implements Closeable, AutoCloseable {
    */
   private long findEndOfCentralDirectoryRecord() throws IOException {
     byte[] signature = ZipUtil.intToLittleEndian(EndOfCentralDirectoryRecord.SIGNATURE);
-    byte[] buffer = new byte[(int) Math.min(64, in.length())];
+    long length = length();
+    byte[] buffer = new byte[(int) Math.min(64, length)];
     int readLength = buffer.length;
     if (readLength < EndOfCentralDirectoryRecord.FIXED_DATA_SIZE) {
       throw new ZipException(String.format("Zip file '%s' is malformed. It does not contain an end"
           + " of central directory record.", file.getName()));
     }
 
-    long offset = in.length() - buffer.length;
+    long offset = length - buffer.length;
     while (offset >= 0) {
-      in.seek(offset);
-      in.readFully(buffer, 0, readLength);
+      readFully(offset, buffer, readLength);
       int signatureLocation = scanBackwards(signature, buffer, buffer.length);
       while (signatureLocation != -1) {
-        long eocdSize = in.length() - offset - signatureLocation;
+        long eocdSize = length - offset - signatureLocation;
         if (eocdSize >= EndOfCentralDirectoryRecord.FIXED_DATA_SIZE) {
           int commentLength = ZipUtil.getUnsignedShort(buffer, signatureLocation
               + EndOfCentralDirectoryRecord.COMMENT_LENGTH_OFFSET);
@@ -330,6 +379,70 @@ public class ZipReader implements Closeable, AutoCloseable {
    * @throws IOException if an I/O error has occurred
    */
   protected InputStream getStreamAt(long fileOffset) throws IOException {
+    if (data != null) {
+      if (fileOffset < 0 || fileOffset > data.capacity()) {
+        throw new ZipException(String.format("Zip file '%s' is malformed. Offset %d is out of"
+            + " bounds.", file.getName(), fileOffset));
+      }
+      ByteBuffer buffer = data.duplicate();
+      buffer.position((int) fileOffset);
+      return new ByteBufferInputStream(buffer);
+    }
     return new BufferedInputStream(Channels.newInputStream(in.getChannel().position(fileOffset)));
   }
+
+  /** Returns the length of the file. */
+  private long length() throws IOException {
+    return data != null ? data.capacity() : in.length();
+  }
+
+  /** Reads {@code length} bytes at {@code fileOffset} into the start of {@code buffer}. */
+  private void readFully(long fileOffset, byte[] buffer, int length) throws IOException {
+    if (data != null) {
+      if (fileOffset < 0 || fileOffset + length > data.capacity()) {
+        throw new EOFException();
+      }
+      ByteBuffer source = data.duplicate();
+      source.position((int) fileOffset);
+      source.get(buffer, 0, length);
+    } else {
+      in.seek(fileOffset);
+      in.readFully(buffer, 0, length);
+    }
+  }
+
+  /** An {@link InputStream} reading from the current position of a {@link ByteBuffer}. */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override public int available() {
+      return buffer.remaining();
+    }
+
+    @Override public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, buffer.remaining());
+      buffer.get(b, off, len);
+      return len;
+    }
+
+    @Override public long skip(long n) {
+      int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+  }
 }
@@ -800,4 +800,52 @@ public class ZipCombinerTest {
     assertThat(zipInput.getNextEntry()).isNull();
     new ZipTester(out.toByteArray()).validate();
   }
+
+  private byte[] combine(OutputMode mode, List<File> zips, int jobs) throws IOException {
+    MockZipEntryFilter mockFilter = new MockZipEntryFilter();
+    mockFilter.behavior.put("merged.txt", new ConcatenateStrategy());
+    mockFilter.behavior.put("skipped.txt", SKIP_PLACEHOLDER);
+    mockFilter.behavior.put("renamed.txt", COPY_PLACEHOLDER);
+    mockFilter.renameMap.put("renamed.txt", "renamed/1.txt");
+    mockFilter.renameMap.put("renamed.txt", "renamed/2.txt");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ZipCombiner zipCombiner = new ZipCombiner(mode, mockFilter, out)) {
+      zipCombiner.addZips(zips, jobs);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testParallelAddZipsMatchesSequential() throws IOException {
+    List<File> zips = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      ZipFactory factory = new ZipFactory();
+      factory.addFile("common.txt", "common " + i, i % 2 == 0);
+      factory.addFile("merged.txt", "merged " + i, i % 3 == 0);
+      factory.addFile("skipped.txt", "skipped " + i);
+      factory.addFile("renamed.txt", "renamed " + i);
+      for (int j = 0; j < 50; j++) {
+        factory.addFile("dir" + i + "/file" + j, "contents " + i + " " + j, j % 2 == 0);
+      }
+      zips.add(writeInputStreamToFile(factory.toInputStream()));
+    }
+    for (OutputMode mode : OutputMode.values()) {
+      byte[] sequential = combine(mode, zips, 1);
+      assertThat(combine(mode, zips, 4)).isEqualTo(sequential);
+    }
+  }
+
+  @Test
+  public void testParallelAddZipsSkipsRenameToPendingEntry() throws IOException {
+    MockZipEntryFilter mockFilter = new MockZipEntryFilter();
+    mockFilter.behavior.put("hello.txt", COPY_PLACEHOLDER);
+    mockFilter.renameMap.put("hello.txt", "hello2.txt");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ZipCombiner zipCombiner = new ZipCombiner(mockFilter, out)) {
+      zipCombiner.addZips(Arrays.asList(sampleZip2(), sampleZip()), 2);
+    }
+    ZipInputStream zipInput = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+    assertEntry(zipInput, "hello2.txt", "Hello World 2!");
+    assertThat(zipInput.getNextEntry()).isNull();
+  }
 }
@@ -383,6 +383,42 @@ public class ZipReaderTest {
     }
   }
 
+  @Test public void testMappedSimultaneousReads() throws IOException {
+    byte[] expectedFooData = "This is file foo. It contains a foo.".getBytes(UTF_8);
+    byte[] expectedBarData = "This is a different file bar. It contains only a bar."
+        .getBytes(UTF_8);
+    try (ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(test))) {
+      ZipEntry foo = new ZipEntry("foo");
+      foo.setMethod(ZipEntry.DEFLATED);
+      zout.putNextEntry(foo);
+      zout.write(expectedFooData);
+      zout.closeEntry();
+
+      ZipEntry bar = new ZipEntry("bar");
+      bar.setMethod(ZipEntry.DEFLATED);
+      zout.putNextEntry(bar);
+      zout.write(expectedBarData);
+      zout.closeEntry();
+    }
+
+    try (ZipReader reader = new ZipReader(test, UTF_8, false, true)) {
+      ZipFileEntry fooEntry = reader.getEntry("foo");
+      ZipFileEntry barEntry = reader.getEntry("bar");
+      InputStream fooIn = reader.getInputStream(fooEntry);
+      InputStream barIn = reader.getInputStream(barEntry);
+      byte[] fooData = new byte[expectedFooData.length];
+      byte[] barData = new byte[expectedBarData.length];
+      fooIn.read(fooData, 0, 10);
+      barIn.read(barData, 0, 10);
+      fooIn.read(fooData, 10, fooData.length - 10);
+      barIn.read(barData, 10, barData.length - 10);
+      assertThat(fooData).isEqualTo(expectedFooData);
+      assertThat(barData).isEqualTo(expectedBarData);
+      assertThat(ByteStreams.toByteArray(reader.getRawInputStream(fooEntry))).hasLength(
+          (int) fooEntry.getCompressedSize());
+    }
+  }
+
   @Test public void testSlowRead() throws IOException {
     byte[] expectedFooData = "This is file foo. It contains a foo.".getBytes(UTF_8);
     byte[] expectedBarData = "This is a different file bar. It contains only a bar."
@@ -15,9 +15,10 @@ package com.google.devtools.build.lib.actions;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
 import com.google.devtools.build.lib.actions.ActionAnalysisMetadata.MiddlemanType;
 import com.google.devtools.build.lib.actions.cache.ActionCache;
 import com.google.devtools.build.lib.actions.cache.ActionCache.Entry;
@@ -27,6 +28,8 @@ import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventHandler;
 import com.google.devtools.build.lib.events.EventKind;
+import com.google.devtools.build.lib.util.BlazeClock;
+import com.google.devtools.build.lib.util.Fingerprint;
 import com.google.devtools.build.lib.util.Preconditions;
 import com.google.devtools.build.lib.vfs.PathFragment;
 import java.io.IOException;
@@ -34,6 +37,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 
 /**
@@ -72,11 +76,30 @@ public class ActionCacheChecker {
     }
   };
 
+  /** Upper bound on the number of per-file digests remembered in {@link #fileDigests}. */
+  private static final int MAX_FILE_DIGESTS = 100000;
+
   private final ActionCache actionCache;
   private final Predicate<? super Action> executionFilter;
   private final ArtifactResolver artifactResolver;
   private final CacheConfig cacheConfig;
 
+  /**
+   * Digests of (exec path, metadata) pairs computed while checking earlier actions of this build.
+   *
+   * <p>The metadata handlers of all actions serve the same {@link Metadata} instance for an input
+   * they share, so widely used inputs (headers, jars, tools) are digested once per build rather
+   * than once per consuming action. An entry is only reused for that very metadata instance.
+   */
+  private final Cache<Artifact, FileDigest> fileDigests =
+      CacheBuilder.newBuilder().maximumSize(MAX_FILE_DIGESTS).build();
+
+  private final AtomicLong checkedActions = new AtomicLong();
+  private final AtomicLong upToDateActions = new AtomicLong();
+  private final AtomicLong checkedFiles = new AtomicLong();
+  private final AtomicLong digestedFiles = new AtomicLong();
+  private final AtomicLong checkNanos = new AtomicLong();
+
   /** Cache config parameters for ActionCacheChecker. */
   @AutoValue
   public abstract static class CacheConfig {
@@ -156,14 +179,34 @@ public class ActionCacheChecker {
   private boolean validateArtifacts(
       Entry entry, Action action, Iterable<Artifact> actionInputs, MetadataHandler metadataHandler,
       boolean checkOutput) {
-    Iterable<Artifact> artifacts = checkOutput
-        ? Iterables.concat(action.getOutputs(), actionInputs)
-        : actionInputs;
-    Map<String, Metadata> mdMap = new HashMap<>();
-    for (Artifact artifact : artifacts) {
-      mdMap.put(artifact.getExecPathString(), getMetadataMaybe(metadataHandler, artifact));
-    }
-    return !DigestUtils.fromMetadata(mdMap).equals(entry.getFileDigest());
+    // Equivalent to DigestUtils.fromMetadata() over a map from exec path to metadata, but reuses
+    // the digests of inputs shared with actions checked earlier. Outputs are never shared.
+    Map<String, byte[]> digests = new HashMap<>();
+    Fingerprint fp = new Fingerprint();
+    if (checkOutput) {
+      for (Artifact output : action.getOutputs()) {
+        String execPath = output.getExecPathString();
+        digests.put(
+            execPath,
+            DigestUtils.fromPathAndMetadata(
+                fp, execPath, getMetadataMaybe(metadataHandler, output)));
+        digestedFiles.incrementAndGet();
+      }
+    }
+    for (Artifact input : actionInputs) {
+      Metadata metadata = getMetadataMaybe(metadataHandler, input);
+      FileDigest fileDigest = fileDigests.getIfPresent(input);
+      if (fileDigest == null || fileDigest.metadata != metadata) {
+        fileDigest =
+            new FileDigest(
+                metadata, DigestUtils.fromPathAndMetadata(fp, input.getExecPathString(), metadata));
+        fileDigests.put(input, fileDigest);
+        digestedFiles.incrementAndGet();
+      }
+      digests.put(input.getExecPathString(), fileDigest.digest);
+    }
+    checkedFiles.addAndGet(digests.size());
+    return !DigestUtils.fromPathDigests(digests.values()).equals(entry.getFileDigest());
   }
 
   private void reportCommand(EventHandler handler, Action action) {
@@ -251,6 +294,22 @@ public class ActionCacheChecker {
     if (!cacheConfig.enabled()) {
       return new Token(getKeyString(action));
     }
+    long startTime = BlazeClock.nanoTime();
+    try {
+      return checkAction(action, resolvedCacheArtifacts, clientEnv, handler, metadataHandler);
+    } finally {
+      checkedActions.incrementAndGet();
+      checkNanos.addAndGet(BlazeClock.nanoTime() - startTime);
+    }
+  }
+
+  @Nullable
+  private Token checkAction(
+      Action action,
+      Iterable<Artifact> resolvedCacheArtifacts,
+      Map<String, String> clientEnv,
+      EventHandler handler,
+      MetadataHandler metadataHandler) {
     Iterable<Artifact> actionInputs = action.getInputs();
     // Resolve action inputs from cache, if necessary.
     boolean inputsDiscovered = action.inputsDiscovered();
@@ -271,6 +330,7 @@ public class ActionCacheChecker {
     if (!inputsDiscovered) {
       action.updateInputs(actionInputs);
     }
+    upToDateActions.incrementAndGet();
     return null;
   }
 
@@ -529,6 +589,50 @@ public class ActionCacheChecker {
     reportRebuild(handler, action, "cache entry is corrupted");
   }
 
+  /** Returns the number of actions checked against the action cache so far. */
+  public long getCheckedActions() {
+    return checkedActions.get();
+  }
+
+  /** Returns the number of checked actions that were found to be up to date. */
+  public long getUpToDateActions() {
+    return upToDateActions.get();
+  }
+
+  /**
+   * Returns the number of (path, metadata) pairs that were digested, as opposed to reused from an
+   * earlier check.
+   */
+  public long getDigestedFiles() {
+    return digestedFiles.get();
+  }
+
+  @Override
+  public String toString() {
+    long millis = checkNanos.get() / 1000000;
+    long actions = checkedActions.get();
+    return String.format(
+        "ActionCacheChecker[actions=%d, upToDate=%d, files=%d, digestedFiles=%d, checkMs=%d,"
+            + " actionsPerSecond=%d]",
+        actions,
+        upToDateActions.get(),
+        checkedFiles.get(),
+        digestedFiles.get(),
+        millis,
+        millis == 0 ? actions : actions * 1000 / millis);
+  }
+
+  /** The digest of an artifact's exec path and the metadata it was computed from. */
+  private static final class FileDigest {
+    @Nullable private final Metadata metadata;
+    private final byte[] digest;
+
+    private FileDigest(@Nullable Metadata metadata, byte[] digest) {
+      this.metadata = metadata;
+      this.digest = digest;
+    }
+  }
+
   /** Wrapper for all context needed by the ActionCacheChecker to handle a single action. */
   public static final class Token {
     private final String cacheKey;
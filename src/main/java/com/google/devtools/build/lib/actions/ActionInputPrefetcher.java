@@ -13,10 +13,17 @@
 // limitations under the License.
 package com.google.devtools.build.lib.actions;
 
+import java.io.IOException;
+
 /** Prefetches files to local disk. */
 public interface ActionInputPrefetcher {
   public static final ActionInputPrefetcher NONE =
       new ActionInputPrefetcher() {
+        @Override
+        public void startPrefetching(Action action) {
+          // Do nothing.
+        }
+
         @Override
         public void prefetchFiles(Iterable<? extends ActionInput> input) {
           // Do nothing.
@@ -24,9 +31,23 @@ public interface ActionInputPrefetcher {
       };
 
   /**
-   * Initiates best-effort prefetching of all given inputs. This should not block.
+   * Starts fetching the inputs of {@code action} in the background, if this prefetcher expects
+   * them to be needed on local disk. Called once the action's dependencies are built and it is
+   * known to need execution, so that transfers overlap with waiting for execution resources.
+   *
+   * <p>Must not block. Failures are not reported here; they surface from the {@link
+   * #prefetchFiles} call for the same inputs.
+   */
+  void startPrefetching(Action action);
+
+  /**
+   * Fetches all given inputs to local disk. Local strategies call this right before running a
+   * spawn, so when this returns, every input under this prefetcher's control must be present.
    *
    * <p>For any path not under this prefetcher's control, the call should be a no-op.
+   *
+   * @throws IOException if an input could not be fetched
    */
-  void prefetchFiles(Iterable<? extends ActionInput> input);
+  void prefetchFiles(Iterable<? extends ActionInput> input)
+      throws IOException, InterruptedException;
 }
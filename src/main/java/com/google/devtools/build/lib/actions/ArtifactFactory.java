@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 
 /**
@@ -76,10 +77,10 @@ public class ArtifactFactory implements ArtifactResolver, ArtifactSerializer, Ar
      * The main Path to source artifact cache. There will always be exactly one canonical
      * artifact for a given source path.
      */
-    private final Map<PathFragment, Entry> pathToSourceArtifact = new HashMap<>();
+    private final Map<PathFragment, Entry> pathToSourceArtifact = new ConcurrentHashMap<>();
 
     /** Id of current build. Has to be increased every time before execution phase starts. */
-    private int buildId = 0;
+    private volatile int buildId = 0;
 
     /** Returns artifact if it present in the cache, otherwise null. */
     Artifact getArtifact(PathFragment execPath) {
@@ -351,6 +352,12 @@ public class ArtifactFactory implements ArtifactResolver, ArtifactSerializer, Ar
   @Override
   public Artifact resolveSourceArtifact(PathFragment execPath,
       @SuppressWarnings("unused") RepositoryName repositoryName) {
+    // Artifacts already resolved in this build are returned without taking the lock. This is the
+    // common case when discovering the inputs of C++ compiles, which share most of their headers.
+    Artifact artifact = sourceArtifactCache.getArtifactIfValid(execPath);
+    if (artifact != null) {
+      return artifact;
+    }
     return resolveSourceArtifactWithAncestor(execPath, null, null, repositoryName);
   }
 
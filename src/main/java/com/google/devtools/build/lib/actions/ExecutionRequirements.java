@@ -105,6 +105,9 @@ public class ExecutionRequirements {
     }
   }
 
+  /** If an action must be executed on the local machine, e.g. because it is tagged "local". */
+  public static final String LOCAL = "local";
+
   /** If an action would not successfully run other than on Darwin. */
   public static final String REQUIRES_DARWIN = "requires-darwin";
 
@@ -34,6 +34,7 @@ import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
+import javax.annotation.Nullable;
 
 /**
  * Utility class for getting md5 digests of files.
@@ -288,7 +289,19 @@ public class DigestUtils {
     // this computation to amortize its cost.
     Fingerprint fp = new Fingerprint();
     for (Map.Entry<String, Metadata> entry : mdMap.entrySet()) {
-      xorWith(result, getDigest(fp, entry.getKey(), entry.getValue()));
+      xorWith(result, fromPathAndMetadata(fp, entry.getKey(), entry.getValue()));
+    }
+    return new Md5Digest(result);
+  }
+
+  /**
+   * @param pathDigests digests returned by {@link #fromPathAndMetadata}, one per distinct path.
+   * @return an order-independent combination of the given digests.
+   */
+  public static Md5Digest fromPathDigests(Iterable<byte[]> pathDigests) {
+    byte[] result = new byte[Md5Digest.MD5_SIZE];
+    for (byte[] pathDigest : pathDigests) {
+      xorWith(result, pathDigest);
     }
     return new Md5Digest(result);
   }
@@ -308,7 +321,15 @@ public class DigestUtils {
     return new Md5Digest(result);
   }
 
-  private static byte[] getDigest(Fingerprint fp, String execPath, Metadata md) {
+  /**
+   * Returns the digest of a single (execPath, metadata) pair. {@link #fromMetadata} is equivalent
+   * to {@link #fromPathDigests} over these, so callers that already know some of them can combine
+   * them without rehashing.
+   *
+   * @param fp a fingerprint to use for the computation; it is reset afterwards.
+   */
+  public static byte[] fromPathAndMetadata(
+      Fingerprint fp, String execPath, @Nullable Metadata md) {
     fp.addString(execPath);
 
     if (md == null) {
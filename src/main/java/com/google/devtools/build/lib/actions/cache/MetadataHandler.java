@@ -58,6 +58,14 @@ public interface MetadataHandler {
    */
   void injectDigest(ActionInput output, FileStatus statNoFollow, byte[] digest);
 
+  /**
+   * Injects the metadata of an output file that was produced remotely and is not present in the
+   * output tree. The file is assumed to be a regular file with the given size and digest.
+   *
+   * <p>Must only be called after a call to {@link #discardOutputMetadata}.
+   */
+  void injectRemoteFile(Artifact output, byte[] digest, long size);
+
   /**
    * Marks an artifact as intentionally omitted. Acknowledges that this Artifact could have existed,
    * but was intentionally not saved, most likely as an optimization.
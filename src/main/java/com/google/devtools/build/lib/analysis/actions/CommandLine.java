@@ -19,6 +19,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.devtools.build.lib.actions.Artifact.ArtifactExpander;
 import com.google.devtools.build.lib.collect.CollectionUtils;
+import com.google.devtools.build.lib.util.Fingerprint;
+import java.util.function.Consumer;
 
 /** A representation of a list of arguments, often a command executed by {@link SpawnAction}. */
 public abstract class CommandLine {
@@ -47,6 +49,55 @@ public abstract class CommandLine {
     return arguments();
   }
 
+  /**
+   * Passes the arguments of {@link #arguments()} to {@code consumer} in order.
+   *
+   * <p>By default, this method iterates over {@link #arguments()}. Subclasses that would otherwise
+   * have to materialize their arguments should override it to produce them one by one instead.
+   */
+  public void forEachArgument(Consumer<String> consumer) {
+    for (String arg : arguments()) {
+      consumer.accept(arg);
+    }
+  }
+
+  /**
+   * Passes the arguments of {@link #arguments(ArtifactExpander)} to {@code consumer} in order.
+   *
+   * @see #forEachArgument(Consumer)
+   */
+  public void forEachArgument(ArtifactExpander artifactExpander, Consumer<String> consumer) {
+    for (String arg : arguments(artifactExpander)) {
+      consumer.accept(arg);
+    }
+  }
+
+  /**
+   * Adds the arguments to {@code fingerprint}, with the same result as {@code
+   * fingerprint.addStrings(arguments())} but without requiring the arguments to be materialized.
+   */
+  public final void addToFingerprint(Fingerprint fingerprint) {
+    ArgumentCounter counter = new ArgumentCounter(fingerprint);
+    forEachArgument(counter);
+    fingerprint.addInt(counter.count);
+  }
+
+  /** Adds each argument to a fingerprint, counting them as {@link Fingerprint#addStrings} does. */
+  private static final class ArgumentCounter implements Consumer<String> {
+    private final Fingerprint fingerprint;
+    private int count;
+
+    private ArgumentCounter(Fingerprint fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+
+    @Override
+    public void accept(String arg) {
+      fingerprint.addString(arg);
+      count++;
+    }
+  }
+
   /** Returns a {@link CommandLine} backed by a copy of the given list of arguments. */
   public static CommandLine of(Iterable<String> arguments) {
     final Iterable<String> immutableArguments = CollectionUtils.makeImmutable(arguments);
@@ -77,6 +128,18 @@ public abstract class CommandLine {
       public Iterable<String> arguments(ArtifactExpander artifactExpander) {
         return Iterables.concat(executableArgs, commandLine.arguments(artifactExpander));
       }
+
+      @Override
+      public void forEachArgument(Consumer<String> consumer) {
+        executableArgs.forEach(consumer);
+        commandLine.forEachArgument(consumer);
+      }
+
+      @Override
+      public void forEachArgument(ArtifactExpander artifactExpander, Consumer<String> consumer) {
+        executableArgs.forEach(consumer);
+        commandLine.forEachArgument(artifactExpander, consumer);
+      }
     };
   }
 
@@ -99,6 +162,18 @@ public abstract class CommandLine {
       public Iterable<String> arguments(ArtifactExpander artifactExpander) {
         return Iterables.concat(commandLine.arguments(artifactExpander), args);
       }
+
+      @Override
+      public void forEachArgument(Consumer<String> consumer) {
+        commandLine.forEachArgument(consumer);
+        args.forEach(consumer);
+      }
+
+      @Override
+      public void forEachArgument(ArtifactExpander artifactExpander, Consumer<String> consumer) {
+        commandLine.forEachArgument(artifactExpander, consumer);
+        args.forEach(consumer);
+      }
     };
   }
 
@@ -36,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
 
 /**
@@ -45,7 +46,7 @@ import javax.annotation.Nullable;
 public final class CustomCommandLine extends CommandLine {
 
   private abstract static class ArgvFragment {
-    abstract void eval(ImmutableList.Builder<String> builder);
+    abstract void eval(Consumer<String> consumer);
   }
 
   /**
@@ -79,10 +80,10 @@ public final class CustomCommandLine extends CommandLine {
    */
   private abstract static class TreeArtifactExpansionArgvFragment extends ArgvFragment {
     /**
-     * Evaluates this argument fragment into an argument string and adds it into {@code builder}.
+     * Evaluates this argument fragment into argument strings and passes them to {@code consumer}.
      * The enclosed TreeArtifact will be expanded using {@code artifactExpander}.
      */
-    abstract void eval(ImmutableList.Builder<String> builder, ArtifactExpander artifactExpander);
+    abstract void eval(Consumer<String> consumer, ArtifactExpander artifactExpander);
 
     /**
      * Returns a string that describes this argument fragment. The string can be used as part of
@@ -99,8 +100,8 @@ public final class CustomCommandLine extends CommandLine {
      * <p>Internally this method just calls {@link #describe}.
      */
     @Override
-    void eval(ImmutableList.Builder<String> builder) {
-      builder.add(describe());
+    void eval(Consumer<String> consumer) {
+      consumer.accept(describe());
     }
   }
 
@@ -116,8 +117,8 @@ public final class CustomCommandLine extends CommandLine {
     }
 
     @Override
-    void eval(ImmutableList.Builder<String> builder) {
-      builder.add(Artifact.joinExecPaths(delimiter, artifacts));
+    void eval(Consumer<String> consumer) {
+      consumer.accept(Artifact.joinExecPaths(delimiter, artifacts));
     }
   }
 
@@ -135,12 +136,12 @@ public final class CustomCommandLine extends CommandLine {
     }
 
     @Override
-    void eval(ImmutableList.Builder<String> builder, ArtifactExpander artifactExpander) {
+    void eval(Consumer<String> consumer, ArtifactExpander artifactExpander) {
       Set<Artifact> expandedArtifacts = new TreeSet<>();
       artifactExpander.expand(treeArtifact, expandedArtifacts);
 
       if (!expandedArtifacts.isEmpty()) {
-        builder.add(Artifact.joinExecPaths(delimiter, expandedArtifacts));
+        consumer.accept(Artifact.joinExecPaths(delimiter, expandedArtifacts));
       }
     }
 
@@ -164,12 +165,12 @@ public final class CustomCommandLine extends CommandLine {
     }
 
     @Override
-    void eval(ImmutableList.Builder<String> builder, ArtifactExpander artifactExpander) {
+    void eval(Consumer<String> consumer, ArtifactExpander artifactExpander) {
       Set<Artifact> expandedArtifacts = new TreeSet<>();
       artifactExpander.expand(treeArtifact, expandedArtifacts);
 
       for (Artifact expandedArtifact : expandedArtifacts) {
-        builder.add(expandedArtifact.getExecPathString());
+        consumer.accept(expandedArtifact.getExecPathString());
       }
     }
 
@@ -192,9 +193,9 @@ public final class CustomCommandLine extends CommandLine {
     }
 
     @Override
-    void eval(ImmutableList.Builder<String> builder) {
+    void eval(Consumer<String> consumer) {
       // PathFragment.toString() uses getPathString()
-      builder.add(String.format(template, (Object[]) paths));
+      consumer.accept(String.format(template, (Object[]) paths));
     }
   }
 
@@ -208,8 +209,8 @@ public final class CustomCommandLine extends CommandLine {
     }
 
     @Override
-    void eval(ImmutableList.Builder<String> builder) {
-      builder.add(paramFilePrefix + path);
+    void eval(Consumer<String> consumer) {
+      consumer.accept(paramFilePrefix + path);
     }
   }
 
@@ -249,8 +250,8 @@ public final class CustomCommandLine extends CommandLine {
   public abstract static class CustomArgv extends ArgvFragment {
 
     @Override
-    void eval(ImmutableList.Builder<String> builder) {
-      builder.add(argv());
+    void eval(Consumer<String> consumer) {
+      consumer.accept(argv());
     }
 
     public abstract String argv();
@@ -262,8 +263,8 @@ public final class CustomCommandLine extends CommandLine {
   public abstract static class CustomMultiArgv extends ArgvFragment {
 
     @Override
-    void eval(ImmutableList.Builder<String> builder) {
-      builder.addAll(argv());
+    void eval(Consumer<String> consumer) {
+      argv().forEach(consumer);
     }
 
     public abstract Iterable<String> argv();
@@ -280,8 +281,8 @@ public final class CustomCommandLine extends CommandLine {
     }
 
     @Override
-    void eval(ImmutableList.Builder<String> builder) {
-      builder.add(Joiner.on(delimiter).join(paths));
+    void eval(Consumer<String> consumer) {
+      consumer.accept(Joiner.on(delimiter).join(paths));
     }
   }
 
@@ -296,8 +297,8 @@ public final class CustomCommandLine extends CommandLine {
     }
 
     @Override
-    void eval(ImmutableList.Builder<String> builder) {
-      builder.add(Joiner.on(delimiter).join(strings));
+    void eval(Consumer<String> consumer) {
+      consumer.accept(Joiner.on(delimiter).join(strings));
     }
   }
 
@@ -315,7 +316,7 @@ public final class CustomCommandLine extends CommandLine {
     }
 
     @Override
-    void eval(ImmutableList.Builder<String> builder) {
+    void eval(Consumer<String> consumer) {
       StringBuilder arg = new StringBuilder();
       Iterator<T> parts = values.iterator();
       if (parts.hasNext()) {
@@ -325,7 +326,7 @@ public final class CustomCommandLine extends CommandLine {
           arg.append(toString.apply(parts.next()));
         }
       }
-      builder.add(arg.toString());
+      consumer.accept(arg.toString());
     }
   }
 
@@ -371,20 +372,20 @@ public final class CustomCommandLine extends CommandLine {
     }
 
     @Override
-    void eval(ImmutableList.Builder<String> builder) {
+    void eval(Consumer<String> consumer) {
       for (Object item : sequence) {
         if (item == null) {
           continue;
         }
 
         if (beforeEach != null) {
-          builder.add(beforeEach);
+          consumer.accept(beforeEach);
         }
         String arg = item.toString();
         if (formatEach != null) {
           arg = String.format(formatEach, arg);
         }
-        builder.add(arg);
+        consumer.accept(arg);
       }
     }
   }
@@ -755,8 +756,24 @@ public final class CustomCommandLine extends CommandLine {
     return argumentsInternal(Preconditions.checkNotNull(artifactExpander));
   }
 
+  @Override
+  public void forEachArgument(Consumer<String> consumer) {
+    evaluate(null, consumer);
+  }
+
+  @Override
+  public void forEachArgument(ArtifactExpander artifactExpander, Consumer<String> consumer) {
+    evaluate(Preconditions.checkNotNull(artifactExpander), consumer);
+  }
+
   private Iterable<String> argumentsInternal(@Nullable ArtifactExpander artifactExpander) {
     ImmutableList.Builder<String> builder = ImmutableList.builder();
+    evaluate(artifactExpander, builder::add);
+    return builder.build();
+  }
+
+  /** Evaluates all arguments in order, passing the resulting strings to {@code consumer}. */
+  private void evaluate(@Nullable ArtifactExpander artifactExpander, Consumer<String> consumer) {
     for (Object arg : arguments) {
       Object substitutedArg = substituteTreeFileArtifactArgvFragment(arg);
       if (substitutedArg instanceof ArgvFragment) {
@@ -764,15 +781,14 @@ public final class CustomCommandLine extends CommandLine {
             && substitutedArg instanceof TreeArtifactExpansionArgvFragment) {
           TreeArtifactExpansionArgvFragment expansionArg =
               (TreeArtifactExpansionArgvFragment) substitutedArg;
-          expansionArg.eval(builder, artifactExpander);
+          expansionArg.eval(consumer, artifactExpander);
         } else {
-          ((ArgvFragment) substitutedArg).eval(builder);
+          ((ArgvFragment) substitutedArg).eval(consumer);
         }
       } else {
-        builder.add(substitutedArg.toString());
+        consumer.accept(substitutedArg.toString());
       }
     }
-    return builder.build();
   }
 
   /**
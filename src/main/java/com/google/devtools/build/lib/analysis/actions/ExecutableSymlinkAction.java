@@ -34,9 +34,10 @@ public final class ExecutableSymlinkAction extends SymlinkAction {
 
   @Override
   public void execute(ActionExecutionContext actionExecutionContext)
-      throws ActionExecutionException {
+      throws ActionExecutionException, InterruptedException {
     Path inputPath = actionExecutionContext.getExecRoot().getRelative(getInputPath());
     try {
+      actionExecutionContext.getActionInputPrefetcher().prefetchFiles(getInputs());
       // Validate that input path is a file with the executable bit is set.
       if (!inputPath.isFile()) {
         throw new ActionExecutionException(
@@ -31,6 +31,7 @@ import com.google.devtools.build.lib.util.ShellEscaper;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 
 /**
@@ -114,43 +115,39 @@ public final class ParameterFileWriteAction extends AbstractFileWriteAction {
 
     @Override
     public void writeOutputFile(OutputStream out) throws IOException {
-      Iterable<String> arguments = commandLine.arguments(artifactExpander);
-
+      boolean quoted;
       switch (type) {
         case SHELL_QUOTED :
-          writeContentQuoted(out, arguments);
+          quoted = true;
           break;
         case UNQUOTED :
-          writeContentUnquoted(out, arguments);
+          quoted = false;
           break;
         default :
           throw new AssertionError();
       }
+      writeContent(out, quoted);
     }
 
     /**
-     * Writes the arguments from the list into the parameter file.
-     */
-    private void writeContentUnquoted(OutputStream outputStream, Iterable<String> arguments)
-        throws IOException {
-      OutputStreamWriter out = new OutputStreamWriter(outputStream, charset);
-      for (String line : arguments) {
-        out.write(line);
-        out.write('\n');
-      }
-      out.flush();
-    }
-
-    /**
-     * Writes the arguments from the list into the parameter file with shell
-     * quoting (if required).
+     * Writes the arguments into the parameter file one per line, with shell quoting (if required).
+     * The arguments are streamed from the command line rather than collected into a list first.
      */
-    private void writeContentQuoted(OutputStream outputStream, Iterable<String> arguments)
-        throws IOException {
+    private void writeContent(OutputStream outputStream, boolean quoted) throws IOException {
       OutputStreamWriter out = new OutputStreamWriter(outputStream, charset);
-      for (String line : ShellEscaper.escapeAll(arguments)) {
-        out.write(line);
-        out.write('\n');
+      try {
+        commandLine.forEachArgument(
+            artifactExpander,
+            arg -> {
+              try {
+                out.write(quoted ? ShellEscaper.escapeString(arg) : arg);
+                out.write('\n');
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
       }
       out.flush();
     }
@@ -162,7 +159,7 @@ public final class ParameterFileWriteAction extends AbstractFileWriteAction {
     f.addString(GUID);
     f.addString(String.valueOf(makeExecutable));
     f.addString(type.toString());
-    f.addStrings(commandLine.arguments());
+    commandLine.addToFingerprint(f);
     return f.hexDigestAndReset();
   }
 }
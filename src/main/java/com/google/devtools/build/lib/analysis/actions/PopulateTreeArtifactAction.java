@@ -155,8 +155,12 @@ public final class PopulateTreeArtifactAction extends AbstractAction {
       throws ActionExecutionException, InterruptedException {
     Spawn spawn;
 
-    // Create a spawn to unzip the archive file into the output TreeArtifact.
+    // Create a spawn to unzip the archive file into the output TreeArtifact. The manifest is read
+    // here rather than by the spawn, so it has to be on local disk first.
     try {
+      actionExecutionContext
+          .getActionInputPrefetcher()
+          .prefetchFiles(ImmutableList.of(archiveManifest));
       spawn = createSpawn();
     } catch (IOException e) {
       throw new ActionExecutionException(e, this, false);
@@ -102,8 +102,10 @@ public class SymlinkAction extends AbstractAction {
 
   @Override
   public void execute(ActionExecutionContext actionExecutionContext)
-      throws ActionExecutionException {
+      throws ActionExecutionException, InterruptedException {
     try {
+      // The symlink must not dangle if the input was left on a remote server.
+      actionExecutionContext.getActionInputPrefetcher().prefetchFiles(getInputs());
       getOutputPath()
           .createSymbolicLink(actionExecutionContext.getExecRoot().getRelative(inputPath));
     } catch (IOException e) {
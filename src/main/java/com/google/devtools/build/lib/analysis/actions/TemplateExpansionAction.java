@@ -352,7 +352,10 @@ public final class TemplateExpansionAction extends AbstractFileWriteAction {
   }
 
   @Override
-  public DeterministicWriter newDeterministicWriter(ActionExecutionContext ctx) throws IOException {
+  public DeterministicWriter newDeterministicWriter(ActionExecutionContext ctx)
+      throws IOException, InterruptedException {
+    // A template artifact is read in-process, so it has to be on local disk.
+    ctx.getActionInputPrefetcher().prefetchFiles(getInputs());
     return new ByteStringDeterministicWriter(
         ByteString.copyFrom(getFileContents().getBytes(Template.DEFAULT_CHARSET)));
   }
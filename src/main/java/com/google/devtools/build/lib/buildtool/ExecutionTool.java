@@ -458,6 +458,9 @@ public class ExecutionTool {
       for (ActionContextProvider actionContextProvider : actionContextProviders) {
         actionContextProvider.executionPhaseEnding();
       }
+      if (fileCache instanceof SingleBuildFileCache) {
+        log.info(fileCache.toString());
+      }
 
       Profiler.instance().markPhase(ProfilePhase.FINISH);
 
@@ -58,6 +58,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.annotation.Nullable;
 
 /**
@@ -65,6 +66,7 @@ import javax.annotation.Nullable;
  */
 @VisibleForTesting
 public class SkyframeBuilder implements Builder {
+  private static final Logger logger = Logger.getLogger(SkyframeBuilder.class.getName());
 
   private final SkyframeExecutor skyframeExecutor;
   private final boolean keepGoing;
@@ -217,6 +219,7 @@ public class SkyframeBuilder implements Builder {
       watchdog.stop();
       skyframeExecutor.setActionExecutionProgressReportingObjects(null, null, null);
       statusReporter.unregisterFromEventBus();
+      logger.info(actionCacheChecker.toString());
     }
 
     if (!exitCodes.isEmpty()) {
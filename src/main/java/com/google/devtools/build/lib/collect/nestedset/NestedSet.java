@@ -16,6 +16,8 @@ package com.google.devtools.build.lib.collect.nestedset;
 import static java.util.stream.Collectors.joining;
 
 import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.devtools.build.lib.collect.CompactHashSet;
@@ -44,6 +46,28 @@ public final class NestedSet<E> implements Iterable<E> {
   private static final byte[] LEAF_MEMO = {};
   private static final Object[] EMPTY_CHILDREN = {};
 
+  /** Flattenings smaller than this are cheap enough to recompute and are never cached. */
+  private static final int MIN_CACHED_FLATTENING_SIZE = 128;
+
+  /** Upper bound on the total number of elements held by {@link #FLATTENINGS}. */
+  private static final long MAX_CACHED_FLATTENING_ELEMENTS = 4L << 20;
+
+  /**
+   * Recently computed flattenings of large sets, keyed by identity of their children array.
+   *
+   * <p>Large transitive sets (classpaths, header sets) are flattened over and over by their
+   * consumers, and distinct NestedSet instances share the same children array whenever one wraps
+   * another without adding anything. Keying on the array lets all of them reuse one flattening.
+   * Keys are weak, so an entry never outlives the sets that own its array, and the total number of
+   * cached elements is bounded.
+   */
+  private static final Cache<Object[], ImmutableList<Object>> FLATTENINGS =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .maximumWeight(MAX_CACHED_FLATTENING_ELEMENTS)
+          .weigher((Object[] key, ImmutableList<Object> value) -> value.size())
+          .build();
+
   /**
    * Construct an empty NestedSet.  Should only be called by Order's class initializer.
    */
@@ -268,26 +292,36 @@ public final class NestedSet<E> implements Iterable<E> {
   }
 
   /**
-   * Implementation of {@link #toList}.  Uses one of three strategies based on the value of
-   * {@code this.memo}: wrap our direct items in a list, call {@link #lockedExpand} to perform
-   * the initial {@link #walk}, or call {@link #replay} if we have a nontrivial memo.
+   * Implementation of {@link #toList}.  Uses one of four strategies: wrap our direct items in a
+   * list, return a cached flattening of our children from {@link #FLATTENINGS}, or, based on the
+   * value of {@code this.memo}, call {@link #lockedExpand} to perform the initial {@link #walk} or
+   * call {@link #replay} if we have a nontrivial memo.
    */
   private ImmutableList<E> expand() {
     // This value is only set in the constructor, so safe to test here with no lock.
     if (memo == LEAF_MEMO) {
       return ImmutableList.<E>copyOf(new ArraySharingCollection<E>((Object[]) children));
     }
+    Object[] children = (Object[]) this.children;
+    ImmutableList<E> flattened = (ImmutableList<E>) FLATTENINGS.getIfPresent(children);
+    if (flattened != null) {
+      return flattened;
+    }
     CompactHashSet<E> members = lockedExpand();
     if (members != null) {
-      return ImmutableList.copyOf(members);
+      flattened = ImmutableList.copyOf(members);
+    } else {
+      // TODO:  We could record the exact size (inside memo, or by making order an int with two
+      // bits for Order.ordinal()) and avoid an array copy here.  It's not directly visible in
+      // profiles but it would reduce garbage generated.
+      ImmutableList.Builder<E> output = ImmutableList.builder();
+      replay(output, children, memo, 0);
+      flattened = output.build();
     }
-    Object[] children = (Object[]) this.children;
-    // TODO:  We could record the exact size (inside memo, or by making order an int with two bits
-    // for Order.ordinal()) and avoid an array copy here.  It's not directly visible in profiles but
-    // it would reduce garbage generated.
-    ImmutableList.Builder<E> output = ImmutableList.builder();
-    replay(output, children, memo, 0);
-    return output.build();
+    if (flattened.size() >= MIN_CACHED_FLATTENING_SIZE) {
+      FLATTENINGS.put(children, (ImmutableList<Object>) flattened);
+    }
+    return flattened;
   }
 
   // Hack to share our internal array with ImmutableList/ImmutableSet, or avoid
@@ -26,6 +26,7 @@ import com.google.devtools.build.lib.actions.SandboxedSpawnActionContext;
 import com.google.devtools.build.lib.actions.Spawn;
 import com.google.devtools.build.lib.actions.SpawnActionContext;
 import com.google.devtools.build.lib.actions.Spawns;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.exec.SpawnResult.Status;
 import com.google.devtools.build.lib.exec.SpawnRunner.ProgressStatus;
 import com.google.devtools.build.lib.exec.SpawnRunner.SpawnExecutionPolicy;
@@ -79,7 +80,8 @@ public abstract class AbstractSpawnStrategy implements SandboxedSpawnActionConte
       }
 
       @Override
-      public void prefetchInputs(Iterable<ActionInput> inputs) throws IOException {
+      public void prefetchInputs(Iterable<ActionInput> inputs)
+          throws IOException, InterruptedException {
         actionExecutionContext.getActionInputPrefetcher().prefetchFiles(inputs);
       }
 
@@ -88,6 +90,11 @@ public abstract class AbstractSpawnStrategy implements SandboxedSpawnActionConte
         return actionExecutionContext.getActionInputFileCache();
       }
 
+      @Override
+      public MetadataHandler getMetadataHandler() {
+        return actionExecutionContext.getMetadataHandler();
+      }
+
       @Override
       public ArtifactExpander getArtifactExpander() {
         return actionExecutionContext.getArtifactExpander();
@@ -117,6 +117,24 @@ public class ExecutionOptions extends OptionsBase {
   )
   public boolean testKeepGoing;
 
+  // TODO(bazel-team): Also start the test actions with the longest recorded durations first. Test
+  // actions are started by Skyframe as soon as their inputs are built, and neither the executor nor
+  // the ResourceManager can prioritize them yet.
+  @Option(
+    name = "experimental_test_shard_duration_hints",
+    defaultValue = "false",
+    category = "testing",
+    documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+    effectTags = {OptionEffectTag.EXECUTION},
+    help =
+        "If set, the durations of test cases are recorded in the output base, and sharded tests "
+            + "get the durations of their previous runs in TEST_SHARD_DURATIONS_FILE, so that "
+            + "test runners can balance their shards by duration instead of by number of tests. "
+            + "Only tests whose results are never cached get the durations, e.g. with "
+            + "--cache_test_results=no. The order in which tests are started is unchanged."
+  )
+  public boolean testShardDurationHints;
+
   @Option(
     name = "runs_per_test_detects_flakes",
     defaultValue = "false",
@@ -302,4 +320,17 @@ public class ExecutionOptions extends OptionsBase {
             + " aggressive RAM optimizations in some cases."
   )
   public boolean enableCriticalPathProfiling;
+
+  @Option(
+    name = "experimental_cc_include_scanning",
+    defaultValue = "false",
+    category = "strategy",
+    documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+    effectTags = {OptionEffectTag.EXECUTION},
+    help =
+        "If set, C++ compile actions scan their sources for #include directives before they are "
+            + "executed, and only declare the headers they transitively include as inputs. "
+            + "Actions that include a macro-computed header keep all declared headers as inputs."
+  )
+  public boolean ccIncludeScanning;
 }
@@ -15,11 +15,8 @@ package com.google.devtools.build.lib.exec;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.collect.Maps;
 import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.Striped;
 import com.google.devtools.build.lib.actions.ActionInput;
 import com.google.devtools.build.lib.actions.ActionInputFileCache;
 import com.google.devtools.build.lib.actions.DigestOfDirectoryException;
@@ -30,6 +27,10 @@ import com.google.devtools.build.lib.vfs.Path;
 import com.google.protobuf.ByteString;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -38,66 +39,129 @@ import javax.annotation.concurrent.ThreadSafe;
  *
  * <p>Simply maintains a two-way cached mapping from digest <--> filename that may be populated
  * only once.
+ *
+ * <p>Lookups of inputs that are already cached do not take any lock, so the many concurrent spawns
+ * that share the same toolchain inputs do not contend with each other. Loading an input takes one
+ * of {@link #LOAD_STRIPES} locks, so that each input is digested once, without a single slow file
+ * holding up the loading of unrelated ones. The digest-to-input mapping is only built once
+ * somebody asks for it, as only remote execution does.
  */
 @ThreadSafe
 public class SingleBuildFileCache implements ActionInputFileCache {
+  private static final int LOAD_STRIPES = 64;
+
   private final Path execRoot;
 
+  // The cached result for each input: either its Metadata or, if we can't get the digest, the
+  // IOException. Storing the exception avoids extra file IO for files that are allowed to be
+  // missing, as we first check a likely non-existent content file first.
+  // Even small-ish builds, as of 11/21/2011 typically have over 10k artifacts, so it's unlikely
+  // that this default will adversely affect memory in most cases.
+  private final ConcurrentMap<ActionInput, Object> pathToMetadata =
+      new ConcurrentHashMap<>(10000);
+  private final Striped<Lock> loadLocks = Striped.lock(LOAD_STRIPES);
+
+  private final ConcurrentMap<ByteString, ActionInput> digestToPath = new ConcurrentHashMap<>();
+  // Set once the reverse mapping is first used; until then, digestToPath is not maintained.
+  private volatile boolean digestToPathUsed;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong bytesDigested = new AtomicLong();
+  private final AtomicLong loadNanos = new AtomicLong();
+
   public SingleBuildFileCache(String cwd, FileSystem fs) {
     this.execRoot = fs.getPath(cwd);
   }
 
-  // If we can't get the digest, we store the exception. This avoids extra file IO for files
-  // that are allowed to be missing, as we first check a likely non-existent content file
-  // first.  Further we won't need to unwrap the exception in getDigest().
-  private final LoadingCache<ActionInput, ActionInputMetadata> pathToMetadata =
-      CacheBuilder.newBuilder()
-      // We default to 10 disk read threads, but we don't expect them all to edit the map
-      // simultaneously.
-      .concurrencyLevel(8)
-      // Even small-ish builds, as of 11/21/2011 typically have over 10k artifacts, so it's
-      // unlikely that this default will adversely affect memory in most cases.
-      .initialCapacity(10000)
-      .build(new CacheLoader<ActionInput, ActionInputMetadata>() {
-        @Override
-        public ActionInputMetadata load(ActionInput input) {
-          Path path = null;
-          try {
-            path = execRoot.getRelative(input.getExecPath());
-            byte[] digest = path.getDigest();
-            BaseEncoding hex = BaseEncoding.base16().lowerCase();
-            ByteString hexDigest = ByteString.copyFrom(hex.encode(digest).getBytes(US_ASCII));
-            // Inject reverse mapping. Doing this unconditionally in getDigest() showed up
-            // as a hotspot in CPU profiling.
-            digestToPath.put(hexDigest, input);
-            return new ActionInputMetadata(digest, path.getFileSize());
-          } catch (IOException e) {
-            if (path != null && path.isDirectory()) {
-              // TODO(bazel-team): This is rather presumptuous- it could have been another type of
-              // IOException.
-              return new ActionInputMetadata(
-                  new DigestOfDirectoryException(
-                      "Input is a directory: " + input.getExecPathString()));
-            } else {
-              return new ActionInputMetadata(e);
-            }
-          }
-        }
-      });
-
-  private final Map<ByteString, ActionInput> digestToPath = Maps.newConcurrentMap();
-
   @Override
   public Metadata getMetadata(ActionInput input) throws IOException {
-    return pathToMetadata.getUnchecked(input).getMetadata();
+    Object value = pathToMetadata.get(input);
+    if (value != null) {
+      hits.incrementAndGet();
+    } else {
+      value = load(input);
+    }
+    if (value instanceof IOException) {
+      throw (IOException) value;
+    }
+    return (Metadata) value;
+  }
+
+  private Object load(ActionInput input) {
+    Lock lock = loadLocks.get(input);
+    lock.lock();
+    try {
+      Object value = pathToMetadata.get(input);
+      if (value != null) {
+        // Loaded by another thread while we were waiting for the lock.
+        hits.incrementAndGet();
+        return value;
+      }
+      misses.incrementAndGet();
+      long startTime = System.nanoTime();
+      value = computeMetadata(input);
+      loadNanos.addAndGet(System.nanoTime() - startTime);
+      pathToMetadata.put(input, value);
+      // Must come after the put above; see getInputFromDigest.
+      if (digestToPathUsed && value instanceof Metadata) {
+        addReverseMapping(input, (Metadata) value);
+      }
+      return value;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Object computeMetadata(ActionInput input) {
+    Path path = null;
+    try {
+      path = execRoot.getRelative(input.getExecPath());
+      byte[] digest = path.getDigest();
+      long size = path.getFileSize();
+      bytesDigested.addAndGet(size);
+      return FileArtifactValue.createNormalFile(digest, size);
+    } catch (IOException e) {
+      if (path != null && path.isDirectory()) {
+        // TODO(bazel-team): This is rather presumptuous- it could have been another type of
+        // IOException.
+        return new DigestOfDirectoryException(
+            "Input is a directory: " + input.getExecPathString());
+      } else {
+        return e;
+      }
+    }
+  }
+
+  private void addReverseMapping(ActionInput input, Metadata metadata) {
+    BaseEncoding hex = BaseEncoding.base16().lowerCase();
+    digestToPath.put(
+        ByteString.copyFrom(hex.encode(metadata.getDigest()).getBytes(US_ASCII)), input);
   }
 
   @Nullable
   @Override
   public ActionInput getInputFromDigest(ByteString digest) {
+    if (!digestToPathUsed) {
+      enableReverseMapping();
+    }
     return digestToPath.get(digest);
   }
 
+  private synchronized void enableReverseMapping() {
+    if (digestToPathUsed) {
+      return;
+    }
+    // Loads that store their value after this write see it and add their own mapping; the values
+    // stored before it are visible to the iteration below.
+    digestToPathUsed = true;
+    for (Map.Entry<ActionInput, Object> entry : pathToMetadata.entrySet()) {
+      if (entry.getValue() instanceof Metadata) {
+        addReverseMapping(entry.getKey(), (Metadata) entry.getValue());
+      }
+    }
+  }
+
   @Override
   public Path getInputPath(ActionInput input) {
     return execRoot.getRelative(input.getExecPath());
@@ -105,35 +169,23 @@ public class SingleBuildFileCache implements ActionInputFileCache {
 
   @Override
   public boolean contentsAvailableLocally(ByteString digest) {
-    return digestToPath.containsKey(digest);
+    return getInputFromDigest(digest) != null;
   }
 
-  /** Container class for caching I/O around ActionInputs. */
-  private static class ActionInputMetadata {
-    private final Metadata metadata;
-    private final IOException exceptionOnAccess;
-
-    /** Constructor for a successful lookup. */
-    ActionInputMetadata(byte[] digest, long size) {
-      this.metadata = FileArtifactValue.createNormalFile(digest, size);
-      this.exceptionOnAccess = null;
-    }
-
-    /** Constructor for a failed lookup, size will be 0. */
-    ActionInputMetadata(IOException exceptionOnAccess) {
-      this.exceptionOnAccess = exceptionOnAccess;
-      this.metadata = null;
-    }
+  /** Returns the number of lookups answered from the cache. */
+  public long getHits() {
+    return hits.get();
+  }
 
-    Metadata getMetadata() throws IOException {
-      maybeRaiseException();
-      return metadata;
-    }
+  /** Returns the number of lookups that had to read the file system. */
+  public long getMisses() {
+    return misses.get();
+  }
 
-    private void maybeRaiseException() throws IOException {
-      if (exceptionOnAccess != null) {
-        throw exceptionOnAccess;
-      }
-    }
+  @Override
+  public String toString() {
+    return String.format(
+        "SingleBuildFileCache[hits=%d, misses=%d, bytesDigested=%d, loadMs=%d]",
+        hits.get(), misses.get(), bytesDigested.get(), loadNanos.get() / 1000000);
   }
 }
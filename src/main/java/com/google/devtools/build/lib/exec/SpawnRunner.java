@@ -18,6 +18,7 @@ import com.google.devtools.build.lib.actions.ActionInputFileCache;
 import com.google.devtools.build.lib.actions.Artifact.ArtifactExpander;
 import com.google.devtools.build.lib.actions.ExecException;
 import com.google.devtools.build.lib.actions.Spawn;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.util.io.FileOutErr;
 import com.google.devtools.build.lib.vfs.PathFragment;
 import java.io.IOException;
@@ -146,7 +147,7 @@ public interface SpawnRunner {
      * again. I suppose we could require implementations to memoize getInputMapping (but not compute
      * it eagerly), and that may change in the future.
      */
-    void prefetchInputs(Iterable<ActionInput> inputs) throws IOException;
+    void prefetchInputs(Iterable<ActionInput> inputs) throws IOException, InterruptedException;
 
     /**
      * The input file metadata cache for this specific spawn, which can be used to efficiently
@@ -154,6 +155,12 @@ public interface SpawnRunner {
      */
     ActionInputFileCache getActionInputFileCache();
 
+    /**
+     * The metadata handler of the action this spawn belongs to. Runners that do not create some
+     * outputs in the output tree use it to inject the metadata of those outputs instead.
+     */
+    MetadataHandler getMetadataHandler();
+
     /** An artifact expander. */
     // TODO(ulfjack): This is only used for the sandbox runners to compute a set of empty
     // directories. We shouldn't have this and the getInputMapping method; maybe there's a way to
@@ -29,6 +29,7 @@ import com.google.devtools.build.lib.actions.SpawnActionContext;
 import com.google.devtools.build.lib.actions.TestExecException;
 import com.google.devtools.build.lib.analysis.RunfilesSupplierImpl;
 import com.google.devtools.build.lib.analysis.config.BinTools;
+import com.google.devtools.build.lib.cmdline.Label;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventKind;
 import com.google.devtools.build.lib.events.Reporter;
@@ -49,6 +50,8 @@ import com.google.devtools.build.lib.view.test.TestStatus.TestResultData.Builder
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Map;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
 
 /** Runs TestRunnerAction actions. */
 @ExecutionStrategy(
@@ -76,11 +79,25 @@ public class StandaloneTestStrategy extends TestStrategy {
   public static final TestPolicy DEFAULT_LOCAL_POLICY = new TestPolicy(ENV_VARS);
 
   protected final Path tmpDirRoot;
+  @Nullable private final TestDurationStore durationStore;
 
   public StandaloneTestStrategy(
       ExecutionOptions executionOptions, BinTools binTools, Path tmpDirRoot) {
+    this(executionOptions, binTools, tmpDirRoot, null);
+  }
+
+  /**
+   * @param durationStore where to record the durations of test cases and take the durations of
+   *     their previous runs from, for balancing shards; null to not do either.
+   */
+  public StandaloneTestStrategy(
+      ExecutionOptions executionOptions,
+      BinTools binTools,
+      Path tmpDirRoot,
+      @Nullable TestDurationStore durationStore) {
     super(executionOptions, binTools);
     this.tmpDirRoot = tmpDirRoot;
+    this.durationStore = durationStore;
   }
 
   @Override
@@ -103,6 +120,11 @@ public class StandaloneTestStrategy extends TestStrategy {
                 action.getRunNumber()));
     Map<String, String> env = setupEnvironment(
         action, actionExecutionContext.getClientEnv(), execRoot, runfilesDir, tmpDir);
+    if (durationStore != null
+        && action.getExecutionSettings().getTotalShards() > 0
+        && action.resultsAreNeverReused()) {
+      addShardingHints(action, actionExecutionContext, tmpDir, env);
+    }
     Path workingDirectory = runfilesDir.getRelative(action.getRunfilesPrefix());
 
     ResolvedPaths resolvedPaths = action.resolve(execRoot);
@@ -184,6 +206,12 @@ public class StandaloneTestStrategy extends TestStrategy {
                   testOutputsBuilder.build(),
                   data.getWarningList(),
                   true));
+      // Only the test cases of the last attempt are reported, so the test.xml files of the previous
+      // attempts aren't parsed.
+      TestCase details = parseLastTestResult(action, resolvedPaths.getXmlOutputPath());
+      if (details != null && executionOptions.testSummary == TestSummaryFormat.DETAILED) {
+        dataBuilder.setTestCase(details);
+      }
       finalizeTest(actionExecutionContext, action, dataBuilder.build());
     } catch (IOException e) {
       actionExecutionContext.getEventHandler().handle(Event.error("Caught I/O exception: " + e));
@@ -191,6 +219,53 @@ public class StandaloneTestStrategy extends TestStrategy {
     }
   }
 
+  /**
+   * Parses the given test.xml file if its test cases are needed, either for the test summary or for
+   * their durations. The durations are recorded as the test cases are parsed. Returns null if the
+   * file doesn't need to be parsed, or can't be.
+   */
+  @Nullable
+  private TestCase parseLastTestResult(TestRunnerAction action, Path xmlOutputPath) {
+    if (executionOptions.testSummary != TestSummaryFormat.DETAILED && durationStore == null) {
+      return null;
+    }
+    Label label = action.getOwner().getLabel();
+    Consumer<TestCase> testCaseConsumer =
+        durationStore == null
+            ? testCase -> {}
+            : testCase -> durationStore.record(label, testCase);
+    return parseTestResult(xmlOutputPath, testCaseConsumer);
+  }
+
+  /**
+   * Passes the durations of the test cases of the previous runs of a sharded test to the test
+   * runner, which can use them to balance the shards. The durations are the same for all shards of
+   * the test, since they are only updated at the end of the command.
+   *
+   * <p>The hints file is neither an input of the spawn nor part of the action key, so the hints are
+   * only passed to tests whose shards are all executed in this command. A shard result reused from
+   * an earlier command may have been split by other durations, and mixing it with shards split by
+   * the current ones could run some test cases twice and others not at all.
+   */
+  private void addShardingHints(
+      TestRunnerAction action,
+      ActionExecutionContext actionExecutionContext,
+      Path tmpDir,
+      Map<String, String> env) {
+    Path hintsFile = tmpDir.getParentDirectory().getChild(tmpDir.getBaseName() + ".durations");
+    try {
+      FileSystemUtils.createDirectoryAndParents(hintsFile.getParentDirectory());
+      if (durationStore.writeShardingHints(action.getOwner().getLabel(), hintsFile)) {
+        env.put("TEST_SHARD_DURATIONS_FILE", hintsFile.getPathString());
+      }
+    } catch (IOException e) {
+      // The hints are optional, so don't fail the test for them.
+      actionExecutionContext
+          .getEventHandler()
+          .handle(Event.warn("Could not write test duration hints to " + hintsFile + ": " + e));
+    }
+  }
+
   private void processFailedTestAttempt(
       int attempt,
       ActionExecutionContext actionExecutionContext,
@@ -253,9 +328,6 @@ public class StandaloneTestStrategy extends TestStrategy {
     dataBuilder.addAllTestProcessTimes(data.getTestProcessTimesList());
     dataBuilder.setStartTimeMillisEpoch(data.getStartTimeMillisEpoch());
     dataBuilder.setRunDurationMillis(data.getRunDurationMillis());
-    if (data.hasTestCase()) {
-      dataBuilder.setTestCase(data.getTestCase());
-    }
   }
 
   private TestResultData executeTestAttempt(
@@ -344,15 +416,6 @@ public class StandaloneTestStrategy extends TestStrategy {
         }
       }
 
-      TestCase details =
-          parseTestResult(
-              action
-                  .resolve(actionExecutionContext.getExecRoot())
-                  .getXmlOutputPath());
-      if (details != null) {
-        builder.setTestCase(details);
-      }
-
       if (action.isCoverageMode()) {
         builder.setHasCoverage(true);
       }
@@ -0,0 +1,175 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.exec;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Longs;
+import com.google.devtools.build.lib.cmdline.Label;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.view.test.TestStatus.TestCase;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Durations of the test cases of each test target in previous runs, kept across commands in a
+ * file. Sharded tests get them as hints for balancing their shards, see {@code
+ * --experimental_test_shard_duration_hints}.
+ *
+ * <p>The durations tests get are the ones loaded at the start of the command, so that all shards
+ * of a test split their test cases the same way. Durations recorded during the command are only
+ * written back by {@link #save}.
+ */
+@ThreadSafe
+public final class TestDurationStore {
+  private static final Logger logger = Logger.getLogger(TestDurationStore.class.getName());
+
+  private static final Splitter FIELD_SPLITTER = Splitter.on('\t').limit(3);
+
+  private final Path file;
+  private final ImmutableMap<String, ImmutableMap<String, Long>> loaded;
+  private final ConcurrentMap<String, Map<String, Long>> recorded = new ConcurrentHashMap<>();
+
+  private TestDurationStore(Path file, ImmutableMap<String, ImmutableMap<String, Long>> loaded) {
+    this.file = file;
+    this.loaded = loaded;
+  }
+
+  /**
+   * Loads the durations from the given file. Lines that can't be parsed are skipped, and the store
+   * is empty if the file doesn't exist or can't be read, since the durations are only hints.
+   */
+  public static TestDurationStore load(Path file) {
+    Map<String, Map<String, Long>> durations = new HashMap<>();
+    if (file.exists()) {
+      try {
+        for (String line : FileSystemUtils.readLines(file, UTF_8)) {
+          List<String> fields = FIELD_SPLITTER.splitToList(line);
+          Long millis = fields.size() == 3 ? Longs.tryParse(fields.get(1)) : null;
+          if (millis != null) {
+            durations
+                .computeIfAbsent(fields.get(0), label -> new HashMap<>())
+                .put(fields.get(2), millis);
+          }
+        }
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Could not read test durations from " + file, e);
+        durations.clear();
+      }
+    }
+    ImmutableMap.Builder<String, ImmutableMap<String, Long>> loaded = ImmutableMap.builder();
+    for (Map.Entry<String, Map<String, Long>> entry : durations.entrySet()) {
+      loaded.put(entry.getKey(), ImmutableMap.copyOf(entry.getValue()));
+    }
+    return new TestDurationStore(file, loaded.build());
+  }
+
+  /**
+   * Returns the durations in milliseconds of the test cases of the given test as of the start of
+   * the command, keyed by the JUnit display name of the test case, i.e. {@code method(class)}.
+   */
+  public ImmutableMap<String, Long> getTestCaseDurations(Label label) {
+    ImmutableMap<String, Long> durations = loaded.get(label.toString());
+    return durations == null ? ImmutableMap.<String, Long>of() : durations;
+  }
+
+  /**
+   * Records the durations of the test cases that ran in the given results of (a shard of) a test,
+   * which can be a single test case.
+   */
+  public void record(Label label, TestCase result) {
+    Map<String, Long> durations = new HashMap<>();
+    collectTestCaseDurations(result, durations);
+    if (!durations.isEmpty()) {
+      recorded
+          .computeIfAbsent(label.toString(), key -> new ConcurrentHashMap<>())
+          .putAll(durations);
+    }
+  }
+
+  private static void collectTestCaseDurations(TestCase testCase, Map<String, Long> durations) {
+    if (testCase.getType() == TestCase.Type.TEST_CASE) {
+      if (testCase.getRun() && testCase.hasName() && testCase.hasRunDurationMillis()) {
+        durations.put(
+            testCase.getName() + "(" + testCase.getClassName() + ")",
+            testCase.getRunDurationMillis());
+      }
+      return;
+    }
+    for (TestCase child : testCase.getChildList()) {
+      collectTestCaseDurations(child, durations);
+    }
+  }
+
+  /**
+   * Writes the loaded durations, updated with the ones recorded since, back to the file. Test cases
+   * that didn't run during this command, e.g. because their shard was cached, keep their previous
+   * durations.
+   */
+  public void save() throws IOException {
+    if (recorded.isEmpty()) {
+      return;
+    }
+    Map<String, Map<String, Long>> durations = new TreeMap<>();
+    for (Map.Entry<String, ImmutableMap<String, Long>> entry : loaded.entrySet()) {
+      durations.put(entry.getKey(), new TreeMap<>(entry.getValue()));
+    }
+    for (Map.Entry<String, Map<String, Long>> entry : recorded.entrySet()) {
+      durations.computeIfAbsent(entry.getKey(), label -> new TreeMap<>()).putAll(entry.getValue());
+    }
+
+    List<String> lines = new ArrayList<>();
+    for (Map.Entry<String, Map<String, Long>> target : durations.entrySet()) {
+      for (Map.Entry<String, Long> testCase : target.getValue().entrySet()) {
+        lines.add(target.getKey() + "\t" + testCase.getValue() + "\t" + testCase.getKey());
+      }
+    }
+    // Write to a temporary file first, so that an interrupted write doesn't lose all durations.
+    Path tmpFile = file.getParentDirectory().getChild(file.getBaseName() + ".tmp");
+    FileSystemUtils.writeLinesAs(tmpFile, UTF_8, lines);
+    tmpFile.renameTo(file);
+  }
+
+  /**
+   * Writes the durations of the test cases of the given test in the format expected by the test
+   * runner's duration sharding strategy: one test case per line, its duration in milliseconds
+   * followed by a space and its display name.
+   *
+   * @return whether there were any durations to write
+   */
+  boolean writeShardingHints(Label label, Path hintsFile) throws IOException {
+    ImmutableMap<String, Long> durations = getTestCaseDurations(label);
+    if (durations.isEmpty()) {
+      return false;
+    }
+    List<String> lines = new ArrayList<>(durations.size());
+    for (Map.Entry<String, Long> testCase : durations.entrySet()) {
+      lines.add(testCase.getValue() + " " + testCase.getKey());
+    }
+    FileSystemUtils.writeLinesAs(hintsFile, UTF_8, lines);
+    return true;
+  }
+}
@@ -52,6 +52,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
 
 /** A strategy for executing a {@link TestRunnerAction}. */
@@ -129,6 +130,12 @@ public abstract class TestStrategy implements TestActionContext {
 
   public static final PathFragment TEST_TMP_ROOT = PathFragment.create("_tmp");
 
+  /** How many of the test cases that passed to keep when parsing a test result XML file. */
+  protected static final int MAX_PASSED_TEST_CASES = 1000;
+
+  /** How many of the test cases that didn't pass to keep when parsing a test result XML file. */
+  protected static final int MAX_FAILED_TEST_CASES = 1000;
+
   // Used for generating unique temporary directory names. Contains the next numeric index for every
   // executable base name.
   private final Map<String, Integer> tmpIndex = new HashMap<>();
@@ -274,9 +281,22 @@ public abstract class TestStrategy implements TestActionContext {
     if (executionOptions.testSummary != TestSummaryFormat.DETAILED) {
       return null;
     }
+    return parseTestResult(resultFile, testCase -> {});
+  }
 
+  /**
+   * Parse a test result XML file into a {@link TestCase}, passing each test case to the given
+   * consumer as soon as it is parsed. Only the first {@link #MAX_PASSED_TEST_CASES} test cases that
+   * passed and the first {@link #MAX_FAILED_TEST_CASES} ones that didn't are kept in the result, so
+   * that memory use doesn't grow with the size of the file.
+   */
+  @Nullable
+  protected static TestCase parseTestResult(
+      Path resultFile, Consumer<TestCase> testCaseConsumer) {
     try (InputStream fileStream = resultFile.getInputStream()) {
-      return new TestXmlOutputParser().parseXmlIntoTestResult(fileStream);
+      return new TestXmlOutputParser(
+              testCaseConsumer, MAX_PASSED_TEST_CASES, MAX_FAILED_TEST_CASES)
+          .parseXmlIntoTestResult(fileStream);
     } catch (IOException | TestXmlOutputParserException e) {
       return null;
     }
@@ -20,6 +20,7 @@ import com.google.devtools.build.lib.view.test.TestStatus.TestCase;
 import com.google.devtools.build.lib.view.test.TestStatus.TestCase.Type;
 import com.google.protobuf.UninitializedMessageException;
 import java.io.InputStream;
+import java.util.function.Consumer;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
@@ -28,12 +29,39 @@ import javax.xml.stream.XMLStreamReader;
 /**
  * Parses a test.xml generated by jUnit or any testing framework into a protocol buffer. The schema
  * of the test.xml is a bit hazy, so there is some guesswork involved.
+ *
+ * <p>The file is parsed as a stream, and every test case is passed to a consumer as soon as its
+ * element ends. Since test suites can have a very large number of test cases, only a limited number
+ * of the ones that passed and of the ones that didn't is kept in the resulting tree. Test cases that
+ * didn't pass still count towards the status of their parent when they are not kept.
  */
 final class TestXmlOutputParser {
   // jUnit can use either "testsuites" or "testsuite".
   private static final ImmutableCollection<String> TOPLEVEL_ELEMENT_NAMES =
       ImmutableSet.of("testsuites", "testsuite");
 
+  private final Consumer<TestCase> testCaseConsumer;
+  private int passedTestCasesToKeep;
+  private int failedTestCasesToKeep;
+
+  TestXmlOutputParser() {
+    this(testCase -> {}, Integer.MAX_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Creates a parser for a single file.
+   *
+   * @param testCaseConsumer called with every test case, in the order they appear in the file
+   * @param maxPassedTestCases how many of the test cases that passed to keep in the tree
+   * @param maxFailedTestCases how many of the test cases that didn't pass to keep in the tree
+   */
+  TestXmlOutputParser(
+      Consumer<TestCase> testCaseConsumer, int maxPassedTestCases, int maxFailedTestCases) {
+    this.testCaseConsumer = testCaseConsumer;
+    this.passedTestCasesToKeep = maxPassedTestCases;
+    this.failedTestCasesToKeep = maxFailedTestCases;
+  }
+
   public TestCase parseXmlIntoTestResult(InputStream xmlStream)
       throws TestXmlOutputParserException {
     return parseXmlToTree(xmlStream);
@@ -232,7 +260,22 @@ final class TestXmlOutputParser {
               builder.addChild(parseTestSuite(parser, childElementName));
               break;
             case "testcase":
-              builder.addChild(parseTestCase(parser));
+              TestCase testCase = parseTestCase(parser);
+              testCaseConsumer.accept(testCase);
+              if (testCase.getStatus() == TestCase.Status.PASSED) {
+                if (passedTestCasesToKeep > 0) {
+                  passedTestCasesToKeep--;
+                  builder.addChild(testCase);
+                }
+              } else if (failedTestCasesToKeep > 0) {
+                failedTestCasesToKeep--;
+                builder.addChild(testCase);
+              } else if (testCase.getStatus() == TestCase.Status.ERROR) {
+                // Not kept, but the parent must still end up with the right status.
+                errors += 1;
+              } else {
+                failures += 1;
+              }
               break;
             case "failure":
               failures += 1;
@@ -191,12 +191,21 @@ public class AttributeContainer {
     if (!explicit && getExplicit(index)) {
       throw new IllegalArgumentException("attribute " + name + " already explicitly set");
     }
-    attributeValues[index] = value;
+    attributeValues[index] = canonicalize(value);
     if (explicit) {
       setExplicit(index);
     }
   }
 
+  /**
+   * Returns the object to store as the value of an attribute, given the value being set. The
+   * default implementation stores the value itself; subclasses may return an equal, shared
+   * instance instead.
+   */
+  protected Object canonicalize(Object value) {
+    return value;
+  }
+
   // This sets the attribute "explicitly" as if it came from the BUILD file.
   // At present, the sole use of this is for the test_suite.$implicit_tests
   // attribute, which is synthesized during package loading.  We do want to
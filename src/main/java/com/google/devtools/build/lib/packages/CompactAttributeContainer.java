@@ -0,0 +1,72 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.packages;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.devtools.build.lib.cmdline.Label;
+import com.google.devtools.build.lib.concurrent.BlazeInterners;
+import com.google.devtools.build.lib.util.StringCanonicalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link AttributeContainer} that shares attribute values between rules.
+ *
+ * <p>Packages with many generated rules repeat the same values over and over: {@code deps},
+ * {@code visibility} and {@code tags} lists in particular are frequently identical across
+ * thousands of rules. This container stores strings and lists of strings or labels as canonical,
+ * immutable instances, so that each distinct value is retained only once across all loaded
+ * packages.
+ *
+ * <p>Lists are stored as {@link ImmutableList}s, even if they were set as mutable lists. {@link
+ * GlobList}s are stored as is, since they carry the glob criteria they were created from.
+ *
+ * <p>This container is used instead of the default one if the server is started with {@code
+ * --host_jvm_args=-Dbazel.CompactAttributeContainers=1}.
+ */
+public class CompactAttributeContainer extends AttributeContainer {
+
+  private static final Interner<Object> VALUE_INTERNER = BlazeInterners.newWeakInterner();
+
+  /** Returns true if the server was asked to use compact attribute containers. */
+  public static boolean isEnabled() {
+    return "1".equals(System.getProperty("bazel.CompactAttributeContainers"));
+  }
+
+  public CompactAttributeContainer(RuleClass ruleClass) {
+    super(ruleClass);
+  }
+
+  @Override
+  protected Object canonicalize(Object value) {
+    if (value instanceof String) {
+      return StringCanonicalizer.intern((String) value);
+    }
+    if (value instanceof ImmutableList || (value != null && value.getClass() == ArrayList.class)) {
+      List<?> list = (List<?>) value;
+      if (list.isEmpty()) {
+        return ImmutableList.of();
+      }
+      for (Object element : list) {
+        if (!(element instanceof String || element instanceof Label)) {
+          return value;
+        }
+      }
+      return VALUE_INTERNER.intern(ImmutableList.copyOf(list));
+    }
+    return value;
+  }
+}
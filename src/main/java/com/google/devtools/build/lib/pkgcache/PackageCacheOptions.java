@@ -148,6 +148,19 @@ public class PackageCacheOptions extends OptionsBase {
   )
   public int maxDirectoriesToEagerlyVisitInGlobbing;
 
+  @Option(
+    name = "experimental_keep_globbing_filesystem_cache",
+    defaultValue = "false",
+    documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+    effectTags = {OptionEffectTag.LOADING_AND_ANALYSIS},
+    help =
+        "If true, the directory listings and file stats gathered while evaluating globs are kept "
+            + "across builds and shared by all packages, and only the entries for files reported "
+            + "as changed are discarded. The cache is still reset whenever the changed files are "
+            + "not known precisely, and results that depend on symlinks are re-read every build."
+  )
+  public boolean keepGlobbingFilesystemCache;
+
   @Option(
     name = "fetch",
     defaultValue = "true",
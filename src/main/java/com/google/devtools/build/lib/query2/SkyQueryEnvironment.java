@@ -74,7 +74,9 @@ import com.google.devtools.build.lib.query2.engine.QueryEvalResult;
 import com.google.devtools.build.lib.query2.engine.QueryException;
 import com.google.devtools.build.lib.query2.engine.QueryExpression;
 import com.google.devtools.build.lib.query2.engine.QueryExpressionMapper;
-import com.google.devtools.build.lib.query2.engine.QueryUtil.MinDepthUniquifierImpl;
+import com.google.devtools.build.lib.query2.engine.QueryUtil.DenseIdAssigner;
+import com.google.devtools.build.lib.query2.engine.QueryUtil.DenseIdMinDepthUniquifierImpl;
+import com.google.devtools.build.lib.query2.engine.QueryUtil.DenseIdUniquifierImpl;
 import com.google.devtools.build.lib.query2.engine.QueryUtil.MutableKeyExtractorBackedMapImpl;
 import com.google.devtools.build.lib.query2.engine.QueryUtil.ThreadSafeMutableKeyExtractorBackedSetImpl;
 import com.google.devtools.build.lib.query2.engine.QueryUtil.UniquifierImpl;
@@ -164,6 +166,9 @@ public class SkyQueryEnvironment extends AbstractBlazeQueryEnvironment<Target>
   private GraphBackedRecursivePackageProvider graphBackedRecursivePackageProvider;
   private ListeningExecutorService executor;
   private RecursivePackageProviderBackedTargetPatternResolver resolver;
+  // Ids shared by all the uniquifiers created while evaluating the current query.
+  private DenseIdAssigner<Label> labelIds = new DenseIdAssigner<>(DEFAULT_THREAD_COUNT);
+  private DenseIdAssigner<SkyKey> skyKeyIds = new DenseIdAssigner<>(DEFAULT_THREAD_COUNT);
   private final SkyKey universeKey;
   private final ImmutableList<TargetPatternKey> universeTargetPatternKeys;
 
@@ -408,6 +413,9 @@ public class SkyQueryEnvironment extends AbstractBlazeQueryEnvironment<Target>
       QueryExpression expr, ThreadSafeOutputFormatterCallback<Target> callback)
           throws QueryException, InterruptedException, IOException {
     beforeEvaluateQuery();
+    // Ids are never freed, so start over for every query rather than keep them for the graph.
+    labelIds = new DenseIdAssigner<>(DEFAULT_THREAD_COUNT);
+    skyKeyIds = new DenseIdAssigner<>(DEFAULT_THREAD_COUNT);
 
     // SkyQueryEnvironment batches callback invocations using a BatchStreamedCallback, created here
     // so that there's one per top-level evaluateQuery call. The batch size is large enough that
@@ -416,7 +424,8 @@ public class SkyQueryEnvironment extends AbstractBlazeQueryEnvironment<Target>
     //
     // This flushes the batched callback prior to constructing the QueryEvalResult in the unlikely
     // case of a race between the original callback and the eventHandler.
-    BatchStreamedCallback batchCallback = new BatchStreamedCallback(callback, BATCH_CALLBACK_SIZE);
+    BatchStreamedCallback batchCallback =
+        new BatchStreamedCallback(callback, createUniquifier(), BATCH_CALLBACK_SIZE);
     return super.evaluateQuery(expr, batchCallback);
   }
 
@@ -667,22 +676,22 @@ public class SkyQueryEnvironment extends AbstractBlazeQueryEnvironment<Target>
   @ThreadSafe
   @Override
   public MinDepthUniquifier<Target> createMinDepthUniquifier() {
-    return new MinDepthUniquifierImpl<>(TargetKeyExtractor.INSTANCE, DEFAULT_THREAD_COUNT);
+    return new DenseIdMinDepthUniquifierImpl<>(TargetKeyExtractor.INSTANCE, labelIds);
   }
 
   @ThreadSafe
   Uniquifier<Target> createTargetUniquifier() {
-    return new UniquifierImpl<>(TargetKeyExtractor.INSTANCE, DEFAULT_THREAD_COUNT);
+    return new DenseIdUniquifierImpl<>(TargetKeyExtractor.INSTANCE, labelIds);
   }
 
   @ThreadSafe
   protected Uniquifier<SkyKey> createSkyKeyUniquifier() {
-    return new UniquifierImpl<>(SkyKeyKeyExtractor.INSTANCE, DEFAULT_THREAD_COUNT);
+    return new DenseIdUniquifierImpl<>(SkyKeyKeyExtractor.INSTANCE, skyKeyIds);
   }
 
   @ThreadSafe
   Uniquifier<Pair<SkyKey, SkyKey>> createReverseDepSkyKeyUniquifier() {
-    return new UniquifierImpl<>(ReverseDepSkyKeyKeyExtractor.INSTANCE, DEFAULT_THREAD_COUNT);
+    return new DenseIdUniquifierImpl<>(ReverseDepSkyKeyKeyExtractor.INSTANCE, skyKeyIds);
   }
 
   private ImmutableSet<PathFragment> getBlacklistedExcludes(TargetPatternKey targetPatternKey)
@@ -1217,16 +1226,17 @@ public class SkyQueryEnvironment extends AbstractBlazeQueryEnvironment<Target>
     // memory. We should have a threshold for when to invoke the callback with a batch, and also a
     // separate, larger, bound on the number of targets being processed at the same time.
     private final ThreadSafeOutputFormatterCallback<Target> callback;
-    private final Uniquifier<Target> uniquifier =
-        new UniquifierImpl<>(TargetKeyExtractor.INSTANCE, DEFAULT_THREAD_COUNT);
+    private final Uniquifier<Target> uniquifier;
     private final Object pendingLock = new Object();
     private List<Target> pending = new ArrayList<>();
     private int batchThreshold;
 
     private BatchStreamedCallback(
         ThreadSafeOutputFormatterCallback<Target> callback,
+        Uniquifier<Target> uniquifier,
         int batchThreshold) {
       this.callback = callback;
+      this.uniquifier = uniquifier;
       this.batchThreshold = batchThreshold;
     }
 
@@ -48,10 +48,11 @@ import com.google.devtools.build.lib.query2.output.OutputFormatter.AbstractUnord
 import com.google.devtools.build.lib.query2.output.QueryOptions.OrderOutput;
 import com.google.devtools.build.lib.query2.proto.proto2api.Build;
 import com.google.devtools.build.lib.query2.proto.proto2api.Build.GeneratedFile;
-import com.google.devtools.build.lib.query2.proto.proto2api.Build.QueryResult.Builder;
 import com.google.devtools.build.lib.query2.proto.proto2api.Build.SourceFile;
 import com.google.devtools.build.lib.syntax.Environment;
 import com.google.devtools.build.lib.syntax.Type;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
@@ -100,31 +101,40 @@ public class ProtoOutputFormatter extends AbstractUnorderedFormatter {
     this.includeDefaultValues = options.protoIncludeDefaultValues;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Rather than building a {@link Build.QueryResult} holding every target, each target is
+   * encoded as an occurrence of the repeated {@code target} field as soon as it has been converted.
+   * The concatenation of these is the wire encoding of the whole {@code QueryResult}. The encoded
+   * bytes are only written out once the query has succeeded, so that a failed query leaves no
+   * truncated result behind.
+   */
   @Override
   public OutputFormatterCallback<Target> createPostFactoStreamCallback(
       final OutputStream out, final QueryOptions options) {
     return new OutputFormatterCallback<Target>() {
 
-      private Builder queryResult;
+      private ByteString.Output encodedTargets;
+      private CodedOutputStream codedOut;
 
       @Override
       public void start() {
-        queryResult = Build.QueryResult.newBuilder();
+        encodedTargets = ByteString.newOutput();
+        codedOut = CodedOutputStream.newInstance(encodedTargets);
       }
 
       @Override
       public void processOutput(Iterable<Target> partialResult)
           throws IOException, InterruptedException {
-
-        for (Target target : partialResult) {
-          queryResult.addTarget(toTargetProtoBuffer(target));
-        }
+        writeTargets(partialResult, codedOut);
       }
 
       @Override
       public void close(boolean failFast) throws IOException {
         if (!failFast) {
-          queryResult.build().writeTo(out);
+          codedOut.flush();
+          encodedTargets.toByteString().writeTo(out);
         }
       }
     };
@@ -139,10 +149,20 @@ public class ProtoOutputFormatter extends AbstractUnorderedFormatter {
   @VisibleForTesting
   public ThreadSafeOutputFormatterCallback<Target> createStreamCallback(
       OutputStream out, QueryOptions options) {
+    // Converting a target walks its attribute maps and resolves its aspects through the shared
+    // AspectResolver, neither of which is known to be thread-safe, so batches are converted one at
+    // a time.
     return new SynchronizedDelegatingOutputFormatterCallback<>(
         createPostFactoStreamCallback(out, options));
   }
 
+  private void writeTargets(Iterable<Target> targets, CodedOutputStream codedOut)
+      throws IOException, InterruptedException {
+    for (Target target : targets) {
+      codedOut.writeMessage(Build.QueryResult.TARGET_FIELD_NUMBER, toTargetProtoBuffer(target));
+    }
+  }
+
   private static Iterable<Target> getSortedLabels(Digraph<Target> result) {
     return Iterables.transform(
         result.getTopologicalOrder(new TargetOrdering()), EXTRACT_NODE_LABEL);
@@ -193,32 +193,15 @@ public class GrpcRemoteCache implements RemoteActionCache {
     try {
       for (OutputFile file : result.getOutputFilesList()) {
         Path path = execRoot.getRelative(file.getPath());
-        FileSystemUtils.createDirectoryAndParents(path.getParentDirectory());
-        Digest digest = file.getDigest();
-        if (digest.getSizeBytes() == 0) {
-          // Handle empty file locally.
-          FileSystemUtils.writeContent(path, new byte[0]);
-        } else {
-          if (!file.getContent().isEmpty()) {
-            try (OutputStream stream = path.getOutputStream()) {
-              file.getContent().writeTo(stream);
-            }
-          } else {
-            retrier.execute(
-                () -> {
-                  try (OutputStream stream = path.getOutputStream()) {
-                    readBlob(digest, stream);
-                  }
-                  return null;
-                });
-            Digest receivedDigest = Digests.computeDigest(path);
-            if (!receivedDigest.equals(digest)) {
-              throw new IOException(
-                  "Digest does not match " + receivedDigest + " != " + digest);
-            }
+        if (!file.getContent().isEmpty()) {
+          FileSystemUtils.createDirectoryAndParents(path.getParentDirectory());
+          try (OutputStream stream = path.getOutputStream()) {
+            file.getContent().writeTo(stream);
           }
+          path.setExecutable(file.getIsExecutable());
+        } else {
+          downloadFile(file.getDigest(), path, file.getIsExecutable());
         }
-        path.setExecutable(file.getIsExecutable());
       }
       if (!result.getOutputDirectoriesList().isEmpty()) {
         throw new UnsupportedOperationException();
@@ -247,6 +230,29 @@ public class GrpcRemoteCache implements RemoteActionCache {
     }
   }
 
+  @Override
+  public void downloadFile(Digest digest, Path dest, boolean isExecutable)
+      throws IOException, InterruptedException {
+    FileSystemUtils.createDirectoryAndParents(dest.getParentDirectory());
+    if (digest.getSizeBytes() == 0) {
+      // Handle empty file locally.
+      FileSystemUtils.writeContent(dest, new byte[0]);
+    } else {
+      retrier.execute(
+          () -> {
+            try (OutputStream stream = dest.getOutputStream()) {
+              readBlob(digest, stream);
+            }
+            return null;
+          });
+      Digest receivedDigest = Digests.computeDigest(dest);
+      if (!receivedDigest.equals(digest)) {
+        throw new IOException("Digest does not match " + receivedDigest + " != " + digest);
+      }
+    }
+    dest.setExecutable(isExecutable);
+  }
+
   private void downloadOutErr(ActionResult result, FileOutErr outErr)
       throws IOException, InterruptedException {
     if (!result.getStdoutRaw().isEmpty()) {
@@ -22,6 +22,7 @@ import com.google.devtools.build.lib.util.io.FileOutErr;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.remoteexecution.v1test.ActionResult;
 import com.google.devtools.remoteexecution.v1test.Command;
+import com.google.devtools.remoteexecution.v1test.Digest;
 import java.io.IOException;
 import java.util.Collection;
 import javax.annotation.Nullable;
@@ -65,6 +66,14 @@ interface RemoteActionCache {
   // TODO(olaola): will need to amend to include the TreeNodeRepository for updating.
   void download(ActionResult result, Path execRoot, FileOutErr outErr)
       throws ExecException, IOException, InterruptedException;
+
+  /**
+   * Download a single blob to {@code dest}, creating its parent directories as needed.
+   *
+   * @throws CacheNotFoundException in case of a cache miss.
+   */
+  void downloadFile(Digest digest, Path dest, boolean isExecutable)
+      throws IOException, InterruptedException;
   /**
    * Attempts to look up the given action in the remote cache and return its result, if present.
    * Returns {@code null} if there is no such entry. Note that a successful result from this method
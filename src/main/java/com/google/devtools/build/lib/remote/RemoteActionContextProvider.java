@@ -36,14 +36,16 @@ final class RemoteActionContextProvider extends ActionContextProvider {
   private final CommandEnvironment env;
   private final RemoteActionCache cache;
   private final GrpcRemoteExecutor executor;
+  private final RemoteOutputService outputService;
 
   private RemoteSpawnRunner spawnRunner;
 
   RemoteActionContextProvider(CommandEnvironment env, @Nullable RemoteActionCache cache,
-      @Nullable GrpcRemoteExecutor executor) {
+      @Nullable GrpcRemoteExecutor executor, @Nullable RemoteOutputService outputService) {
     this.env = env;
     this.executor = executor;
     this.cache = cache;
+    this.outputService = outputService;
   }
 
   @Override
@@ -58,7 +60,8 @@ final class RemoteActionContextProvider extends ActionContextProvider {
         createFallbackRunner(env),
         executionOptions.verboseFailures,
         cache,
-        executor);
+        executor,
+        outputService);
     RemoteSpawnStrategy spawnStrategy =
         new RemoteSpawnStrategy(
             spawnRunner,
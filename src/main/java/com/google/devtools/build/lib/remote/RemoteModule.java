@@ -21,6 +21,7 @@ import com.google.devtools.build.lib.buildeventstream.PathConverter;
 import com.google.devtools.build.lib.buildtool.BuildRequest;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.exec.ExecutorBuilder;
+import com.google.devtools.build.lib.exec.OutputService;
 import com.google.devtools.build.lib.runtime.BlazeModule;
 import com.google.devtools.build.lib.runtime.Command;
 import com.google.devtools.build.lib.runtime.CommandEnvironment;
@@ -28,10 +29,13 @@ import com.google.devtools.build.lib.runtime.ServerBuilder;
 import com.google.devtools.build.lib.util.AbruptExitException;
 import com.google.devtools.build.lib.util.ExitCode;
 import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
 import com.google.devtools.common.options.OptionsBase;
 import com.google.devtools.common.options.OptionsProvider;
 import com.google.devtools.remoteexecution.v1test.Digest;
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /** RemoteModule provides distributed cache and remote execution for Bazel. */
 public final class RemoteModule extends BlazeModule {
@@ -76,6 +80,13 @@ public final class RemoteModule extends BlazeModule {
   private final CasPathConverter converter = new CasPathConverter();
 
   private RemoteActionContextProvider actionContextProvider;
+  private RemoteOutputService outputService;
+
+  // Outputs kept remote by earlier commands, and the cache they live in. Both are server-wide, so
+  // that the next build does not consider the actions that produced these outputs as dirty.
+  private final ConcurrentMap<PathFragment, RemoteOutputService.RemoteFile> remoteOutputs =
+      new ConcurrentHashMap<>();
+  private String remoteOutputsCache;
 
   @Override
   public void serverInit(OptionsProvider startupOptions, ServerBuilder builder)
@@ -90,6 +101,15 @@ public final class RemoteModule extends BlazeModule {
     RemoteOptions remoteOptions = env.getOptions().getOptions(RemoteOptions.class);
     AuthAndTLSOptions authAndTlsOptions = env.getOptions().getOptions(AuthAndTLSOptions.class);
     converter.options = remoteOptions;
+    actionContextProvider = null;
+    outputService = null;
+
+    if ("clean".equals(env.getCommandName())) {
+      // The clean command does not build, so it never gets an output service whose clean() could
+      // forget the outputs kept remote. Once the output tree is gone, they are of no use.
+      remoteOutputs.clear();
+      remoteOutputsCache = null;
+    }
 
     // Quit if no remote options specified.
     if (remoteOptions == null) {
@@ -129,18 +149,54 @@ public final class RemoteModule extends BlazeModule {
         executor = null;
       }
 
-      actionContextProvider = new RemoteActionContextProvider(env, cache, executor);
+      String cacheDescription = describeCache(remoteOptions);
+      if (!cacheDescription.equals(remoteOutputsCache)) {
+        // Outputs kept in a different cache may not be available from this one.
+        remoteOutputs.clear();
+        remoteOutputsCache = cacheDescription;
+      }
+      if (remoteOptions.experimentalRemoteLazyOutputs && cache != null) {
+        if (remoteOptions.experimentalRemotePrefetchJobs < 1) {
+          throw new IOException("--experimental_remote_prefetch_jobs must be at least 1");
+        }
+        outputService =
+            new RemoteOutputService(
+                env.getExecRoot(),
+                env.getBlazeWorkspace().getBinTools(),
+                env.getWorkspaceName(),
+                env.getBlazeWorkspace().getOutputBaseFilesystemTypeName(),
+                cache,
+                remoteOutputs,
+                /*remoteExecution=*/ executor != null,
+                remoteOptions.experimentalRemotePrefetchJobs);
+        env.getEventBus().register(outputService);
+      } else {
+        // Without the output service, missing outputs are treated as modified, so the registered
+        // ones are useless.
+        remoteOutputs.clear();
+      }
+
+      actionContextProvider =
+          new RemoteActionContextProvider(env, cache, executor, outputService);
     } catch (IOException e) {
       env.getReporter().handle(Event.error(e.getMessage()));
       env.getBlazeModuleEnvironment().exit(new AbruptExitException(ExitCode.COMMAND_LINE_ERROR));
     }
   }
 
+  @Override
+  public OutputService getOutputService() {
+    return outputService;
+  }
+
   @Override
   public void executorInit(CommandEnvironment env, BuildRequest request, ExecutorBuilder builder) {
     if (actionContextProvider != null) {
       builder.addActionContextProvider(actionContextProvider);
     }
+    if (outputService != null) {
+      builder.setActionInputPrefetcher(outputService);
+    }
   }
 
   @Override
@@ -151,6 +207,16 @@ public final class RemoteModule extends BlazeModule {
         : ImmutableList.<Class<? extends OptionsBase>>of();
   }
 
+  private static String describeCache(RemoteOptions options) {
+    return String.format(
+        "%s|%s|%s|%s|%s",
+        options.remoteRestCache,
+        options.hazelcastNode,
+        options.remoteCache,
+        options.remoteExecutor,
+        options.remoteInstanceName);
+  }
+
   public static boolean remoteEnabled(RemoteOptions options) {
     return SimpleBlobStoreFactory.isRemoteCacheOptions(options)
         || GrpcRemoteCache.isRemoteCacheOptions(options);
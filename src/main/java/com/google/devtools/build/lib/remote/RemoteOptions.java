@@ -138,6 +138,31 @@ public final class RemoteOptions extends OptionsBase {
   )
   public boolean remoteUploadLocalResults;
 
+  @Option(
+    name = "experimental_remote_lazy_outputs",
+    defaultValue = "false",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help =
+        "If true, output files of remotely executed or cached actions are not downloaded. Their "
+            + "digests are recorded instead, and a file is only downloaded when a local action "
+            + "needs it as an input, or when it is an output of a requested top-level target."
+  )
+  public boolean experimentalRemoteLazyOutputs;
+
+  @Option(
+    name = "experimental_remote_prefetch_jobs",
+    defaultValue = "16",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help =
+        "The maximum number of concurrent downloads of outputs that were kept remote by "
+            + "--experimental_remote_lazy_outputs."
+  )
+  public int experimentalRemotePrefetchJobs;
+
   @Option(
     name = "experimental_remote_platform_override",
     defaultValue = "null",
@@ -0,0 +1,629 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.remote;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.devtools.build.lib.actions.Action;
+import com.google.devtools.build.lib.actions.ActionExecutionMetadata;
+import com.google.devtools.build.lib.actions.ActionInput;
+import com.google.devtools.build.lib.actions.ActionInputPrefetcher;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.BuildFailedException;
+import com.google.devtools.build.lib.actions.EnvironmentalExecException;
+import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.actions.ExecutionInfoSpecifier;
+import com.google.devtools.build.lib.actions.ExecutionRequirements;
+import com.google.devtools.build.lib.actions.Spawn;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
+import com.google.devtools.build.lib.actions.cache.VirtualActionInput;
+import com.google.devtools.build.lib.analysis.FilesToRunProvider;
+import com.google.devtools.build.lib.analysis.RunfilesSupport;
+import com.google.devtools.build.lib.analysis.TargetCompleteEvent;
+import com.google.devtools.build.lib.analysis.actions.SpawnAction;
+import com.google.devtools.build.lib.analysis.config.BinTools;
+import com.google.devtools.build.lib.collect.nestedset.NestedSet;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import com.google.devtools.build.lib.events.EventHandler;
+import com.google.devtools.build.lib.exec.OutputService;
+import com.google.devtools.build.lib.exec.SymlinkTreeHelper;
+import com.google.devtools.build.lib.packages.Target;
+import com.google.devtools.build.lib.shell.CommandException;
+import com.google.devtools.build.lib.unix.UnixBatchStat;
+import com.google.devtools.build.lib.unix.UnixFileSystem;
+import com.google.devtools.build.lib.util.Preconditions;
+import com.google.devtools.build.lib.vfs.BatchStat;
+import com.google.devtools.build.lib.vfs.FileStatus;
+import com.google.devtools.build.lib.vfs.FileStatusWithDigest;
+import com.google.devtools.build.lib.vfs.FileStatusWithDigestAdapter;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.ModifiedFileSet;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.Symlinks;
+import com.google.devtools.remoteexecution.v1test.Digest;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link OutputService} for builds whose remotely produced outputs are not downloaded ("build
+ * without the bytes").
+ *
+ * <p>{@link RemoteSpawnRunner} injects the digests of remote outputs into the action's {@link
+ * MetadataHandler} and registers them here instead of writing them to the output tree. A file is
+ * only downloaded when a local spawn or an action that reads it in-process needs it as an input
+ * ({@link #prefetchFiles}), or when it is an output or runfile of a successfully built top-level
+ * target ({@link #finalizeBuild}).
+ *
+ * <p>Downloads run on a pool of a fixed size, so the number of concurrent transfers is bounded. A
+ * file is downloaded at most once per command however many spawns need it, and a file with the
+ * same digest as one already downloaded is copied locally instead of being fetched again. Inputs
+ * of actions that are known to run locally start downloading as soon as the action is scheduled
+ * ({@link #startPrefetching}), so that the transfer overlaps with waiting for local resources.
+ *
+ * <p>The registered files outlive a single command: the {@link BatchStat} of this service reports
+ * a registered file that is missing from the output tree as present, with its remote digest, so
+ * the next build does not consider the action that produced it as dirty.
+ */
+@ThreadSafe
+final class RemoteOutputService implements OutputService, ActionInputPrefetcher, BatchStat {
+
+  private static final Logger logger = Logger.getLogger(RemoteOutputService.class.getName());
+
+  /** A file that exists in the remote cache, and possibly also in the local output tree. */
+  static final class RemoteFile {
+    private final Digest digest;
+    private final boolean isExecutable;
+
+    // The ctime and inode of the local copy, if this service downloaded one. Guarded by this.
+    private long downloadedChangeTime = -1;
+    private long downloadedNodeId = -1;
+
+    RemoteFile(Digest digest, boolean isExecutable) {
+      this.digest = Preconditions.checkNotNull(digest);
+      this.isExecutable = isExecutable;
+    }
+
+    Digest getDigest() {
+      return digest;
+    }
+
+    byte[] getDigestBytes() {
+      return HashCode.fromString(digest.getHash()).asBytes();
+    }
+
+    /** Returns whether {@code stat} describes the unmodified local copy downloaded by us. */
+    private synchronized boolean isDownloadedAs(FileStatus stat) throws IOException {
+      return downloadedChangeTime != -1
+          && stat.isFile()
+          && stat.getSize() == digest.getSizeBytes()
+          && stat.getLastChangeTime() == downloadedChangeTime
+          && stat.getNodeId() == downloadedNodeId;
+    }
+  }
+
+  private final Path execRoot;
+  private final BinTools binTools;
+  private final String workspaceName;
+  private final String fileSystemName;
+  private final RemoteActionCache cache;
+  private final ConcurrentMap<PathFragment, RemoteFile> remoteFiles;
+  @Nullable private final UnixBatchStat localBatchStat;
+  private final boolean remoteExecution;
+  private final ListeningExecutorService downloadService;
+
+  // The downloads started by this service, keyed by exec path. Failed downloads are removed, so
+  // that the next spawn that needs the file tries again.
+  private final ConcurrentMap<PathFragment, ListenableFuture<Void>> downloadsByPath =
+      new ConcurrentHashMap<>();
+  // The path that each digest was first downloaded to, once that download has succeeded.
+  private final ConcurrentMap<Digest, ListenableFuture<Path>> downloadsByDigest =
+      new ConcurrentHashMap<>();
+
+  private final Queue<NestedSet<Artifact>> topLevelArtifacts = new ConcurrentLinkedQueue<>();
+
+  private final AtomicLong filesDownloaded = new AtomicLong();
+  private final AtomicLong bytesDownloaded = new AtomicLong();
+  private final AtomicLong filesCopied = new AtomicLong();
+  // Files that were present, or whose download had finished, when a spawn asked for them.
+  private final AtomicLong prefetchHits = new AtomicLong();
+  // Files that a spawn had to wait for, and the total time spent waiting.
+  private final AtomicLong prefetchMisses = new AtomicLong();
+  private final AtomicLong waitNanos = new AtomicLong();
+
+  /**
+   * Creates a new output service.
+   *
+   * @param remoteFiles the files that were kept remote so far, keyed by exec path; shared between
+   *     the services of consecutive commands
+   * @param remoteExecution whether spawns may be executed remotely
+   * @param downloadJobs the maximum number of concurrent downloads
+   */
+  RemoteOutputService(
+      Path execRoot,
+      BinTools binTools,
+      String workspaceName,
+      String fileSystemName,
+      RemoteActionCache cache,
+      ConcurrentMap<PathFragment, RemoteFile> remoteFiles,
+      boolean remoteExecution,
+      int downloadJobs) {
+    Preconditions.checkArgument(downloadJobs > 0, downloadJobs);
+    this.execRoot = execRoot;
+    this.binTools = binTools;
+    this.workspaceName = workspaceName;
+    this.fileSystemName = fileSystemName;
+    this.cache = cache;
+    this.remoteFiles = remoteFiles;
+    this.remoteExecution = remoteExecution;
+    this.localBatchStat =
+        execRoot.getFileSystem() instanceof UnixFileSystem ? new UnixBatchStat(execRoot) : null;
+    this.downloadService =
+        MoreExecutors.listeningDecorator(
+            Executors.newFixedThreadPool(
+                downloadJobs,
+                new ThreadFactoryBuilder()
+                    .setNameFormat("remote-output-download-%d")
+                    .setDaemon(true)
+                    .build()));
+  }
+
+  /**
+   * Returns whether the outputs of {@code spawn} may be kept remote.
+   *
+   * <p>Only {@link SpawnAction}s are known to never read their own outputs after execution; other
+   * actions do (C++ compilation parses its .d file, tests read their logs), as does input
+   * discovery, which reads inputs in-process without prefetching them.
+   */
+  static boolean mayKeepOutputsRemote(Spawn spawn) {
+    ActionExecutionMetadata owner = spawn.getResourceOwner();
+    return owner instanceof SpawnAction && !owner.discoversInputs();
+  }
+
+  /**
+   * Records that {@code output} exists remotely with the given digest, and injects its metadata
+   * into {@code metadataHandler}. The output must not have been created locally.
+   */
+  void injectRemoteFile(
+      MetadataHandler metadataHandler, Artifact output, Digest digest, boolean isExecutable) {
+    RemoteFile file = new RemoteFile(digest, isExecutable);
+    remoteFiles.put(output.getExecPath(), file);
+    downloadsByPath.remove(output.getExecPath());
+    metadataHandler.injectRemoteFile(output, file.getDigestBytes(), digest.getSizeBytes());
+  }
+
+  @VisibleForTesting
+  boolean isRegistered(PathFragment execPath) {
+    return remoteFiles.containsKey(execPath);
+  }
+
+  /**
+   * Starts downloading the remote inputs of {@code action} if it is known to run locally: if it
+   * must not be executed remotely, or if there is no remote executor and it must not be cached.
+   *
+   * <p>Other actions are left alone: they may well be remote cache hits or run remotely, in which
+   * case their inputs are never needed locally. Their inputs are downloaded by {@link
+   * #prefetchFiles} if they turn out to be executed locally after all.
+   */
+  @Override
+  public void startPrefetching(Action action) {
+    if (!runsLocally(action)) {
+      return;
+    }
+    for (Artifact input : action.getInputs()) {
+      RemoteFile file = remoteFiles.get(input.getExecPath());
+      if (file != null) {
+        download(input.getExecPath(), file);
+      }
+    }
+  }
+
+  private boolean runsLocally(Action action) {
+    if (!(action instanceof ExecutionInfoSpecifier)) {
+      // Without execution info, the action cannot be told apart from one that is cached remotely.
+      return false;
+    }
+    Map<String, String> executionInfo = ((ExecutionInfoSpecifier) action).getExecutionInfo();
+    if (executionInfo.containsKey(ExecutionRequirements.LOCAL)) {
+      return true;
+    }
+    return !remoteExecution && executionInfo.containsKey(ExecutionRequirements.NO_CACHE);
+  }
+
+  @Override
+  public void prefetchFiles(Iterable<? extends ActionInput> inputs)
+      throws IOException, InterruptedException {
+    List<ListenableFuture<Void>> downloads = new ArrayList<>();
+    for (ActionInput input : inputs) {
+      if (input instanceof VirtualActionInput) {
+        continue;
+      }
+      PathFragment execPath = PathFragment.create(input.getExecPathString());
+      RemoteFile file = remoteFiles.get(execPath);
+      if (file == null) {
+        continue;
+      }
+      ListenableFuture<Void> download = download(execPath, file);
+      if (download.isDone()) {
+        prefetchHits.incrementAndGet();
+      } else {
+        prefetchMisses.incrementAndGet();
+      }
+      downloads.add(download);
+    }
+    long startTime = System.nanoTime();
+    try {
+      waitFor(downloads);
+    } finally {
+      waitNanos.addAndGet(System.nanoTime() - startTime);
+    }
+  }
+
+  /**
+   * Returns a future for the local copy of the remote file at {@code execPath}, starting a
+   * download unless the file is present locally or already being downloaded.
+   */
+  private ListenableFuture<Void> download(PathFragment execPath, RemoteFile file) {
+    ListenableFuture<Void> download = downloadsByPath.get(execPath);
+    if (download != null) {
+      return download;
+    }
+    Path path = execRoot.getRelative(execPath);
+    if (path.exists(Symlinks.NOFOLLOW)) {
+      return Futures.immediateFuture(null);
+    }
+    SettableFuture<Void> newDownload = SettableFuture.create();
+    download = downloadsByPath.putIfAbsent(execPath, newDownload);
+    if (download != null) {
+      return download;
+    }
+    newDownload.setFuture(
+        downloadService.submit(
+            () -> {
+              try {
+                downloadOrCopy(execPath, path, file);
+              } catch (IOException | InterruptedException | RuntimeException e) {
+                downloadsByPath.remove(execPath, newDownload);
+                throw e;
+              }
+              return null;
+            }));
+    return newDownload;
+  }
+
+  private void downloadOrCopy(PathFragment execPath, Path path, RemoteFile file)
+      throws IOException, InterruptedException {
+    Digest digest = file.getDigest();
+    SettableFuture<Path> firstDownload = SettableFuture.create();
+    ListenableFuture<Path> previousDownload = downloadsByDigest.putIfAbsent(digest, firstDownload);
+    try {
+      if (previousDownload == null || !copyFrom(previousDownload, digest, path)) {
+        cache.downloadFile(digest, path, file.isExecutable);
+        filesDownloaded.incrementAndGet();
+        bytesDownloaded.addAndGet(digest.getSizeBytes());
+      }
+      // Match the permissions that output files get when they are created locally.
+      path.chmod(0555);
+      FileStatus stat = path.stat(Symlinks.NOFOLLOW);
+      synchronized (file) {
+        file.downloadedChangeTime = stat.getLastChangeTime();
+        file.downloadedNodeId = stat.getNodeId();
+      }
+    } catch (IOException e) {
+      path.delete();
+      if (previousDownload == null) {
+        downloadsByDigest.remove(digest, firstDownload);
+        firstDownload.setException(e);
+      }
+      throw new IOException(
+          "Failed to download remote output " + execPath + ": " + e.getMessage(), e);
+    } catch (InterruptedException | RuntimeException e) {
+      if (previousDownload == null) {
+        downloadsByDigest.remove(digest, firstDownload);
+        firstDownload.setException(e);
+      }
+      throw e;
+    }
+    if (previousDownload == null) {
+      firstDownload.set(path);
+    }
+  }
+
+  /**
+   * Copies the file downloaded by {@code previousDownload} to {@code dest}, waiting for that
+   * download to finish. Returns false if there is no unmodified copy to copy from.
+   */
+  private boolean copyFrom(ListenableFuture<Path> previousDownload, Digest digest, Path dest)
+      throws IOException, InterruptedException {
+    Path source;
+    try {
+      source = previousDownload.get();
+    } catch (ExecutionException e) {
+      return false;
+    }
+    RemoteFile sourceFile = remoteFiles.get(source.relativeTo(execRoot));
+    FileStatus stat = source.statIfFound(Symlinks.NOFOLLOW);
+    if (sourceFile == null
+        || !sourceFile.getDigest().equals(digest)
+        || stat == null
+        || !sourceFile.isDownloadedAs(stat)) {
+      return false;
+    }
+    FileSystemUtils.createDirectoryAndParents(dest.getParentDirectory());
+    FileSystemUtils.copyFile(source, dest);
+    filesCopied.incrementAndGet();
+    return true;
+  }
+
+  private static void waitFor(List<ListenableFuture<Void>> downloads)
+      throws IOException, InterruptedException {
+    for (ListenableFuture<Void> download : downloads) {
+      try {
+        download.get();
+      } catch (ExecutionException e) {
+        Throwables.propagateIfPossible(
+            e.getCause(), IOException.class, InterruptedException.class);
+        throw new IOException(e.getCause());
+      }
+    }
+  }
+
+  @Subscribe
+  public void targetComplete(TargetCompleteEvent event) {
+    if (!event.failed()) {
+      topLevelArtifacts.addAll(event.reportedArtifacts());
+      // A binary is only usable with its runfiles, and "bazel run" executes it right after the
+      // build without any spawn to prefetch them.
+      FilesToRunProvider filesToRun = event.getTarget().getProvider(FilesToRunProvider.class);
+      RunfilesSupport runfilesSupport =
+          filesToRun == null ? null : filesToRun.getRunfilesSupport();
+      if (runfilesSupport != null) {
+        topLevelArtifacts.add(runfilesSupport.getRunfiles().getAllArtifacts());
+      }
+    }
+  }
+
+  @Override
+  public String getFilesSystemName() {
+    return fileSystemName;
+  }
+
+  @Override
+  public boolean usesFuse() {
+    return false;
+  }
+
+  @Override
+  public String getName() {
+    return "remote";
+  }
+
+  @Override
+  public ModifiedFileSet startBuild(
+      EventHandler eventHandler, UUID buildId, boolean finalizeActions) {
+    topLevelArtifacts.clear();
+    return ModifiedFileSet.EVERYTHING_MODIFIED;
+  }
+
+  @Override
+  public void finalizeBuild(boolean buildSuccessful)
+      throws BuildFailedException, InterruptedException {
+    try {
+      List<ListenableFuture<Void>> downloads = new ArrayList<>();
+      for (NestedSet<Artifact> artifacts : topLevelArtifacts) {
+        for (Artifact artifact : artifacts) {
+          RemoteFile file = remoteFiles.get(artifact.getExecPath());
+          if (file != null) {
+            downloads.add(download(artifact.getExecPath(), file));
+          }
+        }
+      }
+      waitFor(downloads);
+    } catch (IOException e) {
+      throw new BuildFailedException(e.getMessage());
+    } finally {
+      topLevelArtifacts.clear();
+      downloadService.shutdownNow();
+      logger.info(toString());
+    }
+  }
+
+  @Override
+  public void finalizeAction(Action action, MetadataHandler metadataHandler) {}
+
+  @Override
+  public Path stageTool(Target tool) {
+    return tool.getPackage().getPackageDirectory().getRelative(tool.getName());
+  }
+
+  @Override
+  public String getWorkspace() {
+    return workspaceName;
+  }
+
+  @Override
+  public BatchStat getBatchStatter() {
+    return this;
+  }
+
+  @Override
+  public List<FileStatusWithDigest> batchStat(
+      boolean includeDigest, boolean includeLinks, Iterable<PathFragment> paths)
+      throws IOException, InterruptedException {
+    List<PathFragment> pathList = new ArrayList<>();
+    for (PathFragment path : paths) {
+      pathList.add(path);
+    }
+    List<FileStatusWithDigest> stats;
+    if (localBatchStat != null) {
+      stats = new ArrayList<>(localBatchStat.batchStat(includeDigest, includeLinks, pathList));
+    } else {
+      stats = new ArrayList<>(pathList.size());
+      for (PathFragment path : pathList) {
+        stats.add(
+            FileStatusWithDigestAdapter.adapt(
+                execRoot
+                    .getRelative(path)
+                    .statIfFound(includeLinks ? Symlinks.NOFOLLOW : Symlinks.FOLLOW)));
+      }
+    }
+    for (int i = 0; i < pathList.size(); i++) {
+      RemoteFile file = remoteFiles.get(pathList.get(i));
+      if (file == null) {
+        continue;
+      }
+      FileStatusWithDigest stat = stats.get(i);
+      if (stat == null) {
+        stats.set(i, new RemoteFileStatus(file, null));
+      } else if (file.isDownloadedAs(stat)) {
+        stats.set(i, new RemoteFileStatus(file, stat));
+      }
+    }
+    return stats;
+  }
+
+  @Override
+  public boolean canCreateSymlinkTree() {
+    // Symlink trees are plain local trees; leave them to the symlink tree strategy, which also
+    // honors --nobuild_runfile_links.
+    return false;
+  }
+
+  @Override
+  public void createSymlinkTree(
+      Path inputPath, Path outputPath, boolean filesetTree, PathFragment symlinkTreeRoot)
+      throws ExecException {
+    // Entries that are still remote become dangling symlinks until someone fetches them, just as
+    // in a tree created by the strategy.
+    try {
+      new SymlinkTreeHelper(inputPath, outputPath.getParentDirectory(), filesetTree)
+          .createSymlinksUsingCommand(execRoot, /*config=*/ null, binTools);
+    } catch (CommandException e) {
+      throw new EnvironmentalExecException("Failed to create symlink tree", e);
+    }
+  }
+
+  @Override
+  public void clean() {
+    // The clean command runs without an output service, so RemoteModule forgets the remote
+    // outputs itself; this only keeps the service consistent with the interface.
+    remoteFiles.clear();
+  }
+
+  @Override
+  public boolean isRemoteFile(Path file) {
+    return file.startsWith(execRoot)
+        && remoteFiles.containsKey(file.relativeTo(execRoot))
+        && !file.exists(Symlinks.NOFOLLOW);
+  }
+
+  @Override
+  public boolean resolvedPathUnderTree(Path path) {
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "RemoteOutputService[remoteFiles=%d, downloaded=%d (%d bytes), copied=%d, prefetchHits=%d, "
+            + "prefetchMisses=%d, waitMs=%d, local=%s]",
+        remoteFiles.size(),
+        filesDownloaded.get(),
+        bytesDownloaded.get(),
+        filesCopied.get(),
+        prefetchHits.get(),
+        prefetchMisses.get(),
+        waitNanos.get() / 1000000,
+        localBatchStat);
+  }
+
+  /**
+   * The status of a remote file: either of its unmodified local copy, or, if it has none, of a
+   * regular file with the remote size and digest.
+   */
+  private static final class RemoteFileStatus implements FileStatusWithDigest {
+    private final RemoteFile file;
+    @Nullable private final FileStatus localStat;
+
+    RemoteFileStatus(RemoteFile file, @Nullable FileStatus localStat) {
+      this.file = file;
+      this.localStat = localStat;
+    }
+
+    @Override
+    public byte[] getDigest() {
+      return file.getDigestBytes();
+    }
+
+    @Override
+    public boolean isFile() {
+      return true;
+    }
+
+    @Override
+    public boolean isDirectory() {
+      return false;
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+      return false;
+    }
+
+    @Override
+    public boolean isSpecialFile() {
+      return false;
+    }
+
+    @Override
+    public long getSize() {
+      return file.getDigest().getSizeBytes();
+    }
+
+    @Override
+    public long getLastModifiedTime() throws IOException {
+      return localStat == null ? -1 : localStat.getLastModifiedTime();
+    }
+
+    @Override
+    public long getLastChangeTime() throws IOException {
+      return localStat == null ? -1 : localStat.getLastChangeTime();
+    }
+
+    @Override
+    public long getNodeId() throws IOException {
+      return localStat == null ? -1 : localStat.getNodeId();
+    }
+  }
+}
@@ -19,10 +19,12 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.devtools.build.lib.actions.ActionInput;
 import com.google.devtools.build.lib.actions.ActionInputFileCache;
+import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.EnvironmentalExecException;
 import com.google.devtools.build.lib.actions.ExecException;
 import com.google.devtools.build.lib.actions.Spawn;
 import com.google.devtools.build.lib.actions.Spawns;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.actions.cache.VirtualActionInput;
 import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
 import com.google.devtools.build.lib.exec.SpawnInputExpander;
@@ -39,6 +41,7 @@ import com.google.devtools.remoteexecution.v1test.Command;
 import com.google.devtools.remoteexecution.v1test.Digest;
 import com.google.devtools.remoteexecution.v1test.ExecuteRequest;
 import com.google.devtools.remoteexecution.v1test.ExecuteResponse;
+import com.google.devtools.remoteexecution.v1test.OutputFile;
 import com.google.devtools.remoteexecution.v1test.Platform;
 import com.google.protobuf.Duration;
 import io.grpc.Status.Code;
@@ -65,6 +68,8 @@ class RemoteSpawnRunner implements SpawnRunner {
 
   @Nullable private final RemoteActionCache remoteCache;
   @Nullable private final GrpcRemoteExecutor remoteExecutor;
+  // Non-null iff outputs are kept remote; see RemoteOptions#experimentalRemoteLazyOutputs.
+  @Nullable private final RemoteOutputService remoteOutputService;
 
   RemoteSpawnRunner(
       Path execRoot,
@@ -73,6 +78,17 @@ class RemoteSpawnRunner implements SpawnRunner {
       boolean verboseFailures,
       @Nullable RemoteActionCache remoteCache,
       @Nullable GrpcRemoteExecutor remoteExecutor) {
+    this(execRoot, options, fallbackRunner, verboseFailures, remoteCache, remoteExecutor, null);
+  }
+
+  RemoteSpawnRunner(
+      Path execRoot,
+      RemoteOptions options,
+      SpawnRunner fallbackRunner,
+      boolean verboseFailures,
+      @Nullable RemoteActionCache remoteCache,
+      @Nullable GrpcRemoteExecutor remoteExecutor,
+      @Nullable RemoteOutputService remoteOutputService) {
     this.execRoot = execRoot;
     this.options = options;
     this.platform = options.parseRemotePlatformOverride();
@@ -80,6 +96,7 @@ class RemoteSpawnRunner implements SpawnRunner {
     this.remoteCache = remoteCache;
     this.remoteExecutor = remoteExecutor;
     this.verboseFailures = verboseFailures;
+    this.remoteOutputService = remoteOutputService;
   }
 
   @Override
@@ -114,10 +131,8 @@ class RemoteSpawnRunner implements SpawnRunner {
               : null;
       if (result != null) {
         // We don't cache failed actions, so we know the outputs exist.
-        // For now, download all outputs locally; in the future, we can reuse the digests to
-        // just update the TreeNodeRepository and continue the build.
         try {
-          remoteCache.download(result, execRoot, policy.getFileOutErr());
+          downloadOutputs(spawn, result, policy);
           return new SpawnResult.Builder()
               .setStatus(Status.SUCCESS)  // Even if the action failed with non-zero exit code.
               .setExitCode(result.getExitCode())
@@ -147,7 +162,7 @@ class RemoteSpawnRunner implements SpawnRunner {
         return execLocally(spawn, policy, inputMap, options.remoteUploadLocalResults,
             remoteCache, actionKey);
       }
-      remoteCache.download(result, execRoot, policy.getFileOutErr());
+      downloadOutputs(spawn, result, policy);
       return new SpawnResult.Builder()
           .setStatus(Status.SUCCESS)  // Even if the action failed with non-zero exit code.
           .setExitCode(result.getExitCode())
@@ -175,6 +190,44 @@ class RemoteSpawnRunner implements SpawnRunner {
     }
   }
 
+  /**
+   * Downloads the outputs of a remotely executed or cached action, and its stdout / stderr.
+   *
+   * <p>If outputs are kept remote, non-empty output files of the spawn are not downloaded; their
+   * digests are injected into the action's metadata handler instead.
+   */
+  private void downloadOutputs(Spawn spawn, ActionResult result, SpawnExecutionPolicy policy)
+      throws ExecException, IOException, InterruptedException {
+    if (remoteOutputService == null || !RemoteOutputService.mayKeepOutputsRemote(spawn)) {
+      remoteCache.download(result, execRoot, policy.getFileOutErr());
+      return;
+    }
+    Map<String, Artifact> outputs = new HashMap<>();
+    for (ActionInput output : spawn.getOutputFiles()) {
+      if (output instanceof Artifact) {
+        outputs.put(output.getExecPathString(), (Artifact) output);
+      }
+    }
+    ActionResult.Builder eagerResult = result.toBuilder().clearOutputFiles();
+    List<OutputFile> lazyFiles = new ArrayList<>();
+    for (OutputFile file : result.getOutputFilesList()) {
+      // Inlined and empty files are cheaper to write than to keep track of.
+      if (outputs.containsKey(file.getPath())
+          && file.getContent().isEmpty()
+          && file.getDigest().getSizeBytes() > 0) {
+        lazyFiles.add(file);
+      } else {
+        eagerResult.addOutputFiles(file);
+      }
+    }
+    remoteCache.download(eagerResult.build(), execRoot, policy.getFileOutErr());
+    MetadataHandler metadataHandler = policy.getMetadataHandler();
+    for (OutputFile file : lazyFiles) {
+      remoteOutputService.injectRemoteFile(
+          metadataHandler, outputs.get(file.getPath()), file.getDigest(), file.getIsExecutable());
+    }
+  }
+
   private Action buildAction(
       Collection<? extends ActionInput> outputs,
       Digest command,
@@ -232,6 +232,12 @@ public final class SimpleBlobStoreActionCache implements RemoteActionCache {
     dest.setExecutable(executable);
   }
 
+  @Override
+  public void downloadFile(Digest digest, Path dest, boolean isExecutable)
+      throws IOException, InterruptedException {
+    downloadFileContents(digest, dest, isExecutable);
+  }
+
   private void createFile(byte[] contents, Path dest, boolean executable) throws IOException {
     FileSystemUtils.createDirectoryAndParents(dest.getParentDirectory());
     try (OutputStream stream = dest.getOutputStream()) {
@@ -381,6 +381,17 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment {
     )
     public boolean desugarJava8;
 
+    @Option(
+      name = "experimental_desugar_workers",
+      defaultValue = "false",
+      documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help =
+          "If --experimental_desugar_for_android is set, allow desugaring to run in persistent "
+              + "workers. The desugar tool must support --persistent_worker."
+    )
+    public boolean desugarWorkers;
+
     @Option(
       name = "incremental_dexing",
       defaultValue = "true",
@@ -684,6 +695,17 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment {
     )
     public boolean throwOnResourceConflict;
 
+    @Option(
+      name = "experimental_android_resource_merging_workers",
+      defaultValue = "false",
+      documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help =
+          "Allow android_library resources to be merged in persistent workers. The resource "
+              + "processing busybox must support --persistent_worker."
+    )
+    public boolean resourceMergingWorkers;
+
     @Override
     public FragmentOptions getHost(boolean fallback) {
       Options host = (Options) super.getHost(fallback);
@@ -692,6 +714,7 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment {
       host.fatApkCpus = ImmutableList.of(); // Fat APK archs don't apply to the host.
 
       host.desugarJava8 = desugarJava8;
+      host.desugarWorkers = desugarWorkers;
       host.incrementalDexing = incrementalDexing;
       host.incrementalDexingBinaries = incrementalDexingBinaries;
       host.incrementalDexingForLiteProtos = incrementalDexingForLiteProtos;
@@ -701,6 +724,7 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment {
       host.dexoptsSupportedInDexMerger = dexoptsSupportedInDexMerger;
       host.manifestMerger = manifestMerger;
       host.androidAaptVersion = androidAaptVersion;
+      host.resourceMergingWorkers = resourceMergingWorkers;
       return host;
     }
 
@@ -747,6 +771,7 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment {
   private final ImmutableList<String> targetDexoptsThatPreventIncrementalDexing;
   private final ImmutableList<String> dexoptsSupportedInDexMerger;
   private final boolean desugarJava8;
+  private final boolean desugarWorkers;
   private final boolean useRexToCompressDexFiles;
   private final boolean allowAndroidLibraryDepsWithoutSrcs;
   private final boolean useAndroidResourceShrinking;
@@ -761,6 +786,7 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment {
   private final AndroidAaptVersion androidAaptVersion;
   private final boolean generateRobolectricRClass;
   private final boolean throwOnResourceConflict;
+  private final boolean resourceMergingWorkers;
   private final boolean useParallelDex2Oat;
 
 
@@ -782,6 +808,7 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment {
         ImmutableList.copyOf(options.nonIncrementalPerTargetDexopts);
     this.dexoptsSupportedInDexMerger = ImmutableList.copyOf(options.dexoptsSupportedInDexMerger);
     this.desugarJava8 = options.desugarJava8;
+    this.desugarWorkers = options.desugarWorkers;
     this.allowAndroidLibraryDepsWithoutSrcs = options.allowAndroidLibraryDepsWithoutSrcs;
     this.useAndroidResourceShrinking = options.useAndroidResourceShrinking
         || options.useExperimentalAndroidResourceShrinking;
@@ -797,6 +824,7 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment {
     this.androidAaptVersion = options.androidAaptVersion;
     this.generateRobolectricRClass = options.generateRobolectricRClass;
     this.throwOnResourceConflict = options.throwOnResourceConflict;
+    this.resourceMergingWorkers = options.resourceMergingWorkers;
     this.useParallelDex2Oat = options.useParallelDex2Oat;
 
     if (!dexoptsSupportedInIncrementalDexing.contains("--no-locals")) {
@@ -866,6 +894,10 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment {
     return desugarJava8;
   }
 
+  public boolean desugarWorkers() {
+    return desugarWorkers;
+  }
+
   public boolean useRexToCompressDexFiles() {
     return useRexToCompressDexFiles;
   }
@@ -926,6 +958,10 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment {
     return throwOnResourceConflict;
   }
 
+  boolean resourceMergingWorkers() {
+    return resourceMergingWorkers;
+  }
+
   @Override
   public void addGlobalMakeVariables(ImmutableMap.Builder<String, String> globalMakeEnvBuilder) {
     globalMakeEnvBuilder.put("ANDROID_CPU", cpu);
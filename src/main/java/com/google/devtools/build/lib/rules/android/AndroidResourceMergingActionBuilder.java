@@ -17,6 +17,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ExecutionRequirements;
 import com.google.devtools.build.lib.actions.ParameterFile.ParameterFileType;
 import com.google.devtools.build.lib.analysis.RuleConfiguredTarget.Mode;
 import com.google.devtools.build.lib.analysis.RuleContext;
@@ -182,10 +183,17 @@ public class AndroidResourceMergingActionBuilder {
     }
 
     SpawnAction.Builder spawnActionBuilder = new SpawnAction.Builder();
+    if (ruleContext.getFragment(AndroidConfiguration.class).resourceMergingWorkers()) {
+      spawnActionBuilder
+          // WorkerSpawnStrategy expects the last argument to be @paramfile
+          .alwaysUseParameterFile(ParameterFileType.UNQUOTED)
+          .setExecutionInfo(ExecutionRequirements.WORKER_MODE_ENABLED);
+    } else {
+      spawnActionBuilder.useParameterFile(ParameterFileType.UNQUOTED);
+    }
     // Create the spawn action.
     ruleContext.registerAction(
         spawnActionBuilder
-            .useParameterFile(ParameterFileType.UNQUOTED)
             .addTransitiveInputs(inputs.build())
             .addOutputs(ImmutableList.copyOf(outs))
             .setCommandLine(builder.build())
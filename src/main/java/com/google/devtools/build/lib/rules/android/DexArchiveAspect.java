@@ -27,6 +27,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
@@ -390,6 +391,7 @@ public final class DexArchiveAspect extends NativeAspectClass implements Configu
     ruleContext.registerAction(
         new SpawnAction.Builder()
             .setExecutable(ruleContext.getExecutablePrerequisite(desugarPrereqName, Mode.HOST))
+            // WorkerSpawnStrategy expects the last argument to be @paramfile
             .addArgument("@" + paramFile.getExecPathString())
             .addInput(jar)
             .addInput(paramFile)
@@ -397,6 +399,10 @@ public final class DexArchiveAspect extends NativeAspectClass implements Configu
             .addTransitiveInputs(classpath)
             .addOutput(result)
             .setMnemonic("Desugar")
+            .setExecutionInfo(
+                getAndroidConfig(ruleContext).desugarWorkers()
+                    ? ExecutionRequirements.WORKER_MODE_ENABLED
+                    : ImmutableMap.<String, String>of())
             .setProgressMessage("Desugaring " + jar.prettyPrint() + " for Android")
             .build(ruleContext));
     return result;
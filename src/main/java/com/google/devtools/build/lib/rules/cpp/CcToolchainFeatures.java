@@ -52,6 +52,7 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 /**
  * Provides access to features supported by a specific toolchain.
@@ -287,7 +288,7 @@ public class CcToolchainFeatures implements Serializable {
      * <p>The {@code variables} controls which variables are visible during the expansion and allows
      * to recursively expand nested flag groups.
      */
-    void expand(Variables variables, List<String> commandLine);
+    void expand(Variables variables, Consumer<String> commandLine);
   }
 
   /**
@@ -306,12 +307,12 @@ public class CcToolchainFeatures implements Serializable {
     
     /** Expand this flag into a single new entry in {@code commandLine}. */
     @Override
-    public void expand(Variables variables, List<String> commandLine) {
+    public void expand(Variables variables, Consumer<String> commandLine) {
       StringBuilder flag = new StringBuilder();
       for (StringChunk chunk : chunks) {
         chunk.expand(variables, flag);
       }
-      commandLine.add(flag.toString());
+      commandLine.accept(flag.toString());
     }
   }
   
@@ -403,7 +404,7 @@ public class CcToolchainFeatures implements Serializable {
     }
     
     @Override
-    public void expand(Variables variables, final List<String> commandLine) {
+    public void expand(Variables variables, final Consumer<String> commandLine) {
       if (!canBeExpanded(variables)) {
         return;
       }
@@ -468,7 +469,7 @@ public class CcToolchainFeatures implements Serializable {
      *       explicit 'iterate_over' instead.
      * </ul>
      */
-    private void expandCommandLine(Variables variables, final List<String> commandLine) {
+    private void expandCommandLine(Variables variables, final Consumer<String> commandLine) {
       expand(variables, commandLine);
     }
   }
@@ -520,7 +521,7 @@ public class CcToolchainFeatures implements Serializable {
         String action,
         Variables variables,
         Set<String> enabledFeatureNames,
-        List<String> commandLine) {
+        Consumer<String> commandLine) {
       for (String variable : expandIfAllAvailable) {
         if (!variables.isAvailable(variable)) {
           return;
@@ -628,7 +629,7 @@ public class CcToolchainFeatures implements Serializable {
         String action,
         Variables variables,
         Set<String> enabledFeatureNames,
-        List<String> commandLine) {
+        Consumer<String> commandLine) {
       for (FlagSet flagSet : flagSets) {
         flagSet.expandCommandLine(action, variables, enabledFeatureNames, commandLine);
       }
@@ -758,7 +759,7 @@ public class CcToolchainFeatures implements Serializable {
 
     /** Adds the flags that apply to this action to {@code commandLine}. */
     private void expandCommandLine(
-        Variables variables, Set<String> enabledFeatureNames, List<String> commandLine) {
+        Variables variables, Set<String> enabledFeatureNames, Consumer<String> commandLine) {
       for (FlagSet flagSet : flagSets) {
         flagSet.expandCommandLine(actionName, variables, enabledFeatureNames, commandLine);
       }
@@ -1704,17 +1705,25 @@ public class CcToolchainFeatures implements Serializable {
      */
     public List<String> getCommandLine(String action, Variables variables) {
       List<String> commandLine = new ArrayList<>();
+      forEachCommandLineArgument(action, variables, commandLine::add);
+      return commandLine;
+    }
+
+    /**
+     * Passes the command line for the given {@code action} to {@code consumer}, one argument at a
+     * time, without materializing it.
+     */
+    public void forEachCommandLineArgument(
+        String action, Variables variables, Consumer<String> consumer) {
       for (Feature feature : enabledFeatures) {
-        feature.expandCommandLine(action, variables, enabledFeatureNames, commandLine);
+        feature.expandCommandLine(action, variables, enabledFeatureNames, consumer);
       }
-      
+
       if (actionIsConfigured(action)) {
         actionConfigByActionName
             .get(action)
-            .expandCommandLine(variables, enabledFeatureNames, commandLine);
+            .expandCommandLine(variables, enabledFeatureNames, consumer);
       }
-
-      return commandLine;
     }
 
     /** @return the environment variables (key/value pairs) for the given {@code action}. */
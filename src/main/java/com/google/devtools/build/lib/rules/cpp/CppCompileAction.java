@@ -390,6 +390,11 @@ public class CppCompileAction extends AbstractAction
     return shouldScanIncludes;
   }
 
+  /** Returns whether this action uses header modules. */
+  public boolean useHeaderModules() {
+    return useHeaderModules;
+  }
+
   @Override
   public List<PathFragment> getBuiltInIncludeDirectories() {
     return builtInIncludeDirectories;
@@ -453,7 +453,7 @@ public final class CppLinkAction extends AbstractAction
     Fingerprint f = new Fingerprint();
     f.addString(fake ? FAKE_LINK_GUID : LINK_GUID);
     f.addString(getCppConfiguration().getLdExecutable().getPathString());
-    f.addStrings(linkCommandLine.arguments());
+    linkCommandLine.addToFingerprint(f);
     f.addStrings(getExecutionInfo().keySet());
 
     // TODO(bazel-team): For correctness, we need to ensure the invariant that all values accessed
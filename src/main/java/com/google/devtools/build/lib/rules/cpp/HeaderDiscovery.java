@@ -104,23 +104,18 @@ public class HeaderDiscovery {
     // Check inclusions.
     IncludeProblems problems = new IncludeProblems();
     for (Path execPath : dependencies) {
-      PathFragment execPathFragment = execPath.asFragment();
-      if (execPathFragment.isAbsolute()) {
-        // Absolute includes from system paths are ignored.
-        if (FileSystemUtils.startsWithAny(execPath, systemIncludePrefixes)) {
-          continue;
-        }
-        // Since gcc is given only relative paths on the command line,
-        // non-system include paths here should never be absolute. If they
-        // are, it's probably due to a non-hermetic #include, & we should stop
-        // the build with an error.
-        if (execPath.startsWith(execRoot)) {
-          execPathFragment = execPath.relativeTo(execRoot); // funky but tolerable path
-        } else {
-          problems.add(execPathFragment.getPathString());
-          continue;
-        }
+      // Absolute includes from system paths are ignored.
+      if (FileSystemUtils.startsWithAny(execPath, systemIncludePrefixes)) {
+        continue;
+      }
+      // Since gcc is given only relative paths on the command line, non-system include paths here
+      // should never be outside the execution root. If they are, it's probably due to a
+      // non-hermetic #include, & we should stop the build with an error.
+      if (!execPath.startsWith(execRoot)) {
+        problems.add(execPath.getPathString());
+        continue;
       }
+      PathFragment execPathFragment = execPath.relativeTo(execRoot);
       Artifact artifact = allowedDerivedInputsMap.get(execPathFragment);
       if (artifact == null) {
         try {
@@ -0,0 +1,199 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.rules.cpp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.Immutable;
+import com.google.devtools.build.lib.util.Preconditions;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Extracts the {@code #include}, {@code #include_next} and {@code #import} directives of a C/C++
+ * source file.
+ *
+ * <p>The parser does not evaluate conditional compilation, so the result is a superset of the
+ * inclusions the preprocessor would follow. Directives inside block comments are reported too.
+ */
+public final class IncludeParser {
+
+  private IncludeParser() {}
+
+  /** The form of an inclusion. */
+  public enum Kind {
+    /** {@code #include "foo.h"}. */
+    QUOTE,
+    /** {@code #include <foo.h>}. */
+    ANGLE,
+    /** {@code #include_next "foo.h"}. */
+    NEXT_QUOTE,
+    /** {@code #include_next <foo.h>}. */
+    NEXT_ANGLE,
+    /** An inclusion whose target is computed by the preprocessor, e.g. {@code #include FOO}. */
+    COMPUTED;
+
+    /** Returns whether the inclusion is only searched for in the angle bracket include path. */
+    public boolean isAngle() {
+      return this == ANGLE || this == NEXT_ANGLE;
+    }
+
+    /** Returns whether the search starts after the directory of the including file. */
+    public boolean isNext() {
+      return this == NEXT_QUOTE || this == NEXT_ANGLE;
+    }
+  }
+
+  /** A single inclusion directive. */
+  @Immutable
+  public static final class Inclusion {
+    private final String name;
+    private final Kind kind;
+
+    public Inclusion(String name, Kind kind) {
+      this.name = Preconditions.checkNotNull(name);
+      this.kind = Preconditions.checkNotNull(kind);
+    }
+
+    /** Returns the included name, e.g. {@code foo/bar.h}, or the macro for computed inclusions. */
+    public String getName() {
+      return name;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Inclusion)) {
+        return false;
+      }
+      Inclusion that = (Inclusion) other;
+      return name.equals(that.name) && kind == that.kind;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(name, kind);
+    }
+
+    @Override
+    public String toString() {
+      switch (kind) {
+        case QUOTE:
+          return "#include \"" + name + "\"";
+        case ANGLE:
+          return "#include <" + name + ">";
+        case NEXT_QUOTE:
+          return "#include_next \"" + name + "\"";
+        case NEXT_ANGLE:
+          return "#include_next <" + name + ">";
+        default:
+          return "#include " + name;
+      }
+    }
+  }
+
+  /** Returns the inclusions of the given file contents, in order of appearance. */
+  public static ImmutableList<Inclusion> parse(byte[] content) {
+    ImmutableList.Builder<Inclusion> inclusions = ImmutableList.builder();
+    int pos = 0;
+    while (pos < content.length) {
+      int end = pos;
+      while (end < content.length && content[end] != '\n') {
+        end++;
+      }
+      Inclusion inclusion = parseLine(content, pos, end);
+      if (inclusion != null) {
+        inclusions.add(inclusion);
+      }
+      pos = end + 1;
+    }
+    return inclusions.build();
+  }
+
+  /** Parses the line {@code content[start, end)}, returning null if it is not an inclusion. */
+  private static Inclusion parseLine(byte[] content, int start, int end) {
+    int pos = skipWhitespace(content, start, end);
+    if (pos == end || content[pos] != '#') {
+      return null;
+    }
+    pos = skipWhitespace(content, pos + 1, end);
+    boolean next;
+    if (startsWith(content, pos, end, "include_next")) {
+      next = true;
+      pos += "include_next".length();
+    } else if (startsWith(content, pos, end, "include")) {
+      next = false;
+      pos += "include".length();
+    } else if (startsWith(content, pos, end, "import")) {
+      next = false;
+      pos += "import".length();
+    } else {
+      return null;
+    }
+    int directiveEnd = pos;
+    pos = skipWhitespace(content, pos, end);
+    if (pos == end) {
+      return null;
+    }
+    byte delimiter = content[pos];
+    if (delimiter == '"' || delimiter == '<') {
+      byte closing = delimiter == '"' ? (byte) '"' : (byte) '>';
+      int nameEnd = pos + 1;
+      while (nameEnd < end && content[nameEnd] != closing) {
+        nameEnd++;
+      }
+      if (nameEnd == end || nameEnd == pos + 1) {
+        return null;
+      }
+      String name = new String(content, pos + 1, nameEnd - pos - 1, StandardCharsets.ISO_8859_1);
+      Kind kind =
+          delimiter == '"'
+              ? (next ? Kind.NEXT_QUOTE : Kind.QUOTE)
+              : (next ? Kind.NEXT_ANGLE : Kind.ANGLE);
+      return new Inclusion(name, kind);
+    }
+    if (pos == directiveEnd) {
+      // Some other directive or identifier, e.g. "#imported".
+      return null;
+    }
+    // Anything else, including a macro or a comment before the name, is left to the caller.
+    return new Inclusion(
+        new String(content, pos, end - pos, StandardCharsets.ISO_8859_1).trim(), Kind.COMPUTED);
+  }
+
+  private static int skipWhitespace(byte[] content, int pos, int end) {
+    while (pos < end && (content[pos] == ' ' || content[pos] == '\t' || content[pos] == '\r')) {
+      pos++;
+    }
+    return pos;
+  }
+
+  private static boolean startsWith(byte[] content, int pos, int end, String prefix) {
+    if (end - pos < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (content[pos + i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,52 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.rules.cpp;
+
+import com.google.devtools.build.lib.actions.ActionExecutionContext;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.rules.cpp.IncludeScanner.IncludeScannerSupplier;
+import com.google.devtools.build.lib.rules.cpp.IncludeScanner.IncludeScanningPreparer;
+import com.google.devtools.build.lib.rules.cpp.SimpleIncludeScanner.UnscannableInclusionException;
+import javax.annotation.Nullable;
+
+/**
+ * Thins the header inputs of compile actions to the headers their sources transitively include,
+ * as found by the given {@link IncludeScannerSupplier}.
+ *
+ * <p>Returns null, i.e. keeps all declared headers, if there is no scanner, if the action uses
+ * header modules, or if the scanner cannot follow all inclusions.
+ */
+public class IncludeScanning implements IncludeProcessing {
+  @Override
+  public Iterable<Artifact> determineAdditionalInputs(
+      @Nullable IncludeScannerSupplier includeScannerSupplier,
+      CppCompileAction action,
+      ActionExecutionContext actionExecutionContext)
+      throws ExecException, InterruptedException {
+    if (includeScannerSupplier == null || action.useHeaderModules()) {
+      return null;
+    }
+    try {
+      return IncludeScanningPreparer.scanForIncludedInputs(
+          action,
+          includeScannerSupplier,
+          actionExecutionContext,
+          action.getSourceFile().getExecPathString());
+    } catch (UnscannableInclusionException e) {
+      return null;
+    }
+  }
+}
@@ -42,6 +42,7 @@ import com.google.devtools.build.lib.vfs.PathFragment;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
@@ -382,27 +383,32 @@ public final class LinkCommandLine extends CommandLine {
    */
   public List<String> getRawLinkArgv() {
     List<String> argv = new ArrayList<>();
+    forEachRawLinkArgument(argv::add);
+    return argv;
+  }
+
+  /** Passes the arguments of {@link #getRawLinkArgv} to {@code consumer}, in order. */
+  private void forEachRawLinkArgument(Consumer<String> consumer) {
     if (forcedToolPath != null) {
-      argv.add(forcedToolPath);
+      consumer.accept(forcedToolPath);
     } else {
       Preconditions.checkArgument(
           featureConfiguration.actionIsConfigured(actionName),
           String.format("Expected action_config for '%s' to be configured", actionName));
-      argv.add(
+      consumer.accept(
           featureConfiguration
               .getToolForAction(linkTargetType.getActionName())
               .getToolPath(cppConfiguration.getCrosstoolTopPathFragment())
               .getPathString());
     }
-    argv.addAll(
-        featureConfiguration.getCommandLine(
-            actionName,
-            new Variables.Builder()
-                .addAll(variables)
-                .addStringSequenceVariable(
-                    CppLinkActionBuilder.LEGACY_LINK_FLAGS_VARIABLE, getToolchainFlags())
-                .build()));
-    return argv;
+    featureConfiguration.forEachCommandLineArgument(
+        actionName,
+        new Variables.Builder()
+            .addAll(variables)
+            .addStringSequenceVariable(
+                CppLinkActionBuilder.LEGACY_LINK_FLAGS_VARIABLE, getToolchainFlags())
+            .build(),
+        consumer);
   }
 
   List<String> getCommandLine() {
@@ -423,6 +429,16 @@ public final class LinkCommandLine extends CommandLine {
     return finalizeWithLinkstampCommands(getRawLinkArgv());
   }
 
+  @Override
+  public void forEachArgument(Consumer<String> consumer) {
+    if (!linkstamps.isEmpty()) {
+      // The link command is joined into a single bash command after the linkstamp compilations.
+      super.forEachArgument(consumer);
+      return;
+    }
+    forEachRawLinkArgument(consumer);
+  }
+
   /**
    * Takes a raw link command line and gives the final link command that will
    * also first compile any linkstamps necessary. Elements of rawLinkArgv are
@@ -0,0 +1,311 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.rules.cpp;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.devtools.build.lib.actions.ActionExecutionContext;
+import com.google.devtools.build.lib.actions.ActionInputFileCache;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ArtifactResolver;
+import com.google.devtools.build.lib.actions.EnvironmentalExecException;
+import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.actions.cache.Metadata;
+import com.google.devtools.build.lib.cmdline.LabelSyntaxException;
+import com.google.devtools.build.lib.cmdline.PackageIdentifier;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import com.google.devtools.build.lib.rules.cpp.IncludeParser.Inclusion;
+import com.google.devtools.build.lib.rules.cpp.IncludeParser.Kind;
+import com.google.devtools.build.lib.util.Pair;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link IncludeScanner} that follows the {@code #include} directives of the scanned sources
+ * through the include path of the action, the way the preprocessor would, without evaluating
+ * conditional compilation.
+ *
+ * <p>An inclusion whose target is computed by a macro aborts the scan with an {@link
+ * UnscannableInclusionException}; callers then fall back to the declared headers.
+ */
+@ThreadSafe
+public class SimpleIncludeScanner implements IncludeScanner {
+
+  /** Thrown when the transitive inclusions of a source cannot be determined by scanning. */
+  public static final class UnscannableInclusionException extends EnvironmentalExecException {
+    UnscannableInclusionException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Supplies scanners that share a cache of parsed files, keyed by file digest, and of file
+   * existence checks. A supplier should live no longer than a single build.
+   *
+   * <p>Digests are taken from the per-build file cache given to {@link #setFileCache}, or computed
+   * from the file if there is none.
+   */
+  @ThreadSafe
+  public static final class SimpleIncludeScannerSupplier implements IncludeScannerSupplier {
+    private final ConcurrentMap<Pair<List<PathFragment>, List<PathFragment>>, SimpleIncludeScanner>
+        scanners = new ConcurrentHashMap<>();
+    private final ConcurrentMap<HashCode, ImmutableList<Inclusion>> parsedFiles =
+        new ConcurrentHashMap<>();
+    private final ConcurrentMap<Path, Boolean> fileExists = new ConcurrentHashMap<>();
+    private final AtomicLong parseCount = new AtomicLong();
+    private final AtomicLong parseCacheHits = new AtomicLong();
+    @Nullable private volatile ActionInputFileCache fileCache;
+
+    /** Sets the per-build cache to take the digests of scanned files from. */
+    public void setFileCache(@Nullable ActionInputFileCache fileCache) {
+      this.fileCache = fileCache;
+    }
+
+    @Override
+    public IncludeScanner scannerFor(
+        List<PathFragment> quoteIncludePaths, List<PathFragment> includePaths) {
+      return scanners.computeIfAbsent(
+          Pair.of(quoteIncludePaths, includePaths),
+          key -> new SimpleIncludeScanner(this, key.getFirst(), key.getSecond()));
+    }
+
+    /** Returns the number of files parsed so far. */
+    @VisibleForTesting
+    long getParseCount() {
+      return parseCount.get();
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d files parsed, %d parses avoided by digest", parseCount.get(), parseCacheHits.get());
+    }
+
+    private boolean isFile(Path path) {
+      Boolean exists = fileExists.get(path);
+      if (exists == null) {
+        exists = path.isFile();
+        fileExists.put(path, exists);
+      }
+      return exists;
+    }
+
+    private ImmutableList<Inclusion> getInclusions(
+        Artifact artifact, ActionExecutionContext actionExecutionContext)
+        throws IOException, InterruptedException {
+      if (!artifact.isSourceArtifact()) {
+        // A generated header is built before inputs are discovered, but it may not be on local
+        // disk if its contents were left on a remote server.
+        actionExecutionContext.getActionInputPrefetcher().prefetchFiles(ImmutableList.of(artifact));
+      }
+      ActionInputFileCache cache = fileCache;
+      Metadata metadata = cache == null ? null : cache.getMetadata(artifact);
+      byte[] digest = metadata == null ? artifact.getPath().getDigest() : metadata.getDigest();
+      HashCode key = digest == null ? null : HashCode.fromBytes(digest);
+      if (key != null) {
+        ImmutableList<Inclusion> inclusions = parsedFiles.get(key);
+        if (inclusions != null) {
+          parseCacheHits.incrementAndGet();
+          return inclusions;
+        }
+      }
+      parseCount.incrementAndGet();
+      ImmutableList<Inclusion> inclusions =
+          IncludeParser.parse(FileSystemUtils.readContent(artifact.getPath()));
+      if (key != null) {
+        parsedFiles.putIfAbsent(key, inclusions);
+      }
+      return inclusions;
+    }
+  }
+
+  private final SimpleIncludeScannerSupplier supplier;
+  private final int quoteIncludePathSize;
+  private final ImmutableList<PathFragment> searchPath;
+
+  private SimpleIncludeScanner(
+      SimpleIncludeScannerSupplier supplier,
+      List<PathFragment> quoteIncludePaths,
+      List<PathFragment> includePaths) {
+    this.supplier = supplier;
+    this.quoteIncludePathSize = quoteIncludePaths.size();
+    this.searchPath =
+        ImmutableList.<PathFragment>builder()
+            .addAll(quoteIncludePaths)
+            .addAll(includePaths)
+            .build();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The include paths given to {@link SimpleIncludeScannerSupplier#scannerFor} are used; the
+   * ones passed here are ignored.
+   */
+  @Override
+  public void process(
+      Artifact mainSource,
+      Collection<Artifact> sources,
+      Map<Artifact, Artifact> legalOutputPaths,
+      List<PathFragment> includeDirs,
+      List<PathFragment> quoteIncludeDirs,
+      List<String> cmdlineIncludes,
+      Set<Artifact> includes,
+      ActionExecutionContext actionExecutionContext)
+      throws IOException, ExecException, InterruptedException {
+    Scan scan =
+        new Scan(
+            mainSource,
+            legalOutputPaths,
+            actionExecutionContext.getExecRoot(),
+            actionExecutionContext.getContext(IncludeScanningContext.class).getArtifactResolver());
+    for (Artifact source : sources) {
+      includes.add(source);
+      if (!CppFileTypes.CPP_MODULE_MAP.matches(source.getFilename())) {
+        scan.enqueue(source, -1);
+      }
+    }
+    PathFragment mainSourceDir = mainSource.getExecPath().getParentDirectory();
+    for (String cmdlineInclude : cmdlineIncludes) {
+      scan.follow(new Inclusion(cmdlineInclude, Kind.QUOTE), mainSourceDir, -1, includes);
+    }
+    while (!scan.queue.isEmpty()) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      Pair<Artifact, Integer> file = scan.queue.remove();
+      Artifact artifact = file.getFirst();
+      PathFragment dir = artifact.getExecPath().getParentDirectory();
+      for (Inclusion inclusion : supplier.getInclusions(artifact, actionExecutionContext)) {
+        scan.follow(inclusion, dir, file.getSecond(), includes);
+      }
+    }
+  }
+
+  /** The state of scanning the sources of a single action. */
+  private final class Scan {
+    private final Artifact mainSource;
+    private final Map<PathFragment, Artifact> generatedFiles = new HashMap<>();
+    private final Path execRoot;
+    private final ArtifactResolver artifactResolver;
+    /** Files to scan, with the index in the search path they were found at, or -1. */
+    private final Deque<Pair<Artifact, Integer>> queue = new ArrayDeque<>();
+    private final Set<Pair<Artifact, Integer>> visited = new HashSet<>();
+
+    Scan(
+        Artifact mainSource,
+        Map<Artifact, Artifact> legalOutputPaths,
+        Path execRoot,
+        ArtifactResolver artifactResolver) {
+      this.mainSource = mainSource;
+      this.execRoot = execRoot;
+      this.artifactResolver = artifactResolver;
+      for (Artifact generated : legalOutputPaths.keySet()) {
+        generatedFiles.put(generated.getExecPath(), generated);
+      }
+    }
+
+    void enqueue(Artifact artifact, int searchIndex) {
+      Pair<Artifact, Integer> file = Pair.of(artifact, searchIndex);
+      if (visited.add(file)) {
+        queue.add(file);
+      }
+    }
+
+    /**
+     * Resolves {@code inclusion} of a file in {@code includerDir}, which was found at {@code
+     * includerIndex} of the search path, and adds the result to {@code includes} and the queue.
+     */
+    void follow(
+        Inclusion inclusion, PathFragment includerDir, int includerIndex, Set<Artifact> includes)
+        throws UnscannableInclusionException {
+      if (inclusion.getKind() == Kind.COMPUTED) {
+        throw new UnscannableInclusionException(
+            "cannot follow computed inclusion '" + inclusion + "' in " + mainSource.prettyPrint());
+      }
+      PathFragment name = PathFragment.create(inclusion.getName());
+      if (name.isAbsolute()) {
+        return;
+      }
+      Kind kind = inclusion.getKind();
+      int start = kind.isAngle() ? quoteIncludePathSize : 0;
+      if (kind.isNext() && includerIndex >= 0) {
+        start = Math.max(start, includerIndex + 1);
+      } else if (!kind.isAngle()) {
+        // Quote inclusions are searched for next to the including file first.
+        if (exists(includerDir.getRelative(name))) {
+          add(includerDir.getRelative(name), includerIndex, includes);
+          return;
+        }
+      }
+      for (int i = start; i < searchPath.size(); i++) {
+        PathFragment candidate = searchPath.get(i).getRelative(name);
+        if (exists(candidate)) {
+          add(candidate, i, includes);
+          return;
+        }
+      }
+    }
+
+    private boolean exists(PathFragment execPath) {
+      if (execPath.containsUplevelReferences()) {
+        return false;
+      }
+      return generatedFiles.containsKey(execPath)
+          || supplier.isFile(execRoot.getRelative(execPath));
+    }
+
+    /**
+     * Adds the artifact at {@code execPath} to {@code includes} and the queue. Files that are
+     * neither declared generated headers nor part of any package, e.g. system headers, are not
+     * scanned further.
+     */
+    private void add(PathFragment execPath, int searchIndex, Set<Artifact> includes) {
+      if (execPath.isAbsolute()) {
+        return;
+      }
+      Artifact artifact = generatedFiles.get(execPath);
+      if (artifact == null) {
+        try {
+          artifact =
+              artifactResolver.resolveSourceArtifact(
+                  execPath,
+                  PackageIdentifier.discoverFromExecPath(execPath, false).getRepository());
+        } catch (LabelSyntaxException e) {
+          return;
+        }
+      }
+      if (artifact != null) {
+        includes.add(artifact);
+        enqueue(artifact, searchIndex);
+      }
+    }
+  }
+}
@@ -26,6 +26,8 @@ import com.google.devtools.build.lib.actions.SimpleSpawn;
 import com.google.devtools.build.lib.actions.Spawn;
 import com.google.devtools.build.lib.actions.SpawnActionContext;
 import com.google.devtools.build.lib.actions.UserExecException;
+import com.google.devtools.build.lib.rules.cpp.IncludeScanner.IncludeScannerSupplier;
+import javax.annotation.Nullable;
 
 /**
  * A context for C++ compilation that calls into a {@link SpawnActionContext}.
@@ -35,13 +37,34 @@ import com.google.devtools.build.lib.actions.UserExecException;
   name = {"spawn"}
 )
 public class SpawnGccStrategy implements CppCompileActionContext {
+  private static final IncludeProcessing INCLUDE_SCANNING = new IncludeScanning();
+
+  @Nullable private final IncludeScannerSupplier includeScannerSupplier;
+
+  public SpawnGccStrategy() {
+    this(null);
+  }
+
+  /**
+   * Creates a strategy that thins the inputs of compile actions with scanners from {@code
+   * includeScannerSupplier}, if not null. The include processing of the action's semantics is not
+   * consulted either way.
+   */
+  public SpawnGccStrategy(@Nullable IncludeScannerSupplier includeScannerSupplier) {
+    this.includeScannerSupplier = includeScannerSupplier;
+  }
+
   @Override
   public Iterable<Artifact> findAdditionalInputs(
       CppCompileAction action,
       ActionExecutionContext actionExecutionContext,
       IncludeProcessing includeProcessing)
       throws ExecException, InterruptedException {
-    return null;
+    if (includeScannerSupplier == null) {
+      return null;
+    }
+    return INCLUDE_SCANNING.determineAdditionalInputs(
+        includeScannerSupplier, action, actionExecutionContext);
   }
 
   @Override
@@ -147,6 +147,7 @@ public final class JavaConfiguration extends Fragment {
   private final boolean useIjars;
   private final boolean useHeaderCompilation;
   private final boolean headerCompilationDisableJavacFallback;
+  private final boolean headerCompilationWorkers;
   private final boolean generateJavaDeps;
   private final boolean strictDepsJavaProtos;
   private final OneVersionEnforcementLevel enforceOneVersion;
@@ -179,6 +180,7 @@ public final class JavaConfiguration extends Fragment {
     this.useIjars = javaOptions.useIjars;
     this.useHeaderCompilation = javaOptions.headerCompilation;
     this.headerCompilationDisableJavacFallback = javaOptions.headerCompilationDisableJavacFallback;
+    this.headerCompilationWorkers = javaOptions.headerCompilationWorkers;
     this.generateJavaDeps = generateJavaDeps;
     this.javaClasspath = javaOptions.javaClasspath;
     this.defaultJvmFlags = ImmutableList.copyOf(defaultJvmFlags);
@@ -276,6 +278,11 @@ public final class JavaConfiguration extends Fragment {
     return headerCompilationDisableJavacFallback;
   }
 
+  /** Returns true iff header compilations may run in persistent workers. */
+  public boolean headerCompilationWorkers() {
+    return headerCompilationWorkers;
+  }
+
   /**
    * Returns true iff dependency information is generated after compilation.
    */
@@ -29,7 +29,9 @@ import com.google.devtools.build.lib.actions.ActionInput;
 import com.google.devtools.build.lib.actions.ActionOwner;
 import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.BaseSpawn;
+import com.google.devtools.build.lib.actions.EmptyRunfilesSupplier;
 import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.actions.ExecutionRequirements;
 import com.google.devtools.build.lib.actions.ParameterFile;
 import com.google.devtools.build.lib.actions.ParameterFile.ParameterFileType;
 import com.google.devtools.build.lib.actions.ResourceSet;
@@ -121,11 +123,9 @@ public class JavaHeaderCompileAction extends SpawnAction {
 
   @Override
   protected String computeKey() {
-    return new Fingerprint()
-        .addString(GUID)
-        .addString(super.computeKey())
-        .addStrings(directCommandLine.arguments())
-        .hexDigestAndReset();
+    Fingerprint f = new Fingerprint().addString(GUID).addString(super.computeKey());
+    directCommandLine.addToFingerprint(f);
+    return f.hexDigestAndReset();
   }
 
   @Override
@@ -373,8 +373,13 @@ public class JavaHeaderCompileAction extends SpawnAction {
               .addTransitive(tools)
               .build();
 
-      boolean noFallback =
-          ruleContext.getFragment(JavaConfiguration.class).headerCompilationDisableJavacFallback();
+      JavaConfiguration javaConfiguration = ruleContext.getFragment(JavaConfiguration.class);
+      boolean noFallback = javaConfiguration.headerCompilationDisableJavacFallback();
+      // Persistent workers receive their command line through a parameter file, so actions that
+      // may run in workers always use one.
+      boolean useWorkers = javaConfiguration.headerCompilationWorkers();
+      ImmutableMap<String, String> executionInfo =
+          useWorkers ? ExecutionRequirements.WORKER_MODE_ENABLED : ImmutableMap.of();
       // The action doesn't require annotation processing and either javac-turbine fallback is
       // disabled, or the action doesn't distinguish between direct and transitive deps, so
       // use a plain SpawnAction to invoke turbine.
@@ -388,6 +393,9 @@ public class JavaHeaderCompileAction extends SpawnAction {
           // Transitive classpath actions may exceed the command line length limit.
           builder.alwaysUseParameterFile(ParameterFileType.UNQUOTED);
         }
+        if (useWorkers) {
+          builder.alwaysUseParameterFile(ParameterFileType.UNQUOTED);
+        }
         CustomCommandLine.Builder commandLine =
             baseCommandLine(CustomCommandLine.builder(), classpath);
         if (noFallback) {
@@ -404,6 +412,7 @@ public class JavaHeaderCompileAction extends SpawnAction {
                 javaToolchain.getHeaderCompiler(),
                 javaToolchain.getJvmOptions())
             .setMnemonic("Turbine")
+            .setExecutionInfo(executionInfo)
             .setProgressMessage(getProgressMessage())
             .build(ruleContext);
       }
@@ -447,8 +456,12 @@ public class JavaHeaderCompileAction extends SpawnAction {
               false,
               // TODO(b/63280599): This is missing the config's action environment.
               JavaCompileAction.UTF8_ACTION_ENVIRONMENT,
+              executionInfo,
               getProgressMessageWithAnnotationProcessors(),
-              "JavacTurbine")
+              EmptyRunfilesSupplier.INSTANCE,
+              "JavacTurbine",
+              false,
+              null)
         };
       }
 
@@ -480,6 +480,17 @@ public class JavaOptions extends FragmentOptions {
   )
   public boolean headerCompilationDisableJavacFallback;
 
+  @Option(
+    name = "experimental_java_header_compilation_workers",
+    defaultValue = "false",
+    documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help =
+        "If --java_header_compilation is set, allow header compilations to run in persistent "
+            + "workers. The header compiler of the Java toolchain must support --persistent_worker."
+  )
+  public boolean headerCompilationWorkers;
+
   @Option(
     name = "experimental_one_version_enforcement",
     defaultValue = "OFF",
@@ -510,6 +521,7 @@ public class JavaOptions extends FragmentOptions {
     host.useIjars = useIjars;
     host.headerCompilation = headerCompilation;
     host.headerCompilationDisableJavacFallback = headerCompilationDisableJavacFallback;
+    host.headerCompilationWorkers = headerCompilationWorkers;
 
     host.javaDeps = javaDeps;
     host.javaClasspath = javaClasspath;
@@ -75,11 +75,21 @@ public class HeaderThinning implements IncludeProcessing {
       @Nullable IncludeScannerSupplier includeScannerSupplier,
       CppCompileAction action,
       ActionExecutionContext actionExecutionContext)
-      throws ExecException {
+      throws ExecException, InterruptedException {
     Artifact headersListFile = findHeadersListFile(action.getMandatoryInputs());
     if (headersListFile == null) {
       return null;
     }
+    try {
+      // The list is read in-process, so it has to be on local disk even if the header scanner's
+      // outputs were left on a remote server.
+      actionExecutionContext
+          .getActionInputPrefetcher()
+          .prefetchFiles(ImmutableList.of(headersListFile));
+    } catch (IOException ex) {
+      throw new EnvironmentalExecException(
+          String.format("Error fetching headers file %s", headersListFile.getExecPathString()), ex);
+    }
     return findRequiredHeaderInputs(action.getSourceFile(), headersListFile, getAllowedInputsMap());
   }
 
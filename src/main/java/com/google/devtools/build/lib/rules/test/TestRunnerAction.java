@@ -225,7 +225,7 @@ public class TestRunnerAction extends AbstractAction implements NotifyOnActionCa
   protected String computeKey() {
     Fingerprint f = new Fingerprint();
     f.addString(GUID);
-    f.addStrings(executionSettings.getArgs().arguments());
+    executionSettings.getArgs().addToFingerprint(f);
     f.addString(executionSettings.getTestFilter() == null ? "" : executionSettings.getTestFilter());
     RunUnder runUnder = executionSettings.getRunUnder();
     f.addString(runUnder == null ? "" : runUnder.getValue());
@@ -314,6 +314,18 @@ public class TestRunnerAction extends AbstractAction implements NotifyOnActionCa
     return true;
   }
 
+  /**
+   * Returns whether no shard or run of this test can reuse a result from an earlier command,
+   * whatever the outcome of the earlier runs, so that all of them are executed in the same command.
+   */
+  public boolean resultsAreNeverReused() {
+    return !canBeCached(
+        configuration.cacheTestResults(),
+        /*prevStatus=*/ null,
+        testProperties.isExternal(),
+        configuration.getRunsPerTestForLabel(getOwner().getLabel()));
+  }
+
   /**
    * Returns whether caching has been deemed safe by looking at the previous test run
    * (for local caching). If the previous run is not present, return "true" here, as
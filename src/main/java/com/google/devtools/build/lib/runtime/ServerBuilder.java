@@ -19,6 +19,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.devtools.build.lib.buildeventstream.PathConverter;
 import com.google.devtools.build.lib.packages.AttributeContainer;
+import com.google.devtools.build.lib.packages.CompactAttributeContainer;
 import com.google.devtools.build.lib.packages.PackageFactory;
 import com.google.devtools.build.lib.packages.RuleClass;
 import com.google.devtools.build.lib.query2.AbstractBlazeQueryEnvironment;
@@ -62,7 +63,12 @@ public final class ServerBuilder {
   }
 
   Function<RuleClass, AttributeContainer> getAttributeContainerFactory() {
-    return attributeContainerFactory == null ? AttributeContainer::new : attributeContainerFactory;
+    if (attributeContainerFactory != null) {
+      return attributeContainerFactory;
+    }
+    return CompactAttributeContainer.isEnabled()
+        ? CompactAttributeContainer::new
+        : AttributeContainer::new;
   }
 
   ImmutableMap<String, InfoItem> getInfoItems() {
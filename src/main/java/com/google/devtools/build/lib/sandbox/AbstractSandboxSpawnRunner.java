@@ -16,12 +16,15 @@ package com.google.devtools.build.lib.sandbox;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.devtools.build.lib.actions.ActionExecutionMetadata;
 import com.google.devtools.build.lib.actions.ExecException;
 import com.google.devtools.build.lib.actions.ResourceManager;
 import com.google.devtools.build.lib.actions.ResourceManager.ResourceHandle;
 import com.google.devtools.build.lib.actions.Spawn;
+import com.google.devtools.build.lib.actions.Spawns;
 import com.google.devtools.build.lib.actions.UserExecException;
 import com.google.devtools.build.lib.exec.SpawnExecException;
 import com.google.devtools.build.lib.exec.SpawnResult;
@@ -70,6 +73,10 @@ abstract class AbstractSandboxSpawnRunner implements SpawnRunner {
     try (ResourceHandle ignored =
         ResourceManager.instance().acquireResources(owner, spawn.getLocalResources())) {
       policy.report(ProgressStatus.EXECUTING, getName());
+      if (Spawns.shouldPrefetchInputsForLocalExecution(spawn)) {
+        policy.prefetchInputs(
+            Iterables.filter(policy.getInputMapping().values(), Predicates.notNull()));
+      }
       return actuallyExec(spawn, policy);
     } catch (IOException e) {
       throw new UserExecException("I/O exception during sandboxed execution", e);
@@ -25,7 +25,6 @@ import com.google.devtools.build.lib.actions.Spawn;
 import com.google.devtools.build.lib.analysis.config.BuildConfiguration;
 import com.google.devtools.build.lib.exec.SpawnInputExpander;
 import com.google.devtools.build.lib.exec.SpawnRunner.SpawnExecutionPolicy;
-import com.google.devtools.build.lib.rules.fileset.FilesetActionContext;
 import com.google.devtools.build.lib.standalone.StandaloneSpawnStrategy;
 import com.google.devtools.build.lib.util.Preconditions;
 import com.google.devtools.build.lib.vfs.Path;
@@ -54,17 +53,10 @@ public final class SandboxHelpers {
    * host filesystem where the input files can be found.
    */
   public static Map<PathFragment, Path> getInputFiles(
-      SpawnInputExpander spawnInputExpander,
-      Path execRoot,
+      Map<PathFragment, ActionInput> inputMap,
       Spawn spawn,
-      ActionExecutionContext executionContext)
-      throws IOException {
-    Map<PathFragment, ActionInput> inputMap =
-        spawnInputExpander.getInputMapping(
-            spawn,
-            executionContext.getArtifactExpander(),
-            executionContext.getActionInputFileCache(),
-            executionContext.getContext(FilesetActionContext.class));
+      ActionExecutionContext executionContext,
+      Path execRoot) {
     return postProcess(inputMap, spawn, executionContext.getArtifactExpander(), execRoot);
   }
 
@@ -466,6 +466,23 @@ public class ActionMetadataHandler implements MetadataHandler {
     }
   }
 
+  @Override
+  public void injectRemoteFile(Artifact output, byte[] digest, long size) {
+    Preconditions.checkState(executionMode.get());
+    Preconditions.checkArgument(!output.isTreeArtifact() && !output.isMiddlemanArtifact(), output);
+    // Marking the file as injected also keeps setPathReadOnlyAndExecutable from touching the
+    // (nonexistent) file.
+    Preconditions.checkState(injectedFiles.add(output), output);
+    RootedPath rootedPath =
+        RootedPath.toRootedPath(output.getRoot().getPath(), output.getRootRelativePath());
+    FileStateValue fileStateValue =
+        new FileStateValue.RegularFileStateValue(size, /*mtime=*/ -1, digest, null);
+    FileValue value = FileValue.value(rootedPath, fileStateValue, rootedPath, fileStateValue);
+    FileValue oldValue = outputArtifactData.putIfAbsent(output, value);
+    Preconditions.checkState(
+        oldValue == null || oldValue.equals(value), "%s: %s %s", output, oldValue, value);
+  }
+
   @Override
   public void markOmitted(ActionInput output) {
     Preconditions.checkState(executionMode.get());
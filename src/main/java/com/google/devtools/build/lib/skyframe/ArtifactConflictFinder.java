@@ -0,0 +1,429 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.skyframe;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.devtools.build.lib.actions.ActionAnalysisMetadata;
+import com.google.devtools.build.lib.actions.ActionLookupValue;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ArtifactPrefixConflictException;
+import com.google.devtools.build.lib.actions.MapBasedActionGraph;
+import com.google.devtools.build.lib.actions.MutableActionGraph;
+import com.google.devtools.build.lib.actions.MutableActionGraph.ActionConflictException;
+import com.google.devtools.build.lib.concurrent.ExecutorUtil;
+import com.google.devtools.build.lib.concurrent.Sharder;
+import com.google.devtools.build.lib.concurrent.ThrowableRecordingRunnableWrapper;
+import com.google.devtools.build.lib.profiler.AutoProfiler;
+import com.google.devtools.build.lib.profiler.ProfilerTask;
+import com.google.devtools.build.lib.skyframe.SkyframeActionExecutor.ConflictException;
+import com.google.devtools.build.lib.util.Preconditions;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Finds the conflicts between the outputs of the actions in Skyframe for {@link
+ * SkyframeActionExecutor#findAndStoreArtifactConflicts}, incrementally.
+ *
+ * <p>The action graph, a trie of the output paths and the prefix conflicts found so far are kept
+ * between calls, together with the {@link ActionLookupValue}s whose actions they hold. A call
+ * registers the actions of the values that are new since the previous call, unregisters those of
+ * the values that are gone, and only re-checks prefix conflicts in the subtrees of the output tree
+ * that contain a changed path. After trivial analysis changes, that is a few values instead of all
+ * of them.
+ *
+ * <p>Unregistering an action is only sound if every action was registered without an {@link
+ * ActionConflictException}, so if there is one, or if most values are gone anyway, the state is
+ * rebuilt from scratch. The conflicts found are the same as those of a from-scratch check, except
+ * that which of two conflicting actions gets the {@link ActionConflictException} may differ, as it
+ * does between from-scratch checks.
+ */
+final class ArtifactConflictFinder {
+  private static final Logger LOG = Logger.getLogger(ArtifactConflictFinder.class.getName());
+
+  // Below this many new values, registering them on the calling thread is faster than starting a
+  // thread pool.
+  private static final int MIN_VALUES_FOR_PARALLEL_REGISTRATION = 100;
+
+  private Set<ActionLookupValue> registeredValues = Sets.newIdentityHashSet();
+  private final MutableActionGraph actionGraph = new MapBasedActionGraph();
+  private final PathNode outputTree = new PathNode();
+  private final ConcurrentMap<ActionAnalysisMetadata, ConflictException> actionConflicts =
+      new ConcurrentHashMap<>();
+  // Prefix conflicts, keyed by the path of the artifact that is under the other one.
+  private final TreeMap<PathFragment, PrefixConflict> prefixConflicts = new TreeMap<>();
+
+  /**
+   * Brings the state up to date with {@code actionLookupValues}, the values currently in Skyframe,
+   * and returns all conflicts between their actions.
+   */
+  ImmutableMap<ActionAnalysisMetadata, ConflictException> findConflicts(
+      Iterable<ActionLookupValue> actionLookupValues) throws InterruptedException {
+    Set<ActionLookupValue> currentValues = Sets.newIdentityHashSet();
+    for (ActionLookupValue value : actionLookupValues) {
+      currentValues.add(value);
+    }
+    List<ActionLookupValue> removedValues = new ArrayList<>();
+    for (ActionLookupValue value : registeredValues) {
+      if (!currentValues.contains(value)) {
+        removedValues.add(value);
+      }
+    }
+    if (!removedValues.isEmpty()
+        && (!actionConflicts.isEmpty() || removedValues.size() > registeredValues.size() / 2)) {
+      clear();
+      removedValues.clear();
+    }
+    List<ActionLookupValue> addedValues = new ArrayList<>();
+    for (ActionLookupValue value : currentValues) {
+      if (!registeredValues.contains(value)) {
+        addedValues.add(value);
+      }
+    }
+    LOG.info(
+        String.format(
+            "Checking artifact conflicts: %d action lookup values added, %d removed, %d unchanged",
+            addedValues.size(),
+            removedValues.size(),
+            currentValues.size() - addedValues.size()));
+
+    Set<PathFragment> changedPaths = ConcurrentHashMap.newKeySet();
+    boolean updated = false;
+    try {
+      try (AutoProfiler p =
+          AutoProfiler.profiled("unregistering removed actions", ProfilerTask.INFO)) {
+        for (ActionLookupValue value : removedValues) {
+          unregister(value, changedPaths);
+        }
+      }
+      try (AutoProfiler p = AutoProfiler.profiled("registering new actions", ProfilerTask.INFO)) {
+        register(addedValues, changedPaths);
+      }
+      try (AutoProfiler p =
+          AutoProfiler.profiled("checking artifact prefix conflicts", ProfilerTask.INFO)) {
+        recheckPrefixConflicts(changedPaths);
+      }
+      registeredValues = currentValues;
+      updated = true;
+    } finally {
+      if (!updated) {
+        // The action graph and the output tree hold an unknown part of the changes, which the
+        // next call could not tell apart from the state of registeredValues.
+        clear();
+      }
+    }
+
+    Map<ActionAnalysisMetadata, ConflictException> badActions = new LinkedHashMap<>();
+    badActions.putAll(actionConflicts);
+    for (PrefixConflict conflict : prefixConflicts.values()) {
+      badActions.put(conflict.prefixAction, new ConflictException(conflict.exception));
+      badActions.put(conflict.suffixAction, new ConflictException(conflict.exception));
+    }
+    return ImmutableMap.copyOf(badActions);
+  }
+
+  /** Forgets all state, so that the next call to {@link #findConflicts} starts from scratch. */
+  void clear() {
+    registeredValues = Sets.newIdentityHashSet();
+    actionGraph.clear();
+    outputTree.children = null;
+    outputTree.artifact = null;
+    outputTree.count = 0;
+    actionConflicts.clear();
+    prefixConflicts.clear();
+  }
+
+  private void unregister(ActionLookupValue value, Set<PathFragment> changedPaths) {
+    // Every action was registered without conflict, so every output path was added.
+    Set<ActionAnalysisMetadata> unregisteredActions = new HashSet<>();
+    for (Map.Entry<Artifact, ActionAnalysisMetadata> entry :
+        value.getMapForConsistencyCheck().entrySet()) {
+      if (unregisteredActions.add(entry.getValue())) {
+        actionGraph.unregisterAction(entry.getValue());
+      }
+      PathFragment execPath = entry.getKey().getExecPath();
+      removeOutput(execPath);
+      changedPaths.add(execPath);
+    }
+  }
+
+  /**
+   * Registers the actions of {@code values} in the action graph and adds their outputs to the
+   * output tree. Registration is CPU-bound, so many values are registered in a thread pool.
+   */
+  private void register(List<ActionLookupValue> values, Set<PathFragment> changedPaths)
+      throws InterruptedException {
+    if (values.size() < MIN_VALUES_FOR_PARALLEL_REGISTRATION) {
+      actionRegistration(values, changedPaths).run();
+      return;
+    }
+    int numJobs = Runtime.getRuntime().availableProcessors();
+    Sharder<ActionLookupValue> actionShards = new Sharder<>(numJobs, values.size());
+    for (ActionLookupValue value : values) {
+      actionShards.add(value);
+    }
+
+    ThrowableRecordingRunnableWrapper wrapper =
+        new ThrowableRecordingRunnableWrapper("ArtifactConflictFinder#register");
+
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            numJobs,
+            new ThreadFactoryBuilder().setNameFormat("ActionLookupValue Processor %d").build());
+    for (List<ActionLookupValue> shard : actionShards) {
+      executor.execute(wrapper.wrap(actionRegistration(shard, changedPaths)));
+    }
+    boolean interrupted = ExecutorUtil.interruptibleShutdown(executor);
+    Throwables.propagateIfPossible(wrapper.getFirstThrownError());
+    if (interrupted) {
+      throw new InterruptedException();
+    }
+  }
+
+  private Runnable actionRegistration(
+      final List<ActionLookupValue> values, final Set<PathFragment> changedPaths) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        for (ActionLookupValue value : values) {
+          Set<ActionAnalysisMetadata> registeredActions = new HashSet<>();
+          for (Map.Entry<Artifact, ActionAnalysisMetadata> entry :
+              value.getMapForConsistencyCheck().entrySet()) {
+            ActionAnalysisMetadata action = entry.getValue();
+            // We have an entry for each <action, artifact> pair. Only try to register each action
+            // once.
+            if (registeredActions.add(action)) {
+              try {
+                actionGraph.registerAction(action);
+              } catch (ActionConflictException e) {
+                Exception oldException = actionConflicts.put(action, new ConflictException(e));
+                Preconditions.checkState(oldException == null,
+                    "%s | %s | %s", action, e, oldException);
+                // We skip the rest of the loop, and do not add the path->artifact mapping for this
+                // artifact below -- we don't need to check it since this action is already in
+                // error.
+                continue;
+              }
+            }
+            addOutput(entry.getKey());
+            changedPaths.add(entry.getKey().getExecPath());
+          }
+        }
+      }
+    };
+  }
+
+  private void addOutput(Artifact artifact) {
+    PathNode node = outputTree;
+    for (String segment : artifact.getExecPath().getSegments()) {
+      node = node.getOrCreateChild(segment);
+    }
+    synchronized (node) {
+      if (node.count++ == 0) {
+        node.artifact = artifact;
+      }
+    }
+  }
+
+  private void removeOutput(PathFragment execPath) {
+    PathNode[] nodes = new PathNode[execPath.segmentCount() + 1];
+    nodes[0] = outputTree;
+    for (int i = 0; i < execPath.segmentCount(); i++) {
+      nodes[i + 1] =
+          Preconditions.checkNotNull(nodes[i].getChild(execPath.getSegment(i)), execPath);
+    }
+    PathNode node = nodes[nodes.length - 1];
+    Preconditions.checkState(node.count > 0, execPath);
+    if (--node.count == 0) {
+      node.artifact = null;
+    }
+    // Prune the nodes that no longer lead to an output.
+    for (int i = nodes.length - 1; i > 0 && nodes[i].isEmpty(); i--) {
+      nodes[i - 1].children.remove(execPath.getSegment(i - 1));
+    }
+  }
+
+  /**
+   * Re-checks the prefix conflicts in every subtree of the output tree that contains one of {@code
+   * changedPaths}. A subtree is rooted at the topmost output above a changed path, or at the
+   * changed path itself if there is none, so it contains every output that a change may have
+   * brought into or out of a conflict.
+   */
+  private void recheckPrefixConflicts(Set<PathFragment> changedPaths) {
+    TreeSet<PathFragment> roots = new TreeSet<>();
+    for (PathFragment path : changedPaths) {
+      PathFragment topmostOutput = findTopmostOutput(path);
+      roots.add(topmostOutput != null ? topmostOutput : path);
+    }
+    PathFragment lastRoot = null;
+    for (PathFragment root : roots) {
+      // A root under the previous one is covered by it: descendants sort right after a path.
+      if (lastRoot != null && root.startsWith(lastRoot)) {
+        continue;
+      }
+      lastRoot = root;
+      Iterator<PathFragment> oldConflicts = prefixConflicts.tailMap(root).keySet().iterator();
+      while (oldConflicts.hasNext() && oldConflicts.next().startsWith(root)) {
+        oldConflicts.remove();
+      }
+      PathNode node = outputTree;
+      for (int i = 0; node != null && i < root.segmentCount(); i++) {
+        node = node.getChild(root.getSegment(i));
+      }
+      if (node != null) {
+        checkSubtree(node, root, null, null);
+      }
+    }
+  }
+
+  @Nullable
+  private PathFragment findTopmostOutput(PathFragment path) {
+    PathNode node = outputTree;
+    for (int i = 0; i < path.segmentCount(); i++) {
+      node = node.getChild(path.getSegment(i));
+      if (node == null) {
+        return null;
+      }
+      if (node.artifact != null) {
+        return path.subFragment(0, i + 1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Records a prefix conflict between every output under {@code node} and {@code prefix}, the
+   * topmost output above it, or between them and the topmost output under {@code node} if there is
+   * no such output. If x << y << z (where x << y means "y starts with x"), then we only report
+   * (x,y), (x,z), but not (y,z).
+   */
+  private void checkSubtree(
+      PathNode node,
+      PathFragment path,
+      @Nullable Artifact prefix,
+      @Nullable PathFragment prefixPath) {
+    if (node.artifact != null) {
+      if (prefix == null) {
+        prefix = node.artifact;
+        prefixPath = path;
+      } else {
+        checkPrefixConflict(prefixPath, prefix, path, node.artifact);
+      }
+    }
+    if (node.children != null) {
+      for (Map.Entry<String, PathNode> child : node.children.entrySet()) {
+        checkSubtree(child.getValue(), path.getChild(child.getKey()), prefix, prefixPath);
+      }
+    }
+  }
+
+  private void checkPrefixConflict(
+      PathFragment pathI, Artifact artifactI, PathFragment pathJ, Artifact artifactJ) {
+    // We ignore the artifact prefix conflict between a TreeFileArtifact and its parent
+    // TreeArtifact. See Actions#findArtifactPrefixConflicts.
+    if (artifactJ.hasParent() && artifactJ.getParent().equals(artifactI)) {
+      return;
+    }
+    ActionAnalysisMetadata actionI =
+        Preconditions.checkNotNull(actionGraph.getGeneratingAction(artifactI), artifactI);
+    ActionAnalysisMetadata actionJ =
+        Preconditions.checkNotNull(actionGraph.getGeneratingAction(artifactJ), artifactJ);
+    if (actionI.shouldReportPathPrefixConflict(actionJ)) {
+      prefixConflicts.put(
+          pathJ,
+          new PrefixConflict(
+              actionI,
+              actionJ,
+              new ArtifactPrefixConflictException(
+                  pathI, pathJ, actionI.getOwner().getLabel(), actionJ.getOwner().getLabel())));
+    }
+  }
+
+  /**
+   * A node of the trie of output paths: a directory or a file under the exec root.
+   *
+   * <p>Nodes are added concurrently during registration; everything else happens on one thread.
+   */
+  private static final class PathNode {
+    // Null until the first child is added, as most nodes are leaves.
+    @Nullable private volatile ConcurrentMap<String, PathNode> children;
+    // The output at this path, and the number of registrations of it (more than one for shared
+    // actions). Guarded by this during registration.
+    @Nullable private Artifact artifact;
+    private int count;
+
+    @Nullable
+    PathNode getChild(String name) {
+      ConcurrentMap<String, PathNode> children = this.children;
+      return children == null ? null : children.get(name);
+    }
+
+    PathNode getOrCreateChild(String name) {
+      ConcurrentMap<String, PathNode> children = this.children;
+      if (children == null) {
+        synchronized (this) {
+          children = this.children;
+          if (children == null) {
+            children = new ConcurrentHashMap<>(4);
+            this.children = children;
+          }
+        }
+      }
+      PathNode child = children.get(name);
+      if (child == null) {
+        PathNode newChild = new PathNode();
+        child = children.putIfAbsent(name, newChild);
+        if (child == null) {
+          child = newChild;
+        }
+      }
+      return child;
+    }
+
+    boolean isEmpty() {
+      return count == 0 && (children == null || children.isEmpty());
+    }
+  }
+
+  private static final class PrefixConflict {
+    private final ActionAnalysisMetadata prefixAction;
+    private final ActionAnalysisMetadata suffixAction;
+    private final ArtifactPrefixConflictException exception;
+
+    PrefixConflict(
+        ActionAnalysisMetadata prefixAction,
+        ActionAnalysisMetadata suffixAction,
+        ArtifactPrefixConflictException exception) {
+      this.prefixAction = prefixAction;
+      this.suffixAction = suffixAction;
+      this.exception = exception;
+    }
+  }
+}
@@ -221,7 +221,10 @@ public class FilesystemValueChecker {
 
     boolean interrupted = ExecutorUtil.interruptibleShutdown(executor);
     Throwables.propagateIfPossible(wrapper.getFirstThrownError());
-    LOG.info("Completed output file stat checks");
+    LOG.info(
+        batchStatter == null
+            ? "Completed output file stat checks"
+            : "Completed output file stat checks with " + batchStatter);
     if (interrupted) {
       throw new InterruptedException();
     }
@@ -0,0 +1,426 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.skyframe;
+
+import static com.google.devtools.build.lib.unix.NativeInotify.EVENT_HEADER_SIZE;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_ATTRIB;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_CLOSE_WRITE;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_CREATE;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_DELETE;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_DELETE_SELF;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_DONT_FOLLOW;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_EXCL_UNLINK;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_IGNORED;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_ISDIR;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_MODIFY;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_MOVED_FROM;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_MOVED_TO;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_MOVE_SELF;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_ONLYDIR;
+import static com.google.devtools.build.lib.unix.NativeInotify.IN_Q_OVERFLOW;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.build.lib.UnixJniLoader;
+import com.google.devtools.build.lib.concurrent.NamedForkJoinPool;
+import com.google.devtools.build.lib.unix.NativeInotify;
+import com.google.devtools.build.lib.unix.NativePosixFiles;
+import com.google.devtools.build.lib.unix.NativePosixFiles.Dirents;
+import com.google.devtools.build.lib.unix.NativePosixFiles.ReadTypes;
+import com.google.devtools.build.lib.util.Preconditions;
+import com.google.devtools.common.options.OptionsClassProvider;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+/**
+ * A {@link LocalDiffAwareness} for Linux that talks to inotify(7) directly through
+ * {@link NativeInotify}, in lieu of {@link WatchServiceDiffAwareness}.
+ *
+ * <p>Watches are registered by several threads at once, and directories are listed without
+ * stat()ing every entry. Pending events are drained in large batches. A queue overflow does not
+ * throw the watches away: the watched tree is walked again to pick up directories created while
+ * events were being dropped, and only the view of that one build reports everything as modified.
+ *
+ * <p>Paths are kept as Latin1 strings, which is how the rest of the native file system code
+ * represents names, and only converted to {@link Path}s for the changed files.
+ */
+public final class InotifyDiffAwareness extends LocalDiffAwareness {
+  private static final Logger LOG = Logger.getLogger(InotifyDiffAwareness.class.getName());
+
+  private static final int WATCH_MASK =
+      IN_CREATE
+          | IN_DELETE
+          | IN_MODIFY
+          | IN_ATTRIB
+          | IN_CLOSE_WRITE
+          | IN_MOVED_FROM
+          | IN_MOVED_TO
+          | IN_DELETE_SELF
+          | IN_MOVE_SELF
+          | IN_ONLYDIR
+          | IN_DONT_FOLLOW
+          | IN_EXCL_UNLINK;
+
+  private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+  private static final Charset FILE_NAME_CHARSET = fileNameCharset();
+
+  private static final boolean JNI_AVAILABLE;
+
+  static {
+    boolean loadJniWorked = false;
+    try {
+      UnixJniLoader.loadJni();
+      loadJniWorked = true;
+    } catch (UnsatisfiedLinkError ignored) {
+      // The bootstrap binary doesn't have the JNI code; LocalDiffAwareness.Factory falls back to
+      // WatchServiceDiffAwareness in that case.
+    }
+    JNI_AVAILABLE = loadJniWorked;
+  }
+
+  /** Returns whether the native inotify bindings can be used in this process. */
+  static boolean isAvailable() {
+    return JNI_AVAILABLE;
+  }
+
+  private final String watchRoot;
+  private final int registrationThreads;
+
+  // Both maps are written to concurrently while registering watches, and only read and written by
+  // the thread calling #getCurrentView otherwise.
+  private final Map<Integer, String> wdToDir = new ConcurrentHashMap<>();
+  private final Map<String, Integer> dirToWd = new ConcurrentHashMap<>();
+
+  private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+  /** The inotify file descriptor, or -1 if not open. */
+  private int fd = -1;
+
+  InotifyDiffAwareness(String watchRoot, int registrationThreads) {
+    super(watchRoot);
+    this.watchRoot = toLatin1(watchRootPath.toString());
+    this.registrationThreads = registrationThreads;
+  }
+
+  InotifyDiffAwareness(String watchRoot) {
+    this(watchRoot, Runtime.getRuntime().availableProcessors());
+  }
+
+  private void init() throws IOException {
+    Preconditions.checkState(fd == -1);
+    fd = NativeInotify.inotifyInit();
+  }
+
+  @Override
+  public View getCurrentView(OptionsClassProvider options) throws BrokenDiffAwarenessException {
+    if (!JNI_AVAILABLE) {
+      return EVERYTHING_MODIFIED;
+    }
+    // See WatchServiceDiffAwareness#getCurrentView for an explanation of this logic.
+    boolean watchFs = options.getOptions(Options.class).watchFS;
+    if (watchFs && fd == -1) {
+      try {
+        init();
+      } catch (IOException e) {
+        LOG.warning("Unable to initialize inotify: " + e.getMessage());
+      }
+    } else if (!watchFs && fd != -1) {
+      close();
+      throw new BrokenDiffAwarenessException("Switched off --watchfs again");
+    }
+    // If init() failed, then this if also applies.
+    if (fd == -1) {
+      return EVERYTHING_MODIFIED;
+    }
+    try {
+      if (isFirstCall()) {
+        registerTrees(ImmutableSet.of(watchRoot), /*visited=*/ null);
+        if (!dirToWd.containsKey(watchRoot)) {
+          throw new IOException("Root directory " + watchRootPath + " is inaccessible.");
+        }
+        return newView(ImmutableSet.<Path>of());
+      }
+      Set<String> changes = collectChanges();
+      return changes == null ? newEverythingModifiedView() : newView(toPaths(changes));
+    } catch (IOException e) {
+      close();
+      throw new BrokenDiffAwarenessException(
+          "Error encountered with local file system watcher " + e);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (fd != -1) {
+      try {
+        NativeInotify.close(fd);
+      } catch (IOException ignored) {
+        // Nothing we can do here.
+      }
+      fd = -1;
+      wdToDir.clear();
+      dirToWd.clear();
+    }
+  }
+
+  /**
+   * Returns the changed files and directories reported by inotify since the last call, or null if
+   * the event queue overflowed and some changes were lost.
+   */
+  private Set<String> collectChanges() throws IOException {
+    Set<String> createdFilesAndDirectories = new HashSet<>();
+    Set<String> createdDirectories = new HashSet<>();
+    Set<String> deletedOrModifiedFilesAndDirectories = new HashSet<>();
+    boolean overflow = false;
+
+    int length;
+    while ((length = NativeInotify.inotifyRead(fd, buffer)) > 0) {
+      ByteBuffer events = ByteBuffer.wrap(buffer, 0, length).order(ByteOrder.nativeOrder());
+      while (events.remaining() >= EVENT_HEADER_SIZE) {
+        int wd = events.getInt();
+        int mask = events.getInt();
+        events.getInt(); // cookie
+        int nameLength = events.getInt();
+        String name = decodeName(events.position(), nameLength);
+        events.position(events.position() + nameLength);
+
+        if ((mask & IN_Q_OVERFLOW) != 0) {
+          // Keep draining the queue; the caller only needs to know that events were lost.
+          overflow = true;
+          continue;
+        }
+        if ((mask & IN_IGNORED) != 0) {
+          // The watch was removed, because its directory is gone or by us.
+          String dir = wdToDir.remove(wd);
+          if (dir != null) {
+            dirToWd.remove(dir, wd);
+          }
+          continue;
+        }
+        String dir = wdToDir.get(wd);
+        if (dir == null) {
+          // A straggling event for a watch we have already dropped.
+          continue;
+        }
+        if (name.isEmpty()) {
+          // An event about the watched directory itself. The parent directory gets the same event
+          // for its child, except for the root, which we check below.
+          if ((mask & (IN_DELETE_SELF | IN_MOVE_SELF)) != 0) {
+            deletedOrModifiedFilesAndDirectories.add(dir);
+          }
+          continue;
+        }
+        String path = child(dir, name);
+        if ((mask & (IN_CREATE | IN_MOVED_TO)) != 0) {
+          createdFilesAndDirectories.add(path);
+          if ((mask & IN_ISDIR) != 0) {
+            createdDirectories.add(path);
+          }
+          deletedOrModifiedFilesAndDirectories.remove(path);
+        } else if ((mask & (IN_DELETE | IN_MOVED_FROM)) != 0) {
+          createdFilesAndDirectories.remove(path);
+          createdDirectories.remove(path);
+          deletedOrModifiedFilesAndDirectories.add(path);
+          if ((mask & (IN_MOVED_FROM | IN_ISDIR)) == (IN_MOVED_FROM | IN_ISDIR)) {
+            // The watches under a moved directory still fire, but under the old path. Drop them;
+            // if the directory was moved somewhere we watch, it shows up as created there.
+            deletedOrModifiedFilesAndDirectories.addAll(unwatchTree(path));
+          }
+        } else if (!createdFilesAndDirectories.contains(path)) {
+          // If a file was created and then modified, then the net diff is that it was created.
+          deletedOrModifiedFilesAndDirectories.add(path);
+        }
+      }
+    }
+
+    if (overflow) {
+      // We can't tell which directories were created while events were dropped, so walk the whole
+      // tree again. Directories that are already watched keep their watch descriptors.
+      LOG.info("inotify event queue overflowed, rescanning " + watchRootPath);
+      registerTrees(ImmutableSet.of(watchRoot), /*visited=*/ null);
+    }
+    if (!dirToWd.containsKey(watchRoot)) {
+      // Something happened to the root directory being watched.
+      throw new IOException("Root directory " + watchRootPath + " became inaccessible.");
+    }
+    if (overflow) {
+      return null;
+    }
+
+    Set<String> changedPaths = new HashSet<>(createdFilesAndDirectories);
+    if (!createdDirectories.isEmpty()) {
+      // Changes to new directories since their creation have not been watched. Register them and
+      // report everything underneath.
+      registerTrees(createdDirectories, changedPaths);
+    }
+    changedPaths.addAll(deletedOrModifiedFilesAndDirectories);
+    return changedPaths;
+  }
+
+  /**
+   * Removes the watches of {@code dir} and all the watched directories under it. Returns the
+   * directories that were unwatched.
+   */
+  private List<String> unwatchTree(String dir) {
+    String prefix = dir + "/";
+    List<String> unwatched = new ArrayList<>();
+    for (Iterator<Map.Entry<String, Integer>> it = dirToWd.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<String, Integer> entry = it.next();
+      String watched = entry.getKey();
+      if (watched.equals(dir) || watched.startsWith(prefix)) {
+        NativeInotify.inotifyRmWatch(fd, entry.getValue());
+        wdToDir.remove(entry.getValue());
+        it.remove();
+        unwatched.add(watched);
+      }
+    }
+    return unwatched;
+  }
+
+  /**
+   * Registers watches for the directory trees rooted at {@code roots} in parallel. If {@code
+   * visited} is not null, all the files and directories found are added to it.
+   */
+  private void registerTrees(Collection<String> roots, Set<String> visited) throws IOException {
+    Set<String> concurrentVisited = visited == null ? null : ConcurrentHashMap.newKeySet();
+    List<RegisterTreeTask> tasks = new ArrayList<>(roots.size());
+    for (String root : roots) {
+      tasks.add(new RegisterTreeTask(root, concurrentVisited));
+    }
+    ForkJoinPool pool = NamedForkJoinPool.newNamedPool("inotify-register", registrationThreads);
+    try {
+      pool.invoke(
+          new RecursiveAction() {
+            @Override
+            protected void compute() {
+              invokeAll(tasks);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      pool.shutdownNow();
+    }
+    if (visited != null) {
+      visited.addAll(concurrentVisited);
+    }
+  }
+
+  /**
+   * Watches a directory, then lists it and recursively does the same for its subdirectories.
+   *
+   * <p>It's important that we register the directory before we list its children. This way we are
+   * guaranteed to see new files/directories either on this #getDiff or the next one. Otherwise,
+   * e.g., an intra-build creation of a child directory will be forever missed if it happens before
+   * the directory is listed.
+   */
+  private final class RegisterTreeTask extends RecursiveAction {
+    private final String dir;
+    private final Set<String> visited;
+
+    private RegisterTreeTask(String dir, Set<String> visited) {
+      this.dir = dir;
+      this.visited = visited;
+    }
+
+    @Override
+    protected void compute() {
+      int wd;
+      Dirents dirents;
+      try {
+        wd = NativeInotify.inotifyAddWatch(fd, dir, WATCH_MASK);
+        if (wd == -1) {
+          // Deleted or replaced by something other than a directory since it was listed.
+          return;
+        }
+        wdToDir.put(wd, dir);
+        dirToWd.put(dir, wd);
+        if (visited != null) {
+          visited.add(dir);
+        }
+        dirents = NativePosixFiles.readdir(dir, ReadTypes.NOFOLLOW);
+      } catch (IOException e) {
+        if (!NativePosixFiles.isDirectory(dir)) {
+          // Deleted after it was watched; we'll see the event on the next call.
+          return;
+        }
+        throw new UncheckedIOException(e);
+      }
+      List<RegisterTreeTask> subdirectories = new ArrayList<>();
+      for (int i = 0; i < dirents.size(); i++) {
+        String path = child(dir, dirents.getName(i));
+        if (dirents.getType(i) == Dirents.Type.DIRECTORY) {
+          subdirectories.add(new RegisterTreeTask(path, visited));
+        } else if (visited != null) {
+          visited.add(path);
+        }
+      }
+      invokeAll(subdirectories);
+    }
+  }
+
+  private static String child(String dir, String name) {
+    return dir.endsWith("/") ? dir + name : dir + "/" + name;
+  }
+
+  /** Decodes a NUL-padded name from an inotify event as a Latin1 string. */
+  private String decodeName(int offset, int length) {
+    int end = offset;
+    while (end < offset + length && buffer[end] != 0) {
+      end++;
+    }
+    return new String(buffer, offset, end - offset, StandardCharsets.ISO_8859_1);
+  }
+
+  private static Charset fileNameCharset() {
+    String encoding = System.getProperty("sun.jnu.encoding");
+    try {
+      return encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+    } catch (IllegalArgumentException e) {
+      return Charset.defaultCharset();
+    }
+  }
+
+  /** Converts a path string as used by java.nio to a Latin1 string of its bytes. */
+  private static String toLatin1(String path) {
+    return new String(path.getBytes(FILE_NAME_CHARSET), StandardCharsets.ISO_8859_1);
+  }
+
+  private static ImmutableSet<Path> toPaths(Set<String> latin1Paths) {
+    ImmutableSet.Builder<Path> paths = ImmutableSet.builder();
+    for (String path : latin1Paths) {
+      paths.add(
+          FileSystems.getDefault()
+              .getPath(new String(path.getBytes(StandardCharsets.ISO_8859_1), FILE_NAME_CHARSET)));
+    }
+    return paths.build();
+  }
+}
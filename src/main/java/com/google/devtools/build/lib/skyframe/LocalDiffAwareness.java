@@ -34,12 +34,13 @@ import java.util.Set;
 
 /**
  * File system watcher for local filesystems. It's able to provide a list of changed files between
- * two consecutive calls. On Linux, uses the standard Java WatchService, which uses 'inotify' and,
- * on OS X, uses {@link MacOSXFsEventsDiffAwareness}, which use FSEvents.
+ * two consecutive calls. On Linux, uses {@link InotifyDiffAwareness}, which talks to 'inotify'
+ * directly, or the standard Java WatchService if the JNI library is unavailable and, on OS X, uses
+ * {@link MacOSXFsEventsDiffAwareness}, which use FSEvents.
  *
  * <p>
- * This is an abstract class, specialized by {@link MacOSXFsEventsDiffAwareness} and
- * {@link WatchServiceDiffAwareness}.
+ * This is an abstract class, specialized by {@link MacOSXFsEventsDiffAwareness},
+ * {@link InotifyDiffAwareness} and {@link WatchServiceDiffAwareness}.
  */
 public abstract class LocalDiffAwareness implements DiffAwareness {
   /**
@@ -92,6 +93,9 @@ public abstract class LocalDiffAwareness implements DiffAwareness {
       if (OS.getCurrent() == OS.DARWIN) {
         return new MacOSXFsEventsDiffAwareness(resolvedPathEntryFragment.toString());
       }
+      if (OS.getCurrent() == OS.LINUX && InotifyDiffAwareness.isAvailable()) {
+        return new InotifyDiffAwareness(resolvedPathEntryFragment.toString());
+      }
 
       return new WatchServiceDiffAwareness(resolvedPathEntryFragment.toString());
     }
@@ -131,17 +135,28 @@ public abstract class LocalDiffAwareness implements DiffAwareness {
     private final LocalDiffAwareness owner;
     private final int position;
     private final Set<Path> modifiedAbsolutePaths;
+    private final boolean everythingModified;
 
     public SequentialView(LocalDiffAwareness owner, int position, Set<Path> modifiedAbsolutePaths) {
+      this(owner, position, modifiedAbsolutePaths, /*everythingModified=*/ false);
+    }
+
+    private SequentialView(
+        LocalDiffAwareness owner,
+        int position,
+        Set<Path> modifiedAbsolutePaths,
+        boolean everythingModified) {
       this.owner = owner;
       this.position = position;
       this.modifiedAbsolutePaths = modifiedAbsolutePaths;
+      this.everythingModified = everythingModified;
     }
 
     @Override
     public String toString() {
-      return String.format("SequentialView[owner=%s, position=%d, modifiedAbsolutePaths=%s]", owner,
-          position, modifiedAbsolutePaths);
+      return String.format(
+          "SequentialView[owner=%s, position=%d, modifiedAbsolutePaths=%s, everythingModified=%s]",
+          owner, position, modifiedAbsolutePaths, everythingModified);
     }
   }
 
@@ -161,6 +176,18 @@ public abstract class LocalDiffAwareness implements DiffAwareness {
     return new SequentialView(this, numGetCurrentViewCalls, modifiedAbsolutePaths);
   }
 
+  /**
+   * Create a new view for which the diff from the previous view is
+   * {@link ModifiedFileSet#EVERYTHING_MODIFIED}, but which, unlike {@link #EVERYTHING_MODIFIED},
+   * stays in sequence with the next view. Use this if some changes may have been missed but the
+   * watcher is still able to see all subsequent ones. This will increase the view counter.
+   */
+  protected SequentialView newEverythingModifiedView() {
+    numGetCurrentViewCalls++;
+    return new SequentialView(
+        this, numGetCurrentViewCalls, ImmutableSet.<Path>of(), /*everythingModified=*/ true);
+  }
+
   @Override
   public ModifiedFileSet getDiff(View oldView, View newView)
       throws IncompatibleViewException, BrokenDiffAwarenessException {
@@ -172,7 +199,8 @@ public abstract class LocalDiffAwareness implements DiffAwareness {
     } catch (ClassCastException e) {
       throw new IncompatibleViewException("Given views are not from LocalDiffAwareness");
     }
-    if (!areInSequence(oldSequentialView, newSequentialView)) {
+    if (!areInSequence(oldSequentialView, newSequentialView)
+        || newSequentialView.everythingModified) {
       return ModifiedFileSet.EVERYTHING_MODIFIED;
     }
     return ModifiedFileSet.builder()
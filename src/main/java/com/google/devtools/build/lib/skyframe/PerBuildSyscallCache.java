@@ -16,6 +16,8 @@ package com.google.devtools.build.lib.skyframe;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import com.google.devtools.build.lib.util.Pair;
 import com.google.devtools.build.lib.vfs.Dirent;
 import com.google.devtools.build.lib.vfs.FileStatus;
@@ -23,10 +25,30 @@ import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.Symlinks;
 import com.google.devtools.build.lib.vfs.UnixGlob;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
 
 /**
  * A per-build cache of filesystem operations for Skyframe invocations of legacy package loading.
+ *
+ * <p>The cache is usually cleared at the start of every build. It may instead be kept across
+ * builds as a directory-level index shared by the globs of all packages, in which case the caller
+ * must call {@link #prepareForBuild} at the start of every build and report every changed path
+ * through {@link #invalidate} before the next build loads packages. Such a cache indexes the cached
+ * paths by directory, so that invalidation only visits the entries beneath the changed paths.
+ * Since changes to a symlink's target are reported under the target's path, it also tracks
+ * symlinks, and results that were found to depend on a symlink are not kept; see {@link
+ * #invalidateSymlinkDependentEntries}. Results for paths outside the package roots, such as
+ * external repositories and the output base, are never reported as changed and are only kept for
+ * the build that read them.
+ *
+ * <p>Only the filesystem calls are shared: every glob pattern is still evaluated by its own walk,
+ * which reads the listings it needs from this cache rather than from disk.
  */
 public class PerBuildSyscallCache implements UnixGlob.FilesystemCalls {
 
@@ -34,13 +56,18 @@ public class PerBuildSyscallCache implements UnixGlob.FilesystemCalls {
   private final LoadingCache<Pair<Path, Symlinks>, Pair<Collection<Dirent>, IOException>>
       readdirCache;
 
+  /** The bookkeeping for a cache kept across builds, or null for a cache cleared every build. */
+  @Nullable private final KeptEntries keptEntries;
+
   private static final FileStatus NO_STATUS = new FakeFileStatus();
 
   private PerBuildSyscallCache(
       LoadingCache<Pair<Path, Symlinks>, Pair<FileStatus, IOException>> statCache,
-      LoadingCache<Pair<Path, Symlinks>, Pair<Collection<Dirent>, IOException>> readdirCache) {
+      LoadingCache<Pair<Path, Symlinks>, Pair<Collection<Dirent>, IOException>> readdirCache,
+      @Nullable KeptEntries keptEntries) {
     this.statCache = statCache;
     this.readdirCache = readdirCache;
+    this.keptEntries = keptEntries;
   }
 
   public static Builder newBuilder() {
@@ -53,6 +80,7 @@ public class PerBuildSyscallCache implements UnixGlob.FilesystemCalls {
     private int maxStats = UNSET;
     private int maxReaddirs = UNSET;
     private int concurrencyLevel = UNSET;
+    private boolean keptAcrossBuilds = false;
 
     private Builder() {
     }
@@ -75,6 +103,15 @@ public class PerBuildSyscallCache implements UnixGlob.FilesystemCalls {
       return this;
     }
 
+    /**
+     * Sets whether the cache is kept across builds. Such a cache records the symlinks and
+     * directories it reads, which costs extra syscalls and memory.
+     */
+    public Builder setKeptAcrossBuilds(boolean keptAcrossBuilds) {
+      this.keptAcrossBuilds = keptAcrossBuilds;
+      return this;
+    }
+
     public PerBuildSyscallCache build() {
       CacheBuilder<Object, Object> statCacheBuilder = CacheBuilder.newBuilder();
       if (maxStats != UNSET) {
@@ -88,8 +125,11 @@ public class PerBuildSyscallCache implements UnixGlob.FilesystemCalls {
         statCacheBuilder = statCacheBuilder.concurrencyLevel(concurrencyLevel);
         readdirCacheBuilder = readdirCacheBuilder.concurrencyLevel(concurrencyLevel);
       }
-      return new PerBuildSyscallCache(statCacheBuilder.build(newStatLoader()),
-          readdirCacheBuilder.build(newReaddirLoader()));
+      KeptEntries keptEntries = keptAcrossBuilds ? new KeptEntries() : null;
+      return new PerBuildSyscallCache(
+          statCacheBuilder.build(newStatLoader(keptEntries)),
+          readdirCacheBuilder.build(newReaddirLoader(keptEntries)),
+          keptEntries);
     }
   }
 
@@ -116,6 +156,147 @@ public class PerBuildSyscallCache implements UnixGlob.FilesystemCalls {
   public void clear() {
     statCache.invalidateAll();
     readdirCache.invalidateAll();
+    if (keptEntries != null) {
+      keptEntries.clear();
+    }
+  }
+
+  /**
+   * Prepares a cache kept across builds for a build that loads packages from the given roots. The
+   * results for paths outside the package roots and those that depend on symlinks are discarded,
+   * and the whole cache is cleared if the roots changed.
+   */
+  public void prepareForBuild(Iterable<Path> packageRoots) {
+    if (keptEntries == null) {
+      clear();
+      return;
+    }
+    ImmutableSet<Path> roots = ImmutableSet.copyOf(packageRoots);
+    if (!roots.equals(keptEntries.packageRoots)) {
+      clear();
+      keptEntries.packageRoots = roots;
+      return;
+    }
+    invalidateSymlinkDependentEntries();
+    ImmutableSet<Path> transientPaths = ImmutableSet.copyOf(keptEntries.transientPaths);
+    keptEntries.transientPaths.removeAll(transientPaths);
+    for (Path path : transientPaths) {
+      invalidateEntries(path);
+    }
+  }
+
+  /**
+   * Invalidates the cached results for the given changed paths: the stat and listing of each path
+   * and of everything beneath it, and the listing of its parent directory.
+   */
+  public void invalidate(Iterable<Path> changedPaths) {
+    if (keptEntries == null) {
+      clear();
+      return;
+    }
+    for (Path path : changedPaths) {
+      invalidateTree(path);
+    }
+  }
+
+  /**
+   * Invalidates every cached result for a path that is, or is beneath, a path previously found to
+   * be a symlink, as well as the listings of directories that contain symlinks. Changes to the
+   * targets of those symlinks are not reported under the symlinks' own paths.
+   */
+  public void invalidateSymlinkDependentEntries() {
+    if (keptEntries == null || keptEntries.symlinks.isEmpty()) {
+      return;
+    }
+    ImmutableSet<Path> symlinkPaths = ImmutableSet.copyOf(keptEntries.symlinks);
+    keptEntries.symlinks.removeAll(symlinkPaths);
+    for (Path path : symlinkPaths) {
+      invalidateTree(path);
+    }
+  }
+
+  /**
+   * Invalidates the entries for the given path, for every path the directory index records beneath
+   * it, and the listing of its parent directory.
+   */
+  private void invalidateTree(Path root) {
+    Path parent = root.getParentDirectory();
+    if (parent != null) {
+      invalidateListing(parent);
+    }
+    Deque<Path> pending = new ArrayDeque<>();
+    pending.add(root);
+    while (!pending.isEmpty()) {
+      Path path = pending.removeLast();
+      invalidateEntries(path);
+      Set<Path> children = keptEntries.childrenByParent.remove(path);
+      if (children != null) {
+        pending.addAll(children);
+      }
+    }
+  }
+
+  private void invalidateEntries(Path path) {
+    for (Symlinks symlinks : Symlinks.values()) {
+      statCache.invalidate(Pair.of(path, symlinks));
+    }
+    invalidateListing(path);
+  }
+
+  private void invalidateListing(Path path) {
+    for (Symlinks symlinks : Symlinks.values()) {
+      readdirCache.invalidate(Pair.of(path, symlinks));
+    }
+  }
+
+  private static boolean isUnder(Path path, Set<Path> roots) {
+    for (Path p = path; p != null; p = p.getParentDirectory()) {
+      if (roots.contains(p)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** The bookkeeping that lets a cache kept across builds discard only the affected entries. */
+  private static final class KeptEntries {
+    /** Paths that were found to be symlinks while populating either cache. */
+    private final Set<Path> symlinks = Sets.newConcurrentHashSet();
+
+    /**
+     * The cached paths beneath the package roots, indexed by parent directory. Every ancestor of a
+     * cached path is linked to its parent, so that a changed directory reaches all of them.
+     */
+    private final ConcurrentMap<Path, Set<Path>> childrenByParent = new ConcurrentHashMap<>();
+
+    /** Cached paths outside the package roots, which are dropped at the start of every build. */
+    private final Set<Path> transientPaths = Sets.newConcurrentHashSet();
+
+    private volatile ImmutableSet<Path> packageRoots = ImmutableSet.of();
+
+    private void record(Path path) {
+      if (!isUnder(path, packageRoots)) {
+        transientPaths.add(path);
+        return;
+      }
+      Path child = path;
+      for (Path parent = path.getParentDirectory();
+          parent != null;
+          child = parent, parent = parent.getParentDirectory()) {
+        Set<Path> children =
+            childrenByParent.computeIfAbsent(parent, p -> Sets.newConcurrentHashSet());
+        if (!children.add(child)) {
+          // The ancestors are already linked.
+          return;
+        }
+      }
+    }
+
+    private void clear() {
+      symlinks.clear();
+      childrenByParent.clear();
+      transientPaths.clear();
+    }
   }
 
   // This is used because the cache implementations don't allow null.
@@ -165,13 +346,28 @@ public class PerBuildSyscallCache implements UnixGlob.FilesystemCalls {
    * A {@link CacheLoader} for a cache of stat calls.
    * Input: (path, following_symlinks)
    * Output: FileStatus
+   *
+   * <p>Loaded paths and those that turn out to be symlinks are recorded in {@code keptEntries},
+   * unless it is null.
    */
-  private static CacheLoader<Pair<Path, Symlinks>, Pair<FileStatus, IOException>> newStatLoader() {
+  private static CacheLoader<Pair<Path, Symlinks>, Pair<FileStatus, IOException>> newStatLoader(
+      @Nullable final KeptEntries keptEntries) {
     return new CacheLoader<Pair<Path, Symlinks>, Pair<FileStatus, IOException>>() {
         @Override
         public Pair<FileStatus, IOException> load(Pair<Path, Symlinks> p) {
           try {
-            FileStatus f = p.first.statIfFound(p.second);
+            if (keptEntries == null) {
+              FileStatus f = p.first.statIfFound(p.second);
+              return Pair.of((f == null) ? NO_STATUS : f, null);
+            }
+            keptEntries.record(p.first);
+            FileStatus f = p.first.statIfFound(Symlinks.NOFOLLOW);
+            if (f != null && f.isSymbolicLink()) {
+              keptEntries.symlinks.add(p.first);
+              if (p.second == Symlinks.FOLLOW) {
+                f = p.first.statIfFound(Symlinks.FOLLOW);
+              }
+            }
             return Pair.of((f == null) ? NO_STATUS : f, null);
           } catch (IOException e) {
             return Pair.of(null, e);
@@ -184,16 +380,37 @@ public class PerBuildSyscallCache implements UnixGlob.FilesystemCalls {
    * A {@link CacheLoader} for a cache of readdir calls.
    * Input: (path, following_symlinks)
    * Output: A union of (Dirents, IOException).
+   *
+   * <p>The listed directory is recorded in {@code keptEntries}, together with any symlinks among
+   * it and its entries, unless it is null.
    */
-  private static
-  CacheLoader<Pair<Path, Symlinks>, Pair<Collection<Dirent>, IOException>> newReaddirLoader() {
+  private static CacheLoader<Pair<Path, Symlinks>, Pair<Collection<Dirent>, IOException>>
+      newReaddirLoader(@Nullable final KeptEntries keptEntries) {
     return new CacheLoader<Pair<Path, Symlinks>, Pair<Collection<Dirent>, IOException>>() {
         @Override
         public Pair<Collection<Dirent>, IOException> load(Pair<Path, Symlinks> p) {
           try {
             // TODO(bazel-team): Consider storing the Collection of Dirent values more compactly
             // by reusing DirectoryEntryListingStateValue#CompactSortedDirents.
-            return Pair.of(p.first.readdir(p.second), null);
+            if (keptEntries == null) {
+              return Pair.of(p.first.readdir(p.second), null);
+            }
+            keptEntries.record(p.first);
+            if (p.first.isSymbolicLink()) {
+              keptEntries.symlinks.add(p.first);
+            }
+            Collection<Dirent> dirents = p.first.readdir(Symlinks.NOFOLLOW);
+            boolean containsSymlinks = false;
+            for (Dirent dirent : dirents) {
+              if (dirent.getType() == Dirent.Type.SYMLINK) {
+                keptEntries.symlinks.add(p.first.getChild(dirent.getName()));
+                containsSymlinks = true;
+              }
+            }
+            if (containsSymlinks && p.second == Symlinks.FOLLOW) {
+              dirents = p.first.readdir(Symlinks.FOLLOW);
+            }
+            return Pair.of(dirents, null);
           } catch (IOException e) {
             return Pair.of(null, e);
           }
@@ -356,6 +356,11 @@ public final class SequencedSkyframeExecutor extends SkyframeExecutor {
           modifiedFilesByPathEntry.get(pathEntry);
       ModifiedFileSet modifiedFileSet = processableModifiedFileSet.getModifiedFileSet();
       Preconditions.checkState(!modifiedFileSet.treatEverythingAsModified(), pathEntry);
+      List<Path> changedPaths = new ArrayList<>();
+      for (PathFragment modifiedFile : modifiedFileSet.modifiedSourceFiles()) {
+        changedPaths.add(pathEntry.getRelative(modifiedFile));
+      }
+      invalidateSyscallCacheEntries(changedPaths);
       handleChangedFiles(ImmutableList.of(pathEntry),
           getDiff(tsgm, modifiedFileSet.modifiedSourceFiles(), pathEntry));
       processableModifiedFileSet.markProcessed();
@@ -384,6 +389,9 @@ public final class SequencedSkyframeExecutor extends SkyframeExecutor {
       // path) files need to be checked.
       return;
     }
+    // The changed files found by the scan below are not necessarily all the files that changed
+    // since the globbing filesystem cache was populated, so it has to start over.
+    clearSyscallCache();
     // Before running the FilesystemValueChecker, ensure that all values marked for invalidation
     // have actually been invalidated (recall that invalidation happens at the beginning of the
     // next evaluate() call), because checking those is a waste of time.
@@ -532,6 +540,7 @@ public final class SequencedSkyframeExecutor extends SkyframeExecutor {
     } else {
       diff = getDiff(tsgm, modifiedFileSet.modifiedSourceFiles(), pathEntry);
     }
+    clearSyscallCache();
     syscalls.set(getPerBuildSyscallCache(/*concurrencyLevel=*/ 42));
     recordingDiffer.invalidate(diff.changedKeysWithoutNewValues());
     recordingDiffer.inject(diff.changedKeysWithNewValues());
@@ -577,6 +586,8 @@ public final class SequencedSkyframeExecutor extends SkyframeExecutor {
     topLevelAspects = ImmutableSet.copyOf(topLevelAspects);
     try (AutoProfiler p = AutoProfiler.logged("discarding analysis cache", LOG)) {
       lastAnalysisDiscarded = true;
+      // The values below are cleared in place, so they cannot be checked incrementally later.
+      clearArtifactConflictState();
       Iterator<? extends Map.Entry<SkyKey, ? extends NodeEntry>> it =
           memoizingEvaluator.getGraphMap().entrySet().iterator();
       while (it.hasNext()) {
@@ -626,6 +637,7 @@ public final class SequencedSkyframeExecutor extends SkyframeExecutor {
 
   @Override
   public void dropConfiguredTargets() {
+    clearArtifactConflictState();
     skyframeBuildView.clearInvalidatedConfiguredTargets();
     skyframeBuildView.clearLegacyData();
     memoizingEvaluator.delete(
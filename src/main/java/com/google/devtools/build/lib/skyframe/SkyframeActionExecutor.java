@@ -20,7 +20,6 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.eventbus.EventBus;
 import com.google.common.util.concurrent.Striped;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.devtools.build.lib.actions.Action;
 import com.google.devtools.build.lib.actions.ActionAnalysisMetadata;
 import com.google.devtools.build.lib.actions.ActionCacheChecker;
@@ -32,7 +31,6 @@ import com.google.devtools.build.lib.actions.ActionExecutionContext;
 import com.google.devtools.build.lib.actions.ActionExecutionContextFactory;
 import com.google.devtools.build.lib.actions.ActionExecutionException;
 import com.google.devtools.build.lib.actions.ActionExecutionStatusReporter;
-import com.google.devtools.build.lib.actions.ActionGraph;
 import com.google.devtools.build.lib.actions.ActionInput;
 import com.google.devtools.build.lib.actions.ActionInputFileCache;
 import com.google.devtools.build.lib.actions.ActionInputPrefetcher;
@@ -42,7 +40,6 @@ import com.google.devtools.build.lib.actions.ActionLookupValue;
 import com.google.devtools.build.lib.actions.ActionMiddlemanEvent;
 import com.google.devtools.build.lib.actions.ActionStartedEvent;
 import com.google.devtools.build.lib.actions.ActionStatusMessage;
-import com.google.devtools.build.lib.actions.Actions;
 import com.google.devtools.build.lib.actions.AlreadyReportedActionExecutionException;
 import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.Artifact.ArtifactExpander;
@@ -50,8 +47,6 @@ import com.google.devtools.build.lib.actions.ArtifactPrefixConflictException;
 import com.google.devtools.build.lib.actions.CachedActionEvent;
 import com.google.devtools.build.lib.actions.EnvironmentalExecException;
 import com.google.devtools.build.lib.actions.Executor;
-import com.google.devtools.build.lib.actions.MapBasedActionGraph;
-import com.google.devtools.build.lib.actions.MutableActionGraph;
 import com.google.devtools.build.lib.actions.MutableActionGraph.ActionConflictException;
 import com.google.devtools.build.lib.actions.NotifyOnActionCacheHit;
 import com.google.devtools.build.lib.actions.NotifyOnActionCacheHit.ActionCachedContext;
@@ -60,9 +55,6 @@ import com.google.devtools.build.lib.actions.TargetOutOfDateException;
 import com.google.devtools.build.lib.actions.cache.Metadata;
 import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.cmdline.Label;
-import com.google.devtools.build.lib.concurrent.ExecutorUtil;
-import com.google.devtools.build.lib.concurrent.Sharder;
-import com.google.devtools.build.lib.concurrent.ThrowableRecordingRunnableWrapper;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventHandler;
 import com.google.devtools.build.lib.events.Reporter;
@@ -82,18 +74,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
@@ -140,6 +125,7 @@ public final class SkyframeActionExecutor implements ActionExecutionContextFacto
   // thrown when execution of the action is requested. This field is set during each call to
   // findAndStoreArtifactConflicts, and is preserved across builds otherwise.
   private ImmutableMap<ActionAnalysisMetadata, ConflictException> badActionMap = ImmutableMap.of();
+  private final ArtifactConflictFinder artifactConflictFinder = new ArtifactConflictFinder();
   private boolean keepGoing;
   private boolean hadExecutionError;
   private ActionInputFileCache perBuildFileCache;
@@ -211,8 +197,10 @@ public final class SkyframeActionExecutor implements ActionExecutionContextFacto
    * first time it is executed, the correct exception will be thrown.
    *
    * <p>This method must be called if a new action was added to the graph this build, so
-   * whenever a new configured target was analyzed this build. It is somewhat expensive (~1s
-   * range for a medium build as of 2014), so it should only be called when necessary.
+   * whenever a new configured target was analyzed this build. Checking all actions is somewhat
+   * expensive (~1s range for a medium build as of 2014), so only the actions of the {@link
+   * ActionLookupValue}s that changed since the previous call are checked; see {@link
+   * ArtifactConflictFinder}.
    *
    * <p>Conflicts found may not be requested this build, and so we may overzealously throw an error.
    * For instance, if actions A and B generate the same artifact foo, and the user first requests
@@ -230,96 +218,15 @@ public final class SkyframeActionExecutor implements ActionExecutionContextFacto
    */
   void findAndStoreArtifactConflicts(Iterable<ActionLookupValue> actionLookupValues)
       throws InterruptedException {
-    ConcurrentMap<ActionAnalysisMetadata, ConflictException> temporaryBadActionMap =
-        new ConcurrentHashMap<>();
-    Pair<ActionGraph, SortedMap<PathFragment, Artifact>> result;
-    result = constructActionGraphAndPathMap(actionLookupValues, temporaryBadActionMap);
-    ActionGraph actionGraph = result.first;
-    SortedMap<PathFragment, Artifact> artifactPathMap = result.second;
-
-    Map<ActionAnalysisMetadata, ArtifactPrefixConflictException> actionsWithArtifactPrefixConflict =
-        Actions.findArtifactPrefixConflicts(actionGraph, artifactPathMap);
-    for (Map.Entry<ActionAnalysisMetadata, ArtifactPrefixConflictException> actionExceptionPair :
-        actionsWithArtifactPrefixConflict.entrySet()) {
-      temporaryBadActionMap.put(
-          actionExceptionPair.getKey(), new ConflictException(actionExceptionPair.getValue()));
-    }
-
-    this.badActionMap = ImmutableMap.copyOf(temporaryBadActionMap);
+    this.badActionMap = artifactConflictFinder.findConflicts(actionLookupValues);
   }
 
   /**
-   * Simultaneously construct an action graph for all the actions in Skyframe and a map from
-   * {@link PathFragment}s to their respective {@link Artifact}s. We do this in a threadpool to save
-   * around 1.5 seconds on a mid-sized build versus a single-threaded operation.
+   * Drops the state kept for incremental conflict checking, e.g. because the actions it refers to
+   * are about to be discarded. The next {@link #findAndStoreArtifactConflicts} checks all actions.
    */
-  private static Pair<ActionGraph, SortedMap<PathFragment, Artifact>>
-      constructActionGraphAndPathMap(
-          Iterable<ActionLookupValue> values,
-          ConcurrentMap<ActionAnalysisMetadata, ConflictException> badActionMap)
-      throws InterruptedException {
-    MutableActionGraph actionGraph = new MapBasedActionGraph();
-    ConcurrentNavigableMap<PathFragment, Artifact> artifactPathMap = new ConcurrentSkipListMap<>();
-    // Action graph construction is CPU-bound.
-    int numJobs = Runtime.getRuntime().availableProcessors();
-    // No great reason for expecting 5000 action lookup values, but not worth counting size of
-    // values.
-    Sharder<ActionLookupValue> actionShards = new Sharder<>(numJobs, 5000);
-    for (ActionLookupValue value : values) {
-      actionShards.add(value);
-    }
-
-    ThrowableRecordingRunnableWrapper wrapper = new ThrowableRecordingRunnableWrapper(
-        "SkyframeActionExecutor#constructActionGraphAndPathMap");
-
-    ExecutorService executor = Executors.newFixedThreadPool(
-        numJobs,
-        new ThreadFactoryBuilder().setNameFormat("ActionLookupValue Processor %d").build());
-    for (List<ActionLookupValue> shard : actionShards) {
-      executor.execute(
-          wrapper.wrap(actionRegistration(shard, actionGraph, artifactPathMap, badActionMap)));
-    }
-    boolean interrupted = ExecutorUtil.interruptibleShutdown(executor);
-    Throwables.propagateIfPossible(wrapper.getFirstThrownError());
-    if (interrupted) {
-      throw new InterruptedException();
-    }
-    return Pair.<ActionGraph, SortedMap<PathFragment, Artifact>>of(actionGraph, artifactPathMap);
-  }
-
-  private static Runnable actionRegistration(
-      final List<ActionLookupValue> values,
-      final MutableActionGraph actionGraph,
-      final ConcurrentMap<PathFragment, Artifact> artifactPathMap,
-      final ConcurrentMap<ActionAnalysisMetadata, ConflictException> badActionMap) {
-    return new Runnable() {
-      @Override
-      public void run() {
-        for (ActionLookupValue value : values) {
-          Set<ActionAnalysisMetadata> registeredActions = new HashSet<>();
-          for (Map.Entry<Artifact, ActionAnalysisMetadata> entry :
-              value.getMapForConsistencyCheck().entrySet()) {
-            ActionAnalysisMetadata action = entry.getValue();
-            // We have an entry for each <action, artifact> pair. Only try to register each action
-            // once.
-            if (registeredActions.add(action)) {
-              try {
-                actionGraph.registerAction(action);
-              } catch (ActionConflictException e) {
-                Exception oldException = badActionMap.put(action, new ConflictException(e));
-                Preconditions.checkState(oldException == null,
-                  "%s | %s | %s", action, e, oldException);
-                // We skip the rest of the loop, and do not add the path->artifact mapping for this
-                // artifact below -- we don't need to check it since this action is already in
-                // error.
-                continue;
-              }
-            }
-            artifactPathMap.put(entry.getKey().getExecPath(), entry.getKey());
-          }
-        }
-      }
-    };
+  void clearArtifactConflictState() {
+    artifactConflictFinder.clear();
   }
 
   void prepareForExecution(Reporter reporter, Executor executor, boolean keepGoing,
@@ -783,6 +690,8 @@ public final class SkyframeActionExecutor implements ActionExecutionContextFacto
     } catch (IOException e) {
       reportError("failed to delete output files before executing action", e, action, null);
     }
+    // The inputs are all built, so fetching them can overlap with scheduling the action.
+    context.getActionInputPrefetcher().startPrefetching(action);
 
     postEvent(new ActionStartedEvent(action, actionStartTime));
     ActionExecutionStatusReporter statusReporter = statusReporterRef.get();
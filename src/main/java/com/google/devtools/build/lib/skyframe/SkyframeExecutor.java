@@ -121,6 +121,8 @@ import com.google.devtools.build.lib.skyframe.SkyframeActionExecutor.ActionCompl
 import com.google.devtools.build.lib.skyframe.SkyframeActionExecutor.ProgressSupplier;
 import com.google.devtools.build.lib.skyframe.TargetPatternValue.TargetPatternKey;
 import com.google.devtools.build.lib.syntax.SkylarkSemanticsOptions;
+import com.google.devtools.build.lib.unix.UnixBatchStat;
+import com.google.devtools.build.lib.unix.UnixFileSystem;
 import com.google.devtools.build.lib.util.AbruptExitException;
 import com.google.devtools.build.lib.util.ExitCode;
 import com.google.devtools.build.lib.util.Preconditions;
@@ -296,6 +298,7 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
 
   private PerBuildSyscallCache perBuildSyscallCache;
   private int lastConcurrencyLevel = -1;
+  private boolean keepSyscallCacheAcrossBuilds = false;
 
   private static final Logger LOG = Logger.getLogger(SkyframeExecutor.class.getName());
 
@@ -496,25 +499,52 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
   }
 
   protected PerBuildSyscallCache newPerBuildSyscallCache(int concurrencyLevel) {
-    return PerBuildSyscallCache.newBuilder().setConcurrencyLevel(concurrencyLevel).build();
+    return PerBuildSyscallCache.newBuilder()
+        .setConcurrencyLevel(concurrencyLevel)
+        .setKeptAcrossBuilds(keepSyscallCacheAcrossBuilds)
+        .build();
   }
 
   /**
-   * Gets a (possibly cached) syscalls cache, re-initialized each build.
+   * Gets a (possibly cached) syscalls cache, re-initialized each build unless
+   * {@code --experimental_keep_globbing_filesystem_cache} is set.
    *
    * <p>We cache the syscalls cache if possible because construction of the cache is surprisingly
    * expensive, and is on the critical path of null builds.
    */
   protected final PerBuildSyscallCache getPerBuildSyscallCache(int concurrencyLevel) {
-    if (perBuildSyscallCache != null && lastConcurrencyLevel == concurrencyLevel) {
+    if (perBuildSyscallCache == null || lastConcurrencyLevel != concurrencyLevel) {
+      lastConcurrencyLevel = concurrencyLevel;
+      perBuildSyscallCache = newPerBuildSyscallCache(concurrencyLevel);
+    }
+    if (keepSyscallCacheAcrossBuilds) {
+      perBuildSyscallCache.prepareForBuild(getPathEntries());
+    } else {
       perBuildSyscallCache.clear();
-      return perBuildSyscallCache;
     }
-    lastConcurrencyLevel = concurrencyLevel;
-    perBuildSyscallCache = newPerBuildSyscallCache(concurrencyLevel);
     return perBuildSyscallCache;
   }
 
+  /**
+   * Discards the entries of a syscalls cache kept across builds that may be affected by changes to
+   * the given paths. Must be called with every changed path before packages are loaded.
+   */
+  protected final void invalidateSyscallCacheEntries(Iterable<Path> changedPaths) {
+    if (keepSyscallCacheAcrossBuilds && perBuildSyscallCache != null) {
+      perBuildSyscallCache.invalidate(changedPaths);
+    }
+  }
+
+  /**
+   * Clears a syscalls cache kept across builds, for when the set of changed paths is not known
+   * precisely.
+   */
+  protected final void clearSyscallCache() {
+    if (keepSyscallCacheAcrossBuilds && perBuildSyscallCache != null) {
+      perBuildSyscallCache.clear();
+    }
+  }
+
  @ThreadCompatible
   public void setActive(boolean active) {
     this.active = active;
@@ -619,6 +649,7 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
    */
   public void resetEvaluator() {
     init();
+    clearArtifactConflictState();
     emittedEventState.clear();
     skyframeBuildView.clearLegacyData();
     reinjectConstantValuesLazily();
@@ -990,6 +1021,12 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
     setupDefaultPackage(defaultsPackageContents);
     setPackageLocator(pkgLocator);
 
+    if (keepSyscallCacheAcrossBuilds != packageCacheOptions.keepGlobbingFilesystemCache) {
+      // Only a cache kept across builds tracks symlinks, and a kept cache shouldn't linger once the
+      // flag is off, so start over.
+      perBuildSyscallCache = null;
+    }
+    keepSyscallCacheAcrossBuilds = packageCacheOptions.keepGlobbingFilesystemCache;
     syscalls.set(getPerBuildSyscallCache(packageCacheOptions.globbingThreads));
     this.pkgFactory.setGlobbingThreads(packageCacheOptions.globbingThreads);
     this.pkgFactory.setMaxDirectoriesToEagerlyVisitInGlobbing(
@@ -1175,6 +1212,15 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
         Predicates.instanceOf(ActionLookupValue.class));
   }
 
+  /**
+   * Drops the state kept between builds to check for artifact conflicts incrementally. Must be
+   * called when action lookup values are deleted or cleared in bulk, so that the state does not
+   * keep them, or their actions, alive.
+   */
+  protected void clearArtifactConflictState() {
+    skyframeActionExecutor.clearArtifactConflictState();
+  }
+
   /**
    * Checks the actions in Skyframe for conflicts between their output artifacts. Delegates to
    * {@link SkyframeActionExecutor#findAndStoreArtifactConflicts} to do the work, since any
@@ -1687,7 +1733,9 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
     EvaluationResult<ActionLookupValue> result =
         buildDriver.evaluate(keys, keepGoing, numThreads, eventHandler);
     // Get rid of any memory retained by the cache -- all loading is done.
-    perBuildSyscallCache.clear();
+    if (!keepSyscallCacheAcrossBuilds) {
+      perBuildSyscallCache.clear();
+    }
     return result;
   }
 
@@ -1990,6 +2038,11 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
     FilesystemValueChecker fsvc =
         new FilesystemValueChecker(Preconditions.checkNotNull(tsgm.get()), lastExecutionTimeRange);
     BatchStat batchStatter = outputService == null ? null : outputService.getBatchStatter();
+    Path execRoot = directories.getExecRoot();
+    if (batchStatter == null && execRoot.getFileSystem() instanceof UnixFileSystem) {
+      // Stat the outputs a directory at a time rather than one path at a time.
+      batchStatter = new UnixBatchStat(execRoot);
+    }
     invalidateDirtyActions(fsvc.getDirtyActionValues(memoizingEvaluator.getValues(),
         batchStatter, modifiedOutputFiles));
     modifiedFiles += fsvc.getNumberOfModifiedOutputFiles();
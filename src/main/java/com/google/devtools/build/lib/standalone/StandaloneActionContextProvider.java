@@ -17,6 +17,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.devtools.build.lib.actions.Action;
 import com.google.devtools.build.lib.actions.ActionContext;
 import com.google.devtools.build.lib.actions.ActionExecutionContext;
+import com.google.devtools.build.lib.actions.ActionInputFileCache;
+import com.google.devtools.build.lib.actions.ActionInputPrefetcher;
 import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.ArtifactResolver;
 import com.google.devtools.build.lib.actions.ExecutionStrategy;
@@ -26,12 +28,14 @@ import com.google.devtools.build.lib.exec.ExecutionOptions;
 import com.google.devtools.build.lib.exec.FileWriteStrategy;
 import com.google.devtools.build.lib.exec.SpawnRunner;
 import com.google.devtools.build.lib.exec.StandaloneTestStrategy;
+import com.google.devtools.build.lib.exec.TestDurationStore;
 import com.google.devtools.build.lib.exec.TestStrategy;
 import com.google.devtools.build.lib.exec.apple.XCodeLocalEnvProvider;
 import com.google.devtools.build.lib.exec.local.LocalEnvProvider;
 import com.google.devtools.build.lib.exec.local.LocalExecutionOptions;
 import com.google.devtools.build.lib.exec.local.LocalSpawnRunner;
 import com.google.devtools.build.lib.rules.cpp.IncludeScanningContext;
+import com.google.devtools.build.lib.rules.cpp.SimpleIncludeScanner.SimpleIncludeScannerSupplier;
 import com.google.devtools.build.lib.rules.cpp.SpawnGccStrategy;
 import com.google.devtools.build.lib.rules.test.ExclusiveTestStrategy;
 import com.google.devtools.build.lib.rules.test.TestActionContext;
@@ -40,11 +44,18 @@ import com.google.devtools.build.lib.util.OS;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
 import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Provide a standalone, local execution context.
  */
 public class StandaloneActionContextProvider extends ActionContextProvider {
+  private static final Logger logger =
+      Logger.getLogger(StandaloneActionContextProvider.class.getName());
+
+  /** Name of the file in the output base with the durations of previous test runs. */
+  private static final String TEST_DURATIONS_FILE = "test_durations";
 
   /**
    * a IncludeScanningContext that does nothing. Since local execution does not need to
@@ -69,6 +80,8 @@ public class StandaloneActionContextProvider extends ActionContextProvider {
   }
 
   private final CommandEnvironment env;
+  private SimpleIncludeScannerSupplier includeScannerSupplier;
+  private TestDurationStore testDurationStore;
 
   public StandaloneActionContextProvider(CommandEnvironment env) {
     this.env = env;
@@ -80,23 +93,55 @@ public class StandaloneActionContextProvider extends ActionContextProvider {
     Path testTmpRoot =
         TestStrategy.getTmpRoot(env.getWorkspace(), env.getExecRoot(), executionOptions);
 
+    testDurationStore =
+        executionOptions.testShardDurationHints
+            ? TestDurationStore.load(env.getOutputBase().getChild(TEST_DURATIONS_FILE))
+            : null;
+
     TestActionContext testStrategy =
         new StandaloneTestStrategy(
             executionOptions,
             env.getBlazeWorkspace().getBinTools(),
-            testTmpRoot);
+            testTmpRoot,
+            testDurationStore);
+    includeScannerSupplier =
+        executionOptions.ccIncludeScanning ? new SimpleIncludeScannerSupplier() : null;
     // Order of strategies passed to builder is significant - when there are many strategies that
     // could potentially be used and a spawnActionContext doesn't specify which one it wants, the
     // last one from strategies list will be used
     return ImmutableList.of(
         new StandaloneSpawnStrategy(executionOptions.verboseFailures, createLocalRunner(env)),
         new DummyIncludeScanningContext(),
-        new SpawnGccStrategy(),
+        new SpawnGccStrategy(includeScannerSupplier),
         testStrategy,
         new ExclusiveTestStrategy(testStrategy),
         new FileWriteStrategy());
   }
 
+  @Override
+  public void init(
+      ActionInputFileCache actionInputFileCache, ActionInputPrefetcher actionInputPrefetcher) {
+    if (includeScannerSupplier != null) {
+      includeScannerSupplier.setFileCache(actionInputFileCache);
+    }
+  }
+
+  @Override
+  public void executionPhaseEnding() {
+    if (includeScannerSupplier != null) {
+      logger.info("Include scanning: " + includeScannerSupplier);
+      includeScannerSupplier = null;
+    }
+    if (testDurationStore != null) {
+      try {
+        testDurationStore.save();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Could not save test durations", e);
+      }
+      testDurationStore = null;
+    }
+  }
+
   private static SpawnRunner createLocalRunner(CommandEnvironment env) {
     LocalExecutionOptions localExecutionOptions =
         env.getOptions().getOptions(LocalExecutionOptions.class);
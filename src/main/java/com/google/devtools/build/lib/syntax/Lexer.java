@@ -14,9 +14,8 @@
 
 package com.google.devtools.build.lib.syntax;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
 import com.google.devtools.build.lib.concurrent.ThreadSafety.Immutable;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventHandler;
@@ -24,7 +23,9 @@ import com.google.devtools.build.lib.events.Location;
 import com.google.devtools.build.lib.profiler.Profiler;
 import com.google.devtools.build.lib.profiler.ProfilerTask;
 import com.google.devtools.build.lib.util.Pair;
+import com.google.devtools.build.lib.util.StringCanonicalizer;
 import com.google.devtools.build.lib.vfs.PathFragment;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -37,8 +38,11 @@ import java.util.Stack;
  * See: <a href="https://docs.python.org/2/reference/lexical_analysis.html"/>
  * for some details.
  * <p>
- * Since BUILD files are small, we just tokenize the entire file a-priori
- * instead of interleaving scanning with parsing.
+ * Tokens are produced on demand through {@link #nextToken}, so scanning is
+ * interleaved with parsing and the token stream of a file is never held in
+ * memory as a whole. Identifiers and unescaped string literals are shared
+ * through a per-file string table, so repeated occurrences do not copy their
+ * characters out of the input buffer again.
  */
 public final class Lexer {
 
@@ -84,7 +88,18 @@ public final class Lexer {
   // bottom.
   private final Stack<Integer> indentStack = new Stack<>();
 
-  private final List<Token> tokens;
+  // Tokens that have been scanned but not yet handed out by nextToken(). A
+  // single scanning step may produce several tokens (e.g. NEWLINE followed by
+  // a run of OUTDENTs), so this is a queue rather than a single slot.
+  private final ArrayDeque<Token> pending = new ArrayDeque<>();
+
+  // The kind of the most recently scanned token, or null if none yet.
+  private TokenKind lastTokenKind = null;
+
+  // The EOF token, once it has been scanned.
+  private Token eof = null;
+
+  private final StringTable strings = new StringTable();
 
   // The number of unclosed open-parens ("(", '{', '[') at the current point in
   // the stream. Whitespace is handled differently when this is nonzero.
@@ -92,6 +107,11 @@ public final class Lexer {
 
   private boolean containsErrors;
 
+  // When profiling, the start of the first scan and the total time spent scanning so far. Since
+  // scanning is interleaved with parsing, it is logged once the whole file has been scanned.
+  private long lexerStartTime = -1;
+  private long lexerDuration = 0;
+
   /**
    * Constructs a lexer which tokenizes the contents of the specified InputBuffer. Any errors during
    * lexing are reported on "handler".
@@ -99,16 +119,11 @@ public final class Lexer {
   public Lexer(
       ParserInputSource input, EventHandler eventHandler, LineNumberTable lineNumberTable) {
     this.buffer = input.getContent();
-    // Empirical measurements show roughly 1 token per 8 characters in buffer.
-    this.tokens = Lists.newArrayListWithExpectedSize(buffer.length / 8);
     this.pos = 0;
     this.eventHandler = eventHandler;
     this.locationInfo = new LocationInfo(input.getPath(), lineNumberTable);
 
     indentStack.push(0);
-    long startTime = Profiler.nanoTimeMaybe();
-    tokenize();
-    Profiler.instance().logSimpleTask(startTime, ProfilerTask.SKYLARK_LEXER, getFilename());
   }
 
   public Lexer(ParserInputSource input, EventHandler eventHandler) {
@@ -127,16 +142,66 @@ public final class Lexer {
    * Returns true if there were errors during scanning of this input file or
    * string. The Lexer may attempt to recover from errors, but clients should
    * not rely on the results of scanning if this flag is set.
+   *
+   * <p>Since scanning happens on demand, this only covers the part of the
+   * input that has been consumed through {@link #nextToken} so far.
    */
   public boolean containsErrors() {
     return containsErrors;
   }
 
   /**
-   * Returns the (mutable) list of tokens generated by the Lexer.
+   * Returns the next token of the input, scanning more of the buffer if
+   * necessary. Once the end of the input has been reached, every subsequent
+   * call returns the same EOF token.
+   */
+  Token nextToken() {
+    while (pending.isEmpty()) {
+      if (eof != null) {
+        return eof;
+      }
+      long startTime = Profiler.nanoTimeMaybe();
+      if (pos < buffer.length) {
+        tokenizeNext();
+      } else {
+        finish();
+      }
+      if (startTime != -1) {
+        profileScan(startTime);
+      }
+    }
+    return pending.poll();
+  }
+
+  /**
+   * Adds the time since startTime to the time spent scanning this file, and logs the total as a
+   * single SKYLARK_LEXER task once the end of the input has been reached.
+   */
+  private void profileScan(long startTime) {
+    if (lexerStartTime == -1) {
+      lexerStartTime = startTime;
+    }
+    lexerDuration += Profiler.nanoTimeMaybe() - startTime;
+    if (eof != null) {
+      Profiler.instance()
+          .logSimpleTaskDuration(
+              lexerStartTime, lexerDuration, ProfilerTask.SKYLARK_LEXER, getFilename());
+    }
+  }
+
+  /**
+   * Scans the remainder of the input and returns all of its tokens, up to and
+   * including EOF. Tokens already returned by {@link #nextToken} are not
+   * included.
    */
   public List<Token> getTokens() {
-    return tokens;
+    ImmutableList.Builder<Token> result = ImmutableList.builder();
+    Token token;
+    do {
+      token = nextToken();
+      result.add(token);
+    } while (token.kind != TokenKind.EOF);
+    return result.build();
   }
 
   private void popParen() {
@@ -205,7 +270,76 @@ public final class Lexer {
 
   /** invariant: symbol positions are half-open intervals. */
   private void addToken(Token s) {
-    tokens.add(s);
+    pending.add(s);
+    lastTokenKind = s.kind;
+  }
+
+  /**
+   * An open-addressing hash table of the strings scanned from the input
+   * buffer, looked up directly by buffer range so that a hit does not allocate.
+   * Identifiers are additionally canonicalized across files, since they are
+   * retained by the syntax tree and are drawn from a small vocabulary.
+   */
+  private final class StringTable {
+    private String[] entries = new String[64];
+    private int size = 0;
+
+    /** Returns a String with the contents of buffer[start, end). */
+    String get(int start, int end, boolean canonicalize) {
+      int hash = 0;
+      for (int i = start; i < end; i++) {
+        hash = 31 * hash + buffer[i];
+      }
+      int mask = entries.length - 1;
+      for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+        String entry = entries[i];
+        if (entry == null) {
+          entry = bufferSlice(start, end);
+          if (canonicalize) {
+            entry = StringCanonicalizer.intern(entry);
+          }
+          entries[i] = entry;
+          if (++size * 2 > entries.length) {
+            grow();
+          }
+          return entry;
+        }
+        if (entry.hashCode() == hash && matches(entry, start, end)) {
+          return entry;
+        }
+      }
+    }
+
+    private boolean matches(String entry, int start, int end) {
+      if (entry.length() != end - start) {
+        return false;
+      }
+      for (int i = start; i < end; i++) {
+        if (entry.charAt(i - start) != buffer[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void grow() {
+      String[] old = entries;
+      entries = new String[old.length * 2];
+      int mask = entries.length - 1;
+      for (String entry : old) {
+        if (entry != null) {
+          int i = spread(entry.hashCode()) & mask;
+          while (entries[i] != null) {
+            i = (i + 1) & mask;
+          }
+          entries[i] = entry;
+        }
+      }
+    }
+
+    private int spread(int hash) {
+      return hash ^ (hash >>> 16);
+    }
   }
 
   /**
@@ -486,7 +620,8 @@ public final class Lexer {
         case '"':
           if (c == quot) {
             // close-quote, all done.
-            return new Token(TokenKind.STRING, oldPos, pos, bufferSlice(oldPos + 1, pos - 1));
+            return new Token(
+                TokenKind.STRING, oldPos, pos, strings.get(oldPos + 1, pos - 1, false));
           }
           break;
         default: // fall out
@@ -577,10 +712,10 @@ public final class Lexer {
           pos++;
           break;
        default:
-          return bufferSlice(oldPos, pos);
+          return strings.get(oldPos, pos, true);
       }
     }
-    return bufferSlice(oldPos, pos);
+    return strings.get(oldPos, pos, true);
   }
 
   private String scanInteger() {
@@ -682,170 +817,174 @@ public final class Lexer {
   }
 
   /**
-   * Performs tokenization of the character buffer of file contents provided to
-   * the constructor.
+   * Scans the next lexeme of the character buffer, adding zero or more tokens
+   * to the pending queue. Must only be called while input remains.
    */
-  private void tokenize() {
-    while (pos < buffer.length) {
-      if (tokenizeTwoChars()) {
+  private void tokenizeNext() {
+    if (tokenizeTwoChars()) {
+      pos += 2;
+      return;
+    }
+    char c = buffer[pos];
+    pos++;
+    switch (c) {
+    case '{': {
+      addToken(new Token(TokenKind.LBRACE, pos - 1, pos));
+      openParenStackDepth++;
+      break;
+    }
+    case '}': {
+      addToken(new Token(TokenKind.RBRACE, pos - 1, pos));
+      popParen();
+      break;
+    }
+    case '(': {
+      addToken(new Token(TokenKind.LPAREN, pos - 1, pos));
+      openParenStackDepth++;
+      break;
+    }
+    case ')': {
+      addToken(new Token(TokenKind.RPAREN, pos - 1, pos));
+      popParen();
+      break;
+    }
+    case '[': {
+      addToken(new Token(TokenKind.LBRACKET, pos - 1, pos));
+      openParenStackDepth++;
+      break;
+    }
+    case ']': {
+      addToken(new Token(TokenKind.RBRACKET, pos - 1, pos));
+      popParen();
+      break;
+    }
+    case '>': {
+      addToken(new Token(TokenKind.GREATER, pos - 1, pos));
+      break;
+    }
+    case '<': {
+      addToken(new Token(TokenKind.LESS, pos - 1, pos));
+      break;
+    }
+    case ':': {
+      addToken(new Token(TokenKind.COLON, pos - 1, pos));
+      break;
+    }
+    case ',': {
+      addToken(new Token(TokenKind.COMMA, pos - 1, pos));
+      break;
+    }
+    case '+': {
+      addToken(new Token(TokenKind.PLUS, pos - 1, pos));
+      break;
+    }
+    case '-': {
+      addToken(new Token(TokenKind.MINUS, pos - 1, pos));
+      break;
+    }
+    case '|': {
+      addToken(new Token(TokenKind.PIPE, pos - 1, pos));
+      break;
+    }
+    case '=': {
+      addToken(new Token(TokenKind.EQUALS, pos - 1, pos));
+      break;
+    }
+    case '%': {
+      addToken(new Token(TokenKind.PERCENT, pos - 1, pos));
+      break;
+    }
+    case '/': {
+      if (lookaheadIs(0, '/') && lookaheadIs(1, '=')) {
+        addToken(new Token(TokenKind.SLASH_SLASH_EQUALS, pos - 1, pos + 2));
         pos += 2;
-        continue;
-      }
-      char c = buffer[pos];
-      pos++;
-      switch (c) {
-      case '{': {
-        addToken(new Token(TokenKind.LBRACE, pos - 1, pos));
-        openParenStackDepth++;
-        break;
-      }
-      case '}': {
-        addToken(new Token(TokenKind.RBRACE, pos - 1, pos));
-        popParen();
-        break;
+      } else if (lookaheadIs(0, '/')) {
+        addToken(new Token(TokenKind.SLASH_SLASH, pos - 1, pos + 1));
+        pos += 1;
+      } else {
+        // /= is handled by tokenizeTwoChars.
+        addToken(new Token(TokenKind.SLASH, pos - 1, pos));
       }
-      case '(': {
-        addToken(new Token(TokenKind.LPAREN, pos - 1, pos));
-        openParenStackDepth++;
-        break;
-      }
-      case ')': {
-        addToken(new Token(TokenKind.RPAREN, pos - 1, pos));
-        popParen();
-        break;
-      }
-      case '[': {
-        addToken(new Token(TokenKind.LBRACKET, pos - 1, pos));
-        openParenStackDepth++;
-        break;
-      }
-      case ']': {
-        addToken(new Token(TokenKind.RBRACKET, pos - 1, pos));
-        popParen();
-        break;
-      }
-      case '>': {
-        addToken(new Token(TokenKind.GREATER, pos - 1, pos));
-        break;
-      }
-      case '<': {
-        addToken(new Token(TokenKind.LESS, pos - 1, pos));
-        break;
-      }
-      case ':': {
-        addToken(new Token(TokenKind.COLON, pos - 1, pos));
-        break;
-      }
-      case ',': {
-        addToken(new Token(TokenKind.COMMA, pos - 1, pos));
-        break;
-      }
-      case '+': {
-        addToken(new Token(TokenKind.PLUS, pos - 1, pos));
-        break;
-      }
-      case '-': {
-        addToken(new Token(TokenKind.MINUS, pos - 1, pos));
-        break;
-      }
-      case '|': {
-        addToken(new Token(TokenKind.PIPE, pos - 1, pos));
-        break;
-      }
-      case '=': {
-        addToken(new Token(TokenKind.EQUALS, pos - 1, pos));
-        break;
-      }
-      case '%': {
-        addToken(new Token(TokenKind.PERCENT, pos - 1, pos));
-        break;
-      }
-      case '/': {
-        if (lookaheadIs(0, '/') && lookaheadIs(1, '=')) {
-          addToken(new Token(TokenKind.SLASH_SLASH_EQUALS, pos - 1, pos + 2));
-          pos += 2;
-        } else if (lookaheadIs(0, '/')) {
-          addToken(new Token(TokenKind.SLASH_SLASH, pos - 1, pos + 1));
-          pos += 1;
-        } else {
-          // /= is handled by tokenizeTwoChars.
-          addToken(new Token(TokenKind.SLASH, pos - 1, pos));
-        }
-        break;
-      }
-      case ';': {
-        addToken(new Token(TokenKind.SEMI, pos - 1, pos));
-        break;
-      }
-      case '.': {
-        addToken(new Token(TokenKind.DOT, pos - 1, pos));
-        break;
-      }
-      case '*': {
-        addToken(new Token(TokenKind.STAR, pos - 1, pos));
-        break;
-      }
-      case ' ':
-      case '\t':
-      case '\r': {
-        /* ignore */
-        break;
+      break;
+    }
+    case ';': {
+      addToken(new Token(TokenKind.SEMI, pos - 1, pos));
+      break;
+    }
+    case '.': {
+      addToken(new Token(TokenKind.DOT, pos - 1, pos));
+      break;
+    }
+    case '*': {
+      addToken(new Token(TokenKind.STAR, pos - 1, pos));
+      break;
+    }
+    case ' ':
+    case '\t':
+    case '\r': {
+      /* ignore */
+      break;
+    }
+    case '\\': {
+      // Backslash character is valid only at the end of a line (or in a string)
+      if (lookaheadIs(0, '\n')) {
+        pos += 1;  // skip the end of line character
+      } else if (lookaheadIs(0, '\r') && lookaheadIs(1, '\n')) {
+        pos += 2;  // skip the CRLF at the end of line
+      } else {
+        addToken(new Token(TokenKind.ILLEGAL, pos - 1, pos, Character.toString(c)));
       }
-      case '\\': {
-        // Backslash character is valid only at the end of a line (or in a string)
-        if (lookaheadIs(0, '\n')) {
-          pos += 1;  // skip the end of line character
-        } else if (lookaheadIs(0, '\r') && lookaheadIs(1, '\n')) {
-          pos += 2;  // skip the CRLF at the end of line
+      break;
+    }
+    case '\n': {
+      newline();
+      break;
+    }
+    case '#': {
+      int oldPos = pos - 1;
+      while (pos < buffer.length) {
+        c = buffer[pos];
+        if (c == '\n') {
+          break;
         } else {
-          addToken(new Token(TokenKind.ILLEGAL, pos - 1, pos, Character.toString(c)));
-        }
-        break;
-      }
-      case '\n': {
-        newline();
-        break;
-      }
-      case '#': {
-        int oldPos = pos - 1;
-        while (pos < buffer.length) {
-          c = buffer[pos];
-          if (c == '\n') {
-            break;
-          } else {
-            pos++;
-          }
+          pos++;
         }
-        addToken(new Token(TokenKind.COMMENT, oldPos, pos, bufferSlice(oldPos, pos)));
-        break;
       }
-      case '\'':
-      case '\"': {
-        addToken(stringLiteral(c, false));
+      addToken(new Token(TokenKind.COMMENT, oldPos, pos, bufferSlice(oldPos, pos)));
+      break;
+    }
+    case '\'':
+    case '\"': {
+      addToken(stringLiteral(c, false));
+      break;
+    }
+    default: {
+      // detect raw strings, e.g. r"str"
+      if (c == 'r' && pos < buffer.length
+          && (buffer[pos] == '\'' || buffer[pos] == '\"')) {
+        c = buffer[pos];
+        pos++;
+        addToken(stringLiteral(c, true));
         break;
       }
-      default: {
-        // detect raw strings, e.g. r"str"
-        if (c == 'r' && pos < buffer.length
-            && (buffer[pos] == '\'' || buffer[pos] == '\"')) {
-          c = buffer[pos];
-          pos++;
-          addToken(stringLiteral(c, true));
-          break;
-        }
 
-        if (Character.isDigit(c)) {
-          addToken(integer());
-        } else if (Character.isJavaIdentifierStart(c) && c != '$') {
-          addToken(identifierOrKeyword());
-        } else {
-          error("invalid character: '" + c + "'");
-        }
-        break;
-      } // default
-      } // switch
-    } // while
+      if (Character.isDigit(c)) {
+        addToken(integer());
+      } else if (Character.isJavaIdentifierStart(c) && c != '$') {
+        addToken(identifierOrKeyword());
+      } else {
+        error("invalid character: '" + c + "'");
+      }
+      break;
+    } // default
+    } // switch
+  }
 
+  /**
+   * Adds the tokens that terminate the stream once the whole buffer has been
+   * scanned: closing OUTDENTs, a final NEWLINE, and EOF.
+   */
+  private void finish() {
     if (indentStack.size() > 1) { // top of stack is always zero
       addToken(new Token(TokenKind.NEWLINE, pos - 1, pos));
       while (indentStack.size() > 1) {
@@ -855,11 +994,12 @@ public final class Lexer {
     }
 
     // Like Python, always end with a NEWLINE token, even if no '\n' in input:
-    if (tokens.isEmpty() || Iterables.getLast(tokens).kind != TokenKind.NEWLINE) {
+    if (lastTokenKind != TokenKind.NEWLINE) {
       addToken(new Token(TokenKind.NEWLINE, pos - 1, pos));
     }
 
-    addToken(new Token(TokenKind.EOF, pos, pos));
+    eof = new Token(TokenKind.EOF, pos, pos);
+    addToken(eof);
   }
 
   /**
@@ -0,0 +1,91 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.unix;
+
+import com.google.devtools.build.lib.UnixJniLoader;
+import java.io.IOException;
+
+/**
+ * Thin native wrappers around the Linux inotify(7) API.
+ *
+ * <p>Unlike {@link java.nio.file.WatchService}, this exposes the raw event stream: callers read
+ * many events with a single {@link #inotifyRead} call and decode the {@code struct inotify_event}
+ * records themselves, and watches can be added from several threads at once.
+ */
+public final class NativeInotify {
+
+  // Event masks, from <sys/inotify.h>.
+  public static final int IN_MODIFY = 0x00000002;
+  public static final int IN_ATTRIB = 0x00000004;
+  public static final int IN_CLOSE_WRITE = 0x00000008;
+  public static final int IN_MOVED_FROM = 0x00000040;
+  public static final int IN_MOVED_TO = 0x00000080;
+  public static final int IN_CREATE = 0x00000100;
+  public static final int IN_DELETE = 0x00000200;
+  public static final int IN_DELETE_SELF = 0x00000400;
+  public static final int IN_MOVE_SELF = 0x00000800;
+  public static final int IN_Q_OVERFLOW = 0x00004000;
+  public static final int IN_IGNORED = 0x00008000;
+  public static final int IN_ONLYDIR = 0x01000000;
+  public static final int IN_DONT_FOLLOW = 0x02000000;
+  public static final int IN_EXCL_UNLINK = 0x04000000;
+  public static final int IN_ISDIR = 0x40000000;
+
+  /** Size of the fixed part of a {@code struct inotify_event}: wd, mask, cookie and len. */
+  public static final int EVENT_HEADER_SIZE = 16;
+
+  static {
+    UnixJniLoader.loadJni();
+  }
+
+  private NativeInotify() {}
+
+  /**
+   * Native wrapper around Linux inotify_init1(2), called with {@code IN_NONBLOCK | IN_CLOEXEC}.
+   *
+   * @return the inotify file descriptor
+   * @throws IOException iff the inotify_init1() call failed, e.g. because the per-user instance
+   *     limit was reached
+   */
+  public static native int inotifyInit() throws IOException;
+
+  /**
+   * Native wrapper around Linux inotify_add_watch(2).
+   *
+   * @return the watch descriptor, or -1 if {@code path} no longer exists or is not a directory
+   *     while {@code mask} contains {@link #IN_ONLYDIR}
+   * @throws IOException iff the inotify_add_watch() call failed for any other reason, e.g.
+   *     because the per-user watch limit was reached (ENOSPC)
+   */
+  public static native int inotifyAddWatch(int fd, String path, int mask) throws IOException;
+
+  /**
+   * Native wrapper around Linux inotify_rm_watch(2). Removing a watch that is already gone is not
+   * an error.
+   */
+  public static native void inotifyRmWatch(int fd, int wd);
+
+  /**
+   * Reads as many pending events as fit in {@code buffer}.
+   *
+   * @return the number of bytes read, which is a whole number of events, or 0 if no events are
+   *     pending
+   * @throws IOException iff the read() call failed, e.g. because {@code buffer} is too small for
+   *     the next event
+   */
+  public static native int inotifyRead(int fd, byte[] buffer) throws IOException;
+
+  /** Closes an inotify file descriptor, removing all of its watches. */
+  public static native void close(int fd) throws IOException;
+}
@@ -212,6 +212,19 @@ public final class NativePosixFiles {
    */
   public static native ErrnoFileStatus errnoLstat(String path);
 
+  /**
+   * Native wrapper around POSIX fstatat(2) syscall, applied to several entries of one directory.
+   * The directory is opened once and each entry is stat()ed relative to it.
+   *
+   * @param dir the directory containing the files to stat.
+   * @param names the names of the files to stat, relative to {@code dir}.
+   * @param followSymlinks whether to stat the targets of symlinks, or the symlinks themselves.
+   * @return an array of ErrnoFileStatus instances, in the same order as {@code names}. If the
+   *   directory could not be opened, every element carries that error.
+   */
+  public static native ErrnoFileStatus[] errnoStatAll(
+      String dir, String[] names, boolean followSymlinks);
+
   /**
    * Native wrapper around POSIX utime(2) syscall.
    *
@@ -0,0 +1,135 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.unix;
+
+import com.google.devtools.build.lib.profiler.Profiler;
+import com.google.devtools.build.lib.profiler.ProfilerTask;
+import com.google.devtools.build.lib.unix.UnixFileSystem.UnixFileStatus;
+import com.google.devtools.build.lib.util.Preconditions;
+import com.google.devtools.build.lib.vfs.BatchStat;
+import com.google.devtools.build.lib.vfs.FileStatusWithDigest;
+import com.google.devtools.build.lib.vfs.FileStatusWithDigestAdapter;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link BatchStat} for paths on a {@link UnixFileSystem}.
+ *
+ * <p>Paths are grouped by parent directory, and each group is handled by a single
+ * {@link NativePosixFiles#errnoStatAll} call: the directory is opened once and its entries are
+ * stat()ed relative to it, so the kernel resolves each parent path once instead of once per file,
+ * and there is one JNI transition per directory instead of one per file.
+ *
+ * <p>Digests are never computed; callers that asked for them get null and fall back on their
+ * usual way of obtaining one.
+ */
+public final class UnixBatchStat implements BatchStat {
+
+  private final Path execRoot;
+
+  private final AtomicLong pathsStatted = new AtomicLong();
+  private final AtomicLong directoriesOpened = new AtomicLong();
+  private final AtomicLong nanosSpent = new AtomicLong();
+
+  /** Creates a batch statter for paths relative to {@code execRoot}. */
+  public UnixBatchStat(Path execRoot) {
+    Preconditions.checkArgument(
+        execRoot.getFileSystem() instanceof UnixFileSystem, execRoot.getFileSystem());
+    this.execRoot = execRoot;
+  }
+
+  @Override
+  public List<FileStatusWithDigest> batchStat(
+      boolean includeDigest, boolean includeLinks, Iterable<PathFragment> paths)
+      throws IOException, InterruptedException {
+    long startTime = System.nanoTime();
+    // Group the indices of the input paths by parent directory, keeping the directories in order
+    // of first appearance so that consecutive calls touch the same directories in the same order.
+    Map<PathFragment, List<Integer>> indicesByDirectory = new LinkedHashMap<>();
+    List<PathFragment> pathList = new ArrayList<>();
+    for (PathFragment path : paths) {
+      PathFragment parent = path.getParentDirectory();
+      List<Integer> indices = indicesByDirectory.get(parent);
+      if (indices == null) {
+        indices = new ArrayList<>();
+        indicesByDirectory.put(parent, indices);
+      }
+      indices.add(pathList.size());
+      pathList.add(path);
+    }
+
+    FileStatusWithDigest[] result = new FileStatusWithDigest[pathList.size()];
+    for (Map.Entry<PathFragment, List<Integer>> entry : indicesByDirectory.entrySet()) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      List<Integer> indices = entry.getValue();
+      String[] names = new String[indices.size()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = pathList.get(indices.get(i)).getBaseName();
+      }
+      String dir =
+          entry.getKey() == null
+              ? execRoot.getPathString()
+              : execRoot.getRelative(entry.getKey()).getPathString();
+      long dirStartTime = Profiler.nanoTimeMaybe();
+      ErrnoFileStatus[] stats = NativePosixFiles.errnoStatAll(dir, names, !includeLinks);
+      Profiler.instance().logSimpleTask(dirStartTime, ProfilerTask.VFS_STAT, dir);
+      directoriesOpened.incrementAndGet();
+      for (int i = 0; i < stats.length; i++) {
+        ErrnoFileStatus stat = stats[i];
+        if (!stat.hasError()) {
+          result[indices.get(i)] = FileStatusWithDigestAdapter.adapt(new UnixFileStatus(stat));
+        } else if (stat.getErrno() != ErrnoFileStatus.ENOENT
+            && stat.getErrno() != ErrnoFileStatus.ENOTDIR) {
+          throw new IOException(
+              "Unable to stat " + dir + "/" + names[i] + " (errno " + stat.getErrno() + ")");
+        }
+        // Missing files are reported as null.
+      }
+    }
+    pathsStatted.addAndGet(result.length);
+    nanosSpent.addAndGet(System.nanoTime() - startTime);
+    return Arrays.asList(result);
+  }
+
+  /** Returns the number of paths stat()ed so far. */
+  public long getPathsStatted() {
+    return pathsStatted.get();
+  }
+
+  /** Returns the number of directories opened so far, i.e. the number of native calls made. */
+  public long getDirectoriesOpened() {
+    return directoriesOpened.get();
+  }
+
+  /** Returns the total time spent in {@link #batchStat} so far, summed across threads. */
+  public long getNanosSpent() {
+    return nanosSpent.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "UnixBatchStat[paths=%d, directories=%d, ms=%d]",
+        pathsStatted.get(), directoriesOpened.get(), nanosSpent.get() / 1000000);
+  }
+}
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -57,6 +58,13 @@ public final class DependencySet {
   private final Path root;
   private String outputFileName;
 
+  /**
+   * The directory part of the last dependency added from a .d file, and the directory it resolved
+   * to. Consecutive dependencies usually share their directory, which then needs no parsing.
+   */
+  private byte[] lastDirBytes;
+  private Path lastDir;
+
   /**
    * Get output file name for which dependencies are included in this DependencySet.
    */
@@ -96,11 +104,37 @@ public final class DependencySet {
   }
 
   /**
-   * Adds a given dependency to this DependencySet instance.
+   * Adds the dependency whose name is {@code content[0, length)} to this DependencySet instance.
    */
-  private void addDependency(String dep) {
-    Path depPath = root.getRelative(dep);
-    dependencies.add(depPath);
+  private void addDependency(byte[] content, int length) {
+    int slash = length - 1;
+    while (slash >= 0 && content[slash] != '/') {
+      slash--;
+    }
+    if (slash <= 0) {
+      dependencies.add(root.getRelative(new String(content, 0, length, StandardCharsets.UTF_8)));
+      return;
+    }
+    if (lastDirBytes == null || !prefixEquals(content, lastDirBytes, slash)) {
+      lastDirBytes = Arrays.copyOf(content, slash);
+      lastDir = root.getRelative(new String(content, 0, slash, StandardCharsets.UTF_8));
+    }
+    dependencies.add(
+        lastDir.getRelative(
+            new String(content, slash + 1, length - slash - 1, StandardCharsets.UTF_8)));
+  }
+
+  /** Returns whether {@code content[0, length)} equals {@code prefix}. */
+  private static boolean prefixEquals(byte[] content, byte[] prefix, int length) {
+    if (prefix.length != length) {
+      return false;
+    }
+    for (int i = length - 1; i >= 0; i--) {
+      if (content[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -142,7 +176,7 @@ public final class DependencySet {
           // keep scanning.  We do this to cope with "foo.o : \" which is
           // valid Makefile syntax produced by the cuda compiler.
           if (sawTarget && w > 0) {
-            addDependency(new String(content, 0, w, StandardCharsets.UTF_8));
+            addDependency(content, w);
             w = 0;
           }
           continue;
@@ -156,7 +190,7 @@ public final class DependencySet {
           // (Arguably if !sawTarget && w > 0 we should report an error,
           // as that suggests the .d file is malformed.)
           if (sawTarget && w > 0) {
-            addDependency(new String(content, 0, w, StandardCharsets.UTF_8));
+            addDependency(content, w);
           }
           w = 0;
           sawTarget = false;  // reset for new line
@@ -16,6 +16,7 @@ package com.google.devtools.build.lib.worker;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
@@ -36,9 +37,11 @@ import com.google.devtools.build.lib.actions.ResourceManager.ResourceHandle;
 import com.google.devtools.build.lib.actions.SandboxedSpawnActionContext;
 import com.google.devtools.build.lib.actions.Spawn;
 import com.google.devtools.build.lib.actions.SpawnActionContext;
+import com.google.devtools.build.lib.actions.Spawns;
 import com.google.devtools.build.lib.actions.UserExecException;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.exec.SpawnInputExpander;
+import com.google.devtools.build.lib.rules.fileset.FilesetActionContext;
 import com.google.devtools.build.lib.sandbox.SandboxHelpers;
 import com.google.devtools.build.lib.standalone.StandaloneSpawnStrategy;
 import com.google.devtools.build.lib.util.CommandFailureUtils;
@@ -160,8 +163,19 @@ public final class WorkerSpawnStrategy implements SandboxedSpawnActionContext {
 
       HashCode workerFilesHash = WorkerFilesHash.getWorkerFilesHash(
           spawn.getToolFiles(), actionExecutionContext);
+      Map<PathFragment, ActionInput> inputMap =
+          spawnInputExpander.getInputMapping(
+              spawn,
+              actionExecutionContext.getArtifactExpander(),
+              inputFileCache,
+              actionExecutionContext.getContext(FilesetActionContext.class));
+      if (Spawns.shouldPrefetchInputsForLocalExecution(spawn)) {
+        actionExecutionContext
+            .getActionInputPrefetcher()
+            .prefetchFiles(Iterables.filter(inputMap.values(), Predicates.notNull()));
+      }
       Map<PathFragment, Path> inputFiles =
-          SandboxHelpers.getInputFiles(spawnInputExpander, execRoot, spawn, actionExecutionContext);
+          SandboxHelpers.getInputFiles(inputMap, spawn, actionExecutionContext, execRoot);
       Set<PathFragment> outputFiles = SandboxHelpers.getOutputFiles(spawn);
 
       WorkerKey key =
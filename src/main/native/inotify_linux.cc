@@ -0,0 +1,114 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+// JNI bindings for com.google.devtools.build.lib.unix.NativeInotify.
+
+#include <errno.h>
+#include <jni.h>
+#include <sys/inotify.h>
+#include <unistd.h>
+
+#include <string>
+
+#include "src/main/native/unix_jni.h"
+
+static void PostInotifyException(JNIEnv *env, int error_number,
+                                 const char *function) {
+  ::PostException(env, error_number, std::string(function) + " (" +
+                                         ErrorMessage(error_number) + ")");
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_google_devtools_build_lib_unix_NativeInotify_inotifyInit(
+    JNIEnv *env, jclass clazz) {
+  int fd = inotify_init1(IN_NONBLOCK | IN_CLOEXEC);
+  if (fd == -1) {
+    PostInotifyException(env, errno, "inotify_init1");
+  }
+  return fd;
+}
+
+// Paths are passed in as Latin1 strings, like everywhere else in the native
+// file system code (see unix_jni.cc): every char is one byte of the name.
+static std::string GetLatin1Path(JNIEnv *env, jstring jpath) {
+  jsize len = env->GetStringLength(jpath);
+  std::string result(len, '\0');
+  const jchar *chars = env->GetStringCritical(jpath, NULL);
+  for (jsize i = 0; i < len; i++) {
+    result[i] = chars[i] <= 0x00ff ? static_cast<char>(chars[i]) : '?';
+  }
+  env->ReleaseStringCritical(jpath, chars);
+  return result;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_google_devtools_build_lib_unix_NativeInotify_inotifyAddWatch(
+    JNIEnv *env, jclass clazz, jint fd, jstring jpath, jint mask) {
+  std::string path = GetLatin1Path(env, jpath);
+  int wd = inotify_add_watch(fd, path.c_str(), static_cast<uint32_t>(mask));
+  if (wd == -1) {
+    int error_number = errno;
+    if (error_number == ENOSPC) {
+      ::PostException(env, error_number,
+                      path + " (inotify watch limit reached; consider raising "
+                             "/proc/sys/fs/inotify/max_user_watches)");
+    } else if (error_number != ENOENT && error_number != ENOTDIR) {
+      // ENOENT and ENOTDIR mean the directory was deleted or replaced since
+      // it was listed; that is not an error for the caller.
+      ::PostException(env, error_number,
+                      path + " (" + ErrorMessage(error_number) + ")");
+    }
+  }
+  return wd;
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_google_devtools_build_lib_unix_NativeInotify_inotifyRmWatch(
+    JNIEnv *env, jclass clazz, jint fd, jint wd) {
+  // EINVAL means the watch is already gone, e.g. because its directory was
+  // deleted; nothing to do in that case.
+  inotify_rm_watch(fd, wd);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_google_devtools_build_lib_unix_NativeInotify_inotifyRead(
+    JNIEnv *env, jclass clazz, jint fd, jbyteArray buffer) {
+  jsize capacity = env->GetArrayLength(buffer);
+  jbyte *bytes = env->GetByteArrayElements(buffer, NULL);
+  if (bytes == NULL) {
+    return -1;  // OutOfMemoryError already pending.
+  }
+  ssize_t n;
+  do {
+    n = read(fd, bytes, capacity);
+  } while (n == -1 && errno == EINTR);
+  int error_number = errno;
+  env->ReleaseByteArrayElements(buffer, bytes, n > 0 ? 0 : JNI_ABORT);
+  if (n == -1) {
+    if (error_number == EAGAIN || error_number == EWOULDBLOCK) {
+      return 0;
+    }
+    PostInotifyException(env, error_number, "read");
+    return -1;
+  }
+  return static_cast<jint>(n);
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_google_devtools_build_lib_unix_NativeInotify_close(
+    JNIEnv *env, jclass clazz, jint fd) {
+  if (::close(fd) == -1) {
+    PostInotifyException(env, errno, "close");
+  }
+}
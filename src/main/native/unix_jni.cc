@@ -350,7 +350,7 @@ static jobject NewErrnoFileStatus(JNIEnv *env,
   }
 
   if (saved_errno != 0) {
-    return env->NewObject(errno_file_status_class, errorno_ctor, errno);
+    return env->NewObject(errno_file_status_class, errorno_ctor, saved_errno);
   }
   return env->NewObject(
       errno_file_status_class, no_error_ctor, stat_ref.st_mode,
@@ -464,6 +464,65 @@ Java_com_google_devtools_build_lib_unix_NativePosixFiles_errnoLstat(JNIEnv *env,
   return ::StatCommon(env, path, portable_lstat, false);
 }
 
+/*
+ * Class:     com.google.devtools.build.lib.unix.NativePosixFiles
+ * Method:    errnoStatAll
+ * Signature: (Ljava/lang/String;[Ljava/lang/String;Z)[Lcom/google/devtools/build/lib/unix/ErrnoFileStatus;
+ */
+extern "C" JNIEXPORT jobjectArray JNICALL
+Java_com_google_devtools_build_lib_unix_NativePosixFiles_errnoStatAll(
+    JNIEnv *env, jclass clazz, jstring dir, jobjectArray names,
+    jboolean follow_symlinks) {
+  static jclass errno_file_status_class = NULL;
+  if (errno_file_status_class == NULL) {  // note: harmless race condition
+    jclass local = env->FindClass("com/google/devtools/build/lib/unix/ErrnoFileStatus");
+    CHECK(local != NULL);
+    errno_file_status_class = static_cast<jclass>(env->NewGlobalRef(local));
+  }
+  jsize count = env->GetArrayLength(names);
+  jobjectArray result =
+      env->NewObjectArray(count, errno_file_status_class, NULL);
+  if (result == NULL) {
+    return NULL;  // OutOfMemoryError already pending.
+  }
+
+  // Resolve the directory once and stat every entry relative to it, instead
+  // of having the kernel walk the full path for each entry.
+  const char *dir_chars = GetStringLatin1Chars(env, dir);
+  int dirfd;
+  while ((dirfd = ::open(dir_chars, O_RDONLY | O_DIRECTORY | O_CLOEXEC)) == -1
+         && errno == EINTR) { }
+  int open_errno = dirfd == -1 ? errno : 0;
+  ::ReleaseStringLatin1Chars(dir_chars);
+
+  int flags = follow_symlinks ? 0 : AT_SYMLINK_NOFOLLOW;
+  portable_stat_struct statbuf;
+  for (jsize i = 0; i < count; i++) {
+    int saved_errno = open_errno;
+    if (dirfd != -1) {
+      jstring name = static_cast<jstring>(env->GetObjectArrayElement(names, i));
+      const char *name_chars = GetStringLatin1Chars(env, name);
+      int r;
+      while ((r = portable_fstatat(dirfd, const_cast<char *>(name_chars),
+                                   &statbuf, flags)) == -1 &&
+             errno == EINTR) { }
+      saved_errno = r == -1 ? errno : 0;
+      ::ReleaseStringLatin1Chars(name_chars);
+      env->DeleteLocalRef(name);
+    }
+    jobject status = NewErrnoFileStatus(env, saved_errno, statbuf);
+    if (status == NULL) {
+      break;  // Exception already pending.
+    }
+    env->SetObjectArrayElement(result, i, status);
+    env->DeleteLocalRef(status);
+  }
+  if (dirfd != -1) {
+    ::close(dirfd);
+  }
+  return result;
+}
+
 /*
  * Class:     com.google.devtools.build.lib.unix.NativePosixFiles
  * Method:    utime
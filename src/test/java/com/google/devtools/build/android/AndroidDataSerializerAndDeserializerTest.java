@@ -17,6 +17,7 @@ import static com.google.devtools.build.android.ParsedAndroidDataBuilder.file;
 import static com.google.devtools.build.android.ParsedAndroidDataBuilder.xml;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import com.google.common.jimfs.Jimfs;
 import com.google.common.truth.Truth;
@@ -30,6 +31,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -52,6 +54,11 @@ public class AndroidDataSerializerAndDeserializerTest {
     manifest = Files.createFile(source.resolve("AndroidManifest.xml"));
   }
 
+  @After
+  public void disableCache() {
+    AndroidDataDeserializer.disableCache();
+  }
+
   @Test
   public void serializeAssets() throws Exception {
     Path binaryPath = fs.getPath("out.bin");
@@ -264,6 +271,77 @@ public class AndroidDataSerializerAndDeserializerTest {
     Truth.assertThat(primary.combiningConsumer).isEqualTo(Collections.emptyMap());
   }
 
+  private void serializeOverwriting(Path binaryPath, String... names) throws Exception {
+    AndroidDataSerializer serializer = AndroidDataSerializer.create();
+    ParsedAndroidDataBuilder primary = ParsedAndroidDataBuilder.buildOn(source, fqnFactory);
+    for (String name : names) {
+      primary.overwritable(file("layout/" + name).source("layout/" + name + ".xml"));
+    }
+    UnwrittenMergedAndroidData.of(manifest, primary.build(), ParsedAndroidDataBuilder.empty())
+        .serializeTo(serializer);
+    serializer.flushTo(binaryPath);
+  }
+
+  private static TestMapConsumer<DataResource> readOverwriting(
+      AndroidDataDeserializer deserializer, Path binaryPath) {
+    TestMapConsumer<DataResource> resources = TestMapConsumer.ofResources();
+    deserializer.read(binaryPath, KeyValueConsumers.of(resources, null, null));
+    return resources;
+  }
+
+  @Test
+  public void cachedEntriesAreReused() throws Exception {
+    Path binaryPath = fs.getPath("out.bin");
+    serializeOverwriting(binaryPath, "banker", "butcher");
+    AndroidDataDeserializer.enableCache(1 << 20);
+
+    TestMapConsumer<DataResource> first =
+        readOverwriting(AndroidDataDeserializer.create(), binaryPath);
+    TestMapConsumer<DataResource> second =
+        readOverwriting(AndroidDataDeserializer.create(), binaryPath);
+
+    CacheStats stats = AndroidDataDeserializer.cacheStats();
+    Truth.assertThat(stats.missCount()).isEqualTo(1);
+    Truth.assertThat(stats.hitCount()).isEqualTo(1);
+    Truth.assertThat(first).hasSize(2);
+    Truth.assertThat(second).isEqualTo(first);
+  }
+
+  @Test
+  public void changedContentIsNotReadFromCache() throws Exception {
+    Path binaryPath = fs.getPath("out.bin");
+    serializeOverwriting(binaryPath, "banker");
+    AndroidDataDeserializer.enableCache(1 << 20);
+    TestMapConsumer<DataResource> before =
+        readOverwriting(AndroidDataDeserializer.create(), binaryPath);
+
+    serializeOverwriting(binaryPath, "banker", "butcher");
+    TestMapConsumer<DataResource> after =
+        readOverwriting(AndroidDataDeserializer.create(), binaryPath);
+
+    CacheStats stats = AndroidDataDeserializer.cacheStats();
+    Truth.assertThat(stats.missCount()).isEqualTo(2);
+    Truth.assertThat(stats.hitCount()).isEqualTo(0);
+    Truth.assertThat(before).hasSize(1);
+    Truth.assertThat(after).hasSize(2);
+  }
+
+  @Test
+  public void filteredReadsBypassCache() throws Exception {
+    Path binaryPath = fs.getPath("out.bin");
+    serializeOverwriting(binaryPath, "banker", "butcher");
+    AndroidDataDeserializer.enableCache(1 << 20);
+    AndroidDataDeserializer deserializer =
+        AndroidDataDeserializer.withFilteredResources(ImmutableList.of("layout/banker.xml"));
+
+    TestMapConsumer<DataResource> first = readOverwriting(deserializer, binaryPath);
+    TestMapConsumer<DataResource> second = readOverwriting(deserializer, binaryPath);
+
+    Truth.assertThat(AndroidDataDeserializer.cacheStats().requestCount()).isEqualTo(0);
+    Truth.assertThat(first).hasSize(1);
+    Truth.assertThat(second).isEqualTo(first);
+  }
+
   private static class TestMapConsumer<T extends DataValue>
       implements ParsedAndroidData.KeyValueConsumer<DataKey, T>, Map<DataKey, T> {
 
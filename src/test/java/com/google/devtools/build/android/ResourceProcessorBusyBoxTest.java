@@ -0,0 +1,98 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.android;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkRequest;
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the persistent worker mode of {@link ResourceProcessorBusyBox}. */
+@RunWith(JUnit4.class)
+public class ResourceProcessorBusyBoxTest {
+
+  @After
+  public void disableCache() {
+    AndroidDataDeserializer.disableCache();
+  }
+
+  private static WorkRequest request(String... args) {
+    WorkRequest.Builder request = WorkRequest.newBuilder();
+    for (String arg : args) {
+      request.addArguments(arg);
+    }
+    return request.build();
+  }
+
+  private static List<WorkResponse> runWorker(WorkRequest... requests) throws Exception {
+    ByteArrayOutputStream requestBytes = new ByteArrayOutputStream();
+    for (WorkRequest request : requests) {
+      request.writeDelimitedTo(requestBytes);
+    }
+    ByteArrayOutputStream responseBytes = new ByteArrayOutputStream();
+    ResourceProcessorBusyBox.runPersistentWorker(
+        new ByteArrayInputStream(requestBytes.toByteArray()), new PrintStream(responseBytes));
+    List<WorkResponse> responses = new ArrayList<>();
+    InputStream in = new ByteArrayInputStream(responseBytes.toByteArray());
+    WorkResponse response;
+    while ((response = WorkResponse.parseDelimitedFrom(in)) != null) {
+      responses.add(response);
+    }
+    return responses;
+  }
+
+  @Test
+  public void failedRequestsDoNotStopWorker() throws Exception {
+    List<WorkResponse> responses =
+        runWorker(
+            request("--tool", "MERGE", "--not_a_merge_option"),
+            request("--tool", "PACKAGE"),
+            request("--tool", "MERGE", "--not_a_merge_option"));
+
+    assertThat(responses).hasSize(3);
+    for (WorkResponse response : responses) {
+      assertThat(response.getExitCode()).isEqualTo(1);
+    }
+    assertThat(responses.get(0).getOutput()).contains("--not_a_merge_option");
+    assertThat(responses.get(2).getOutput()).contains("--not_a_merge_option");
+  }
+
+  @Test
+  public void toolsThatMayExitAreRejected() throws Exception {
+    for (ResourceProcessorBusyBox.Tool tool : ResourceProcessorBusyBox.Tool.values()) {
+      if (tool == ResourceProcessorBusyBox.Tool.MERGE) {
+        continue;
+      }
+      WorkResponse response = runWorker(request("--tool", tool.name())).get(0);
+      assertThat(response.getExitCode()).isEqualTo(1);
+      assertThat(response.getOutput()).contains(tool + " can't run in a persistent worker");
+      assertThat(response.getOutput()).doesNotContain("Exception");
+    }
+  }
+
+  @Test
+  public void emptyInputStopsWorker() throws Exception {
+    assertThat(runWorker()).isEmpty();
+  }
+}
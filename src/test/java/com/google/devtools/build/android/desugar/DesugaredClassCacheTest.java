@@ -0,0 +1,173 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.android.desugar;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.devtools.common.options.OptionsParser;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/** Unit tests for {@link DesugaredClassCache}. */
+@RunWith(JUnit4.class)
+public class DesugaredClassCacheTest {
+
+  @Rule public final TemporaryFolder temp = new TemporaryFolder();
+
+  private Path classpathEntry;
+
+  @Before
+  public void createClasspathEntry() throws IOException {
+    classpathEntry = temp.newFile("classpath.jar").toPath();
+  }
+
+  private static Desugar.Options options(String... args) throws Exception {
+    OptionsParser parser = OptionsParser.newOptionsParser(Desugar.Options.class);
+    parser.parse(args);
+    return parser.getOptions(Desugar.Options.class);
+  }
+
+  /** Returns a class with a method {@code m} that returns {@code value}. */
+  private static byte[] classWithMethod(String name, String method, int value) {
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method, "()I", null, null);
+    mv.visitCode();
+    mv.visitLdcInsn(value);
+    mv.visitInsn(Opcodes.IRETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  /** Writes the given classes, keyed by name, into a new input directory. */
+  private InputFileProvider input(Map<String, byte[]> classes) throws IOException {
+    Path root = temp.newFolder().toPath();
+    for (Map.Entry<String, byte[]> clazz : classes.entrySet()) {
+      Files.write(root.resolve(clazz.getKey() + ".class"), clazz.getValue());
+    }
+    return new DirectoryInputFileProvider(root);
+  }
+
+  private HashCode environmentKey(Desugar.Options options, Map<String, byte[]> classes)
+      throws IOException {
+    return DesugaredClassCache.environmentKey(
+        options, input(classes), ImmutableMap.of(classpathEntry, HashCode.fromInt(1)));
+  }
+
+  private HashCode environmentKey(String... args) throws Exception {
+    return environmentKey(
+        options(args),
+        ImmutableMap.of("A", classWithMethod("A", "m", 1), "B", classWithMethod("B", "m", 2)));
+  }
+
+  @Test
+  public void environmentKeyIgnoresMethodBodiesOfInput() throws Exception {
+    Desugar.Options options = options();
+    HashCode key =
+        environmentKey(
+            options,
+            ImmutableMap.of("A", classWithMethod("A", "m", 1), "B", classWithMethod("B", "m", 2)));
+    HashCode changedBody =
+        environmentKey(
+            options,
+            ImmutableMap.of("A", classWithMethod("A", "m", 3), "B", classWithMethod("B", "m", 2)));
+    HashCode changedSignature =
+        environmentKey(
+            options,
+            ImmutableMap.of("A", classWithMethod("A", "n", 1), "B", classWithMethod("B", "m", 2)));
+
+    assertThat(changedBody).isEqualTo(key);
+    assertThat(changedSignature).isNotEqualTo(key);
+  }
+
+  @Test
+  public void environmentKeyCoversOutputAffectingOptions() throws Exception {
+    assertThat(environmentKey("--min_sdk_version=19"))
+        .isNotEqualTo(environmentKey("--min_sdk_version=1"));
+    for (String flag :
+        ImmutableList.of(
+            "allow_empty_bootclasspath",
+            "core_library",
+            "only_desugar_javac9_for_lint",
+            "rewrite_calls_to_long_compare",
+            "desugar_interface_method_bodies_if_needed",
+            "desugar_try_with_resources_if_needed",
+            "desugar_try_with_resources_omit_runtime_classes",
+            "copy_bridges_from_classpath")) {
+      assertThat(environmentKey("--" + flag))
+          .named(flag)
+          .isNotEqualTo(environmentKey("--no" + flag));
+    }
+  }
+
+  @Test
+  public void environmentKeyIgnoresOtherOptions() throws Exception {
+    assertThat(environmentKey("--verbose", "--max_threads=8", "--persistent_worker"))
+        .isEqualTo(environmentKey());
+  }
+
+  @Test
+  public void environmentKeyCoversClasspathDigests() throws Exception {
+    Desugar.Options options = options("--classpath_entry=" + classpathEntry);
+    InputFileProvider input = input(ImmutableMap.of("A", classWithMethod("A", "m", 1)));
+
+    HashCode key =
+        DesugaredClassCache.environmentKey(
+            options, input, ImmutableMap.of(classpathEntry, HashCode.fromInt(1)));
+    HashCode changed =
+        DesugaredClassCache.environmentKey(
+            options, input, ImmutableMap.of(classpathEntry, HashCode.fromInt(2)));
+
+    assertThat(key).isNotNull();
+    assertThat(changed).isNotEqualTo(key);
+    assertThat(
+            DesugaredClassCache.environmentKey(options, input, ImmutableMap.<Path, HashCode>of()))
+        .isNull();
+  }
+
+  @Test
+  public void getReturnsClassesCachedForSameBytecodeAndEnvironment() throws Exception {
+    DesugaredClassCache cache = new DesugaredClassCache(1 << 20);
+    HashCode environment = environmentKey();
+    byte[] bytecode = classWithMethod("A", "m", 1);
+    DesugaredClass desugared =
+        new DesugaredClass(
+            bytecode, ImmutableMap.of(), ImmutableMap.of(), ImmutableSet.of(), 0);
+
+    assertThat(cache.get(environment, bytecode)).isNull();
+    cache.put(environment, bytecode, desugared);
+
+    assertThat(cache.get(environment, bytecode.clone())).isSameAs(desugared);
+    assertThat(cache.get(environment, classWithMethod("A", "m", 2))).isNull();
+    assertThat(cache.get(environmentKey("--min_sdk_version=19"), bytecode)).isNull();
+    assertThat(cache.toString()).isEqualTo("1 classes cached, 1 hits, 3 misses");
+  }
+}
@@ -16,6 +16,7 @@ package com.google.devtools.build.android.dexer;
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -34,6 +35,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -99,6 +101,22 @@ public class DexFileAggregatorTest {
     verify(dest).addFile(any(ZipEntry.class), eq(dex2));
   }
 
+  @Test
+  public void testMultidex_parallelMergingWritesShardsInOrder() throws Exception {
+    DexFileAggregator dexer = new DexFileAggregator(dest, MultidexStrategy.BEST_EFFORT,
+        2 /* dex has more than 2 methods and fields */, WASTE, /*maxThreads=*/ 2);
+    Dex dex2 = DexFiles.toDex(convertClass(ByteStreams.class));
+    dexer.add(dex);
+    dexer.add(dex2);  // this should start a new shard
+    dexer.close();
+    ArgumentCaptor<ZipEntry> entries = ArgumentCaptor.forClass(ZipEntry.class);
+    InOrder inOrder = inOrder(dest);
+    inOrder.verify(dest).addFile(entries.capture(), eq(dex));
+    inOrder.verify(dest).addFile(entries.capture(), eq(dex2));
+    assertThat(entries.getAllValues().get(0).getName()).isEqualTo("classes.dex");
+    assertThat(entries.getAllValues().get(1).getName()).isEqualTo("classes2.dex");
+  }
+
   @Test
   public void testMonodex_alwaysWritesSingleShard() throws Exception {
     DexFileAggregator dexer = new DexFileAggregator(dest, MultidexStrategy.OFF,
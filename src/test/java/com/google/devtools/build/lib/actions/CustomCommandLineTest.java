@@ -31,8 +31,11 @@ import com.google.devtools.build.lib.cmdline.Label;
 import com.google.devtools.build.lib.cmdline.LabelSyntaxException;
 import com.google.devtools.build.lib.collect.nestedset.NestedSetBuilder;
 import com.google.devtools.build.lib.testutil.Scratch;
+import com.google.devtools.build.lib.util.Fingerprint;
 import com.google.devtools.build.lib.vfs.PathFragment;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import javax.annotation.Nullable;
 import org.junit.Before;
 import org.junit.Test;
@@ -384,6 +387,57 @@ public class CustomCommandLineTest {
         "myTreeArtifact/children/child1:myTreeArtifact/children/child2");
   }
 
+  @Test
+  public void testForEachArgumentStreamsArguments() {
+    Artifact treeArtifact = createTreeArtifact("myTreeArtifact");
+    CommandLine commandLine =
+        CommandLine.concat(
+            ImmutableList.of("tool"),
+            CustomCommandLine.builder()
+                .add("--flag")
+                .addExecPaths("--inputs", ImmutableList.of(artifact1, artifact2))
+                .addBeforeEach("-D", NestedSetBuilder.<String>stableOrder().add("A").build())
+                .addJoinExecPaths("--cp", ":", ImmutableList.of(artifact1, artifact2))
+                .addExpandedTreeArtifactExecPaths(treeArtifact)
+                .build());
+    final TreeFileArtifact child = createTreeFileArtifact(treeArtifact, "child");
+    ArtifactExpander artifactExpander =
+        new ArtifactExpander() {
+          @Override
+          public void expand(Artifact artifact, Collection<? super Artifact> output) {
+            output.add(child);
+          }
+        };
+
+    List<String> streamed = new ArrayList<>();
+    commandLine.forEachArgument(streamed::add);
+    assertThat(streamed).containsExactlyElementsIn(commandLine.arguments()).inOrder();
+
+    streamed.clear();
+    commandLine.forEachArgument(artifactExpander, streamed::add);
+    assertThat(streamed)
+        .containsExactlyElementsIn(commandLine.arguments(artifactExpander))
+        .inOrder();
+    assertThat(streamed).contains("myTreeArtifact/child");
+  }
+
+  @Test
+  public void testAddToFingerprintMatchesArguments() {
+    CommandLine commandLine =
+        CommandLine.concat(
+            CustomCommandLine.builder()
+                .add("--flag")
+                .addJoinExecPaths("--cp", ":", ImmutableList.of(artifact1, artifact2))
+                .build(),
+            ImmutableList.of("last"));
+
+    Fingerprint streamed = new Fingerprint();
+    commandLine.addToFingerprint(streamed);
+
+    assertThat(streamed.hexDigestAndReset())
+        .isEqualTo(new Fingerprint().addStrings(commandLine.arguments()).hexDigestAndReset());
+  }
+
   private Artifact createTreeArtifact(String rootRelativePath) {
     PathFragment relpath = PathFragment.create(rootRelativePath);
     return new SpecialArtifact(
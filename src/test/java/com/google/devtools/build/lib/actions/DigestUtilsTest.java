@@ -19,16 +19,22 @@ import static org.junit.Assert.fail;
 import com.google.common.base.Strings;
 import com.google.common.cache.CacheStats;
 import com.google.devtools.build.lib.actions.cache.DigestUtils;
+import com.google.devtools.build.lib.actions.cache.Metadata;
 import com.google.devtools.build.lib.testutil.TestThread;
 import com.google.devtools.build.lib.testutil.TestUtils;
 import com.google.devtools.build.lib.util.BlazeClock;
+import com.google.devtools.build.lib.util.Fingerprint;
 import com.google.devtools.build.lib.vfs.FileSystem;
 import com.google.devtools.build.lib.vfs.FileSystem.HashFunction;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -264,4 +270,47 @@ public class DigestUtilsTest {
 
     assertThat(digest3).isEqualTo(digest1);
   }
+
+  @Test
+  public void testFromPathDigestsMatchesFromMetadata() throws Exception {
+    Map<String, Metadata> mdMap = new HashMap<>();
+    mdMap.put("a", metadata(new byte[] {1, 2, 3}));
+    mdMap.put("b", metadata(new byte[] {4, 5, 6}));
+    mdMap.put("c", null);
+
+    List<byte[]> pathDigests = new ArrayList<>();
+    Fingerprint fp = new Fingerprint();
+    for (Map.Entry<String, Metadata> entry : mdMap.entrySet()) {
+      pathDigests.add(DigestUtils.fromPathAndMetadata(fp, entry.getKey(), entry.getValue()));
+    }
+
+    assertThat(DigestUtils.fromPathDigests(pathDigests))
+        .isEqualTo(DigestUtils.fromMetadata(mdMap));
+    assertThat(DigestUtils.fromPathDigests(pathDigests.subList(0, 2)))
+        .isNotEqualTo(DigestUtils.fromMetadata(mdMap));
+  }
+
+  private static Metadata metadata(final byte[] digest) {
+    return new Metadata() {
+      @Override
+      public boolean isFile() {
+        return true;
+      }
+
+      @Override
+      public byte[] getDigest() {
+        return digest;
+      }
+
+      @Override
+      public long getSize() {
+        return digest.length;
+      }
+
+      @Override
+      public long getModifiedTime() {
+        return -1;
+      }
+    };
+  }
 }
@@ -17,7 +17,10 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.devtools.build.lib.actions.util.ActionsTestUtil.NULL_ACTION_OWNER;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.devtools.build.lib.actions.Action;
 import com.google.devtools.build.lib.actions.ActionExecutionContext;
+import com.google.devtools.build.lib.actions.ActionInput;
 import com.google.devtools.build.lib.actions.ActionInputPrefetcher;
 import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.Executor;
@@ -26,6 +29,9 @@ import com.google.devtools.build.lib.exec.util.TestExecutorBuilder;
 import com.google.devtools.build.lib.testutil.TestConstants;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.Symlinks;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -80,4 +86,25 @@ public class SymlinkActionTest extends BuildViewTestCase {
     assertThat(action.getPrimaryInput()).isEqualTo(inputArtifact);
     assertThat(action.getPrimaryOutput()).isEqualTo(outputArtifact);
   }
+
+  @Test
+  public void testInputIsPrefetchedBeforeSymlinking() throws Exception {
+    List<ActionInput> prefetched = new ArrayList<>();
+    ActionInputPrefetcher prefetcher =
+        new ActionInputPrefetcher() {
+          @Override
+          public void startPrefetching(Action action) {}
+
+          @Override
+          public void prefetchFiles(Iterable<? extends ActionInput> inputs) {
+            assertThat(output.exists(Symlinks.NOFOLLOW)).isFalse();
+            Iterables.addAll(prefetched, inputs);
+          }
+        };
+    Executor executor = new TestExecutorBuilder(directories, null).build();
+    action.execute(new ActionExecutionContext(executor, null, prefetcher, null,
+        null, ImmutableMap.<String, String>of(), null));
+    assertThat(prefetched).containsExactly(inputArtifact);
+    assertThat(output.isSymbolicLink()).isTrue();
+  }
 }
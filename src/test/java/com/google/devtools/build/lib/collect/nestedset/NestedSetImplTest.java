@@ -18,6 +18,7 @@ import static org.junit.Assert.fail;
 
 import com.google.common.collect.Lists;
 import com.google.common.testing.EqualsTester;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -228,4 +229,46 @@ public class NestedSetImplTest {
     }
     return builder.build();
   }
+
+  private static NestedSet<Integer> largeSet(int size) {
+    NestedSetBuilder<Integer> first = NestedSetBuilder.stableOrder();
+    NestedSetBuilder<Integer> second = NestedSetBuilder.stableOrder();
+    for (int i = 0; i < size / 2; i++) {
+      first.add(i);
+      second.add(size / 2 + i);
+    }
+    return NestedSetBuilder.<Integer>stableOrder()
+        .addTransitive(first.build())
+        .addTransitive(second.build())
+        .build();
+  }
+
+  @Test
+  public void largeFlatteningIsSharedBetweenSetsWithSameChildren() {
+    NestedSet<Integer> set = largeSet(1000);
+    NestedSet<Integer> wrapper = NestedSetBuilder.<Integer>stableOrder().addTransitive(set).build();
+
+    assertThat(set.toList()).hasSize(1000);
+    assertThat(wrapper.toList()).isSameAs(set.toList());
+  }
+
+  @Test
+  public void cachedFlatteningRespectsOrderOfConsumer() {
+    NestedSet<Integer> set = largeSet(1000);
+    NestedSet<Integer> linkOrder = NestedSetBuilder.<Integer>linkOrder().addTransitive(set).build();
+    List<Integer> uncached = linkOrder.toList();
+
+    assertThat(set.toList().get(0)).isEqualTo(0);
+    assertThat(linkOrder.toList()).isEqualTo(uncached);
+    assertThat(linkOrder.toList().get(0)).isEqualTo(999);
+  }
+
+  @Test
+  public void smallFlatteningIsNotCached() {
+    NestedSet<Integer> set = largeSet(10);
+
+    assertThat(set.toList()).isNotSameAs(set.toList());
+    assertThat(set.toList()).isEqualTo(set.toList());
+  }
 }
+
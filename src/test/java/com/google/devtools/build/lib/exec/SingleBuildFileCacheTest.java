@@ -24,6 +24,7 @@ import com.google.devtools.build.lib.actions.DigestOfDirectoryException;
 import com.google.devtools.build.lib.testutil.Suite;
 import com.google.devtools.build.lib.testutil.TestSpec;
 import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
 import com.google.protobuf.ByteString;
@@ -31,8 +32,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -52,8 +58,8 @@ public class SingleBuildFileCacheTest {
 
   @Before
   public final void setUp() throws Exception {
-    calls = new HashMap<>();
-    md5Overrides = new HashMap<>();
+    calls = new ConcurrentHashMap<>();
+    md5Overrides = new ConcurrentHashMap<>();
     fs = new InMemoryFileSystem() {
         @Override
         protected InputStream getInputStream(Path path) throws IOException {
@@ -127,6 +133,43 @@ public class SingleBuildFileCacheTest {
     assert(calls.containsKey("/empty"));
   }
 
+  @Test
+  public void testConcurrentLookupsReadFileOnce() throws Exception {
+    ActionInput empty = ActionInputHelper.fromPath("/empty");
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<byte[]>> digests = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        digests.add(executor.submit(() -> underTest.getMetadata(empty).getDigest()));
+      }
+      for (Future<byte[]> digest : digests) {
+        assertThat(digest.get()).isEqualTo(digests.get(0).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat((int) calls.get("/empty")).isEqualTo(1);
+    assertThat(underTest.getMisses()).isEqualTo(1);
+    assertThat(underTest.getHits()).isEqualTo(99);
+  }
+
+  @Test
+  public void testReverseMappingIncludesLaterLookups() throws Exception {
+    Path file = fs.getPath("/file");
+    FileSystemUtils.writeContentAsLatin1(file, "contents");
+    ActionInput empty = ActionInputHelper.fromPath("/empty");
+    ActionInput input = ActionInputHelper.fromPath("/file");
+
+    ByteString emptyDigest = hexDigest(underTest.getMetadata(empty).getDigest());
+    assertThat(underTest.getInputFromDigest(emptyDigest)).isEqualTo(empty);
+    ByteString fileDigest = hexDigest(underTest.getMetadata(input).getDigest());
+    assertThat(underTest.getInputFromDigest(fileDigest)).isEqualTo(input);
+  }
+
+  private static ByteString hexDigest(byte[] digest) {
+    return ByteString.copyFromUtf8(BaseEncoding.base16().lowerCase().encode(digest));
+  }
+
   @Test
   public void testUnreadableFileWhenFileSystemSupportsDigest() throws Exception {
     byte[] expectedDigestRaw = MessageDigest.getInstance("md5").digest(
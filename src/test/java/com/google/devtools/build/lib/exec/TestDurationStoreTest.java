@@ -0,0 +1,169 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.exec;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.devtools.build.lib.cmdline.Label;
+import com.google.devtools.build.lib.testutil.Suite;
+import com.google.devtools.build.lib.testutil.TestSpec;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.JavaIoFileSystem;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.view.test.TestStatus.TestCase;
+import com.google.testing.junit.runner.sharding.TestDurations;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link TestDurationStore}. */
+@RunWith(JUnit4.class)
+@TestSpec(size = Suite.SMALL_TESTS)
+public class TestDurationStoreTest {
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+
+  private static final Label A = Label.parseAbsoluteUnchecked("//pkg:a");
+  private static final Label B = Label.parseAbsoluteUnchecked("//pkg:b");
+
+  private Path root;
+  private Path file;
+
+  @Before
+  public final void setUp() throws Exception {
+    root = new JavaIoFileSystem().getPath(tmp.getRoot().getPath());
+    file = root.getChild("test_durations");
+  }
+
+  private void writeLines(String... lines) throws Exception {
+    FileSystemUtils.writeLinesAs(file, UTF_8, lines);
+  }
+
+  private static TestCase testCase(String className, String name, long millis) {
+    return TestCase.newBuilder()
+        .setType(TestCase.Type.TEST_CASE)
+        .setClassName(className)
+        .setName(name)
+        .setRunDurationMillis(millis)
+        .build();
+  }
+
+  private static TestCase suite(TestCase... children) {
+    TestCase.Builder suite = TestCase.newBuilder().setType(TestCase.Type.TEST_SUITE);
+    for (TestCase child : children) {
+      suite.addChild(child);
+    }
+    return suite.build();
+  }
+
+  @Test
+  public void loadSkipsMalformedLines() throws Exception {
+    writeLines(
+        "//pkg:a\t100\ttestOne(pkg.ATest)",
+        "//pkg:a\tslow\ttestTwo(pkg.ATest)",
+        "//pkg:a\t200",
+        "not a duration",
+        "",
+        "//pkg:b\t5\ttestThree(pkg.BTest)");
+
+    TestDurationStore store = TestDurationStore.load(file);
+
+    assertThat(store.getTestCaseDurations(A)).containsExactly("testOne(pkg.ATest)", 100L);
+    assertThat(store.getTestCaseDurations(B)).containsExactly("testThree(pkg.BTest)", 5L);
+  }
+
+  @Test
+  public void loadWithoutFileIsEmpty() throws Exception {
+    TestDurationStore store = TestDurationStore.load(file);
+
+    assertThat(store.getTestCaseDurations(A)).isEmpty();
+  }
+
+  @Test
+  public void recordMergesShards() throws Exception {
+    TestDurationStore store = TestDurationStore.load(file);
+    store.record(A, suite(testCase("pkg.ATest", "testOne", 10)));
+    store.record(
+        A,
+        suite(
+            testCase("pkg.ATest", "testTwo", 20),
+            testCase("pkg.ATest", "testSkipped", 0).toBuilder().setRun(false).build()));
+    store.record(A, testCase("pkg.ATest", "testThree", 30));
+
+    // Tests keep getting the durations loaded at the start of the command.
+    assertThat(store.getTestCaseDurations(A)).isEmpty();
+
+    store.save();
+    assertThat(TestDurationStore.load(file).getTestCaseDurations(A))
+        .containsExactly(
+            "testOne(pkg.ATest)", 10L, "testTwo(pkg.ATest)", 20L, "testThree(pkg.ATest)", 30L);
+  }
+
+  @Test
+  public void saveKeepsDurationsOfTestsThatDidNotRun() throws Exception {
+    writeLines(
+        "//pkg:a\t100\ttestOne(pkg.ATest)",
+        "//pkg:a\t30\ttestTwo(pkg.ATest)",
+        "//pkg:b\t5\ttestThree(pkg.BTest)");
+    TestDurationStore store = TestDurationStore.load(file);
+    store.record(A, suite(testCase("pkg.ATest", "testOne", 10)));
+
+    store.save();
+
+    TestDurationStore reloaded = TestDurationStore.load(file);
+    assertThat(reloaded.getTestCaseDurations(A))
+        .containsExactly("testOne(pkg.ATest)", 10L, "testTwo(pkg.ATest)", 30L);
+    assertThat(reloaded.getTestCaseDurations(B)).containsExactly("testThree(pkg.BTest)", 5L);
+    assertThat(root.getChild("test_durations.tmp").exists()).isFalse();
+  }
+
+  @Test
+  public void saveWithoutRecordedDurationsDoesNotWrite() throws Exception {
+    TestDurationStore.load(file).save();
+
+    assertThat(file.exists()).isFalse();
+  }
+
+  @Test
+  public void shardingHintsAreReadByTestRunner() throws Exception {
+    writeLines("//pkg:a\t100\ttestOne(pkg.ATest)", "//pkg:a\t5\ttestTwo(pkg.ATest)");
+    TestDurationStore store = TestDurationStore.load(file);
+    Path hints = root.getChild("hints");
+
+    assertThat(store.writeShardingHints(A, hints)).isTrue();
+
+    TestDurations durations = TestDurations.read(hints.getPathFile());
+    assertThat(
+            durations.getDescriptionWeight(
+                Description.createTestDescription("pkg.ATest", "testOne")))
+        .isEqualTo(100);
+    assertThat(
+            durations.getDescriptionWeight(
+                Description.createTestDescription("pkg.ATest", "testTwo")))
+        .isEqualTo(5);
+  }
+
+  @Test
+  public void noShardingHintsForUnknownTest() throws Exception {
+    writeLines("//pkg:a\t100\ttestOne(pkg.ATest)");
+    Path hints = root.getChild("hints");
+
+    assertThat(TestDurationStore.load(file).writeShardingHints(B, hints)).isFalse();
+    assertThat(hints.exists()).isFalse();
+  }
+}
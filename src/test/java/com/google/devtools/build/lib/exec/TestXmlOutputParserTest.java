@@ -0,0 +1,128 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.exec;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Joiner;
+import com.google.devtools.build.lib.testutil.Suite;
+import com.google.devtools.build.lib.testutil.TestSpec;
+import com.google.devtools.build.lib.view.test.TestStatus.TestCase;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link TestXmlOutputParser}. */
+@RunWith(JUnit4.class)
+@TestSpec(size = Suite.SMALL_TESTS)
+public class TestXmlOutputParserTest {
+  private static final String TEST_XML =
+      Joiner.on('\n')
+          .join(
+              "<testsuites>",
+              "  <testsuite name='pkg.FooTest'>",
+              "    <testcase name='a' classname='pkg.FooTest' time='0.1'/>",
+              "    <testcase name='b' classname='pkg.FooTest' time='0.2'>",
+              "      <failure message='boom'>stack trace</failure>",
+              "    </testcase>",
+              "    <testcase name='c' classname='pkg.FooTest' time='0.3'/>",
+              "    <testcase name='d' classname='pkg.FooTest' time='0.4'>",
+              "      <error message='oops'/>",
+              "    </testcase>",
+              "  </testsuite>",
+              "  <testsuite name='pkg.BarTest'>",
+              "    <testcase name='e' classname='pkg.BarTest' time='0.5'/>",
+              "    <testcase name='f' classname='pkg.BarTest' time='0.6'/>",
+              "  </testsuite>",
+              "</testsuites>");
+
+  private final List<String> consumed = new ArrayList<>();
+
+  private TestCase parse(int maxPassedTestCases) throws Exception {
+    return parse(maxPassedTestCases, Integer.MAX_VALUE);
+  }
+
+  private TestCase parse(int maxPassedTestCases, int maxFailedTestCases) throws Exception {
+    return new TestXmlOutputParser(
+            testCase -> consumed.add(testCase.getName()), maxPassedTestCases, maxFailedTestCases)
+        .parseXmlIntoTestResult(new ByteArrayInputStream(TEST_XML.getBytes(UTF_8)));
+  }
+
+  private static List<String> childNames(TestCase testCase) {
+    List<String> names = new ArrayList<>();
+    for (TestCase child : testCase.getChildList()) {
+      names.add(child.getName());
+    }
+    return names;
+  }
+
+  @Test
+  public void consumerGetsTestCasesInFileOrder() throws Exception {
+    parse(Integer.MAX_VALUE);
+
+    assertThat(consumed).containsExactly("a", "b", "c", "d", "e", "f").inOrder();
+  }
+
+  @Test
+  public void consumerGetsPrunedTestCases() throws Exception {
+    parse(0);
+
+    assertThat(consumed).containsExactly("a", "b", "c", "d", "e", "f").inOrder();
+  }
+
+  @Test
+  public void keepsAllTestCasesWithinLimit() throws Exception {
+    TestCase result = parse(Integer.MAX_VALUE);
+
+    assertThat(childNames(result.getChild(0))).containsExactly("a", "b", "c", "d").inOrder();
+    assertThat(childNames(result.getChild(1))).containsExactly("e", "f").inOrder();
+  }
+
+  @Test
+  public void failedTestCasesAreKeptWithinLimit() throws Exception {
+    TestCase result = parse(1);
+
+    TestCase foo = result.getChild(0);
+    assertThat(childNames(foo)).containsExactly("a", "b", "d").inOrder();
+    assertThat(foo.getChild(1).getStatus()).isEqualTo(TestCase.Status.FAILED);
+    assertThat(foo.getChild(2).getStatus()).isEqualTo(TestCase.Status.ERROR);
+    assertThat(foo.getStatus()).isEqualTo(TestCase.Status.ERROR);
+  }
+
+  @Test
+  public void prunedFailedTestCasesStillSetStatus() throws Exception {
+    TestCase result = parse(Integer.MAX_VALUE, 1);
+
+    TestCase foo = result.getChild(0);
+    assertThat(childNames(foo)).containsExactly("a", "b", "c").inOrder();
+    assertThat(foo.getStatus()).isEqualTo(TestCase.Status.ERROR);
+    assertThat(result.getStatus()).isEqualTo(TestCase.Status.ERROR);
+    assertThat(consumed).containsExactly("a", "b", "c", "d", "e", "f").inOrder();
+  }
+
+  @Test
+  public void suiteWithAllTestCasesPrunedStaysPassed() throws Exception {
+    TestCase result = parse(0);
+
+    TestCase bar = result.getChild(1);
+    assertThat(bar.getName()).isEqualTo("pkg.BarTest");
+    assertThat(bar.getChildList()).isEmpty();
+    assertThat(bar.getStatus()).isEqualTo(TestCase.Status.PASSED);
+    assertThat(result.getStatus()).isEqualTo(TestCase.Status.ERROR);
+  }
+}
@@ -33,6 +33,7 @@ import com.google.devtools.build.lib.actions.ExecutionRequirements;
 import com.google.devtools.build.lib.actions.ResourceManager;
 import com.google.devtools.build.lib.actions.ResourceSet;
 import com.google.devtools.build.lib.actions.Spawn;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.exec.SpawnResult;
 import com.google.devtools.build.lib.exec.SpawnRunner.ProgressStatus;
 import com.google.devtools.build.lib.exec.SpawnRunner.SpawnExecutionPolicy;
@@ -167,6 +168,11 @@ public class LocalSpawnRunnerTest {
       return mockFileCache;
     }
 
+    @Override
+    public MetadataHandler getMetadataHandler() {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public ArtifactExpander getArtifactExpander() {
       throw new UnsupportedOperationException();
@@ -0,0 +1,64 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.packages;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.cmdline.Label;
+import com.google.devtools.build.lib.testutil.TestRuleClassProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link CompactAttributeContainer}.
+ */
+@RunWith(JUnit4.class)
+public class CompactAttributeContainerTest {
+
+  private RuleClass ruleClass;
+  private Attribute srcs;
+
+  @Before
+  public final void getRuleClass() throws Exception  {
+    ruleClass =
+        TestRuleClassProvider.getRuleClassProvider().getRuleClassMap().get("testing_dummy_rule");
+    srcs = ruleClass.getAttributeByName("srcs");
+  }
+
+  @Test
+  public void testEqualLabelListsAreShared() throws Exception {
+    AttributeContainer first = new CompactAttributeContainer(ruleClass);
+    AttributeContainer second = new CompactAttributeContainer(ruleClass);
+    first.setAttributeValue(
+        srcs, new ArrayList<>(Arrays.asList(Label.parseAbsolute("//a:b"))), true);
+    second.setAttributeValue(
+        srcs, new ArrayList<>(Arrays.asList(Label.parseAbsolute("//a:b"))), true);
+
+    assertThat(first.getAttr("srcs")).isInstanceOf(ImmutableList.class);
+    assertThat(first.getAttr("srcs")).isSameAs(second.getAttr("srcs"));
+  }
+
+  @Test
+  public void testOtherValuesAreStoredAsIs() throws Exception {
+    AttributeContainer container = new CompactAttributeContainer(ruleClass);
+    Object value = new ArrayList<>(Arrays.asList(new Object()));
+    container.setAttributeValue(srcs, value, true);
+    assertThat(container.getAttr("srcs")).isSameAs(value);
+  }
+}
@@ -0,0 +1,171 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.query2.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.query2.engine.QueryUtil.DenseIdAssigner;
+import com.google.devtools.build.lib.query2.engine.QueryUtil.DenseIdMinDepthUniquifierImpl;
+import com.google.devtools.build.lib.query2.engine.QueryUtil.DenseIdUniquifierImpl;
+import com.google.devtools.build.lib.query2.engine.QueryUtil.MinDepthUniquifierImpl;
+import com.google.devtools.build.lib.query2.engine.QueryUtil.UniquifierImpl;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the uniquifiers in {@link QueryUtil}. */
+@RunWith(JUnit4.class)
+public class QueryUtilTest {
+
+  /** Dedupes strings by their lower-case form, so that keys differ from elements. */
+  private static final KeyExtractor<String, String> LOWER_CASE = s -> s.toLowerCase();
+
+  private static void checkUniquifier(Uniquifier<String> uniquifier) {
+    assertThat(uniquifier.unique("a")).isTrue();
+    assertThat(uniquifier.unique("a")).isFalse();
+    assertThat(uniquifier.unique("A")).isFalse();
+    assertThat(uniquifier.unique(ImmutableList.of("b", "a", "c", "B", "c")))
+        .containsExactly("b", "c")
+        .inOrder();
+    assertThat(uniquifier.unique(ImmutableList.of("a", "b", "c"))).isEmpty();
+  }
+
+  private static void checkMinDepthUniquifier(MinDepthUniquifier<String> uniquifier) {
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualTo(ImmutableList.of("a", "b"), 3))
+        .containsExactly("a", "b");
+    // Already seen at depth 3.
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualTo(ImmutableList.of("a"), 3)).isEmpty();
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualTo(ImmutableList.of("A"), 5)).isEmpty();
+    // Seen again at a shallower depth.
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualTo(ImmutableList.of("A", "c"), 1))
+        .containsExactly("A", "c")
+        .inOrder();
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualTo(ImmutableList.of("a"), 2)).isEmpty();
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualTo(ImmutableList.of("b"), 0))
+        .containsExactly("b");
+  }
+
+  @Test
+  public void testUniquifierImpl() {
+    checkUniquifier(new UniquifierImpl<>(LOWER_CASE, 4));
+  }
+
+  @Test
+  public void testDenseIdUniquifierImpl() {
+    checkUniquifier(new DenseIdUniquifierImpl<>(LOWER_CASE, new DenseIdAssigner<String>(4)));
+  }
+
+  @Test
+  public void testMinDepthUniquifierImpl() {
+    checkMinDepthUniquifier(new MinDepthUniquifierImpl<>(LOWER_CASE, 4));
+  }
+
+  @Test
+  public void testDenseIdMinDepthUniquifierImpl() {
+    checkMinDepthUniquifier(
+        new DenseIdMinDepthUniquifierImpl<>(LOWER_CASE, new DenseIdAssigner<String>(4)));
+  }
+
+  @Test
+  public void testDenseIdUniquifiersSharingIdsAreIndependent() {
+    DenseIdAssigner<String> ids = new DenseIdAssigner<>(1);
+    Uniquifier<String> first = new DenseIdUniquifierImpl<>(LOWER_CASE, ids);
+    Uniquifier<String> second = new DenseIdUniquifierImpl<>(LOWER_CASE, ids);
+    assertThat(first.unique("a")).isTrue();
+    assertThat(second.unique("a")).isTrue();
+    assertThat(first.unique("a")).isFalse();
+    assertThat(second.unique("a")).isFalse();
+    assertThat(ids.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testDenseIdUniquifierPastOneSegment() {
+    Uniquifier<String> uniquifier =
+        new DenseIdUniquifierImpl<>(LOWER_CASE, new DenseIdAssigner<String>(2));
+    for (int i = 0; i < 100000; i++) {
+      assertThat(uniquifier.unique("k" + i)).isTrue();
+    }
+    for (int i = 0; i < 100000; i++) {
+      assertThat(uniquifier.unique("K" + i)).isFalse();
+    }
+  }
+
+  @Test
+  public void testDenseIdAssignerIdsAreDenseAndStable() {
+    DenseIdAssigner<String> ids = new DenseIdAssigner<>(3);
+    List<Integer> assigned = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      assigned.add(ids.getId("k" + i));
+    }
+    assertThat(new HashSet<>(assigned)).hasSize(10000);
+    for (int id : assigned) {
+      assertThat(id).isAtLeast(0);
+      assertThat(id).isLessThan(10000);
+    }
+    for (int i = 0; i < 10000; i++) {
+      assertThat(ids.getId("k" + i)).isEqualTo(assigned.get(i));
+    }
+    assertThat(ids.size()).isEqualTo(10000);
+  }
+
+  @Test
+  public void testDenseIdAssignerConcurrentAssignment() throws Exception {
+    final DenseIdAssigner<String> ids = new DenseIdAssigner<>(4);
+    final ConcurrentMap<String, Integer> seen = new ConcurrentHashMap<>();
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    final List<Throwable> failures = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread =
+          new Thread() {
+            @Override
+            public void run() {
+              try {
+                start.await();
+                for (int i = 0; i < 5000; i++) {
+                  String key = "k" + i;
+                  int id = ids.getId(key);
+                  Integer previous = seen.putIfAbsent(key, id);
+                  if (previous != null && previous != id) {
+                    throw new AssertionError(key + " got ids " + previous + " and " + id);
+                  }
+                }
+              } catch (Throwable e) {
+                synchronized (failures) {
+                  failures.add(e);
+                }
+              }
+            }
+          };
+      threads.add(thread);
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(failures).isEmpty();
+    Set<Integer> distinctIds = new HashSet<>(seen.values());
+    assertThat(distinctIds).hasSize(5000);
+    assertThat(ids.size()).isEqualTo(5000);
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.query2.output;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.Iterables;
+import com.google.devtools.build.lib.events.util.EventCollectionApparatus;
+import com.google.devtools.build.lib.graph.Digraph;
+import com.google.devtools.build.lib.packages.Package;
+import com.google.devtools.build.lib.packages.Target;
+import com.google.devtools.build.lib.packages.util.PackageFactoryApparatus;
+import com.google.devtools.build.lib.query2.engine.ThreadSafeOutputFormatterCallback;
+import com.google.devtools.build.lib.query2.proto.proto2api.Build;
+import com.google.devtools.build.lib.testutil.Scratch;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.common.options.Options;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ProtoOutputFormatter}. */
+@RunWith(JUnit4.class)
+public class ProtoOutputFormatterTest {
+
+  private final EventCollectionApparatus events = new EventCollectionApparatus();
+  private final Scratch scratch = new Scratch("/workspace");
+  private final PackageFactoryApparatus packages = new PackageFactoryApparatus(events.reporter());
+
+  private QueryOptions options;
+  private ProtoOutputFormatter formatter;
+  private Digraph<Target> result;
+
+  @Before
+  public final void createTargets() throws Exception {
+    Path buildFile =
+        scratch.file(
+            "pkg/BUILD",
+            "genrule(name = 'a', srcs = ['a.in'], outs = ['a.out'], cmd = 'cp $< $@')",
+            "genrule(name = 'b', srcs = [':a.out'], outs = ['b.out'], cmd = 'cp $< $@',",
+            "        tags = ['manual'])",
+            "filegroup(name = 'all', srcs = [':a', ':b'])",
+            "exports_files(['x.txt'])");
+    Package pkg = packages.createPackage("pkg", buildFile);
+    events.assertNoWarningsOrErrors();
+
+    result = new Digraph<>();
+    for (Target target : pkg.getTargets().values()) {
+      result.createNode(target);
+    }
+    options = Options.getDefaults(QueryOptions.class);
+    formatter = new ProtoOutputFormatter();
+    formatter.setOptions(options, new NullAspectResolver());
+  }
+
+  private byte[] outputAtOnce() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    formatter.output(options, result, out, new NullAspectResolver());
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testStreamedOutputEqualsOutputAtOnce() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ThreadSafeOutputFormatterCallback<Target> callback =
+        formatter.createStreamCallback(out, options);
+    callback.start();
+    for (List<Target> batch :
+        Iterables.partition(formatter.getOrderedTargets(result, options), 2)) {
+      callback.process(batch);
+    }
+    callback.close(/*failFast=*/ false);
+
+    assertThat(out.toByteArray()).isEqualTo(outputAtOnce());
+  }
+
+  @Test
+  public void testStreamedOutputFromConcurrentBatches() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ThreadSafeOutputFormatterCallback<Target> callback =
+        formatter.createStreamCallback(out, options);
+    callback.start();
+    List<Thread> threads = new ArrayList<>();
+    for (final List<Target> batch :
+        Iterables.partition(formatter.getOrderedTargets(result, options), 1)) {
+      Thread thread =
+          new Thread() {
+            @Override
+            public void run() {
+              try {
+                callback.process(batch);
+              } catch (Exception e) {
+                throw new IllegalStateException(e);
+              }
+            }
+          };
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    callback.close(/*failFast=*/ false);
+
+    assertThat(Build.QueryResult.parseFrom(out.toByteArray()).getTargetList())
+        .containsExactlyElementsIn(Build.QueryResult.parseFrom(outputAtOnce()).getTargetList());
+  }
+
+  @Test
+  public void testNoOutputOnFailure() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ThreadSafeOutputFormatterCallback<Target> callback =
+        formatter.createStreamCallback(out, options);
+    callback.start();
+    callback.process(formatter.getOrderedTargets(result, options));
+    callback.close(/*failFast=*/ true);
+
+    assertThat(out.toByteArray()).isEmpty();
+  }
+}
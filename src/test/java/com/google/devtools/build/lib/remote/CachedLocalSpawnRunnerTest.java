@@ -30,6 +30,7 @@ import com.google.devtools.build.lib.actions.Artifact.ArtifactExpander;
 import com.google.devtools.build.lib.actions.ResourceSet;
 import com.google.devtools.build.lib.actions.SimpleSpawn;
 import com.google.devtools.build.lib.actions.Spawn;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.exec.SpawnInputExpander;
 import com.google.devtools.build.lib.exec.SpawnResult;
 import com.google.devtools.build.lib.exec.SpawnResult.Status;
@@ -101,6 +102,11 @@ public class CachedLocalSpawnRunnerTest {
           return fakeFileCache;
         }
 
+        @Override
+        public MetadataHandler getMetadataHandler() {
+          throw new UnsupportedOperationException();
+        }
+
         @Override
         public ArtifactExpander getArtifactExpander() {
           throw new UnsupportedOperationException();
@@ -34,6 +34,7 @@ import com.google.devtools.build.lib.actions.Artifact.ArtifactExpander;
 import com.google.devtools.build.lib.actions.EnvironmentalExecException;
 import com.google.devtools.build.lib.actions.ResourceSet;
 import com.google.devtools.build.lib.actions.SimpleSpawn;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.authandtls.AuthAndTLSOptions;
 import com.google.devtools.build.lib.exec.SpawnInputExpander;
 import com.google.devtools.build.lib.exec.SpawnResult;
@@ -130,6 +131,11 @@ public class GrpcRemoteExecutionClientTest {
           return fakeFileCache;
         }
 
+        @Override
+        public MetadataHandler getMetadataHandler() {
+          throw new UnsupportedOperationException();
+        }
+
         @Override
         public ArtifactExpander getArtifactExpander() {
           throw new UnsupportedOperationException();
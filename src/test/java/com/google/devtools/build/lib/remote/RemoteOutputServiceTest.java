@@ -0,0 +1,262 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.remote;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.devtools.build.lib.actions.Action;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ExecutionInfoSpecifier;
+import com.google.devtools.build.lib.actions.ExecutionRequirements;
+import com.google.devtools.build.lib.actions.Root;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
+import com.google.devtools.build.lib.analysis.BlazeDirectories;
+import com.google.devtools.build.lib.analysis.config.BinTools;
+import com.google.devtools.build.lib.vfs.FileStatusWithDigest;
+import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import com.google.devtools.remoteexecution.v1test.Digest;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/** Tests for {@link RemoteOutputService}. */
+@RunWith(JUnit4.class)
+public class RemoteOutputServiceTest {
+
+  private Path execRoot;
+  private Root outputRoot;
+  private RemoteOutputService service;
+
+  @Mock private RemoteActionCache cache;
+  @Mock private MetadataHandler metadataHandler;
+
+  @Before
+  public final void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    FileSystem fs = new InMemoryFileSystem();
+    execRoot = fs.getPath("/exec/root");
+    FileSystemUtils.createDirectoryAndParents(execRoot);
+    outputRoot = Root.asDerivedRoot(execRoot, execRoot.getRelative("out"));
+    service =
+        new RemoteOutputService(
+            execRoot,
+            BinTools.empty(
+                new BlazeDirectories(
+                    fs.getPath("/install"),
+                    fs.getPath("/output"),
+                    fs.getPath("/workspace"),
+                    "mock")),
+            "workspace",
+            "inmemory",
+            cache,
+            new ConcurrentHashMap<>(),
+            /*remoteExecution=*/ true,
+            /*downloadJobs=*/ 4);
+    // The fake cache serves every blob with the contents "remote".
+    doAnswer(
+            invocation -> {
+              Path dest = (Path) invocation.getArguments()[1];
+              FileSystemUtils.createDirectoryAndParents(dest.getParentDirectory());
+              FileSystemUtils.writeContentAsLatin1(dest, "remote");
+              return null;
+            })
+        .when(cache)
+        .downloadFile(any(Digest.class), any(Path.class), anyBoolean());
+  }
+
+  private Artifact injectRemoteFile(String rootRelativePath) {
+    Artifact artifact =
+        new Artifact(outputRoot.getPath().getRelative(rootRelativePath), outputRoot);
+    service.injectRemoteFile(
+        metadataHandler, artifact, Digests.computeDigestUtf8("remote"), /*isExecutable=*/ false);
+    return artifact;
+  }
+
+  @Test
+  public void injectRemoteFileInjectsMetadata() throws Exception {
+    Digest digest = Digests.computeDigestUtf8("remote");
+    Artifact artifact = injectRemoteFile("foo");
+
+    verify(metadataHandler)
+        .injectRemoteFile(
+            eq(artifact), eq(HashCode.fromString(digest.getHash()).asBytes()), eq(6L));
+    assertThat(service.isRegistered(artifact.getExecPath())).isTrue();
+    assertThat(artifact.getPath().exists()).isFalse();
+    assertThat(service.isRemoteFile(artifact.getPath())).isTrue();
+  }
+
+  @Test
+  public void prefetchDownloadsEachFileOnce() throws Exception {
+    Artifact artifact = injectRemoteFile("foo");
+
+    service.prefetchFiles(ImmutableList.of(artifact));
+    service.prefetchFiles(ImmutableList.of(artifact));
+
+    verify(cache, times(1)).downloadFile(any(Digest.class), eq(artifact.getPath()), eq(false));
+    assertThat(FileSystemUtils.readContentAsLatin1(artifact.getPath()))
+        .isEqualTo("remote".toCharArray());
+    assertThat(artifact.getPath().isWritable()).isFalse();
+    assertThat(service.isRemoteFile(artifact.getPath())).isFalse();
+  }
+
+  @Test
+  public void prefetchCopiesFilesWithTheSameDigest() throws Exception {
+    Artifact first = injectRemoteFile("first");
+    Artifact second = injectRemoteFile("second");
+
+    service.prefetchFiles(ImmutableList.of(first));
+    service.prefetchFiles(ImmutableList.of(second));
+
+    verify(cache, times(1)).downloadFile(any(Digest.class), any(Path.class), anyBoolean());
+    assertThat(FileSystemUtils.readContentAsLatin1(second.getPath()))
+        .isEqualTo("remote".toCharArray());
+    assertThat(second.getPath().isWritable()).isFalse();
+    // The copy is as good as a download: it is reported with the remote digest.
+    assertThat(
+            service
+                .batchStat(true, true, ImmutableList.of(second.getExecPath()))
+                .get(0)
+                .getDigest())
+        .isNotNull();
+  }
+
+  @Test
+  public void prefetchRetriesFailedDownloads() throws Exception {
+    Artifact artifact = injectRemoteFile("foo");
+    doAnswer(
+            invocation -> {
+              throw new IOException("boom");
+            })
+        .doAnswer(
+            invocation -> {
+              FileSystemUtils.writeContentAsLatin1(artifact.getPath(), "remote");
+              return null;
+            })
+        .when(cache)
+        .downloadFile(any(Digest.class), any(Path.class), anyBoolean());
+    FileSystemUtils.createDirectoryAndParents(artifact.getPath().getParentDirectory());
+
+    try {
+      service.prefetchFiles(ImmutableList.of(artifact));
+      fail("Expected IOException");
+    } catch (IOException e) {
+      assertThat(e).hasMessageThat().contains("boom");
+    }
+    service.prefetchFiles(ImmutableList.of(artifact));
+
+    assertThat(artifact.getPath().exists()).isTrue();
+  }
+
+  @Test
+  public void startPrefetchingOnlyFetchesInputsOfLocalActions() throws Exception {
+    Artifact localInput = injectRemoteFile("local");
+    Artifact remoteInput = injectRemoteFile("remote");
+    Action localAction = action(ImmutableMap.of(ExecutionRequirements.LOCAL, ""), localInput);
+    Action remoteAction = action(ImmutableMap.<String, String>of(), remoteInput);
+
+    service.startPrefetching(remoteAction);
+    service.startPrefetching(localAction);
+    // Waits for the download started above, and does not start a second one.
+    service.prefetchFiles(ImmutableList.of(localInput));
+
+    verify(cache, times(1)).downloadFile(any(Digest.class), any(Path.class), anyBoolean());
+    assertThat(localInput.getPath().exists()).isTrue();
+    assertThat(remoteInput.getPath().exists()).isFalse();
+  }
+
+  private static Action action(ImmutableMap<String, String> executionInfo, Artifact input) {
+    Action action =
+        mock(Action.class, withSettings().extraInterfaces(ExecutionInfoSpecifier.class));
+    when(((ExecutionInfoSpecifier) action).getExecutionInfo()).thenReturn(executionInfo);
+    when(action.getInputs()).thenReturn(ImmutableList.of(input));
+    return action;
+  }
+
+  @Test
+  public void finalizeBuildDownloadsNothingWithoutTopLevelTargets() throws Exception {
+    Artifact artifact = injectRemoteFile("foo");
+
+    service.finalizeBuild(/*buildSuccessful=*/ true);
+
+    verify(cache, times(0)).downloadFile(any(Digest.class), any(Path.class), anyBoolean());
+    assertThat(artifact.getPath().exists()).isFalse();
+  }
+
+  @Test
+  public void batchStatReportsRemoteFiles() throws Exception {
+    Digest digest = Digests.computeDigestUtf8("remote");
+    Artifact remote = injectRemoteFile("remote");
+    Artifact downloaded = injectRemoteFile("downloaded");
+    Artifact modified = injectRemoteFile("modified");
+    service.prefetchFiles(ImmutableList.of(downloaded, modified));
+    modified.getPath().chmod(0755);
+    FileSystemUtils.writeContentAsLatin1(modified.getPath(), "local");
+
+    List<FileStatusWithDigest> stats =
+        service.batchStat(
+            /*includeDigest=*/ true,
+            /*includeLinks=*/ true,
+            ImmutableList.of(
+                remote.getExecPath(),
+                downloaded.getExecPath(),
+                modified.getExecPath(),
+                PathFragment.create("out/missing")));
+
+    byte[] digestBytes = HashCode.fromString(digest.getHash()).asBytes();
+    assertThat(stats.get(0).isFile()).isTrue();
+    assertThat(stats.get(0).getSize()).isEqualTo(6);
+    assertThat(stats.get(0).getDigest()).isEqualTo(digestBytes);
+    assertThat(stats.get(1).getDigest()).isEqualTo(digestBytes);
+    assertThat(stats.get(1).getNodeId())
+        .isEqualTo(downloaded.getPath().stat().getNodeId());
+    // A local modification is reported as such.
+    assertThat(stats.get(2).getSize()).isEqualTo(5);
+    assertThat(stats.get(2).getDigest()).isNull();
+    assertThat(stats.get(3)).isNull();
+  }
+
+  @Test
+  public void cleanForgetsRemoteFiles() throws Exception {
+    Artifact artifact = injectRemoteFile("foo");
+
+    service.clean();
+
+    assertThat(service.isRegistered(artifact.getExecPath())).isFalse();
+    service.prefetchFiles(ImmutableList.of(artifact));
+    assertThat(artifact.getPath().exists()).isFalse();
+  }
+}
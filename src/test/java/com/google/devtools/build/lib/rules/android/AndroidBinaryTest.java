@@ -27,6 +27,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.truth.Truth;
 import com.google.devtools.build.lib.actions.Action;
 import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ExecutionRequirements;
 import com.google.devtools.build.lib.actions.util.ActionsTestUtil;
 import com.google.devtools.build.lib.analysis.ConfiguredTarget;
 import com.google.devtools.build.lib.analysis.FilesToRunProvider;
@@ -241,6 +242,21 @@ public class AndroidBinaryTest extends AndroidBuildViewTestCase {
         .doesNotContain("libapp.jar");
   }
 
+  @Test
+  public void testDesugarWorkers() throws Exception {
+    useConfiguration("--experimental_desugar_for_android");
+    SpawnAction action = (SpawnAction) actionsTestUtil().getActionForArtifactEndingWith(
+        actionsTestUtil().artifactClosureOf(getFilesToBuild(getConfiguredTarget(
+            "//java/android:app"))), "libapp.jar_desugared.jar");
+    assertThat(action.getExecutionInfo()).doesNotContainKey(ExecutionRequirements.SUPPORTS_WORKERS);
+
+    useConfiguration("--experimental_desugar_for_android", "--experimental_desugar_workers");
+    action = (SpawnAction) actionsTestUtil().getActionForArtifactEndingWith(
+        actionsTestUtil().artifactClosureOf(getFilesToBuild(getConfiguredTarget(
+            "//java/android:app"))), "libapp.jar_desugared.jar");
+    assertThat(action.getExecutionInfo()).containsKey(ExecutionRequirements.SUPPORTS_WORKERS);
+  }
+
   // regression test for #3169099
   @Test
   public void testBinarySrcs() throws Exception {
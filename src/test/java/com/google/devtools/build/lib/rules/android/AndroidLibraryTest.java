@@ -24,6 +24,7 @@ import com.google.common.collect.Lists;
 import com.google.common.truth.Truth;
 import com.google.devtools.build.lib.actions.Action;
 import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ExecutionRequirements;
 import com.google.devtools.build.lib.actions.util.ActionsTestUtil;
 import com.google.devtools.build.lib.analysis.ConfiguredTarget;
 import com.google.devtools.build.lib.analysis.OutputFileConfiguredTarget;
@@ -1013,6 +1014,42 @@ public class AndroidLibraryTest extends AndroidBuildViewTestCase {
     assertThat(resourceSrcJarAction.getOutputs()).contains(resources.getRTxt());
   }
 
+  @Test
+  public void testResourceMergingWorkers() throws Exception {
+    scratch.file(
+        "java/android/app/foo/BUILD",
+        "android_library(name = 'r',",
+        "                manifest = 'AndroidManifest.xml',",
+        "                resource_files = glob(['res/**']),",
+        "                )");
+    scratch.file(
+        "java/android/app/foo/res/values/strings.xml",
+        "<resources>",
+        "<string name='hello'>Aloha!</string>",
+        "</resources>");
+    assertThat(getResourceMergingAction("//java/android/app/foo:r").getExecutionInfo())
+        .doesNotContainKey(ExecutionRequirements.SUPPORTS_WORKERS);
+
+    useConfiguration("--experimental_android_resource_merging_workers");
+    assertThat(getResourceMergingAction("//java/android/app/foo:r").getExecutionInfo())
+        .containsKey(ExecutionRequirements.SUPPORTS_WORKERS);
+  }
+
+  private SpawnAction getResourceMergingAction(String label) throws Exception {
+    ConfiguredTarget target = getConfiguredTarget(label);
+    ResourceContainer resources =
+        Iterables.getOnlyElement(
+            target.getProvider(AndroidResourcesProvider.class).getDirectAndroidResources());
+    SpawnAction action =
+        (SpawnAction)
+            actionsTestUtil()
+                .getActionForArtifactEndingWith(
+                    actionsTestUtil().artifactClosureOf(getFilesToBuild(target)),
+                    "/" + resources.getJavaClassJar().getFilename());
+    assertThat(action.getMnemonic()).isEqualTo("AndroidResourceMerger");
+    return action;
+  }
+
   private void checkDebugMode(String target, boolean isDebug) throws Exception {
     ConfiguredTarget foo = getConfiguredTarget(target);
     SpawnAction action = (SpawnAction) actionsTestUtil().getActionForArtifactEndingWith(
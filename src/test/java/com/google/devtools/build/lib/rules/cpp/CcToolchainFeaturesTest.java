@@ -40,6 +40,7 @@ import com.google.devtools.build.lib.testutil.TestUtils;
 import com.google.devtools.build.lib.vfs.PathFragment;
 import com.google.devtools.build.lib.view.config.crosstool.CrosstoolConfig.CToolchain;
 import com.google.protobuf.TextFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -164,6 +165,35 @@ public class CcToolchainFeaturesTest {
     assertThat(commandLine).containsExactly("-a-c++-compile", "-b-c++-compile").inOrder();
   }
 
+  @Test
+  public void testForEachCommandLineArgument() throws Exception {
+    FeatureConfiguration configuration =
+        buildFeatures(
+                "feature {",
+                "  name: 'a'",
+                "  flag_set {",
+                "     action: 'c++-compile'",
+                "     flag_group { flag: '-a-c++-compile' }",
+                "  }",
+                "}",
+                "feature {",
+                "  name: 'b'",
+                "  flag_set {",
+                "     action: 'c++-compile'",
+                "     flag_group { flag: '-b-c++-compile' }",
+                "  }",
+                "}")
+            .getFeatureConfiguration(assumptionsFor("a", "b"));
+    List<String> arguments = new ArrayList<>();
+    configuration.forEachCommandLineArgument(
+        CppCompileAction.CPP_COMPILE, createVariables(), arguments::add);
+    assertThat(arguments)
+        .containsExactlyElementsIn(
+            configuration.getCommandLine(CppCompileAction.CPP_COMPILE, createVariables()))
+        .inOrder();
+    assertThat(arguments).containsExactly("-a-c++-compile", "-b-c++-compile").inOrder();
+  }
+
   @Test
   public void testEnvVars() throws Exception {
     FeatureConfiguration configuration =
@@ -0,0 +1,87 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.rules.cpp;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import com.google.common.base.Joiner;
+import com.google.devtools.build.lib.rules.cpp.IncludeParser.Inclusion;
+import com.google.devtools.build.lib.rules.cpp.IncludeParser.Kind;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link IncludeParser}. */
+@RunWith(JUnit4.class)
+public class IncludeParserTest {
+
+  private static List<Inclusion> parse(String... lines) {
+    return IncludeParser.parse(Joiner.on('\n').join(lines).getBytes(ISO_8859_1));
+  }
+
+  @Test
+  public void parsesQuoteAndAngleInclusions() {
+    assertThat(parse("#include \"foo/bar.h\"", "#include <vector>", "int main() {}"))
+        .containsExactly(
+            new Inclusion("foo/bar.h", Kind.QUOTE), new Inclusion("vector", Kind.ANGLE))
+        .inOrder();
+  }
+
+  @Test
+  public void parsesIncludeNextAndImport() {
+    assertThat(parse("#include_next <stdlib.h>", "#include_next \"a.h\"", "#import \"b.h\""))
+        .containsExactly(
+            new Inclusion("stdlib.h", Kind.NEXT_ANGLE),
+            new Inclusion("a.h", Kind.NEXT_QUOTE),
+            new Inclusion("b.h", Kind.QUOTE))
+        .inOrder();
+  }
+
+  @Test
+  public void allowsWhitespace() {
+    assertThat(parse("  #  include\t\"a.h\"\r", "#include<b.h>"))
+        .containsExactly(new Inclusion("a.h", Kind.QUOTE), new Inclusion("b.h", Kind.ANGLE))
+        .inOrder();
+  }
+
+  @Test
+  public void ignoresConditionalsAndOtherDirectives() {
+    assertThat(
+            parse(
+                "#ifdef FOO",
+                "#include \"foo.h\"",
+                "#else",
+                "#include \"bar.h\"",
+                "#endif",
+                "#define includes 1",
+                "#imported",
+                "// #include \"commented.h\"",
+                "#include \"unterminated.h"))
+        .containsExactly(new Inclusion("foo.h", Kind.QUOTE), new Inclusion("bar.h", Kind.QUOTE))
+        .inOrder();
+  }
+
+  @Test
+  public void reportsComputedInclusions() {
+    assertThat(parse("#include HEADER(foo) ")).containsExactly(
+        new Inclusion("HEADER(foo)", Kind.COMPUTED));
+  }
+
+  @Test
+  public void parsesEmptyContent() {
+    assertThat(parse()).isEmpty();
+  }
+}
@@ -0,0 +1,173 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.rules.cpp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.devtools.build.lib.actions.Action;
+import com.google.devtools.build.lib.actions.ActionExecutionContext;
+import com.google.devtools.build.lib.actions.ActionInputPrefetcher;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ArtifactResolver;
+import com.google.devtools.build.lib.actions.ExecutionStrategy;
+import com.google.devtools.build.lib.actions.Executor;
+import com.google.devtools.build.lib.actions.util.ActionsTestUtil;
+import com.google.devtools.build.lib.analysis.ConfiguredTarget;
+import com.google.devtools.build.lib.analysis.util.BuildViewTestCase;
+import com.google.devtools.build.lib.exec.util.TestExecutorBuilder;
+import com.google.devtools.build.lib.rules.cpp.SimpleIncludeScanner.SimpleIncludeScannerSupplier;
+import com.google.devtools.build.lib.testutil.TestConstants;
+import com.google.devtools.build.lib.util.io.FileOutErr;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link SimpleIncludeScanner}, run through the input discovery of {@link
+ * CppCompileAction}s.
+ */
+@RunWith(JUnit4.class)
+public class SimpleIncludeScannerTest extends BuildViewTestCase {
+
+  private SimpleIncludeScannerSupplier supplier;
+  private ActionExecutionContext context;
+
+  @ExecutionStrategy(contextType = IncludeScanningContext.class)
+  private final class TestIncludeScanningContext implements IncludeScanningContext {
+    @Override
+    public void extractIncludes(
+        ActionExecutionContext actionExecutionContext,
+        Action resourceOwner,
+        Artifact primaryInput,
+        Artifact primaryOutput) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ArtifactResolver getArtifactResolver() {
+      return view.getArtifactFactory();
+    }
+  }
+
+  @Before
+  public final void createContext() throws Exception {
+    // Source files are looked up through the exec root, as in a real build.
+    Path execRoot = directories.getExecRoot(TestConstants.WORKSPACE_NAME);
+    FileSystemUtils.createDirectoryAndParents(execRoot);
+    execRoot.getRelative("pkg").createSymbolicLink(scratch.resolve("pkg"));
+
+    supplier = new SimpleIncludeScannerSupplier();
+    Executor executor =
+        new TestExecutorBuilder(directories, null)
+            .addStrategy(new SpawnGccStrategy(supplier))
+            .addStrategy(new TestIncludeScanningContext())
+            .build();
+    // There is no per-action file cache, so digests must not be taken from it.
+    context =
+        new ActionExecutionContext(
+            executor,
+            null,
+            ActionInputPrefetcher.NONE,
+            null,
+            new FileOutErr(),
+            ImmutableMap.<String, String>of(),
+            null);
+  }
+
+  private CppCompileAction getCppCompileAction(String label) throws Exception {
+    ConfiguredTarget target = getConfiguredTarget(label);
+    List<CppCompileAction> compilationSteps =
+        actionsTestUtil()
+            .findTransitivePrerequisitesOf(
+                ActionsTestUtil.getFirstArtifactEndingWith(getFilesToBuild(target), ".a"),
+                CppCompileAction.class);
+    return compilationSteps.get(0);
+  }
+
+  private List<String> discoverInputs(CppCompileAction action) throws Exception {
+    List<String> inputs = new ArrayList<>();
+    for (Artifact input : action.discoverInputs(context)) {
+      inputs.add(input.getFilename());
+    }
+    return inputs;
+  }
+
+  private void writeGeneratedHeader(String content) throws Exception {
+    Artifact header = getGenfilesArtifact("gen.h", "//pkg:gen");
+    FileSystemUtils.createDirectoryAndParents(header.getPath().getParentDirectory());
+    FileSystemUtils.writeContentAsLatin1(header.getPath(), content);
+  }
+
+  @Test
+  public void testOnlyIncludedHeadersAreDiscovered() throws Exception {
+    scratch.file(
+        "pkg/BUILD",
+        "genrule(name = 'gen', outs = ['gen.h'], cmd = 'touch $@')",
+        "cc_library(",
+        "    name = 'lib',",
+        "    srcs = ['a.cc'],",
+        "    hdrs = ['a.h', 'b.h', 'unused.h', ':gen.h'],",
+        ")");
+    scratch.file("pkg/a.cc", "#include \"pkg/a.h\"");
+    scratch.file("pkg/a.h", "#include \"pkg/gen.h\"");
+    scratch.file("pkg/b.h");
+    scratch.file("pkg/unused.h");
+    // The generated header is built before inputs are discovered, and is scanned as well.
+    writeGeneratedHeader("#include \"pkg/b.h\"");
+
+    List<String> inputs = discoverInputs(getCppCompileAction("//pkg:lib"));
+    assertThat(inputs).containsAllOf("a.cc", "a.h", "gen.h", "b.h");
+    assertThat(inputs).doesNotContain("unused.h");
+  }
+
+  @Test
+  public void testComputedInclusionKeepsDeclaredHeaders() throws Exception {
+    scratch.file(
+        "pkg/BUILD",
+        "cc_library(",
+        "    name = 'lib',",
+        "    srcs = ['a.cc'],",
+        "    hdrs = ['a.h', 'unused.h'],",
+        ")");
+    scratch.file("pkg/a.cc", "#include \"pkg/a.h\"", "#include HEADER");
+    scratch.file("pkg/a.h");
+    scratch.file("pkg/unused.h");
+
+    assertThat(discoverInputs(getCppCompileAction("//pkg:lib"))).contains("unused.h");
+  }
+
+  @Test
+  public void testHeadersAreParsedOncePerBuild() throws Exception {
+    scratch.file(
+        "pkg/BUILD",
+        "cc_library(name = 'a', srcs = ['a.cc'], hdrs = ['common.h'])",
+        "cc_library(name = 'b', srcs = ['b.cc'], deps = [':a'])");
+    scratch.file("pkg/a.cc", "#include \"pkg/common.h\"");
+    scratch.file("pkg/b.cc", "#include \"pkg/common.h\"");
+    scratch.file("pkg/common.h");
+
+    discoverInputs(getCppCompileAction("//pkg:a"));
+    long parseCount = supplier.getParseCount();
+    discoverInputs(getCppCompileAction("//pkg:b"));
+
+    // Only b.cc is new; common.h is found in the cache by its digest.
+    assertThat(supplier.getParseCount()).isEqualTo(parseCount + 1);
+  }
+}
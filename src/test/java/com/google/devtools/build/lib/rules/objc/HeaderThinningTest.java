@@ -73,7 +73,9 @@ public class HeaderThinningTest extends ObjcRuleTestCase {
     HeaderThinning headerThinning = new HeaderThinning(getPotentialHeaders(expectedHeaders));
     writeToHeadersListFile(action, "objc/a.pch", "objc/b.h", "objc/c", "objc/d.hpp");
 
-    Iterable<Artifact> headersFound = headerThinning.determineAdditionalInputs(null, action, null);
+    Iterable<Artifact> headersFound =
+        headerThinning.determineAdditionalInputs(
+            null, action, ActionsTestUtil.createContext(reporter));
     assertThat(headersFound).containsExactlyElementsIn(expectedHeaders);
   }
 
@@ -87,7 +89,8 @@ public class HeaderThinningTest extends ObjcRuleTestCase {
     writeToHeadersListFile(action, "objc/a.h", "objc/b.h", "objc/c.h");
 
     try {
-      headerThinning.determineAdditionalInputs(null, action, null);
+      headerThinning.determineAdditionalInputs(
+          null, action, ActionsTestUtil.createContext(reporter));
       fail("Exception was not thrown");
     } catch (ExecException e) {
       assertThat(e).hasMessageThat().containsMatch("(objc/c.h)");
@@ -104,7 +107,9 @@ public class HeaderThinningTest extends ObjcRuleTestCase {
     HeaderThinning headerThinning = new HeaderThinning(getPotentialHeaders(expectedHeaders));
     writeToHeadersListFile(action, "objc/a.h", "tree/dir/c.h");
 
-    Iterable<Artifact> headersFound = headerThinning.determineAdditionalInputs(null, action, null);
+    Iterable<Artifact> headersFound =
+        headerThinning.determineAdditionalInputs(
+            null, action, ActionsTestUtil.createContext(reporter));
     assertThat(headersFound).containsExactlyElementsIn(expectedHeaders);
   }
 
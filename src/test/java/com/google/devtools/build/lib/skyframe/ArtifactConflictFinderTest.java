@@ -0,0 +1,180 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.skyframe;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.build.lib.actions.ActionAnalysisMetadata;
+import com.google.devtools.build.lib.actions.ActionLookupValue;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ArtifactPrefixConflictException;
+import com.google.devtools.build.lib.actions.Root;
+import com.google.devtools.build.lib.actions.util.ActionsTestUtil.NullAction;
+import com.google.devtools.build.lib.skyframe.SkyframeActionExecutor.ConflictException;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ArtifactConflictFinder}. */
+@RunWith(JUnit4.class)
+public class ArtifactConflictFinderTest {
+
+  private Root root;
+  private ArtifactConflictFinder finder;
+
+  @Before
+  public final void setUp() throws Exception {
+    Path execRoot = new InMemoryFileSystem().getPath("/exec");
+    root = Root.asDerivedRoot(execRoot, execRoot.getRelative("out"));
+    finder = new ArtifactConflictFinder();
+  }
+
+  private NullAction action(String rootRelativePath) {
+    return new NullAction(new Artifact(root.getPath().getRelative(rootRelativePath), root));
+  }
+
+  private static ActionLookupValue value(ActionAnalysisMetadata action) {
+    return new ActionLookupValue(ImmutableList.of(action), /*removeActionsAfterEvaluation=*/ false);
+  }
+
+  private static void assertPrefixConflicts(
+      ImmutableMap<ActionAnalysisMetadata, ConflictException> badActions,
+      ActionAnalysisMetadata... actions) {
+    assertThat(badActions.keySet()).containsExactly((Object[]) actions);
+    for (ConflictException e : badActions.values()) {
+      assertThat(e.getCause()).isInstanceOf(ArtifactPrefixConflictException.class);
+    }
+  }
+
+  @Test
+  public void findsPrefixConflict() throws Exception {
+    NullAction a = action("a");
+    NullAction ab = action("a/b");
+    NullAction c = action("c");
+
+    assertPrefixConflicts(
+        finder.findConflicts(ImmutableList.of(value(a), value(ab), value(c))), a, ab);
+  }
+
+  @Test
+  public void keepsConflictsOfUnchangedValues() throws Exception {
+    NullAction a = action("a");
+    NullAction ab = action("a/b");
+    ActionLookupValue aValue = value(a);
+    ActionLookupValue abValue = value(ab);
+    finder.findConflicts(ImmutableList.of(aValue, abValue));
+
+    assertPrefixConflicts(
+        finder.findConflicts(ImmutableList.of(aValue, abValue, value(action("c/d")))), a, ab);
+  }
+
+  @Test
+  public void forgetsConflictsOfRemovedValues() throws Exception {
+    ActionLookupValue a = value(action("a"));
+    ActionLookupValue ab = value(action("a/b"));
+    ActionLookupValue c = value(action("c"));
+    ActionLookupValue d = value(action("d"));
+    finder.findConflicts(ImmutableList.of(a, ab, c, d));
+
+    assertThat(finder.findConflicts(ImmutableList.of(ab, c, d))).isEmpty();
+  }
+
+  @Test
+  public void findsConflictsWithNewPrefix() throws Exception {
+    NullAction ab = action("a/b");
+    NullAction abc = action("a/b/c");
+    NullAction ad = action("a/d");
+    ImmutableList<ActionLookupValue> values =
+        ImmutableList.of(value(ab), value(abc), value(ad), value(action("e")));
+    finder.findConflicts(values);
+
+    // The conflict (a/b, a/b/c) is superseded by (a, a/b) and (a, a/b/c).
+    NullAction a = action("a");
+    ImmutableMap<ActionAnalysisMetadata, ConflictException> badActions =
+        finder.findConflicts(
+            ImmutableList.<ActionLookupValue>builder().addAll(values).add(value(a)).build());
+
+    assertPrefixConflicts(badActions, a, ab, abc, ad);
+    assertThat(badActions.get(abc).getMessage()).contains("output path 'out/a' ");
+  }
+
+  @Test
+  public void removedPrefixUncoversNestedConflicts() throws Exception {
+    ActionLookupValue a = value(action("a"));
+    NullAction ab = action("a/b");
+    NullAction abc = action("a/b/c");
+    ActionLookupValue unchanged1 = value(action("d"));
+    ActionLookupValue unchanged2 = value(action("e"));
+    ActionLookupValue abValue = value(ab);
+    ActionLookupValue abcValue = value(abc);
+    finder.findConflicts(ImmutableList.of(a, abValue, abcValue, unchanged1, unchanged2));
+
+    assertPrefixConflicts(
+        finder.findConflicts(ImmutableList.of(abValue, abcValue, unchanged1, unchanged2)),
+        ab, abc);
+  }
+
+  @Test
+  public void interruptedCallLeavesNoPartialState() throws Exception {
+    NullAction a = action("a");
+    NullAction ab = action("a/b");
+    ActionLookupValue aValue = value(a);
+    ActionLookupValue abValue = value(ab);
+    finder.findConflicts(ImmutableList.of(aValue, abValue));
+
+    final AtomicBoolean block = new AtomicBoolean();
+    NullAction blocking =
+        new NullAction(new Artifact(root.getPath().getRelative("blocking"), root)) {
+          @Override
+          public ImmutableSet<Artifact> getOutputs() {
+            // Hold up registration until the interrupted caller shuts the thread pool down.
+            while (block.get() && !Thread.currentThread().isInterrupted()) {
+              Thread.yield();
+            }
+            return super.getOutputs();
+          }
+        };
+    // Enough new values to be registered in a thread pool, which notices the interrupt.
+    List<ActionLookupValue> values = new ArrayList<>();
+    values.add(abValue);
+    values.add(value(blocking));
+    for (int i = 0; i < 200; i++) {
+      values.add(value(action("filler/" + i)));
+    }
+
+    block.set(true);
+    Thread.currentThread().interrupt();
+    try {
+      finder.findConflicts(values);
+      fail("Expected InterruptedException");
+    } catch (InterruptedException expected) {
+      // a was unregistered and only some of the new values were registered.
+    }
+    block.set(false);
+
+    assertThat(finder.findConflicts(values)).isEmpty();
+    values.add(aValue);
+    assertPrefixConflicts(finder.findConflicts(values), a, ab);
+  }
+}
@@ -0,0 +1,163 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.skyframe;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.vfs.Dirent;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.Symlinks;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link PerBuildSyscallCache}. */
+@RunWith(JUnit4.class)
+public class PerBuildSyscallCacheTest {
+
+  private Path root;
+  private PerBuildSyscallCache cache;
+
+  @Before
+  public final void setUp() throws Exception {
+    root = new InMemoryFileSystem().getPath("/workspace");
+    root.createDirectory();
+    cache = PerBuildSyscallCache.newBuilder().setKeptAcrossBuilds(true).build();
+    cache.prepareForBuild(ImmutableList.of(root));
+  }
+
+  private static void touch(Path file) throws Exception {
+    FileSystemUtils.createDirectoryAndParents(file.getParentDirectory());
+    FileSystemUtils.createEmptyFile(file);
+  }
+
+  private List<String> names(Path dir) throws Exception {
+    List<String> names = new ArrayList<>();
+    for (Dirent dirent : cache.readdir(dir, Symlinks.FOLLOW)) {
+      names.add(dirent.getName());
+    }
+    return names;
+  }
+
+  @Test
+  public void testInvalidateChangedPath() throws Exception {
+    Path pkg = root.getRelative("pkg");
+    touch(pkg.getRelative("a.txt"));
+    assertThat(names(pkg)).containsExactly("a.txt");
+    assertThat(cache.statIfFound(pkg.getRelative("b.txt"), Symlinks.FOLLOW)).isNull();
+
+    touch(pkg.getRelative("b.txt"));
+    // Not yet told about the change.
+    assertThat(names(pkg)).containsExactly("a.txt");
+
+    cache.invalidate(ImmutableList.of(pkg.getRelative("b.txt")));
+    assertThat(names(pkg)).containsExactly("a.txt", "b.txt");
+    assertThat(cache.statIfFound(pkg.getRelative("b.txt"), Symlinks.FOLLOW)).isNotNull();
+  }
+
+  @Test
+  public void testInvalidateDirectoryDropsEntriesBeneathIt() throws Exception {
+    Path sub = root.getRelative("pkg/sub");
+    touch(sub.getRelative("a.txt"));
+    assertThat(names(sub)).containsExactly("a.txt");
+
+    FileSystemUtils.deleteTree(sub);
+    touch(sub.getRelative("c.txt"));
+    cache.invalidate(ImmutableList.of(sub));
+    assertThat(names(sub)).containsExactly("c.txt");
+  }
+
+  @Test
+  public void testInvalidateKeepsUnrelatedEntries() throws Exception {
+    Path changed = root.getRelative("changed");
+    Path unrelated = root.getRelative("unrelated");
+    touch(changed.getRelative("a.txt"));
+    touch(unrelated.getRelative("a.txt"));
+    assertThat(names(changed)).containsExactly("a.txt");
+    assertThat(names(unrelated)).containsExactly("a.txt");
+
+    touch(changed.getRelative("b.txt"));
+    touch(unrelated.getRelative("b.txt"));
+    cache.invalidate(ImmutableList.of(changed.getRelative("b.txt")));
+    assertThat(names(changed)).containsExactly("a.txt", "b.txt");
+    assertThat(names(unrelated)).containsExactly("a.txt");
+  }
+
+  @Test
+  public void testEntriesOutsidePackageRootsAreDroppedEveryBuild() throws Exception {
+    Path external = root.getFileSystem().getPath("/output_base/external/repo");
+    Path pkg = root.getRelative("pkg");
+    touch(external.getRelative("a.txt"));
+    touch(pkg.getRelative("a.txt"));
+    assertThat(names(external)).containsExactly("a.txt");
+    assertThat(names(pkg)).containsExactly("a.txt");
+
+    touch(external.getRelative("b.txt"));
+    touch(pkg.getRelative("b.txt"));
+    cache.prepareForBuild(ImmutableList.of(root));
+    assertThat(names(external)).containsExactly("a.txt", "b.txt");
+    assertThat(names(pkg)).containsExactly("a.txt");
+  }
+
+  @Test
+  public void testChangedPackageRootsClearTheCache() throws Exception {
+    Path pkg = root.getRelative("pkg");
+    touch(pkg.getRelative("a.txt"));
+    assertThat(names(pkg)).containsExactly("a.txt");
+
+    touch(pkg.getRelative("b.txt"));
+    cache.prepareForBuild(ImmutableList.of(root, root.getFileSystem().getPath("/other")));
+    assertThat(names(pkg)).containsExactly("a.txt", "b.txt");
+  }
+
+  @Test
+  public void testSymlinkDependentEntriesAreDropped() throws Exception {
+    Path target = root.getRelative("target");
+    touch(target.getRelative("a.txt"));
+    Path link = root.getRelative("pkg/link");
+    FileSystemUtils.createDirectoryAndParents(link.getParentDirectory());
+    link.createSymbolicLink(target);
+    assertThat(names(link)).containsExactly("a.txt");
+
+    // The change is reported under the target's path only.
+    touch(target.getRelative("b.txt"));
+    cache.invalidate(ImmutableList.of(target.getRelative("b.txt")));
+    assertThat(names(link)).containsExactly("a.txt");
+
+    cache.prepareForBuild(ImmutableList.of(root));
+    assertThat(names(link)).containsExactly("a.txt", "b.txt");
+  }
+
+  @Test
+  public void testSymlinksNotTrackedByDefault() throws Exception {
+    cache = PerBuildSyscallCache.newBuilder().build();
+    Path target = root.getRelative("target");
+    touch(target.getRelative("a.txt"));
+    Path link = root.getRelative("pkg/link");
+    FileSystemUtils.createDirectoryAndParents(link.getParentDirectory());
+    link.createSymbolicLink(target);
+    assertThat(names(link)).containsExactly("a.txt");
+    assertThat(cache.statIfFound(link, Symlinks.FOLLOW).isDirectory()).isTrue();
+
+    touch(target.getRelative("b.txt"));
+    cache.invalidateSymlinkDependentEntries();
+    assertThat(names(link)).containsExactly("a.txt");
+  }
+}
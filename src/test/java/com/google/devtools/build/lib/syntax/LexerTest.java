@@ -467,13 +467,16 @@ public class LexerTest {
   @Test
   public void testContainsErrors() throws Exception {
     Lexer lexerSuccess = createLexer("foo");
+    lexerSuccess.getTokens();
     assertThat(lexerSuccess.containsErrors()).isFalse();
 
     Lexer lexerFail = createLexer("f$o");
+    lexerFail.getTokens();
     assertThat(lexerFail.containsErrors()).isTrue();
 
     String s = "'unterminated";
     lexerFail = createLexer(s);
+    lexerFail.getTokens();
     assertThat(lexerFail.containsErrors()).isTrue();
     assertThat(lastErrorLocation.getStartOffset()).isEqualTo(0);
     assertThat(lastErrorLocation.getEndOffset()).isEqualTo(s.length());
@@ -485,4 +488,23 @@ public class LexerTest {
     assertThat(names(tokens("r'\\"))).isEqualTo("STRING NEWLINE EOF");
     assertThat(lastError).isEqualTo("/some/path.txt:1: unterminated string literal at eof");
   }
+
+  @Test
+  public void testScansOnDemand() throws Exception {
+    Lexer lexer = createLexer("a = 1\nb = $\n");
+    assertThat(lexer.nextToken().kind).isEqualTo(TokenKind.IDENTIFIER);
+    assertThat(lexer.containsErrors()).isFalse();
+    assertThat(names(lexer.getTokens().toArray(new Token[0])))
+        .isEqualTo("EQUALS INT NEWLINE IDENTIFIER EQUALS NEWLINE EOF");
+    assertThat(lexer.containsErrors()).isTrue();
+    assertThat(lexer.nextToken().kind).isEqualTo(TokenKind.EOF);
+  }
+
+  @Test
+  public void testRepeatedStringsAreShared() throws Exception {
+    Token[] tokens = tokens("foo(foo, 'bar', 'bar', 'b\\n')");
+    assertThat(tokens[0].value).isSameAs(tokens[2].value);
+    assertThat(tokens[4].value).isSameAs(tokens[6].value);
+    assertThat(tokens[8].value).isEqualTo("b\n");
+  }
 }
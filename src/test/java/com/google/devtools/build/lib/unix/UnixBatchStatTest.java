@@ -0,0 +1,127 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.unix;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.testutil.TestUtils;
+import com.google.devtools.build.lib.vfs.FileStatusWithDigest;
+import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.Symlinks;
+import java.io.File;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link UnixBatchStat}. */
+@RunWith(JUnit4.class)
+public class UnixBatchStatTest {
+  private Path execRoot;
+  private UnixBatchStat batchStat;
+
+  @Before
+  public final void createFileSystem() throws Exception {
+    FileSystem testFS = new UnixFileSystem();
+    Path workingDir = testFS.getPath(new File(TestUtils.tmpDir()).getCanonicalPath());
+    execRoot = workingDir.getRelative("exec");
+    FileSystemUtils.deleteTree(execRoot);
+    execRoot.createDirectory();
+    batchStat = new UnixBatchStat(execRoot);
+  }
+
+  private void write(String path, String content) throws Exception {
+    Path file = execRoot.getRelative(path);
+    FileSystemUtils.createDirectoryAndParents(file.getParentDirectory());
+    FileSystemUtils.writeContentAsLatin1(file, content);
+  }
+
+  private static PathFragment fragment(String path) {
+    return PathFragment.create(path);
+  }
+
+  @Test
+  public void testMatchesStatNoFollow() throws Exception {
+    write("out/a/one", "1");
+    write("out/b/two", "22");
+    write("out/a/three", "333");
+    execRoot.getRelative("out/b/link").createSymbolicLink(fragment("../a/one"));
+
+    ImmutableList<PathFragment> paths =
+        ImmutableList.of(
+            fragment("out/a/one"),
+            fragment("out/b/two"),
+            fragment("out/a/three"),
+            fragment("out/b/link"),
+            fragment("top"));
+    write("top", "");
+    List<FileStatusWithDigest> stats =
+        batchStat.batchStat(/*includeDigest=*/ true, /*includeLinks=*/ true, paths);
+
+    assertThat(stats).hasSize(paths.size());
+    for (int i = 0; i < paths.size(); i++) {
+      Path path = execRoot.getRelative(paths.get(i));
+      FileStatusWithDigest stat = stats.get(i);
+      assertThat(stat.isSymbolicLink()).isEqualTo(path.isSymbolicLink());
+      assertThat(stat.getSize()).isEqualTo(path.stat(Symlinks.NOFOLLOW).getSize());
+      assertThat(stat.getNodeId()).isEqualTo(path.stat(Symlinks.NOFOLLOW).getNodeId());
+      assertThat(stat.getDigest()).isNull();
+    }
+    // One native call per distinct parent directory.
+    assertThat(batchStat.getDirectoriesOpened()).isEqualTo(3);
+    assertThat(batchStat.getPathsStatted()).isEqualTo(5);
+  }
+
+  @Test
+  public void testMissingFilesAreNull() throws Exception {
+    write("out/a/one", "1");
+    write("out/file", "");
+
+    List<FileStatusWithDigest> stats =
+        batchStat.batchStat(
+            /*includeDigest=*/ false,
+            /*includeLinks=*/ true,
+            ImmutableList.of(
+                fragment("out/a/missing"),
+                fragment("out/missing/dir/file"),
+                fragment("out/file/child"),
+                fragment("out/a/one")));
+
+    assertThat(stats.get(0)).isNull();
+    assertThat(stats.get(1)).isNull();
+    assertThat(stats.get(2)).isNull();
+    assertThat(stats.get(3)).isNotNull();
+    assertThat(stats.get(3).isFile()).isTrue();
+  }
+
+  @Test
+  public void testFollowsSymlinksWithoutIncludeLinks() throws Exception {
+    write("out/target", "abc");
+    execRoot.getRelative("out/link").createSymbolicLink(fragment("target"));
+
+    List<FileStatusWithDigest> stats =
+        batchStat.batchStat(
+            /*includeDigest=*/ false,
+            /*includeLinks=*/ false,
+            ImmutableList.of(fragment("out/link")));
+
+    assertThat(stats.get(0).isSymbolicLink()).isFalse();
+    assertThat(stats.get(0).getSize()).isEqualTo(3);
+  }
+}
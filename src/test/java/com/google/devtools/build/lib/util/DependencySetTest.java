@@ -125,6 +125,25 @@ public class DependencySetTest {
     assertThat(filename).isEqualTo(depset.getOutputFileName());
   }
 
+  @Test
+  public void dotDParser_sharedAndUnnormalizedDirectories() throws Exception {
+    Path dotd = scratch.file("/tmp/foo.d",
+        "hello.o: \\",
+        " pkg/hello.cc pkg/hello.h \\",
+        " pkg/./sub/a.h pkg/sub/../b.h \\",
+        " pkg/sub/.. pkg/c.h /usr/include/stdio.h");
+    assertThat(newDependencySet().read(dotd).getDependencies())
+        .containsExactly(
+            root.getRelative("pkg/hello.cc"),
+            root.getRelative("pkg/hello.h"),
+            root.getRelative("pkg/sub/a.h"),
+            root.getRelative("pkg/b.h"),
+            root.getRelative("pkg"),
+            root.getRelative("pkg/c.h"),
+            fileSystem.getPath("/usr/include/stdio.h"))
+        .inOrder();
+  }
+
   @Test
   public void dotDParser_emptyFile() throws Exception {
     Path dotd = scratch.file("/tmp/empty.d");
@@ -13,9 +13,17 @@
 // limitations under the License.
 package com.google.devtools.build.android;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -24,6 +32,7 @@ import com.google.devtools.build.android.ParsedAndroidData.Builder;
 import com.google.devtools.build.android.ParsedAndroidData.KeyValueConsumer;
 import com.google.devtools.build.android.proto.SerializeFormat;
 import com.google.devtools.build.android.proto.SerializeFormat.Header;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -40,6 +49,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
+import javax.annotation.Nullable;
 
 /** Deserializes {@link DataKey}, {@link DataValue} entries from a binary file. */
 public class AndroidDataDeserializer {
@@ -74,6 +84,8 @@ public class AndroidDataDeserializer {
 
   private static final Logger logger = Logger.getLogger(AndroidDataDeserializer.class.getName());
 
+  @Nullable private static volatile Cache<HashCode, CachedEntries> cache;
+
   private final ImmutableSet<String> filteredResources;
 
   /**
@@ -93,6 +105,51 @@ public class AndroidDataDeserializer {
     this.filteredResources = filteredResources;
   }
 
+  /**
+   * Keeps the entries of deserialized symbols files in memory, keyed by the digest of their
+   * content, so that processes merging resources repeatedly (i.e. persistent workers) don't parse
+   * the same unchanged dependencies for every request.
+   *
+   * @param maxBytes the total size of the symbols files whose entries may be kept in memory.
+   */
+  static void enableCache(long maxBytes) {
+    cache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher(
+                new Weigher<HashCode, CachedEntries>() {
+                  @Override
+                  public int weigh(HashCode key, CachedEntries value) {
+                    return value.size;
+                  }
+                })
+            .recordStats()
+            .build();
+  }
+
+  @VisibleForTesting
+  static void disableCache() {
+    cache = null;
+  }
+
+  /** Returns the statistics of the cache enabled by {@link #enableCache}, if any. */
+  @Nullable
+  static CacheStats cacheStats() {
+    Cache<HashCode, CachedEntries> current = cache;
+    return current == null ? null : current.stats();
+  }
+
+  /** The entries of a symbols file in the order they were serialized in. */
+  private static final class CachedEntries {
+    final ImmutableMap<DataKey, DataValue> entries;
+    final int size;
+
+    CachedEntries(ImmutableMap<DataKey, DataValue> entries, int size) {
+      this.entries = entries;
+      this.size = size;
+    }
+  }
+
   /**
    * Reads the serialized {@link DataKey} and {@link DataValue} to the {@link KeyValueConsumers}.
    *
@@ -104,13 +161,26 @@ public class AndroidDataDeserializer {
    */
   public void read(Path inPath, KeyValueConsumers consumers) {
     Stopwatch timer = Stopwatch.createStarted();
-    try (InputStream in = Files.newInputStream(inPath, StandardOpenOption.READ)) {
-      FileSystem currentFileSystem = inPath.getFileSystem();
-      Header header = Header.parseDelimitedFrom(in);
-      if (header == null) {
-        throw new DeserializationException("No Header found in " + inPath);
+    try {
+      Cache<HashCode, CachedEntries> entriesCache = cache;
+      // Which entries are kept depends on the filtered resources and on whether their sources
+      // still exist, so only cache what doesn't need filtering.
+      if (entriesCache == null || !filteredResources.isEmpty()) {
+        try (InputStream in = Files.newInputStream(inPath, StandardOpenOption.READ)) {
+          consume(readEntries(inPath, in), consumers);
+        }
+        return;
+      }
+      byte[] content = Files.readAllBytes(inPath);
+      HashCode digest = Hashing.sha256().hashBytes(content);
+      CachedEntries cached = entriesCache.getIfPresent(digest);
+      if (cached == null) {
+        cached =
+            new CachedEntries(
+                readEntries(inPath, new ByteArrayInputStream(content)), content.length);
+        entriesCache.put(digest, cached);
       }
-      readEntriesSegment(consumers, in, currentFileSystem, header);
+      consume(cached.entries, consumers);
     } catch (IOException e) {
       throw new DeserializationException(e);
     } finally {
@@ -119,26 +189,21 @@ public class AndroidDataDeserializer {
     }
   }
 
-  private void readEntriesSegment(
-      KeyValueConsumers consumers,
-      InputStream in,
-      FileSystem currentFileSystem,
-      Header header)
+  private ImmutableMap<DataKey, DataValue> readEntries(Path inPath, InputStream in)
       throws IOException {
+    FileSystem currentFileSystem = inPath.getFileSystem();
+    Header header = Header.parseDelimitedFrom(in);
+    if (header == null) {
+      throw new DeserializationException("No Header found in " + inPath);
+    }
     int numberOfEntries = header.getEntryCount();
-    Map<DataKey, KeyValueConsumer<DataKey, ? extends DataValue>> keys =
-        Maps.newLinkedHashMapWithExpectedSize(numberOfEntries);
+    List<DataKey> keys = new ArrayList<>(numberOfEntries);
     for (int i = 0; i < numberOfEntries; i++) {
       SerializeFormat.DataKey protoKey = SerializeFormat.DataKey.parseDelimitedFrom(in);
       if (protoKey.hasResourceType()) {
-        FullyQualifiedName resourceName = FullyQualifiedName.fromProto(protoKey);
-        keys.put(
-            resourceName,
-            resourceName.isOverwritable()
-                ? consumers.overwritingConsumer
-                : consumers.combiningConsumer);
+        keys.add(FullyQualifiedName.fromProto(protoKey));
       } else {
-        keys.put(RelativeAssetPath.fromProto(protoKey, currentFileSystem), consumers.assetConsumer);
+        keys.add(RelativeAssetPath.fromProto(protoKey, currentFileSystem));
       }
     }
 
@@ -146,7 +211,8 @@ public class AndroidDataDeserializer {
     DataSourceTable sourceTable = DataSourceTable.read(in, currentFileSystem, header);
 
     // TODO(corysmith): Make this a lazy read of the values.
-    for (Entry<DataKey, KeyValueConsumer<DataKey, ?>> entry : keys.entrySet()) {
+    Map<DataKey, DataValue> entries = Maps.newLinkedHashMapWithExpectedSize(numberOfEntries);
+    for (DataKey key : keys) {
       SerializeFormat.DataValue protoValue = SerializeFormat.DataValue.parseDelimitedFrom(in);
       DataSource source = sourceTable.sourceFromId(protoValue.getSourceId());
       // Compose the `shortPath` manually to ensure it uses a forward slash.
@@ -160,22 +226,34 @@ public class AndroidDataDeserializer {
         continue;
       }
       if (protoValue.hasXmlValue()) {
-        // TODO(corysmith): Figure out why the generics are wrong.
-        // If I use Map<DataKey, KeyValueConsumer<DataKey, ? extends DataValue>>, I can put
-        // consumers into the map, but I can't call consume.
-        // If I use Map<DataKey, KeyValueConsumer<DataKey, ? super DataValue>>, I can consume
-        // but I can't put.
-        // Same for below.
-        @SuppressWarnings("unchecked")
-        KeyValueConsumer<DataKey, DataValue> value =
-            (KeyValueConsumer<DataKey, DataValue>) entry.getValue();
-        value.consume(entry.getKey(), DataResourceXml.from(protoValue, source));
+        entries.put(key, DataResourceXml.from(protoValue, source));
+      } else {
+        entries.put(key, DataValueFile.of(source));
+      }
+    }
+    return ImmutableMap.copyOf(entries);
+  }
+
+  private static void consume(
+      ImmutableMap<DataKey, DataValue> entries, KeyValueConsumers consumers) {
+    for (Entry<DataKey, DataValue> entry : entries.entrySet()) {
+      DataKey key = entry.getKey();
+      KeyValueConsumer<DataKey, ? extends DataValue> consumer;
+      if (key instanceof FullyQualifiedName) {
+        consumer =
+            ((FullyQualifiedName) key).isOverwritable()
+                ? consumers.overwritingConsumer
+                : consumers.combiningConsumer;
       } else {
-        @SuppressWarnings("unchecked")
-        KeyValueConsumer<DataKey, DataValue> value =
-            (KeyValueConsumer<DataKey, DataValue>) entry.getValue();
-        value.consume(entry.getKey(), DataValueFile.of(source));
+        consumer = consumers.assetConsumer;
       }
+      // TODO(corysmith): Figure out why the generics are wrong.
+      // With KeyValueConsumer<DataKey, ? extends DataValue>, the consumers can be chosen, but
+      // consume can't be called; with KeyValueConsumer<DataKey, ? super DataValue> it's the
+      // other way around.
+      @SuppressWarnings("unchecked")
+      KeyValueConsumer<DataKey, DataValue> value = (KeyValueConsumer<DataKey, DataValue>) consumer;
+      value.consume(key, entry.getValue());
     }
   }
 
@@ -153,12 +153,16 @@ class AndroidDataMerger {
       boolean throwOnResourceConflict) {
     Stopwatch timer = Stopwatch.createStarted();
     try {
+      ParsedAndroidData transitiveData =
+          ParsedAndroidData.loadedFrom(transitive, executorService, deserializer);
+      ParsedAndroidData directData =
+          ParsedAndroidData.loadedFrom(direct, executorService, deserializer);
       logger.fine(
           String.format("Merged dependencies read in %sms", timer.elapsed(TimeUnit.MILLISECONDS)));
       timer.reset().start();
       return doMerge(
-          ParsedAndroidData.loadedFrom(transitive, executorService, deserializer),
-          ParsedAndroidData.loadedFrom(direct, executorService, deserializer),
+          transitiveData,
+          directData,
           primary,
           primaryManifest,
           allowPrimaryOverrideAll,
@@ -193,11 +193,34 @@ public class AndroidResourceMergingAction {
   }
 
   public static void main(String[] args) throws Exception {
-    final Stopwatch timer = Stopwatch.createStarted();
+    OptionsParser optionsParser = newOptionsParser();
+    optionsParser.parseAndExitUponError(args);
+    int exitCode = merge(optionsParser);
+    if (exitCode != 0) {
+      System.exit(exitCode);
+    }
+  }
+
+  /**
+   * Merges the resources described by {@code args} and returns the exit code, without exiting, so
+   * that it can also be called repeatedly from a persistent worker. Invalid arguments are thrown
+   * as an {@link OptionsParsingException}.
+   */
+  static int run(String[] args) throws Exception {
+    OptionsParser optionsParser = newOptionsParser();
+    optionsParser.parse(args);
+    return merge(optionsParser);
+  }
+
+  private static OptionsParser newOptionsParser() {
     OptionsParser optionsParser =
         OptionsParser.newOptionsParser(Options.class, AaptConfigOptions.class);
     optionsParser.enableParamsFileSupport(FileSystems.getDefault());
-    optionsParser.parseAndExitUponError(args);
+    return optionsParser;
+  }
+
+  private static int merge(OptionsParser optionsParser) throws Exception {
+    final Stopwatch timer = Stopwatch.createStarted();
     AaptConfigOptions aaptConfigOptions = optionsParser.getOptions(AaptConfigOptions.class);
     Options options = optionsParser.getOptions(Options.class);
 
@@ -281,17 +304,18 @@ public class AndroidResourceMergingAction {
       }
     } catch (MergeConflictException e) {
       logger.log(Level.SEVERE, e.getMessage());
-      System.exit(1);
+      return 1;
     } catch (MergingException e) {
       logger.log(Level.SEVERE, "Error during merging resources", e);
       throw e;
     } catch (MergeErrorException e) {
-      System.exit(1);
+      return 1;
     } catch (Exception e) {
       logger.log(Level.SEVERE, "Unexpected", e);
       throw e;
     }
     logger.fine(String.format("Resources merged in %sms", timer.elapsed(TimeUnit.MILLISECONDS)));
+    return 0;
   }
 
   /**
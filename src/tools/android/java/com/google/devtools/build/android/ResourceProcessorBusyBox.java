@@ -14,13 +14,25 @@
 
 package com.google.devtools.build.android;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkRequest;
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkResponse;
 import com.google.devtools.common.options.EnumConverter;
 import com.google.devtools.common.options.Option;
 import com.google.devtools.common.options.OptionDocumentationCategory;
 import com.google.devtools.common.options.OptionEffectTag;
+import com.google.devtools.common.options.OptionMetadataTag;
 import com.google.devtools.common.options.OptionsBase;
 import com.google.devtools.common.options.OptionsParser;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.nio.file.FileSystems;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
 
 /**
  * Provides an entry point for the resource processing stages.
@@ -90,6 +102,16 @@ public class ResourceProcessorBusyBox {
       void call(String[] args) throws Exception {
         AndroidResourceMergingAction.main(args);
       }
+
+      @Override
+      boolean runsInPersistentWorker() {
+        return true;
+      }
+
+      @Override
+      int run(String[] args) throws Exception {
+        return AndroidResourceMergingAction.run(args);
+      }
     },
     GENERATE_AAR() {
       @Override
@@ -111,6 +133,22 @@ public class ResourceProcessorBusyBox {
     };
 
     abstract void call(String[] args) throws Exception;
+
+    /**
+     * Returns whether the tool can be {@link #run} by the persistent worker. Only tools that report
+     * errors through their exit code, rather than by calling {@link System#exit}, can.
+     */
+    boolean runsInPersistentWorker() {
+      return false;
+    }
+
+    /**
+     * Runs the tool without exiting the process and returns its exit code, for use by the
+     * persistent worker. Only tools that {@link #runsInPersistentWorker} override this.
+     */
+    int run(String[] args) throws Exception {
+      throw new UnsupportedOperationException(name() + " can't run in a persistent worker");
+    }
   }
 
   /** Converter for the Tool enum. */
@@ -136,14 +174,111 @@ public class ResourceProcessorBusyBox {
               + "MERGE, GENERATE_AAR, SHRINK, MERGE_MANIFEST."
     )
     public Tool tool;
+
+    @Option(
+      name = "persistent_worker",
+      defaultValue = "false",
+      documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      metadataTags = {OptionMetadataTag.HIDDEN},
+      help = "Run as a Bazel persistent worker."
+    )
+    public boolean persistentWorker;
   }
 
+  private static final long ONE_MEG = 1_000_000L;
+
   public static void main(String[] args) throws Exception {
     OptionsParser optionsParser = OptionsParser.newOptionsParser(Options.class);
     optionsParser.setAllowResidue(true);
     optionsParser.enableParamsFileSupport(FileSystems.getDefault());
     optionsParser.parse(args);
     Options options = optionsParser.getOptions(Options.class);
+    if (options.persistentWorker) {
+      runPersistentWorker(System.in, System.out);
+      return;
+    }
     options.tool.call(optionsParser.getResidue().toArray(new String[0]));
   }
+
+  /**
+   * Implements a persistent worker process for use with Bazel (see {@code WorkerSpawnStrategy}).
+   * Deserialized dependencies are cached across requests, so the symbols of libraries that didn't
+   * change since a previous request don't need to be parsed again.
+   */
+  @VisibleForTesting
+  static void runPersistentWorker(InputStream in, PrintStream realStdOut) throws IOException {
+    PrintStream realStdErr = System.err;
+    // Deserialized entries take several times the size of their symbols file, so only cache up to
+    // 100 MB and a sixteenth of the heap worth of symbols files.
+    AndroidDataDeserializer.enableCache(
+        Math.min(Runtime.getRuntime().maxMemory() / 16, 100 * ONE_MEG));
+    Logger rootLogger = Logger.getLogger("");
+    while (true) {
+      WorkRequest request = WorkRequest.parseDelimitedFrom(in);
+      if (request == null) {
+        return;
+      }
+
+      // Redirect output so we can return it in response and it doesn't corrupt the protocol
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      PrintStream ps = new PrintStream(baos, /*autoFlush*/ true);
+      System.setOut(ps);
+      System.setErr(ps);
+      // The default console handler holds on to the real stderr, so add one that writes to ps.
+      StreamHandler logHandler = new StreamHandler(ps, new SimpleFormatter());
+      rootLogger.addHandler(logHandler);
+      // Make sure that we exit nonzero in case uncaught errors occur during processRequest.
+      int exitCode = 1;
+      try {
+        exitCode = processRequest(request.getArgumentsList());
+      } catch (Exception e) {
+        // Deliberate catch-all so we can capture a stack trace.
+        e.printStackTrace(ps);
+      } catch (Error e) {
+        e.printStackTrace(realStdErr);
+        e.printStackTrace(ps); // try capturing the error, may fail if out of memory
+        throw e; // rethrow to kill the worker
+      } finally {
+        rootLogger.removeHandler(logHandler);
+        logHandler.flush();
+        System.setOut(realStdOut);
+        System.setErr(realStdErr);
+        // Try sending a response no matter what
+        String output;
+        try {
+          output = baos.toString();
+        } catch (Throwable t) { // most likely out of memory, so log with minimal memory needs
+          t.printStackTrace();
+          output = "check worker log for exceptions";
+        }
+        WorkResponse.newBuilder()
+            .setOutput(output)
+            .setExitCode(exitCode)
+            .build()
+            .writeDelimitedTo(realStdOut);
+        realStdOut.flush();
+      }
+      // The worker's stderr ends up in its log file.
+      realStdErr.println("Resource processing worker: " + AndroidDataDeserializer.cacheStats());
+    }
+  }
+
+  private static int processRequest(List<String> args) throws Exception {
+    OptionsParser optionsParser = OptionsParser.newOptionsParser(Options.class);
+    optionsParser.setAllowResidue(true);
+    optionsParser.enableParamsFileSupport(FileSystems.getDefault());
+    optionsParser.parse(args);
+    Options options = optionsParser.getOptions(Options.class);
+    // System.err is redirected into the work response.
+    if (options.tool == null) {
+      System.err.println("No --tool given.");
+      return 1;
+    }
+    if (!options.tool.runsInPersistentWorker()) {
+      System.err.println(options.tool + " can't run in a persistent worker, only MERGE can.");
+      return 1;
+    }
+    return options.tool.run(optionsParser.getResidue().toArray(new String[0]));
+  }
 }
@@ -18,27 +18,38 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.devtools.build.android.desugar.LambdaClassMaker.LAMBDA_METAFACTORY_DUMPER_PROPERTY;
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSet.Builder;
+import com.google.common.hash.HashCode;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.devtools.build.android.Converters.ExistingPathConverter;
 import com.google.devtools.build.android.Converters.PathConverter;
 import com.google.devtools.build.android.desugar.CoreLibraryRewriter.UnprefixingClassWriter;
+import com.google.devtools.build.lib.worker.WorkerProtocol.Input;
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkRequest;
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkResponse;
 import com.google.devtools.common.options.Option;
 import com.google.devtools.common.options.OptionDocumentationCategory;
 import com.google.devtools.common.options.OptionEffectTag;
+import com.google.devtools.common.options.OptionMetadataTag;
 import com.google.devtools.common.options.OptionsBase;
 import com.google.devtools.common.options.OptionsParser;
 import com.google.errorprone.annotations.MustBeClosed;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOError;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -46,11 +57,17 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import org.objectweb.asm.ClassReader;
@@ -229,13 +246,40 @@ class Desugar {
       help = "Enables rewriting to desugar java.* classes."
     )
     public boolean coreLibrary;
+
+    @Option(
+      name = "max_threads",
+      defaultValue = "4",
+      category = "misc",
+      documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help = "How many threads to use at most to desugar the classes of an input in parallel."
+    )
+    public int maxThreads;
+
+    @Option(
+      name = "persistent_worker",
+      defaultValue = "false",
+      documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      metadataTags = {OptionMetadataTag.HIDDEN},
+      help = "Run as a Bazel persistent worker."
+    )
+    public boolean persistentWorker;
   }
 
+  private static final long ONE_MEG = 1_000_000L;
+
   private final Options options;
+  private final Path dumpDirectory;
+  private final ExecutorService executor;
+  @Nullable private final DesugaredClassCache classCache;
+  private final Map<Path, HashCode> inputDigests;
   private final CoreLibraryRewriter rewriter;
   private final LambdaClassMaker lambdas;
   private final GeneratedClassStore store;
-  private final Set<String> visitedExceptionTypes = new HashSet<>();
+  /** Types known to extend Throwable, shared by all classes desugared in parallel. */
+  private final Set<String> visitedExceptionTypes = ConcurrentHashMap.newKeySet();
   /** The counter to record the times of try-with-resources desugaring is invoked. */
   private final AtomicInteger numOfTryWithResourcesInvoked = new AtomicInteger();
 
@@ -247,8 +291,22 @@ class Desugar {
   /** An instance of Desugar is expected to be used ONLY ONCE */
   private boolean used;
 
-  private Desugar(Options options, Path dumpDirectory) {
+  /**
+   * Creates an instance that desugars the classes of each input using the given executor and, if
+   * {@code classCache} is given, reuses the classes cached there. {@code inputDigests} are the
+   * digests of the classpath and bootclasspath entries needed to use the cache.
+   */
+  private Desugar(
+      Options options,
+      Path dumpDirectory,
+      ExecutorService executor,
+      @Nullable DesugaredClassCache classCache,
+      Map<Path, HashCode> inputDigests) {
     this.options = options;
+    this.dumpDirectory = dumpDirectory;
+    this.executor = executor;
+    this.classCache = classCache;
+    this.inputDigests = inputDigests;
     this.rewriter = new CoreLibraryRewriter(options.coreLibrary ? "__desugar__/" : "");
     this.lambdas = new LambdaClassMaker(dumpDirectory);
     this.store = new GeneratedClassStore();
@@ -325,14 +383,20 @@ class Desugar {
       }
 
       ImmutableSet.Builder<String> interfaceLambdaMethodCollector = ImmutableSet.builder();
+      HashCode environmentKey =
+          classCache != null
+              ? DesugaredClassCache.environmentKey(options, inputFiles, inputDigests)
+              : null;
 
-      desugarClassesInInput(
-          inputFiles,
-          outputFileProvider,
-          loader,
-          classpathReader,
-          bootclasspathReader,
-          interfaceLambdaMethodCollector);
+      ImmutableMap<LambdaInfo, byte[]> lambdaClasses =
+          desugarClassesInInput(
+              inputFiles,
+              outputFileProvider,
+              loader,
+              classpathReader,
+              bootclasspathReader,
+              interfaceLambdaMethodCollector,
+              environmentKey);
 
       desugarAndWriteDumpedLambdaClassesToOutput(
           outputFileProvider,
@@ -340,7 +404,8 @@ class Desugar {
           classpathReader,
           bootclasspathReader,
           interfaceLambdaMethodCollector.build(),
-          bridgeMethodReader);
+          bridgeMethodReader,
+          lambdaClasses);
 
       desugarAndWriteGeneratedClasses(outputFileProvider);
       copyThrowableExtensionClass(outputFileProvider);
@@ -371,44 +436,151 @@ class Desugar {
     }
   }
 
-  /** Desugar the classes that are in the inputs specified in the command line arguments. */
-  private void desugarClassesInInput(
+  /**
+   * Desugar the classes that are in the inputs specified in the command line arguments, and return
+   * the lambda classes generated along the way.
+   *
+   * <p>Classes are desugared in parallel with {@link #executor}, but written out, together with
+   * the resources of the input, in the order they appear in the input so the output is
+   * deterministic.
+   */
+  private ImmutableMap<LambdaInfo, byte[]> desugarClassesInInput(
       InputFileProvider inputFiles,
       OutputFileProvider outputFileProvider,
-      ClassLoader loader,
-      @Nullable ClassReaderFactory classpathReader,
-      ClassReaderFactory bootclasspathReader,
-      Builder<String> interfaceLambdaMethodCollector)
-      throws IOException {
-    for (String filename : inputFiles) {
-      try (InputStream content = inputFiles.getInputStream(filename)) {
+      final ClassLoader loader,
+      @Nullable final ClassReaderFactory classpathReader,
+      final ClassReaderFactory bootclasspathReader,
+      Builder<String> interfaceLambdaMethodCollector,
+      @Nullable final HashCode environmentKey)
+      throws IOException, InterruptedException {
+    List<String> filenames = new ArrayList<>();
+    // Holds null for resources
+    List<Future<DesugaredClass>> desugaredClasses = new ArrayList<>();
+    try {
+      for (String filename : inputFiles) {
+        filenames.add(filename);
+        if (filename.endsWith(".class")) {
+          final byte[] content;
+          try (InputStream stream = inputFiles.getInputStream(filename)) {
+            content = ByteStreams.toByteArray(stream);
+          }
+          desugaredClasses.add(
+              executor.submit(
+                  new Callable<DesugaredClass>() {
+                    @Override
+                    public DesugaredClass call() throws IOException {
+                      return desugarClass(
+                          content, loader, classpathReader, bootclasspathReader, environmentKey);
+                    }
+                  }));
+        } else {
+          desugaredClasses.add(null);
+        }
+      }
+
+      ImmutableMap.Builder<LambdaInfo, byte[]> lambdaClasses = ImmutableMap.builder();
+      for (int i = 0; i < filenames.size(); i++) {
+        String filename = filenames.get(i);
+        Future<DesugaredClass> future = desugaredClasses.get(i);
         // We can write classes uncompressed since they need to be converted to .dex format
         // for Android anyways. Resources are written as they were in the input jar to avoid
         // any danger of accidentally uncompressed resources ending up in an .apk.
-        if (filename.endsWith(".class")) {
-          ClassReader reader = rewriter.reader(content);
-          InvokeDynamicLambdaMethodCollector lambdaMethodCollector =
-              new InvokeDynamicLambdaMethodCollector();
-          reader.accept(lambdaMethodCollector, ClassReader.SKIP_DEBUG);
-          UnprefixingClassWriter writer = rewriter.writer(ClassWriter.COMPUTE_MAXS);
-          ClassVisitor visitor =
-              createClassVisitorsForClassesInInputs(
-                  loader,
-                  classpathReader,
-                  bootclasspathReader,
-                  interfaceLambdaMethodCollector,
-                  writer,
-                  lambdaMethodCollector.getLambdaMethodsUsedInInvokeDyanmic());
-          reader.accept(visitor, 0);
-
-          outputFileProvider.write(filename, writer.toByteArray());
-        } else {
+        if (future == null) {
           outputFileProvider.copyFrom(filename, inputFiles);
+          continue;
+        }
+        DesugaredClass desugared = getDesugaredClass(future);
+        outputFileProvider.write(filename, desugared.bytecode());
+        lambdaClasses.putAll(desugared.lambdaClasses());
+        for (Map.Entry<String, ClassNode> companion : desugared.companions().entrySet()) {
+          // Copy the companion so cached results are never modified.
+          companion.getValue().accept(store.add(companion.getKey()));
+        }
+        interfaceLambdaMethodCollector.addAll(desugared.interfaceLambdaMethods());
+        numOfTryWithResourcesInvoked.addAndGet(desugared.numOfTryWithResourcesInvoked());
+      }
+      return lambdaClasses.build();
+    } finally {
+      // Stops any remaining work if we failed early; no-op otherwise.
+      for (Future<DesugaredClass> future : desugaredClasses) {
+        if (future != null) {
+          future.cancel(true);
         }
       }
     }
   }
 
+  /**
+   * Desugars a single class of an input, or returns the result cached for it if {@code
+   * environmentKey} is given.
+   */
+  private DesugaredClass desugarClass(
+      byte[] content,
+      ClassLoader loader,
+      @Nullable ClassReaderFactory classpathReader,
+      ClassReaderFactory bootclasspathReader,
+      @Nullable HashCode environmentKey)
+      throws IOException {
+    if (environmentKey != null) {
+      DesugaredClass cached = classCache.get(environmentKey, content);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    // Lambda classes and companions are collected per class, so classes can be desugared in
+    // parallel and their results cached.
+    LambdaClassMaker classLambdas = new LambdaClassMaker(dumpDirectory);
+    GeneratedClassStore companions = new GeneratedClassStore();
+    ImmutableSet.Builder<String> interfaceLambdaMethods = ImmutableSet.builder();
+    AtomicInteger tryWithResourcesInvoked = new AtomicInteger();
+
+    ClassReader reader = rewriter.reader(new ByteArrayInputStream(content));
+    InvokeDynamicLambdaMethodCollector lambdaMethodCollector =
+        new InvokeDynamicLambdaMethodCollector();
+    reader.accept(lambdaMethodCollector, ClassReader.SKIP_DEBUG);
+    UnprefixingClassWriter writer = rewriter.writer(ClassWriter.COMPUTE_MAXS);
+    ClassVisitor visitor =
+        createClassVisitorsForClassesInInputs(
+            loader,
+            classpathReader,
+            bootclasspathReader,
+            classLambdas,
+            companions,
+            tryWithResourcesInvoked,
+            interfaceLambdaMethods,
+            writer,
+            lambdaMethodCollector.getLambdaMethodsUsedInInvokeDyanmic());
+    reader.accept(visitor, 0);
+
+    ImmutableMap.Builder<LambdaInfo, byte[]> lambdaClasses = ImmutableMap.builder();
+    for (Map.Entry<Path, LambdaInfo> lambdaClass : classLambdas.drain().entrySet()) {
+      lambdaClasses.put(lambdaClass.getValue(), Files.readAllBytes(lambdaClass.getKey()));
+    }
+    DesugaredClass result =
+        new DesugaredClass(
+            writer.toByteArray(),
+            lambdaClasses.build(),
+            companions.drain(),
+            interfaceLambdaMethods.build(),
+            tryWithResourcesInvoked.get());
+    if (environmentKey != null) {
+      classCache.put(environmentKey, content, result);
+    }
+    return result;
+  }
+
+  private static DesugaredClass getDesugaredClass(Future<DesugaredClass> future)
+      throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
   /**
    * Desugar the classes that are generated on the fly when we are desugaring the classes in the
    * specified inputs.
@@ -419,38 +591,35 @@ class Desugar {
       @Nullable ClassReaderFactory classpathReader,
       ClassReaderFactory bootclasspathReader,
       ImmutableSet<String> interfaceLambdaMethods,
-      @Nullable ClassReaderFactory bridgeMethodReader)
+      @Nullable ClassReaderFactory bridgeMethodReader,
+      ImmutableMap<LambdaInfo, byte[]> lambdaClasses)
       throws IOException {
     checkState(
         !allowDefaultMethods || interfaceLambdaMethods.isEmpty(),
         "Desugaring with default methods enabled moved interface lambdas");
 
     // Write out the lambda classes we generated along the way
-    ImmutableMap<Path, LambdaInfo> lambdaClasses = lambdas.drain();
     checkState(
         !options.onlyDesugarJavac9ForLint || lambdaClasses.isEmpty(),
         "There should be no lambda classes generated: %s",
         lambdaClasses.keySet());
 
-    for (Map.Entry<Path, LambdaInfo> lambdaClass : lambdaClasses.entrySet()) {
-      try (InputStream bytecode = Files.newInputStream(lambdaClass.getKey())) {
-        ClassReader reader = rewriter.reader(bytecode);
-        UnprefixingClassWriter writer =
-            rewriter.writer(ClassWriter.COMPUTE_MAXS /*for invoking bridges*/);
-        ClassVisitor visitor =
-            createClassVisitorsForDumpedLambdaClasses(
-                loader,
-                classpathReader,
-                bootclasspathReader,
-                interfaceLambdaMethods,
-                bridgeMethodReader,
-                lambdaClass.getValue(),
-                writer);
-        reader.accept(visitor, 0);
-        String filename =
-            rewriter.unprefix(lambdaClass.getValue().desiredInternalName()) + ".class";
-        outputFileProvider.write(filename, writer.toByteArray());
-      }
+    for (Map.Entry<LambdaInfo, byte[]> lambdaClass : lambdaClasses.entrySet()) {
+      ClassReader reader = rewriter.reader(new ByteArrayInputStream(lambdaClass.getValue()));
+      UnprefixingClassWriter writer =
+          rewriter.writer(ClassWriter.COMPUTE_MAXS /*for invoking bridges*/);
+      ClassVisitor visitor =
+          createClassVisitorsForDumpedLambdaClasses(
+              loader,
+              classpathReader,
+              bootclasspathReader,
+              interfaceLambdaMethods,
+              bridgeMethodReader,
+              lambdaClass.getKey(),
+              writer);
+      reader.accept(visitor, 0);
+      String filename = rewriter.unprefix(lambdaClass.getKey().desiredInternalName()) + ".class";
+      outputFileProvider.write(filename, writer.toByteArray());
     }
   }
 
@@ -534,6 +703,9 @@ class Desugar {
       ClassLoader loader,
       @Nullable ClassReaderFactory classpathReader,
       ClassReaderFactory bootclasspathReader,
+      LambdaClassMaker classLambdas,
+      GeneratedClassStore companions,
+      AtomicInteger tryWithResourcesInvoked,
       Builder<String> interfaceLambdaMethodCollector,
       UnprefixingClassWriter writer,
       ImmutableSet<MethodInfo> lambdaMethodsUsedInInvokeDynamic) {
@@ -541,7 +713,7 @@ class Desugar {
     if (!allowTryWithResources) {
       visitor =
           new TryWithResourcesRewriter(
-              visitor, loader, visitedExceptionTypes, numOfTryWithResourcesInvoked);
+              visitor, loader, visitedExceptionTypes, tryWithResourcesInvoked);
     }
     if (!options.onlyDesugarJavac9ForLint) {
       if (outputJava7) {
@@ -549,14 +721,14 @@ class Desugar {
         if (options.desugarInterfaceMethodBodiesIfNeeded) {
           visitor =
               new DefaultMethodClassFixer(visitor, classpathReader, bootclasspathReader, loader);
-          visitor = new InterfaceDesugaring(visitor, bootclasspathReader, store);
+          visitor = new InterfaceDesugaring(visitor, bootclasspathReader, companions);
         }
       }
       visitor =
           new LambdaDesugaring(
               visitor,
               loader,
-              lambdas,
+              classLambdas,
               interfaceLambdaMethodCollector,
               lambdaMethodsUsedInInvokeDynamic,
               allowDefaultMethods);
@@ -576,10 +748,117 @@ class Desugar {
     verifyLambdaDumpDirectoryRegistered(dumpDirectory);
 
     Options options = parseCommandLineOptions(args);
+    if (options.persistentWorker) {
+      runPersistentWorker(dumpDirectory);
+      return;
+    }
+    checkOptions(options);
     if (options.verbose) {
       System.out.printf("Lambda classes will be written under %s%n", dumpDirectory);
     }
-    new Desugar(options, dumpDirectory).desugar();
+    ExecutorService executor =
+        options.maxThreads > 1
+            ? newFixedThreadPool(options.maxThreads)
+            : MoreExecutors.newDirectExecutorService();
+    try {
+      new Desugar(options, dumpDirectory, executor, null, ImmutableMap.<Path, HashCode>of())
+          .desugar();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Implements a persistent worker process for use with Bazel (see {@code WorkerSpawnStrategy}).
+   * Desugared classes are cached across requests, so classes that didn't change since a previous
+   * request don't need to be desugared again.
+   */
+  private static void runPersistentWorker(Path dumpDirectory) throws IOException {
+    PrintStream realStdOut = System.out;
+    PrintStream realStdErr = System.err;
+    ExecutorService executor = newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    // Use at most 200 MB and a quarter of the heap for the cache, since each request also holds
+    // the classes of its inputs in memory.  For reference: classes are around 1-5 KB each, so this
+    // fits ~40K-200K classes.
+    DesugaredClassCache classCache =
+        new DesugaredClassCache(Math.min(Runtime.getRuntime().maxMemory() / 4, 200 * ONE_MEG));
+    try {
+      while (true) {
+        WorkRequest request = WorkRequest.parseDelimitedFrom(System.in);
+        if (request == null) {
+          return;
+        }
+
+        // Redirect output so we can return it in response and it doesn't corrupt the protocol
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(baos, /*autoFlush*/ true);
+        System.setOut(ps);
+        System.setErr(ps);
+        // Make sure that we exit nonzero in case uncaught errors occur during processRequest.
+        int exitCode = 1;
+        try {
+          processRequest(request, dumpDirectory, executor, classCache);
+          exitCode = 0; // success!
+        } catch (Exception e) {
+          // Deliberate catch-all so we can capture a stack trace.
+          e.printStackTrace(ps);
+        } catch (Error e) {
+          e.printStackTrace(realStdErr);
+          e.printStackTrace(ps); // try capturing the error, may fail if out of memory
+          throw e; // rethrow to kill the worker
+        } finally {
+          System.setOut(realStdOut);
+          System.setErr(realStdErr);
+          // Try sending a response no matter what
+          String output;
+          try {
+            output = baos.toString();
+          } catch (Throwable t) { // most likely out of memory, so log with minimal memory needs
+            t.printStackTrace();
+            output = "check worker log for exceptions";
+          }
+          WorkResponse.newBuilder()
+              .setOutput(output)
+              .setExitCode(exitCode)
+              .build()
+              .writeDelimitedTo(realStdOut);
+          realStdOut.flush();
+        }
+        // Lambda classes are looked up by name in the dump directory, so drop the ones of this
+        // request before the same classes are desugared again.
+        deleteDumpedLambdaClasses(dumpDirectory);
+        // The worker's stderr ends up in its log file.
+        realStdErr.println("Desugar worker: " + classCache);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void processRequest(
+      WorkRequest request,
+      Path dumpDirectory,
+      ExecutorService executor,
+      DesugaredClassCache classCache)
+      throws Exception {
+    OptionsParser optionsParser = OptionsParser.newOptionsParser(Options.class);
+    optionsParser.setAllowResidue(false);
+    optionsParser.parse(request.getArgumentsList());
+    Options options = optionsParser.getOptions(Options.class);
+    checkOptions(options);
+    new Desugar(options, dumpDirectory, executor, classCache, inputDigests(request)).desugar();
+  }
+
+  private static ImmutableMap<Path, HashCode> inputDigests(WorkRequest request) {
+    ImmutableMap.Builder<Path, HashCode> digests = ImmutableMap.builder();
+    Set<Path> seen = new HashSet<>();
+    for (Input input : request.getInputsList()) {
+      Path path = Paths.get(input.getPath());
+      if (!input.getDigest().isEmpty() && seen.add(path)) {
+        digests.put(path, HashCode.fromBytes(input.getDigest().toByteArray()));
+      }
+    }
+    return digests.build();
   }
 
   static void verifyLambdaDumpDirectoryRegistered(Path dumpDirectory) throws IOException {
@@ -639,9 +918,10 @@ class Desugar {
     OptionsParser optionsParser = OptionsParser.newOptionsParser(Options.class);
     optionsParser.setAllowResidue(false);
     optionsParser.parseAndExitUponError(args);
+    return optionsParser.getOptions(Options.class);
+  }
 
-    Options options = optionsParser.getOptions(Options.class);
-
+  private static void checkOptions(Options options) {
     checkArgument(!options.inputJars.isEmpty(), "--input is required");
     checkArgument(
         options.inputJars.size() == options.outputJars.size(),
@@ -654,7 +934,10 @@ class Desugar {
     for (Path path : options.bootclasspath) {
       checkArgument(!Files.isDirectory(path), "Bootclasspath entry must be a jar file: %s", path);
     }
-    return options;
+    checkArgument(
+        options.maxThreads > 0,
+        "--max_threads must be strictly positive, was: %s",
+        options.maxThreads);
   }
 
   private static ImmutableList<InputOutputPair> toInputOutputPairs(Options options) {
@@ -695,6 +978,20 @@ class Desugar {
     Runtime.getRuntime().addShutdownHook(shutdownHook);
   }
 
+  /** Deletes the lambda classes dumped into the given directory, keeping the directory itself. */
+  private static void deleteDumpedLambdaClasses(Path dumpDirectory) throws IOException {
+    Files.walkFileTree(
+        dumpDirectory,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            Files.delete(file);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
   /** Recursively delete a directory. */
   private static void deleteTree(final Path directory) throws IOException {
     if (directory.toFile().exists()) {
@@ -0,0 +1,85 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.android.desugar;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * The result of desugaring a single class of an input: the desugared class itself together with
+ * everything generated along the way, which is only written out once all classes of the input have
+ * been processed.
+ *
+ * <p>Instances are shared between inputs through {@link DesugaredClassCache} and must not be
+ * modified; in particular, {@link #companions()} must only be visited, not changed.
+ */
+final class DesugaredClass {
+
+  /** Rough size of a companion class, which are kept as {@link ClassNode}s. */
+  private static final int COMPANION_WEIGHT = 1024;
+
+  private final byte[] bytecode;
+  private final ImmutableMap<LambdaInfo, byte[]> lambdaClasses;
+  private final ImmutableMap<String, ClassNode> companions;
+  private final ImmutableSet<String> interfaceLambdaMethods;
+  private final int numOfTryWithResourcesInvoked;
+
+  DesugaredClass(
+      byte[] bytecode,
+      ImmutableMap<LambdaInfo, byte[]> lambdaClasses,
+      ImmutableMap<String, ClassNode> companions,
+      ImmutableSet<String> interfaceLambdaMethods,
+      int numOfTryWithResourcesInvoked) {
+    this.bytecode = bytecode;
+    this.lambdaClasses = lambdaClasses;
+    this.companions = companions;
+    this.interfaceLambdaMethods = interfaceLambdaMethods;
+    this.numOfTryWithResourcesInvoked = numOfTryWithResourcesInvoked;
+  }
+
+  /** Returns the desugared class file. */
+  public byte[] bytecode() {
+    return bytecode;
+  }
+
+  /** Returns the lambda classes dumped while desugaring, not desugared themselves yet. */
+  public ImmutableMap<LambdaInfo, byte[]> lambdaClasses() {
+    return lambdaClasses;
+  }
+
+  /** Returns the interface companion classes generated while desugaring. */
+  public ImmutableMap<String, ClassNode> companions() {
+    return companions;
+  }
+
+  /** Returns the lambda bodies that were moved out of interfaces. */
+  public ImmutableSet<String> interfaceLambdaMethods() {
+    return interfaceLambdaMethods;
+  }
+
+  /** Returns how many try-with-resources related calls were rewritten. */
+  public int numOfTryWithResourcesInvoked() {
+    return numOfTryWithResourcesInvoked;
+  }
+
+  /** Returns an estimate of the heap needed to keep this result in a cache. */
+  int weight() {
+    int result = bytecode.length + COMPANION_WEIGHT * companions.size();
+    for (byte[] lambdaClass : lambdaClasses.values()) {
+      result += lambdaClass.length;
+    }
+    return result;
+  }
+}
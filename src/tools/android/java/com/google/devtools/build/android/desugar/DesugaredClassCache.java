@@ -0,0 +1,212 @@
+// Copyright 2017 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.android.desugar;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Cache of desugared classes for use across the requests of a persistent worker, so that
+ * desugaring a Jar again after a few of its classes changed mostly only desugars those classes.
+ *
+ * <p>Desugaring a class depends on more than its own bytecode: it also depends on the options, on
+ * the classpath and bootclasspath, and on the other classes of the same input, which are loaded to
+ * resolve lambdas and default methods. Classes are therefore cached under their content together
+ * with an {@link #environmentKey environment key} that covers the former two by digest, and the
+ * other classes of the input by their signatures only, so that changing a method body in one class
+ * doesn't invalidate the rest of the input.
+ *
+ * <p>This class is thread-safe.
+ */
+final class DesugaredClassCache {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.sha256();
+
+  private final Cache<HashCode, DesugaredClass> cache;
+
+  DesugaredClassCache(long maxWeight) {
+    this.cache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxWeight)
+            .weigher(
+                new Weigher<HashCode, DesugaredClass>() {
+                  @Override
+                  public int weigh(HashCode key, DesugaredClass value) {
+                    return value.weight();
+                  }
+                })
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * Returns the environment in which the classes of the given input are desugared, or {@code null}
+   * if it can't be determined because the digest of a classpath or bootclasspath entry is unknown.
+   */
+  @Nullable
+  static HashCode environmentKey(
+      Desugar.Options options, InputFileProvider input, Map<Path, HashCode> inputDigests)
+      throws IOException {
+    // All options except the input and output paths, --verbose, --max_threads and
+    // --persistent_worker.
+    Hasher hasher =
+        HASH_FUNCTION
+            .newHasher()
+            .putInt(options.minSdkVersion)
+            .putBoolean(options.allowEmptyBootclasspath)
+            .putBoolean(options.coreLibrary)
+            .putBoolean(options.onlyDesugarJavac9ForLint)
+            .putBoolean(options.alwaysRewriteLongCompare)
+            .putBoolean(options.desugarInterfaceMethodBodiesIfNeeded)
+            .putBoolean(options.desugarTryWithResourcesIfNeeded)
+            .putBoolean(options.desugarTryWithResourcesOmitRuntimeClasses)
+            .putBoolean(options.copyBridgesFromClasspath);
+    if (!putDigests(hasher, options.bootclasspath, inputDigests)
+        || !putDigests(hasher, options.classpath, inputDigests)) {
+      return null;
+    }
+
+    SignatureHasher signatures = new SignatureHasher(hasher);
+    for (String filename : input) {
+      if (filename.endsWith(".class")) {
+        try (InputStream content = input.getInputStream(filename)) {
+          new ClassReader(content)
+              .accept(
+                  signatures,
+                  ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+      }
+    }
+    return hasher.hash();
+  }
+
+  private static boolean putDigests(
+      Hasher hasher, List<Path> paths, Map<Path, HashCode> inputDigests) {
+    hasher.putInt(paths.size());
+    for (Path path : paths) {
+      HashCode digest = inputDigests.get(path);
+      if (digest == null) {
+        return false;
+      }
+      hasher.putString(path.toString(), UTF_8).putBytes(digest.asBytes());
+    }
+    return true;
+  }
+
+  /** Returns the cached result of desugaring {@code bytecode} in the given environment, if any. */
+  @Nullable
+  DesugaredClass get(HashCode environmentKey, byte[] bytecode) {
+    return cache.getIfPresent(key(environmentKey, bytecode));
+  }
+
+  void put(HashCode environmentKey, byte[] bytecode, DesugaredClass desugared) {
+    cache.put(key(environmentKey, bytecode), desugared);
+  }
+
+  private static HashCode key(HashCode environmentKey, byte[] bytecode) {
+    return HASH_FUNCTION
+        .newHasher()
+        .putBytes(environmentKey.asBytes())
+        .putBytes(bytecode)
+        .hash();
+  }
+
+  @Override
+  public String toString() {
+    CacheStats stats = cache.stats();
+    return String.format(
+        "%d classes cached, %d hits, %d misses", cache.size(), stats.hitCount(), stats.missCount());
+  }
+
+  /** Feeds the class, field, and method declarations of the visited classes into a hasher. */
+  private static class SignatureHasher extends ClassVisitor {
+
+    private final Hasher hasher;
+
+    SignatureHasher(Hasher hasher) {
+      super(Opcodes.ASM5);
+      this.hasher = hasher;
+    }
+
+    @Override
+    public void visit(
+        int version,
+        int access,
+        String name,
+        String signature,
+        String superName,
+        String[] interfaces) {
+      hasher.putByte((byte) 'C').putInt(version).putInt(access);
+      putStrings(name, signature, superName);
+      putStrings(interfaces);
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+      hasher.putByte((byte) 'I').putInt(access);
+      putStrings(name, outerName, innerName);
+    }
+
+    @Override
+    public FieldVisitor visitField(
+        int access, String name, String desc, String signature, Object value) {
+      hasher.putByte((byte) 'F').putInt(access);
+      putStrings(name, desc, signature, value == null ? null : value.toString());
+      return null;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+        int access, String name, String desc, String signature, String[] exceptions) {
+      hasher.putByte((byte) 'M').putInt(access);
+      putStrings(name, desc, signature);
+      putStrings(exceptions);
+      return null;
+    }
+
+    private void putStrings(@Nullable String... values) {
+      if (values == null) {
+        hasher.putInt(-1);
+        return;
+      }
+      hasher.putInt(values.length);
+      for (String value : values) {
+        if (value == null) {
+          hasher.putInt(-1);
+        } else {
+          hasher.putInt(value.length()).putString(value, UTF_8);
+        }
+      }
+    }
+  }
+}
@@ -35,6 +35,11 @@ import org.objectweb.asm.Opcodes;
  */
 class HeaderClassLoader extends ClassLoader {
 
+  static {
+    // Classes of an input are desugared in parallel, so only lock per class while loading.
+    ClassLoader.registerAsParallelCapable();
+  }
+
   private final IndexedInputs indexedInputs;
   private final CoreLibraryRewriter rewriter;
 
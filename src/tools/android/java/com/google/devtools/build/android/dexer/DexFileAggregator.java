@@ -14,6 +14,7 @@
 package com.google.devtools.build.android.dexer;
 
 import static com.google.common.base.Preconditions.checkState;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 
 import com.android.dex.Dex;
 import com.android.dex.DexFormat;
@@ -23,18 +24,31 @@ import com.android.dx.merge.CollisionPolicy;
 import com.android.dx.merge.DexMerger;
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.BufferOverflowException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 
 /**
  * Merger for {@code .dex} files into larger chunks subject to {@code .dex} file limits on methods
  * and fields.
+ *
+ * <p>Files are assigned to shards in the order they're added, which only requires tracking their
+ * field and method references. The expensive merging of each completed shard can then happen in
+ * the background, using up to the given number of threads, while later shards are assembled.
+ * Shards are still written out in order, so the output doesn't depend on the number of threads.
  */
 class DexFileAggregator implements Closeable {
 
@@ -55,6 +69,10 @@ class DexFileAggregator implements Closeable {
   private final int maxNumberOfIdxPerDex;
   private final int wasteThresholdPerDex;
   private final MultidexStrategy multidex;
+  private final int maxThreads;
+  private final ExecutorService executor;
+  /** Shards that are or were being merged, in the order they need to be written out. */
+  private final ArrayDeque<MergingShard> mergingShards = new ArrayDeque<>();
   private DexFileArchive dest;
   private int nextDexFileIndex = 0;
 
@@ -63,10 +81,28 @@ class DexFileAggregator implements Closeable {
       MultidexStrategy multidex,
       int maxNumberOfIdxPerDex,
       int wasteThresholdPerDex) {
+    this(dest, multidex, maxNumberOfIdxPerDex, wasteThresholdPerDex, 1);
+  }
+
+  /**
+   * Creates an aggregator that merges up to {@code maxThreads} shards in parallel, or merges each
+   * shard on the calling thread as soon as it's complete if {@code maxThreads <= 1}.
+   */
+  public DexFileAggregator(
+      DexFileArchive dest,
+      MultidexStrategy multidex,
+      int maxNumberOfIdxPerDex,
+      int wasteThresholdPerDex,
+      int maxThreads) {
     this.dest = dest;
     this.multidex = multidex;
     this.maxNumberOfIdxPerDex = maxNumberOfIdxPerDex;
     this.wasteThresholdPerDex = wasteThresholdPerDex;
+    this.maxThreads = Math.max(maxThreads, 1);
+    this.executor =
+        maxThreads > 1
+            ? newFixedThreadPool(maxThreads)
+            : MoreExecutors.newDirectExecutorService();
   }
 
   public DexFileAggregator add(Dex dexFile) throws IOException {
@@ -108,7 +144,10 @@ class DexFileAggregator implements Closeable {
       if (!currentShard.isEmpty()) {
         rotateDexFile();
       }
+      writeMergedShards(0);
     } finally {
+      // Stops any remaining merges if we failed early; no-op otherwise.
+      executor.shutdownNow();
       dest.close();
       dest = null;
     }
@@ -126,15 +165,47 @@ class DexFileAggregator implements Closeable {
   }
 
   private void rotateDexFile() throws IOException {
-    writeMergedFile(currentShard.toArray(/* apparently faster than pre-sized array */ new Dex[0]));
+    final Dex[] shard =
+        currentShard.toArray(/* apparently faster than pre-sized array */ new Dex[0]);
+    Future<Dex> merged =
+        executor.submit(
+            new Callable<Dex>() {
+              @Override
+              public Dex call() throws IOException {
+                return merge(shard);
+              }
+            });
+    mergingShards.add(new MergingShard(nextArchiveEntry(), merged));
     currentShard.clear();
     fieldsInCurrentShard.clear();
     methodsInCurrentShard.clear();
+    // Bound the number of shards held in memory while they're merged.
+    writeMergedShards(maxThreads);
   }
 
-  private void writeMergedFile(Dex... dexes) throws IOException {
-    Dex merged = merge(dexes);
-    dest.addFile(nextArchiveEntry(), merged);
+  /**
+   * Writes out shards in order as long as they're merged already, waiting for merges to finish if
+   * more than {@code maxMerging} shards are left.
+   */
+  private void writeMergedShards(int maxMerging) throws IOException {
+    while (!mergingShards.isEmpty()
+        && (mergingShards.size() > maxMerging || mergingShards.peek().merged.isDone())) {
+      MergingShard shard = mergingShards.remove();
+      dest.addFile(shard.entry, getMerged(shard.merged));
+    }
+  }
+
+  private static Dex getMerged(Future<Dex> merged) throws IOException {
+    try {
+      return merged.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while merging .dex files");
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
   }
 
   private Dex merge(Dex... dexes) throws IOException {
@@ -176,6 +247,17 @@ class DexFileAggregator implements Closeable {
     return i == 0 ? DexFormat.DEX_IN_JAR_NAME : DEX_PREFIX + (i + 1) + DEX_EXTENSION;
   }
 
+  /** A shard with its place in the output. */
+  private static final class MergingShard {
+    final ZipEntry entry;
+    final Future<Dex> merged;
+
+    MergingShard(ZipEntry entry, Future<Dex> merged) {
+      this.entry = entry;
+      this.merged = merged;
+    }
+  }
+
   @AutoValue
   abstract static class FieldDescriptor {
     static FieldDescriptor fromDex(Dex dex, int fieldIndex) {
@@ -143,6 +143,19 @@ class DexFileMerger {
     )
     public int wasteThresholdPerDex;
 
+    @Option(
+      name = "num-threads",
+      defaultValue = "1",
+      category = "misc",
+      documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help =
+          "How many .dex files to merge in parallel at most when multidex is allowed. Each merge "
+              + "in flight holds its input and output .dex files in memory, so raising this also "
+              + "raises peak memory use. Output is the same regardless of this setting."
+    )
+    public int numThreads;
+
     // Undocumented dx option for testing multidex logic
     @Option(
       name = "set-max-idx-number",
@@ -267,7 +280,8 @@ class DexFileMerger {
                 new BufferedOutputStream(Files.newOutputStream(options.outputArchive)))),
         options.multidexMode,
         options.maxNumberOfIdxPerDex,
-        options.wasteThresholdPerDex);
+        options.wasteThresholdPerDex,
+        options.multidexMode.isMultidexAllowed() ? options.numThreads : 1);
   }
 
   /**